@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.IconDataProvider;
+import pl.mg6.android.maps.extensions.datasets.Dataset;
+import pl.mg6.android.maps.extensions.datasets.DatasetGenerator;
+import pl.mg6.android.maps.extensions.datasets.DatasetGenerator.Distribution;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+/**
+ * Measures clustering strategies on the main thread part of their work, with native calls replaced by {@link StubGoogleMap}.
+ * 
+ * Markers are spread over an area of the size of Poland by {@link DatasetGenerator}, camera starts at its center on zoom level {@link #START_ZOOM}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ClusteringStrategyBenchmark {
+
+	public enum StrategyType {
+		GRID, DYNAMIC_GRID, DYNAMIC_NO_CLUSTERING, NO_CLUSTERING
+	}
+
+	private static final long SEED = 42L;
+
+	private static final double MIN_LATITUDE = 49.0;
+	private static final double MAX_LATITUDE = 55.0;
+	private static final double MIN_LONGITUDE = 14.0;
+	private static final double MAX_LONGITUDE = 24.0;
+	private static final LatLng CENTER = new LatLng((MIN_LATITUDE + MAX_LATITUDE) / 2, (MIN_LONGITUDE + MAX_LONGITUDE) / 2);
+
+	private static final int START_ZOOM = 8;
+	private static final int MIN_ZOOM = 3;
+	private static final int MAX_ZOOM = 17;
+
+	private static final int PAN_ZOOM = 12;
+	private static final int PAN_STEPS = 20;
+
+	private static final int POSITION_UPDATES = 1000;
+	// roughly 100 meters
+	private static final double POSITION_UPDATE_DISTANCE = 0.001;
+
+	private static final IconDataProvider ICON_DATA_PROVIDER = new IconDataProvider() {
+
+		private final MarkerOptions iconData = new MarkerOptions();
+
+		@Override
+		public MarkerOptions getIconData(int markersCount) {
+			return iconData;
+		}
+	};
+
+	@Param({ "1000", "10000", "100000" })
+	public int markersCount;
+
+	@Param({ "GRID", "DYNAMIC_GRID", "DYNAMIC_NO_CLUSTERING", "NO_CLUSTERING" })
+	public StrategyType strategyType;
+
+	@Param({ "UNIFORM", "CITIES" })
+	public Distribution distribution;
+
+	private final MetricsRecorder metrics = new MetricsRecorder();
+	private StubGoogleMap map;
+	private ManualClusterRefresher refresher;
+	private List<DelegatingMarker> markers;
+	private Random random;
+
+	private ClusteringStrategy strategy;
+
+	@Setup(Level.Trial)
+	public void createMarkers() {
+		random = new Random(SEED);
+		Dataset dataset = new DatasetGenerator().seed(SEED).bounds(MIN_LATITUDE, MIN_LONGITUDE, MAX_LATITUDE, MAX_LONGITUDE).generate(distribution,
+				markersCount);
+		markers = new ArrayList<DelegatingMarker>(markersCount);
+		for (int i = 0; i < markersCount; i++) {
+			LatLng position = new LatLng(dataset.getLatitude(i), dataset.getLongitude(i));
+			markers.add(new DelegatingMarker(new StubLazyMarker(position), null, metrics));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void createStrategy() {
+		map = new StubGoogleMap(CENTER, START_ZOOM);
+		refresher = new ManualClusterRefresher(metrics);
+		strategy = createStrategy(markers, refresher);
+		refresher.refreshAll();
+	}
+
+	@TearDown(Level.Iteration)
+	public void cleanupStrategy() {
+		strategy.cleanup();
+	}
+
+	/**
+	 * Adding all markers one by one to a strategy created before any marker, like when adding markers after setting clustering.
+	 */
+	@Benchmark
+	public int bulkAdd() {
+		ManualClusterRefresher refresher = new ManualClusterRefresher(metrics);
+		ClusteringStrategy strategy = createStrategy(new ArrayList<DelegatingMarker>(), refresher);
+		for (int i = 0; i < markers.size(); i++) {
+			strategy.onAdd(markers.get(i));
+		}
+		refresher.refreshAll();
+		int displayed = strategy.getDisplayedMarkers().size();
+		strategy.cleanup();
+		return displayed;
+	}
+
+	/**
+	 * Zooming out to {@link #MIN_ZOOM}, in to {@link #MAX_ZOOM} and back one level at a time.
+	 */
+	@Benchmark
+	public int zoomSweep() {
+		for (int zoom = START_ZOOM - 1; zoom >= MIN_ZOOM; zoom--) {
+			changeCamera(CENTER, zoom);
+		}
+		for (int zoom = MIN_ZOOM + 1; zoom <= MAX_ZOOM; zoom++) {
+			changeCamera(CENTER, zoom);
+		}
+		for (int zoom = MAX_ZOOM - 1; zoom >= START_ZOOM; zoom--) {
+			changeCamera(CENTER, zoom);
+		}
+		return strategy.getDisplayedMarkers().size();
+	}
+
+	/**
+	 * Panning east by about a third of the screen at a time on zoom level where markers are not clustered much.
+	 */
+	@Benchmark
+	public int pan() {
+		double step = 180.0 / Math.pow(2.0, PAN_ZOOM);
+		for (int i = 0; i <= PAN_STEPS; i++) {
+			changeCamera(new LatLng(CENTER.latitude, CENTER.longitude + i * step), PAN_ZOOM);
+		}
+		changeCamera(CENTER, START_ZOOM);
+		return strategy.getDisplayedMarkers().size();
+	}
+
+	/**
+	 * Moving {@link #POSITION_UPDATES} random markers by a short distance, like when tracking vehicles.
+	 */
+	@Benchmark
+	public int updatePositions() {
+		for (int i = 0; i < POSITION_UPDATES; i++) {
+			DelegatingMarker marker = markers.get(random.nextInt(markers.size()));
+			LatLng position = marker.getPosition();
+			double latitude = clamp(position.latitude + (random.nextDouble() - 0.5) * POSITION_UPDATE_DISTANCE, MIN_LATITUDE, MAX_LATITUDE);
+			double longitude = clamp(position.longitude + (random.nextDouble() - 0.5) * POSITION_UPDATE_DISTANCE, MIN_LONGITUDE, MAX_LONGITUDE);
+			// what DelegatingMarker.setPosition does, without manager
+			marker.getReal().setPosition(new LatLng(latitude, longitude));
+			marker.clearCachedPosition();
+			strategy.onPositionChange(marker);
+		}
+		refresher.refreshAll();
+		return strategy.getDisplayedMarkers().size();
+	}
+
+	private void changeCamera(LatLng target, float zoom) {
+		map.setCamera(target, zoom);
+		strategy.onCameraChange(map.getCameraPosition());
+		refresher.refreshAll();
+	}
+
+	private ClusteringStrategy createStrategy(List<DelegatingMarker> markers, ClusterRefresher refresher) {
+		DisplayedMarkers displayedMarkers = new DisplayedMarkers();
+		switch (strategyType) {
+			case GRID:
+				return new GridClusteringStrategy(createSettings(false), map, markers, displayedMarkers, refresher, metrics);
+			case DYNAMIC_GRID:
+				return new GridClusteringStrategy(createSettings(true), map, markers, displayedMarkers, refresher, metrics);
+			case DYNAMIC_NO_CLUSTERING:
+				return new DynamicNoClusteringStrategy(map, markers, displayedMarkers);
+			default:
+				return new NoClusteringStrategy(markers, displayedMarkers);
+		}
+	}
+
+	private static ClusteringSettings createSettings(boolean addMarkersDynamically) {
+		return new ClusteringSettings().iconDataProvider(ICON_DATA_PROVIDER).addMarkersDynamically(addMarkersDynamically);
+	}
+
+	private static double clamp(double value, double min, double max) {
+		return Math.max(min, Math.min(value, max));
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.location.Location;
+
+import com.google.android.gms.maps.CameraUpdate;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.GoogleMap.CancelableCallback;
+import com.google.android.gms.maps.GoogleMap.InfoWindowAdapter;
+import com.google.android.gms.maps.GoogleMap.OnCameraChangeListener;
+import com.google.android.gms.maps.GoogleMap.OnInfoWindowClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMapClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMapLongClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMarkerClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMarkerDragListener;
+import com.google.android.gms.maps.GoogleMap.OnMyLocationButtonClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMyLocationChangeListener;
+import com.google.android.gms.maps.LocationSource;
+import com.google.android.gms.maps.Projection;
+import com.google.android.gms.maps.UiSettings;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.GroundOverlay;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.android.gms.maps.model.VisibleRegion;
+
+/**
+ * Map without native part. Shapes added to it are null, which strategies treat like markers not created yet.
+ */
+class StubGoogleMap implements IGoogleMap {
+
+	private static final double VIEWPORT_WIDTH_DP = 400.0;
+	private static final double VIEWPORT_HEIGHT_DP = 700.0;
+
+	private CameraPosition cameraPosition;
+	private final StubProjection projection = new StubProjection();
+
+	StubGoogleMap(LatLng target, float zoom) {
+		setCamera(target, zoom);
+	}
+
+	/**
+	 * Updates camera position and visible region of a phone sized viewport.
+	 */
+	void setCamera(LatLng target, float zoom) {
+		cameraPosition = new CameraPosition(target, zoom, 0.0f, 0.0f);
+		double worldSizeDp = 256.0 * Math.pow(2.0, zoom);
+		double halfWidth = 180.0 * VIEWPORT_WIDTH_DP / worldSizeDp;
+		double halfHeight = 180.0 * VIEWPORT_HEIGHT_DP / worldSizeDp;
+		double y = SphericalMercator.fromLatitude(target.latitude);
+		double south = SphericalMercator.toLatitude(Math.max(y - halfHeight, -180.0));
+		double north = SphericalMercator.toLatitude(Math.min(y + halfHeight, 180.0));
+		double west = target.longitude - Math.min(halfWidth, 180.0);
+		double east = target.longitude + Math.min(halfWidth, 180.0);
+		LatLng southWest = new LatLng(south, west);
+		LatLng northEast = new LatLng(north, east);
+		projection.visibleRegion = new VisibleRegion(southWest, new LatLng(south, east), new LatLng(north, west), northEast, new LatLngBounds(
+				southWest, northEast));
+	}
+
+	@Override
+	public Circle addCircle(CircleOptions options) {
+		return null;
+	}
+
+	@Override
+	public GroundOverlay addGroundOverlay(GroundOverlayOptions options) {
+		return null;
+	}
+
+	@Override
+	public Marker addMarker(MarkerOptions options) {
+		return null;
+	}
+
+	@Override
+	public Polygon addPolygon(PolygonOptions options) {
+		return null;
+	}
+
+	@Override
+	public Polyline addPolyline(PolylineOptions options) {
+		return null;
+	}
+
+	@Override
+	public TileOverlay addTileOverlay(TileOverlayOptions options) {
+		return null;
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update, CancelableCallback callback) {
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update, int durationMs, CancelableCallback callback) {
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update) {
+	}
+
+	@Override
+	public void clear() {
+	}
+
+	@Override
+	public CameraPosition getCameraPosition() {
+		return cameraPosition;
+	}
+
+	@Override
+	public int getMapType() {
+		return GoogleMap.MAP_TYPE_NORMAL;
+	}
+
+	@Override
+	public float getMaxZoomLevel() {
+		return 21.0f;
+	}
+
+	@Override
+	public float getMinZoomLevel() {
+		return 2.0f;
+	}
+
+	@Override
+	public Location getMyLocation() {
+		return null;
+	}
+
+	@Override
+	public IProjection getProjection() {
+		return projection;
+	}
+
+	@Override
+	public UiSettings getUiSettings() {
+		return null;
+	}
+
+	@Override
+	public boolean isIndoorEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isMyLocationEnabled() {
+		return false;
+	}
+
+	@Override
+	public boolean isTrafficEnabled() {
+		return false;
+	}
+
+	@Override
+	public void moveCamera(CameraUpdate update) {
+	}
+
+	@Override
+	public boolean setIndoorEnabled(boolean enabled) {
+		return false;
+	}
+
+	@Override
+	public void setInfoWindowAdapter(InfoWindowAdapter adapter) {
+	}
+
+	@Override
+	public void setLocationSource(LocationSource source) {
+	}
+
+	@Override
+	public void setMapType(int type) {
+	}
+
+	@Override
+	public void setMyLocationEnabled(boolean enabled) {
+	}
+
+	@Override
+	public void setOnCameraChangeListener(OnCameraChangeListener listener) {
+	}
+
+	@Override
+	public void setOnInfoWindowClickListener(OnInfoWindowClickListener listener) {
+	}
+
+	@Override
+	public void setOnMapClickListener(OnMapClickListener listener) {
+	}
+
+	@Override
+	public void setOnMapLongClickListener(OnMapLongClickListener listener) {
+	}
+
+	@Override
+	public void setOnMarkerClickListener(OnMarkerClickListener listener) {
+	}
+
+	@Override
+	public void setOnMarkerDragListener(OnMarkerDragListener listener) {
+	}
+
+	@Override
+	public void setOnMyLocationButtonClickListener(OnMyLocationButtonClickListener listener) {
+	}
+
+	@Override
+	public void setOnMyLocationChangeListener(OnMyLocationChangeListener listener) {
+	}
+
+	@Override
+	public void setTrafficEnabled(boolean enabled) {
+	}
+
+	@Override
+	public void snapshot(GoogleMap.SnapshotReadyCallback callback) {
+	}
+
+	@Override
+	public void snapshot(GoogleMap.SnapshotReadyCallback callback, Bitmap bitmap) {
+	}
+
+	@Override
+	public void stopAnimation() {
+	}
+
+	@Override
+	public GoogleMap getMap() {
+		return null;
+	}
+
+	private static class StubProjection implements IProjection {
+
+		private VisibleRegion visibleRegion;
+
+		@Override
+		public LatLng fromScreenLocation(Point point) {
+			return null;
+		}
+
+		@Override
+		public VisibleRegion getVisibleRegion() {
+			return visibleRegion;
+		}
+
+		@Override
+		public Point toScreenLocation(LatLng location) {
+			return null;
+		}
+
+		@Override
+		public Projection getProjection() {
+			return null;
+		}
+	}
+}
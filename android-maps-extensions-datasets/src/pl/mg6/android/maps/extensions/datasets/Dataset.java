@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.datasets;
+
+/**
+ * Positions of points as parallel arrays, which are not copied, so they can be fed to benchmarks without boxing.
+ */
+public class Dataset {
+
+	private final double[] latitudes;
+	private final double[] longitudes;
+
+	public Dataset(double[] latitudes, double[] longitudes) {
+		if (latitudes.length != longitudes.length) {
+			throw new IllegalArgumentException("latitudes.length != longitudes.length");
+		}
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+	}
+
+	public double getLatitude(int index) {
+		return latitudes[index];
+	}
+
+	public double getLongitude(int index) {
+		return longitudes[index];
+	}
+
+	public double[] getLatitudes() {
+		return latitudes;
+	}
+
+	public double[] getLongitudes() {
+		return longitudes;
+	}
+
+	public int size() {
+		return latitudes.length;
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.datasets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates points within bounds, always the same for given seed, bounds and parameters. Every method starts from the seed, so results do not
+ * depend on what was generated before.
+ * 
+ * Points are spread evenly in degrees, not in area, which is close enough for bounds of a country size.
+ */
+public class DatasetGenerator {
+
+	public enum Distribution {
+		/**
+		 * @see DatasetGenerator#uniform(int)
+		 */
+		UNIFORM,
+		/**
+		 * @see DatasetGenerator#hotspots(int, int, double)
+		 */
+		HOTSPOTS,
+		/**
+		 * @see DatasetGenerator#roads(int, int)
+		 */
+		ROADS,
+		/**
+		 * @see DatasetGenerator#cities(int, int)
+		 */
+		CITIES
+	}
+
+	public static final long DEFAULT_SEED = 42L;
+
+	private static final int DEFAULT_HOTSPOT_COUNT = 20;
+	private static final double DEFAULT_HOTSPOT_RADIUS = 0.02;
+	private static final int DEFAULT_ROAD_COUNT = 30;
+	private static final int DEFAULT_CITY_COUNT = 200;
+
+	private static final int ROAD_SEGMENTS = 40;
+	// radians by which road heading changes between segments, standard deviation
+	private static final double ROAD_TURN = 0.3;
+
+	private static final double RURAL_FRACTION = 0.1;
+	private static final double CITY_ROAD_FRACTION = 0.15;
+
+	private static final int MAX_ATTEMPTS = 16;
+
+	private long seed = DEFAULT_SEED;
+	// Poland, like markers in the demo
+	private double south = 49.0;
+	private double west = 14.0;
+	private double north = 55.0;
+	private double east = 24.0;
+
+	public DatasetGenerator seed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             when bounds are empty, cross the antimeridian or exceed valid latitudes
+	 */
+	public DatasetGenerator bounds(double south, double west, double north, double east) {
+		if (!(south < north) || !(west < east) || south < -90.0 || north > 90.0 || west < -180.0 || east > 180.0) {
+			throw new IllegalArgumentException("Invalid bounds: " + south + ", " + west + ", " + north + ", " + east);
+		}
+		this.south = south;
+		this.west = west;
+		this.north = north;
+		this.east = east;
+		return this;
+	}
+
+	/**
+	 * Uses default parameters for given distribution, which give visibly different results for bounds of a country size.
+	 */
+	public Dataset generate(Distribution distribution, int count) {
+		switch (distribution) {
+			case UNIFORM:
+				return uniform(count);
+			case HOTSPOTS:
+				return hotspots(count, DEFAULT_HOTSPOT_COUNT, DEFAULT_HOTSPOT_RADIUS * getSpan());
+			case ROADS:
+				return roads(count, DEFAULT_ROAD_COUNT);
+			default:
+				return cities(count, DEFAULT_CITY_COUNT);
+		}
+	}
+
+	public Dataset uniform(int count) {
+		Random random = new Random(seed);
+		Dataset dataset = createDataset(count);
+		for (int i = 0; i < count; i++) {
+			setUniform(random, dataset, i);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Points normally distributed around equally popular, uniformly placed centers.
+	 * 
+	 * @param radius
+	 *            standard deviation of distance from center in degrees of latitude
+	 */
+	public Dataset hotspots(int count, int hotspotCount, double radius) {
+		if (hotspotCount <= 0) {
+			throw new IllegalArgumentException("hotspotCount <= 0");
+		}
+		Random random = new Random(seed);
+		Dataset centers = createDataset(hotspotCount);
+		for (int i = 0; i < hotspotCount; i++) {
+			setUniform(random, centers, i);
+		}
+		Dataset dataset = createDataset(count);
+		for (int i = 0; i < count; i++) {
+			int hotspot = random.nextInt(hotspotCount);
+			setGaussian(random, dataset, i, centers.getLatitude(hotspot), centers.getLongitude(hotspot), radius);
+		}
+		return dataset;
+	}
+
+	/**
+	 * Points close to winding roads starting at random places within bounds, equally likely anywhere along any road.
+	 */
+	public Dataset roads(int count, int roadCount) {
+		if (roadCount <= 0) {
+			throw new IllegalArgumentException("roadCount <= 0");
+		}
+		Random random = new Random(seed);
+		Roads roads = new Roads();
+		double segmentLength = getSpan() / ROAD_SEGMENTS;
+		for (int i = 0; i < roadCount; i++) {
+			roads.add(createWindingRoad(random, segmentLength));
+		}
+		Dataset dataset = createDataset(count);
+		for (int i = 0; i < count; i++) {
+			roads.setPointNear(random, dataset, i, getRoadWidth());
+		}
+		return dataset;
+	}
+
+	/**
+	 * Mix resembling real places of interest: cities with population following Zipf's law, each spread wider the bigger it is, roads connecting
+	 * every city to the nearest bigger one and some countryside in between.
+	 */
+	public Dataset cities(int count, int cityCount) {
+		if (cityCount <= 0) {
+			throw new IllegalArgumentException("cityCount <= 0");
+		}
+		Random random = new Random(seed);
+		Dataset centers = createDataset(cityCount);
+		// cumulative populations, city of rank n has 1/n of population of the biggest one
+		double[] populations = new double[cityCount];
+		double[] radii = new double[cityCount];
+		double biggestCityRadius = getSpan() / 50.0;
+		for (int i = 0; i < cityCount; i++) {
+			setUniform(random, centers, i);
+			double population = 1.0 / (i + 1);
+			populations[i] = (i > 0 ? populations[i - 1] : 0.0) + population;
+			radii[i] = biggestCityRadius * Math.sqrt(population);
+		}
+		Roads roads = new Roads();
+		for (int i = 1; i < cityCount; i++) {
+			int nearest = findNearest(centers, i);
+			roads.add(new double[] { centers.getLatitude(i), centers.getLatitude(nearest) },
+					new double[] { centers.getLongitude(i), centers.getLongitude(nearest) });
+		}
+		Dataset dataset = createDataset(count);
+		for (int i = 0; i < count; i++) {
+			double kind = random.nextDouble();
+			if (kind < RURAL_FRACTION) {
+				setUniform(random, dataset, i);
+			} else if (kind < RURAL_FRACTION + CITY_ROAD_FRACTION && !roads.isEmpty()) {
+				roads.setPointNear(random, dataset, i, getRoadWidth());
+			} else {
+				int city = pick(populations, cityCount, random.nextDouble() * populations[cityCount - 1]);
+				setGaussian(random, dataset, i, centers.getLatitude(city), centers.getLongitude(city), radii[city]);
+			}
+		}
+		return dataset;
+	}
+
+	/**
+	 * @return nearest of cities bigger than given one
+	 */
+	private static int findNearest(Dataset centers, int city) {
+		int nearest = 0;
+		double nearestDistance = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < city; i++) {
+			double dLat = centers.getLatitude(i) - centers.getLatitude(city);
+			double dLng = centers.getLongitude(i) - centers.getLongitude(city);
+			double distance = dLat * dLat + dLng * dLng;
+			if (distance < nearestDistance) {
+				nearest = i;
+				nearestDistance = distance;
+			}
+		}
+		return nearest;
+	}
+
+	private double[][] createWindingRoad(Random random, double segmentLength) {
+		double latitude = south + random.nextDouble() * (north - south);
+		double longitude = west + random.nextDouble() * (east - west);
+		double heading = random.nextDouble() * 2.0 * Math.PI;
+		double[] latitudes = new double[ROAD_SEGMENTS + 1];
+		double[] longitudes = new double[ROAD_SEGMENTS + 1];
+		latitudes[0] = latitude;
+		longitudes[0] = longitude;
+		int vertices = 1;
+		while (vertices <= ROAD_SEGMENTS) {
+			heading += random.nextGaussian() * ROAD_TURN;
+			latitude += Math.cos(heading) * segmentLength;
+			longitude += Math.sin(heading) * segmentLength / Math.cos(Math.toRadians(latitude));
+			if (!contains(latitude, longitude)) {
+				break;
+			}
+			latitudes[vertices] = latitude;
+			longitudes[vertices] = longitude;
+			vertices++;
+		}
+		return new double[][] { Arrays.copyOf(latitudes, vertices), Arrays.copyOf(longitudes, vertices) };
+	}
+
+	private Dataset createDataset(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count < 0");
+		}
+		return new Dataset(new double[count], new double[count]);
+	}
+
+	private void setUniform(Random random, Dataset dataset, int index) {
+		dataset.getLatitudes()[index] = south + random.nextDouble() * (north - south);
+		dataset.getLongitudes()[index] = west + random.nextDouble() * (east - west);
+	}
+
+	/**
+	 * Points falling outside bounds are drawn again, so distributions near the edges are cut rather than piled up on them.
+	 */
+	private void setGaussian(Random random, Dataset dataset, int index, double latitude, double longitude, double radius) {
+		double longitudeRadius = radius / Math.max(Math.cos(Math.toRadians(latitude)), 0.01);
+		double pointLatitude = latitude;
+		double pointLongitude = longitude;
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			pointLatitude = latitude + random.nextGaussian() * radius;
+			pointLongitude = longitude + random.nextGaussian() * longitudeRadius;
+			if (contains(pointLatitude, pointLongitude)) {
+				break;
+			}
+		}
+		dataset.getLatitudes()[index] = clamp(pointLatitude, south, north);
+		dataset.getLongitudes()[index] = clamp(pointLongitude, west, east);
+	}
+
+	private boolean contains(double latitude, double longitude) {
+		return south <= latitude && latitude <= north && west <= longitude && longitude <= east;
+	}
+
+	private double getSpan() {
+		return Math.min(north - south, east - west);
+	}
+
+	private double getRoadWidth() {
+		return getSpan() / 2000.0;
+	}
+
+	private static double clamp(double value, double min, double max) {
+		return Math.max(min, Math.min(value, max));
+	}
+
+	/**
+	 * @return index of first cumulative weight greater than value
+	 */
+	private static int pick(double[] cumulativeWeights, int count, double value) {
+		int index = Arrays.binarySearch(cumulativeWeights, 0, count, value);
+		index = index >= 0 ? index + 1 : -index - 1;
+		return Math.min(index, count - 1);
+	}
+
+	/**
+	 * Polylines with points picked proportionally to their length.
+	 */
+	private class Roads {
+
+		private final List<double[]> latitudes = new ArrayList<double[]>();
+		private final List<double[]> longitudes = new ArrayList<double[]>();
+		// cumulative lengths of all segments of all roads, in degrees
+		private double[] lengths = new double[16];
+		private int[] segmentRoads = new int[16];
+		private int[] segmentStarts = new int[16];
+		private int segmentCount;
+
+		void add(double[][] road) {
+			add(road[0], road[1]);
+		}
+
+		void add(double[] roadLatitudes, double[] roadLongitudes) {
+			int road = latitudes.size();
+			latitudes.add(roadLatitudes);
+			longitudes.add(roadLongitudes);
+			for (int i = 1; i < roadLatitudes.length; i++) {
+				double dLat = roadLatitudes[i] - roadLatitudes[i - 1];
+				double dLng = roadLongitudes[i] - roadLongitudes[i - 1];
+				double length = Math.sqrt(dLat * dLat + dLng * dLng);
+				if (length == 0.0) {
+					continue;
+				}
+				if (segmentCount == lengths.length) {
+					lengths = Arrays.copyOf(lengths, segmentCount * 2);
+					segmentRoads = Arrays.copyOf(segmentRoads, segmentCount * 2);
+					segmentStarts = Arrays.copyOf(segmentStarts, segmentCount * 2);
+				}
+				lengths[segmentCount] = (segmentCount > 0 ? lengths[segmentCount - 1] : 0.0) + length;
+				segmentRoads[segmentCount] = road;
+				segmentStarts[segmentCount] = i - 1;
+				segmentCount++;
+			}
+		}
+
+		boolean isEmpty() {
+			return segmentCount == 0;
+		}
+
+		void setPointNear(Random random, Dataset dataset, int index, double width) {
+			if (isEmpty()) {
+				// every road left bounds right away
+				setUniform(random, dataset, index);
+				return;
+			}
+			int segment = pick(lengths, segmentCount, random.nextDouble() * lengths[segmentCount - 1]);
+			double[] roadLatitudes = latitudes.get(segmentRoads[segment]);
+			double[] roadLongitudes = longitudes.get(segmentRoads[segment]);
+			int start = segmentStarts[segment];
+			double t = random.nextDouble();
+			double latitude = roadLatitudes[start] + t * (roadLatitudes[start + 1] - roadLatitudes[start]);
+			double longitude = roadLongitudes[start] + t * (roadLongitudes[start + 1] - roadLongitudes[start]);
+			setGaussian(random, dataset, index, latitude, longitude, width);
+		}
+	}
+}
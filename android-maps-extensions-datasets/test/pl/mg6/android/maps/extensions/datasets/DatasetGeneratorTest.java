@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.datasets;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import pl.mg6.android.maps.extensions.datasets.DatasetGenerator.Distribution;
+
+public class DatasetGeneratorTest {
+
+	private static final int COUNT = 10000;
+	private static final int GRID_CELLS_PER_SIDE = 50;
+
+	@Test
+	public void whenSameSeedShouldGenerateSameDataset() {
+
+		for (Distribution distribution : Distribution.values()) {
+			Dataset first = new DatasetGenerator().seed(7L).generate(distribution, COUNT);
+			Dataset second = new DatasetGenerator().seed(7L).generate(distribution, COUNT);
+
+			Assert.assertTrue(distribution.name(), Arrays.equals(first.getLatitudes(), second.getLatitudes()));
+			Assert.assertTrue(distribution.name(), Arrays.equals(first.getLongitudes(), second.getLongitudes()));
+		}
+	}
+
+	@Test
+	public void whenDifferentSeedShouldGenerateDifferentDataset() {
+
+		for (Distribution distribution : Distribution.values()) {
+			Dataset first = new DatasetGenerator().seed(7L).generate(distribution, COUNT);
+			Dataset second = new DatasetGenerator().seed(8L).generate(distribution, COUNT);
+
+			Assert.assertFalse(distribution.name(), Arrays.equals(first.getLatitudes(), second.getLatitudes()));
+		}
+	}
+
+	@Test
+	public void whenGeneratedShouldKeepPointsWithinBounds() {
+
+		DatasetGenerator generator = new DatasetGenerator().bounds(-10.0, 170.0, 10.0, 180.0);
+		for (Distribution distribution : Distribution.values()) {
+			Dataset dataset = generator.generate(distribution, COUNT);
+
+			Assert.assertEquals(COUNT, dataset.size());
+			for (int i = 0; i < dataset.size(); i++) {
+				Assert.assertTrue(distribution.name(), -10.0 <= dataset.getLatitude(i) && dataset.getLatitude(i) <= 10.0);
+				Assert.assertTrue(distribution.name(), 170.0 <= dataset.getLongitude(i) && dataset.getLongitude(i) <= 180.0);
+			}
+		}
+	}
+
+	@Test
+	public void whenNotUniformShouldLeaveMostOfAreaEmpty() {
+
+		DatasetGenerator generator = new DatasetGenerator();
+		int uniformCells = countOccupiedCells(generator.uniform(COUNT));
+
+		// with 4 points per cell on average only about 2% of cells are empty
+		Assert.assertTrue(uniformCells > GRID_CELLS_PER_SIDE * GRID_CELLS_PER_SIDE * 95 / 100);
+		Assert.assertTrue(countOccupiedCells(generator.generate(Distribution.HOTSPOTS, COUNT)) < uniformCells / 2);
+		Assert.assertTrue(countOccupiedCells(generator.generate(Distribution.ROADS, COUNT)) < uniformCells / 2);
+		Assert.assertTrue(countOccupiedCells(generator.generate(Distribution.CITIES, COUNT)) < uniformCells * 2 / 3);
+	}
+
+	@Test
+	public void whenCitiesShouldMakeBiggestCityMostCrowded() {
+
+		Dataset dataset = new DatasetGenerator().cities(COUNT, 100);
+
+		int[] counts = countPerCell(dataset);
+		Arrays.sort(counts);
+		// biggest city gets about 1/5 of points, spread over a few cells, while uniform distribution puts 4 points in each
+		Assert.assertTrue(counts[counts.length - 1] > 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenBoundsCrossAntimeridianShouldThrowException() {
+
+		new DatasetGenerator().bounds(-10.0, 170.0, 10.0, -170.0);
+	}
+
+	private static int countOccupiedCells(Dataset dataset) {
+		Set<Integer> cells = new HashSet<Integer>();
+		for (int cell : cellsOf(dataset)) {
+			cells.add(cell);
+		}
+		return cells.size();
+	}
+
+	private static int[] countPerCell(Dataset dataset) {
+		int[] counts = new int[GRID_CELLS_PER_SIDE * GRID_CELLS_PER_SIDE];
+		for (int cell : cellsOf(dataset)) {
+			counts[cell]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Cells of a grid over default bounds.
+	 */
+	private static int[] cellsOf(Dataset dataset) {
+		int[] cells = new int[dataset.size()];
+		for (int i = 0; i < dataset.size(); i++) {
+			int row = Math.min((int) ((dataset.getLatitude(i) - 49.0) / 6.0 * GRID_CELLS_PER_SIDE), GRID_CELLS_PER_SIDE - 1);
+			int column = Math.min((int) ((dataset.getLongitude(i) - 14.0) / 10.0 * GRID_CELLS_PER_SIDE), GRID_CELLS_PER_SIDE - 1);
+			cells[i] = row * GRID_CELLS_PER_SIDE + column;
+		}
+		return cells;
+	}
+}
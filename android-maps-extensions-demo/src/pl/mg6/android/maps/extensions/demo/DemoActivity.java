@@ -97,7 +97,7 @@ public class DemoActivity extends FragmentActivity {
 			}
 		});
 
-		map.setClustering(new ClusteringSettings().iconDataProvider(new DemoIconProvider(getResources())).addMarkersDynamically(true));
+		map.setClustering(new ClusteringSettings().iconDataProvider(new DemoIconProvider(getResources())).iconWarmUp(2, 100).addMarkersDynamically(true));
 
 		map.setInfoWindowAdapter(new InfoWindowAdapter() {
 
@@ -25,7 +25,6 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Rect;
-import android.support.v4.util.LruCache;
 
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.BitmapDescriptorFactory;
@@ -37,19 +36,13 @@ public class DemoIconProvider implements IconDataProvider {
 
 	private static final int[] forCounts = { 10, 100, 1000, 10000, Integer.MAX_VALUE };
 
+	private Resources resources;
 	private Bitmap[] baseBitmaps;
-	private LruCache<Integer, BitmapDescriptor> cache = new LruCache<Integer, BitmapDescriptor>(128);
 
 	private Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
-	private Rect bounds = new Rect();
-
-	private MarkerOptions markerOptions = new MarkerOptions().anchor(0.5f, 0.5f);
 
 	public DemoIconProvider(Resources resources) {
-		baseBitmaps = new Bitmap[res.length];
-		for (int i = 0; i < res.length; i++) {
-			baseBitmaps[i] = BitmapFactory.decodeResource(resources, res[i]);
-		}
+		this.resources = resources;
 		paint.setColor(Color.WHITE);
 		paint.setTextAlign(Align.CENTER);
 		paint.setTextSize(resources.getDimension(R.dimen.text_size));
@@ -57,31 +50,40 @@ public class DemoIconProvider implements IconDataProvider {
 
 	@Override
 	public MarkerOptions getIconData(int markersCount) {
-
-		BitmapDescriptor cachedIcon = cache.get(markersCount);
-		if (cachedIcon != null) {
-			return markerOptions.icon(cachedIcon);
-		}
-
+		// icons are cached by library, see ClusteringSettings.iconCacheSize
+		// with ClusteringSettings.iconWarmUp this is also called from a background thread, so nothing mutable is shared between calls
+		Bitmap[] bitmaps = getBaseBitmaps();
 		Bitmap base;
 		int i = 0;
 		do {
-			base = baseBitmaps[i];
+			base = bitmaps[i];
 		} while (markersCount >= forCounts[i++]);
 
 		Bitmap bitmap = base.copy(Config.ARGB_8888, true);
 
 		String text = String.valueOf(markersCount);
-		paint.getTextBounds(text, 0, text.length(), bounds);
+		Paint textPaint = new Paint(paint);
+		Rect bounds = new Rect();
+		textPaint.getTextBounds(text, 0, text.length(), bounds);
 		float x = bitmap.getWidth() / 2.0f;
 		float y = (bitmap.getHeight() - bounds.height()) / 2.0f - bounds.top;
 
 		Canvas canvas = new Canvas(bitmap);
-		canvas.drawText(text, x, y, paint);
+		canvas.drawText(text, x, y, textPaint);
 
 		BitmapDescriptor icon = BitmapDescriptorFactory.fromBitmap(bitmap);
-		cache.put(markersCount, icon);
 
-		return markerOptions.icon(icon);
+		return new MarkerOptions().icon(icon).anchor(0.5f, 0.5f);
+	}
+
+	private synchronized Bitmap[] getBaseBitmaps() {
+		if (baseBitmaps == null) {
+			// decoded lazily, so that it happens in background when using ClusteringSettings.iconWarmUp
+			baseBitmaps = new Bitmap[res.length];
+			for (int i = 0; i < res.length; i++) {
+				baseBitmaps[i] = BitmapFactory.decodeResource(resources, res[i]);
+			}
+		}
+		return baseBitmaps;
 	}
 }
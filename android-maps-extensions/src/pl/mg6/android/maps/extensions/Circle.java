@@ -17,7 +17,7 @@ package pl.mg6.android.maps.extensions;
 
 import com.google.android.gms.maps.model.LatLng;
 
-public interface Circle {
+public interface Circle extends Shape {
 
 	boolean contains(LatLng position);
 
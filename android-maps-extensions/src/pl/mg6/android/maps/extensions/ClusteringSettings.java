@@ -15,23 +15,75 @@
  */
 package pl.mg6.android.maps.extensions;
 
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+
 import com.google.android.gms.maps.model.MarkerOptions;
 
 public class ClusteringSettings {
 
 	private boolean addMarkersDynamically = false;
 
+	private CenterPolicy centerPolicy = CenterPolicy.BOUNDS_CENTER;
+
+	private int[] clusterCountBuckets = null;
+
 	private double clusterSize = 180.0;
 
 	private boolean enabled = true;
 
+	private int iconCacheSize = 128;
+
 	private IconDataProvider iconDataProvider = null;
 
+	private int iconWarmUpMinCount = 0;
+
+	private int iconWarmUpMaxCount = 0;
+
+	private TileIconProvider tileIconProvider = null;
+
+	private int tileSize = 512;
+
+	private WeightProvider weightProvider = null;
+
 	public ClusteringSettings addMarkersDynamically(boolean addMarkersDynamically) {
 		this.addMarkersDynamically = addMarkersDynamically;
 		return this;
 	}
 
+	/**
+	 * @param centerPolicy
+	 *            how position of cluster marker is calculated from positions of markers it contains
+	 */
+	public ClusteringSettings centerPolicy(CenterPolicy centerPolicy) {
+		if (centerPolicy == null) {
+			throw new NullPointerException();
+		}
+		this.centerPolicy = centerPolicy;
+		return this;
+	}
+
+	/**
+	 * Groups clusters by number of markers, so that clusters whose count changes within one bucket keep their icon. For buckets { 10, 50, 100 } a
+	 * cluster of 57 markers uses icon data provided for 50 markers and clusters of less than 10 markers use icon data for their exact count.
+	 * 
+	 * @param clusterCountBuckets
+	 *            lower bounds of buckets in ascending order or null to disable bucketing
+	 */
+	public ClusteringSettings clusterCountBuckets(int... clusterCountBuckets) {
+		if (clusterCountBuckets != null) {
+			for (int i = 0; i < clusterCountBuckets.length; i++) {
+				if (clusterCountBuckets[i] < 2 || (i > 0 && clusterCountBuckets[i] <= clusterCountBuckets[i - 1])) {
+					throw new IllegalArgumentException();
+				}
+			}
+			clusterCountBuckets = clusterCountBuckets.clone();
+		}
+		this.clusterCountBuckets = clusterCountBuckets;
+		return this;
+	}
+
 	/**
 	 * Consider using value of 180, 160, 144, 120 or 96 for 8x8, 9x9, 10x10, 12x12 and 15x15 grids respectively on zoom level 2.
 	 * 
@@ -48,19 +100,93 @@ public class ClusteringSettings {
 		return this;
 	}
 
+	public CenterPolicy getCenterPolicy() {
+		return centerPolicy;
+	}
+
+	public int[] getClusterCountBuckets() {
+		return clusterCountBuckets;
+	}
+
 	public double getClusterSize() {
 		return clusterSize;
 	}
 
+	public int getIconCacheSize() {
+		return iconCacheSize;
+	}
+
 	public IconDataProvider getIconDataProvider() {
 		return iconDataProvider;
 	}
 
+	public int getIconWarmUpMaxCount() {
+		return iconWarmUpMaxCount;
+	}
+
+	public int getIconWarmUpMinCount() {
+		return iconWarmUpMinCount;
+	}
+
+	/**
+	 * @param iconCacheSize
+	 *            maximum number of icons kept by the library, 0 to call {@link IconDataProvider} every time an icon is needed; must be positive
+	 *            with {@link AsyncIconDataProvider}, because icons rendered in background are only shown from the cache
+	 */
+	public ClusteringSettings iconCacheSize(int iconCacheSize) {
+		if (iconCacheSize < 0) {
+			throw new IllegalArgumentException();
+		}
+		if (iconCacheSize == 0 && iconDataProvider instanceof AsyncIconDataProvider) {
+			throw new IllegalArgumentException();
+		}
+		this.iconCacheSize = iconCacheSize;
+		return this;
+	}
+
 	public ClusteringSettings iconDataProvider(IconDataProvider iconDataProvider) {
+		if (iconCacheSize == 0 && iconDataProvider instanceof AsyncIconDataProvider) {
+			throw new IllegalArgumentException();
+		}
 		this.iconDataProvider = iconDataProvider;
 		return this;
 	}
 
+	/**
+	 * Renders icons for clusters of given sizes on a background thread as soon as clustering is set, so that they are cached before first clusters
+	 * are displayed. Call {@link GoogleMap#setClustering(ClusteringSettings)} before adding markers to benefit from it. With
+	 * {@link #clusterCountBuckets(int...)} only one icon per bucket is rendered. Number of rendered icons is limited by
+	 * {@link #iconCacheSize(int)}.
+	 * 
+	 * Note that {@link IconDataProvider#getIconData(int)} will then also be called from a background thread, possibly at the same time as from the
+	 * main thread, so it must be thread-safe.
+	 * 
+	 * @param minCount
+	 *            smallest cluster size to render icon for
+	 * @param maxCount
+	 *            largest cluster size to render icon for
+	 */
+	public ClusteringSettings iconWarmUp(int minCount, int maxCount) {
+		if (minCount > maxCount) {
+			throw new IllegalArgumentException();
+		}
+		this.iconWarmUpMinCount = minCount;
+		this.iconWarmUpMaxCount = maxCount;
+		return this;
+	}
+
+	public TileIconProvider getTileIconProvider() {
+		return tileIconProvider;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public WeightProvider getWeightProvider() {
+		return weightProvider;
+	}
+
 	public boolean isAddMarkersDynamically() {
 		return addMarkersDynamically;
 	}
@@ -69,6 +195,42 @@ public class ClusteringSettings {
 		return enabled;
 	}
 
+	/**
+	 * Draws markers into tiles of a tile overlay instead of adding them to the map, which stays fast with many more markers. Markers are not
+	 * clustered in this mode. Only markers for which provider returns no icon and markers showing info window are added to the map, so only they
+	 * can be clicked, other markers can be found with e.g. {@link GoogleMap#getMarkersWithinRadius(com.google.android.gms.maps.model.LatLng, double)}
+	 * when the map is clicked.
+	 * 
+	 * @param tileIconProvider
+	 *            icons to draw or null to disable drawing into tiles
+	 */
+	public ClusteringSettings renderMarkersAsTiles(TileIconProvider tileIconProvider) {
+		this.tileIconProvider = tileIconProvider;
+		return this;
+	}
+
+	/**
+	 * @param tileSize
+	 *            size in pixels of tiles markers are drawn into, each tile is displayed as 256 dp square, so icons drawn into default tiles of 512
+	 *            pixels appear half of their size on xhdpi screens
+	 */
+	public ClusteringSettings tileSize(int tileSize) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.tileSize = tileSize;
+		return this;
+	}
+
+	/**
+	 * @param weightProvider
+	 *            weights used by {@link CenterPolicy#WEIGHTED_MEAN}, each marker has weight of 1 when not set
+	 */
+	public ClusteringSettings weightProvider(WeightProvider weightProvider) {
+		this.weightProvider = weightProvider;
+		return this;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -84,12 +246,33 @@ public class ClusteringSettings {
 		if (addMarkersDynamically != other.addMarkersDynamically) {
 			return false;
 		}
+		if (tileIconProvider == null ? other.tileIconProvider != null : !tileIconProvider.equals(other.tileIconProvider)) {
+			return false;
+		}
+		if (tileIconProvider != null && tileSize != other.tileSize) {
+			return false;
+		}
 		if (enabled == false && other.enabled == false) {
 			return true;
 		}
 		if (clusterSize != other.clusterSize) {
 			return false;
 		}
+		if (!Arrays.equals(clusterCountBuckets, other.clusterCountBuckets)) {
+			return false;
+		}
+		if (iconCacheSize != other.iconCacheSize) {
+			return false;
+		}
+		if (iconWarmUpMinCount != other.iconWarmUpMinCount || iconWarmUpMaxCount != other.iconWarmUpMaxCount) {
+			return false;
+		}
+		if (centerPolicy != other.centerPolicy) {
+			return false;
+		}
+		if (weightProvider == null ? other.weightProvider != null : !weightProvider.equals(other.weightProvider)) {
+			return false;
+		}
 		return iconDataProvider.equals(other.iconDataProvider);
 	}
 
@@ -103,4 +286,57 @@ public class ClusteringSettings {
 
 		MarkerOptions getIconData(int markersCount);
 	}
+
+	/**
+	 * Provider of icons which are too expensive to be rendered on the main thread. {@link #getIconData(int)} is called on a background thread and
+	 * the icon replaces placeholder on cluster markers as soon as it is ready. Icons are rendered one at a time on a single thread, so
+	 * {@link #getIconData(int)} is never called concurrently, but it may run at the same time as {@link #getPlaceholderIconData(int)} and must not
+	 * share unsynchronized state with it. Returned {@link MarkerOptions} is copied, so it may be reused between calls.
+	 */
+	public interface AsyncIconDataProvider extends IconDataProvider {
+
+		/**
+		 * Called on the main thread whenever icon for given count is not ready yet. Should return quickly, e.g. precomputed icon.
+		 */
+		MarkerOptions getPlaceholderIconData(int markersCount);
+	}
+
+	public interface TileIconProvider {
+
+		/**
+		 * Called on the main thread when marker becomes visible. Returned icon is drawn centered at marker position on background threads, so it
+		 * should not be modified or recycled later.
+		 * 
+		 * @return icon or null to add marker to the map instead
+		 */
+		Bitmap getTileIcon(Marker marker);
+	}
+
+	public enum CenterPolicy {
+
+		/**
+		 * Center of the smallest bounds containing all markers.
+		 */
+		BOUNDS_CENTER,
+
+		/**
+		 * Average position of all markers.
+		 */
+		MEAN,
+
+		/**
+		 * Average position of all markers weighted by {@link WeightProvider}.
+		 */
+		WEIGHTED_MEAN
+	}
+
+	public interface WeightProvider {
+
+		/**
+		 * Called when marker is added to a cluster.
+		 * 
+		 * @return positive weight of the marker
+		 */
+		double getWeight(Marker marker);
+	}
 }
@@ -29,6 +29,7 @@ import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.CircleOptions;
 import com.google.android.gms.maps.model.GroundOverlayOptions;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.PolylineOptions;
@@ -52,6 +53,25 @@ public interface GoogleMap {
 
 	Polyline addPolyline(PolylineOptions polylineOptions);
 
+	/**
+	 * Same as {@link #addPolyline(String, double, PolylineOptions)} with zero tolerance.
+	 */
+	Polyline addPolyline(String encodedPath, PolylineOptions polylineOptions);
+
+	/**
+	 * Adds polyline with points decoded from encoded polyline algorithm format, as returned by Directions API. Decoding does not create intermediate
+	 * objects other than points added to polyline.
+	 * 
+	 * @param encodedPath
+	 * @param tolerance
+	 *            in meters; points closer than that to previous point are skipped
+	 * @param polylineOptions
+	 *            style of polyline, points are ignored and options are not modified
+	 * @throws IllegalArgumentException
+	 *             when encoded path is malformed
+	 */
+	Polyline addPolyline(String encodedPath, double tolerance, PolylineOptions polylineOptions);
+
 	TileOverlay addTileOverlay(TileOverlayOptions tileOverlayOptions);
 
 	void animateCamera(CameraUpdate cameraUpdate, CancelableCallback cancelableCallback);
@@ -62,12 +82,24 @@ public interface GoogleMap {
 
 	void clear();
 
+	/**
+	 * Get shapes user clicked on, e.g. when handling {@link OnMapClickListener#onMapClick(LatLng)}. Polygon or circle is found when position is inside it,
+	 * polyline when position is on it. Geodesic shapes are treated as having straight edges on the map.
+	 * 
+	 * @param position
+	 * @param tolerance
+	 *            maximum distance from edge in pixels, increased by half of stroke width
+	 * @return new list of visible {@link Polygon}s, {@link Polyline}s and {@link Circle}s, highest z-index first
+	 */
+	List<Shape> findShapesAt(LatLng position, float tolerance);
+
 	CameraPosition getCameraPosition();
 
 	/**
 	 * Get a list of markers that could be clicked by user. This is a mix of normal (only visible) and cluster markers.
 	 * 
-	 * @return list of markers that are displayed at current zoom level
+	 * @return live read-only view of markers that are displayed at current zoom level
+	 * @see #setOnDisplayedMarkersChangeListener(OnDisplayedMarkersChangeListener)
 	 */
 	List<Marker> getDisplayedMarkers();
 
@@ -75,19 +107,67 @@ public interface GoogleMap {
 
 	/**
 	 * WARNING: may be changed in future API when this is fixed: http://code.google.com/p/gmaps-api-issues/issues/detail?id=5106
+	 * 
+	 * @return live read-only view, same as in {@link #getMarkers()}
 	 */
 	List<Circle> getCircles();
 
+	/**
+	 * @return live read-only view, same as in {@link #getMarkers()}
+	 */
 	List<GroundOverlay> getGroundOverlays();
 
+	/**
+	 * Returned list is not a copy. It reflects markers added and removed later and throws UnsupportedOperationException when modified. Iterating over it
+	 * while markers are added or removed throws ConcurrentModificationException; use {@code get(int)} or copy it in such cases.
+	 * 
+	 * @return live read-only view of all markers in unspecified order
+	 */
 	List<Marker> getMarkers();
 
+	/**
+	 * Get markers with positions inside given bounds, regardless of their visibility. Bounds crossing 180th meridian are supported.
+	 * 
+	 * @param bounds
+	 * @return new list of markers in unspecified order
+	 */
+	List<Marker> getMarkers(LatLngBounds bounds);
+
+	/**
+	 * Get markers not further than given distance from center, regardless of their visibility.
+	 * 
+	 * @param center
+	 * @param radius
+	 *            in meters
+	 * @return new list of markers, closest first
+	 */
+	List<Marker> getMarkersWithinRadius(LatLng center, double radius);
+
 	Marker getMarkerShowingInfoWindow();
 
+	/**
+	 * Get markers closest to given position, regardless of their visibility. Distances are measured along great circle.
+	 * 
+	 * @param position
+	 * @param count
+	 *            maximum number of markers returned
+	 * @return new list of markers, closest first
+	 */
+	List<Marker> getNearestMarkers(LatLng position, int count);
+
+	/**
+	 * @return live read-only view, same as in {@link #getMarkers()}
+	 */
 	List<Polygon> getPolygons();
 
+	/**
+	 * @return live read-only view, same as in {@link #getMarkers()}
+	 */
 	List<Polyline> getPolylines();
 
+	/**
+	 * @return live read-only view, same as in {@link #getMarkers()}
+	 */
 	List<TileOverlay> getTileOverlays();
 
 	float getMaxZoomLevel();
@@ -110,6 +190,12 @@ public interface GoogleMap {
 
 	Location getMyLocation();
 
+	/**
+	 * @return calls to the underlying map made since counting was enabled, all zero when it is disabled
+	 * @see #setNativeCallCountingEnabled(boolean)
+	 */
+	NativeCallStats getNativeCallStats();
+
 	Projection getProjection();
 
 	UiSettings getUiSettings();
@@ -124,6 +210,17 @@ public interface GoogleMap {
 
 	void setClustering(ClusteringSettings clusteringSettings);
 
+	/**
+	 * When enabled, circles and ground overlays far from visible region are not added to the map until camera stops moving near them and are removed
+	 * from the map when camera stops far away. Useful with thousands of circles or ground overlays.
+	 * 
+	 * Ground overlays positioned with width only are never culled, because their height depends on image.
+	 * 
+	 * @param cullingEnabled
+	 *            false by default
+	 */
+	void setCullingEnabled(boolean cullingEnabled);
+
 	boolean setIndoorEnabled(boolean indoorEnabled);
 
 	void setInfoWindowAdapter(InfoWindowAdapter infoWindowAdapter);
@@ -132,10 +229,35 @@ public interface GoogleMap {
 
 	void setMapType(int mapType);
 
+	/**
+	 * Reports how long clustering, adding, removing and moving markers on the map and providing cluster icons take. Nothing is measured when not set.
+	 * 
+	 * @param metrics
+	 *            listener called on the thread doing the work, null to stop measuring
+	 */
+	void setMetrics(MapExtensionsMetrics metrics);
+
 	void setMyLocationEnabled(boolean myLocationEnabled);
 
+	/**
+	 * Counts and times calls made to the underlying map, including these made by the library, e.g. when clustering. Useful to check whether a change
+	 * reduces traffic to Google Play services.
+	 * 
+	 * @param nativeCallCountingEnabled
+	 *            false by default, enabling again resets {@link #getNativeCallStats()}
+	 */
+	void setNativeCallCountingEnabled(boolean nativeCallCountingEnabled);
+
 	void setOnCameraChangeListener(OnCameraChangeListener onCameraChangeListener);
 
+	/**
+	 * Listener is notified on the main thread with changes to {@link #getDisplayedMarkers()}. Changes made in a single pass of the main loop, like
+	 * reclustering after zoom, are delivered together.
+	 * 
+	 * @param listener
+	 */
+	void setOnDisplayedMarkersChangeListener(OnDisplayedMarkersChangeListener listener);
+
 	void setOnInfoWindowClickListener(OnInfoWindowClickListener onInfoWindowClickListener);
 
 	void setOnMapClickListener(OnMapClickListener onMapClickListener);
@@ -150,6 +272,14 @@ public interface GoogleMap {
 
 	void setOnMyLocationChangeListener(OnMyLocationChangeListener onMyLocationChangeListener);
 
+	/**
+	 * Marks operations listed in {@link MapExtensionsMetrics.Operation} as sections visible in systrace. Supported since API 18.
+	 * 
+	 * @param traceSectionsEnabled
+	 *            false by default
+	 */
+	void setTraceSectionsEnabled(boolean traceSectionsEnabled);
+
 	void setTrafficEnabled(boolean trafficEnabled);
 
 	void snapshot(SnapshotReadyCallback callback);
@@ -158,6 +288,14 @@ public interface GoogleMap {
 
 	void stopAnimation();
 
+	/**
+	 * Like {@link #getMarkers(LatLngBounds)}, but without creating a list of results. Markers must not be added, removed or moved from the visitor.
+	 * 
+	 * @param bounds
+	 * @param visitor
+	 */
+	void visitMarkers(LatLngBounds bounds, MarkerVisitor visitor);
+
 	interface CancelableCallback extends com.google.android.gms.maps.GoogleMap.CancelableCallback {
 
 		@Override
@@ -174,12 +312,28 @@ public interface GoogleMap {
 		View getInfoWindow(Marker marker);
 	}
 
+	interface MarkerVisitor {
+
+		void visit(Marker marker);
+	}
+
 	interface OnCameraChangeListener extends com.google.android.gms.maps.GoogleMap.OnCameraChangeListener {
 
 		@Override
 		void onCameraChange(CameraPosition cameraPosition);
 	}
 
+	interface OnDisplayedMarkersChangeListener {
+
+		/**
+		 * @param added
+		 *            markers that are now displayed
+		 * @param removed
+		 *            markers that are no longer displayed
+		 */
+		void onDisplayedMarkersChange(List<Marker> added, List<Marker> removed);
+	}
+
 	interface OnInfoWindowClickListener {
 
 		void onInfoWindowClick(Marker marker);
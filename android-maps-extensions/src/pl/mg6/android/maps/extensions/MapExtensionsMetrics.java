@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions;
+
+/**
+ * Receives timing of work done by the library, set with {@link GoogleMap#setMetrics(MapExtensionsMetrics)}. Called synchronously right after each
+ * operation, so implementations should only aggregate numbers, e.g. in counters or histograms, and report them elsewhere.
+ */
+public interface MapExtensionsMetrics {
+
+	enum Operation {
+		/**
+		 * Clustering of all markers after zoom level or clustering settings change, count is number of clustered markers.
+		 */
+		RECALCULATE,
+		/**
+		 * Part of {@link #RECALCULATE} after zooming in, count is number of clusters before split.
+		 */
+		SPLIT_CLUSTERS,
+		/**
+		 * Part of {@link #RECALCULATE} after zooming out, count is number of clusters before join.
+		 */
+		JOIN_CLUSTERS,
+		/**
+		 * Updating cluster markers on the map after clusters change, count is number of refreshed clusters.
+		 */
+		REFRESH_CLUSTERS,
+		/**
+		 * Adding marker or cluster marker to the map.
+		 */
+		CREATE_MARKER,
+		/**
+		 * Removing marker or cluster marker from the map.
+		 */
+		REMOVE_MARKER,
+		/**
+		 * Moving marker or cluster marker already added to the map.
+		 */
+		SET_MARKER_POSITION,
+		/**
+		 * Call to {@link ClusteringSettings.IconDataProvider} or {@link ClusteringSettings.TileIconProvider}. May be reported from background
+		 * threads, when cluster icons are rendered there.
+		 */
+		PROVIDE_ICON,
+	}
+
+	/**
+	 * @param operation
+	 *            what was done
+	 * @param count
+	 *            number of items processed, described for each {@link Operation}, 1 for single marker operations
+	 * @param durationNanos
+	 *            time spent, as measured by {@link System#nanoTime()}
+	 */
+	void onOperation(Operation operation, int count, long durationNanos);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions;
+
+import java.util.List;
+
+/**
+ * Counts and durations of calls made to the underlying {@link com.google.android.gms.maps.GoogleMap} and its projections, each of which goes
+ * through Google Play services. Calls are named after methods of the underlying map, e.g. "addMarker", "getCameraPosition" or "toScreenLocation".
+ * 
+ * Markers, circles and ground overlays are counted when they are really created on the underlying map, which may happen later than adding them with
+ * {@link GoogleMap}. Operations on objects already added to the map are not counted. Use {@link MapExtensionsMetrics} to measure these.
+ * 
+ * @see GoogleMap#setNativeCallCountingEnabled(boolean)
+ */
+public interface NativeCallStats {
+
+	/**
+	 * @return names of all counted calls, including these not made at all
+	 */
+	List<String> getCallNames();
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             when call is not one of {@link #getCallNames()}
+	 */
+	long getCount(String call);
+
+	/**
+	 * @return total time spent in given call in nanoseconds
+	 */
+	long getDurationNanos(String call);
+
+	/**
+	 * @return average number of calls per second over {@link #getPeriodNanos()}
+	 */
+	double getRate(String call);
+
+	long getTotalCount();
+
+	long getTotalDurationNanos();
+
+	double getTotalRate();
+
+	/**
+	 * @return time from enabling counting until these stats were taken in nanoseconds
+	 */
+	long getPeriodNanos();
+}
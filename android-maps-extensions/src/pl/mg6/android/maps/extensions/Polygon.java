@@ -19,7 +19,14 @@ import java.util.List;
 
 import com.google.android.gms.maps.model.LatLng;
 
-public interface Polygon {
+public interface Polygon extends Shape {
+
+	/**
+	 * Edges are treated as straight lines on the map, even when polygon is geodesic.
+	 * 
+	 * @return true if position is inside polygon and not inside any of its holes
+	 */
+	boolean contains(LatLng position);
 
 	Object getData();
 
@@ -38,12 +45,25 @@ public interface Polygon {
 
 	float getZIndex();
 
+	boolean isClipped();
+
 	boolean isGeodesic();
 
 	boolean isVisible();
 
 	void remove();
 
+	/**
+	 * Clipped polygon is drawn only inside visible part of the map with some margin and updated when camera stops moving. Useful for country-sized
+	 * polygons viewed closely.
+	 * 
+	 * {@link #getPoints()} and {@link #getHoles()} always return all points.
+	 * 
+	 * @param clipped
+	 *            false by default
+	 */
+	void setClipped(boolean clipped);
+
 	void setData(Object data);
 
 	void setFillColor(int fillColor);
@@ -19,7 +19,7 @@ import java.util.List;
 
 import com.google.android.gms.maps.model.LatLng;
 
-public interface Polyline {
+public interface Polyline extends Shape {
 
 	int getColor();
 
@@ -34,20 +34,56 @@ public interface Polyline {
 
 	float getZIndex();
 
+	boolean isClipped();
+
 	boolean isGeodesic();
 
+	boolean isSimplified();
+
 	boolean isVisible();
 
 	void remove();
 
+	/**
+	 * Clipped polyline is drawn only inside visible part of the map with some margin and updated when camera stops moving. Useful for long polylines
+	 * viewed closely. Works together with {@link #setSimplified(boolean)}.
+	 * 
+	 * {@link #getPoints()} always returns all points.
+	 * 
+	 * @param clipped
+	 *            false by default
+	 */
+	void setClipped(boolean clipped);
+
 	void setColor(int color);
 
 	void setData(Object data);
 
+	/**
+	 * Same as {@link #setEncodedPoints(String, double)} with zero tolerance.
+	 */
+	void setEncodedPoints(String encodedPath);
+
+	/**
+	 * @see GoogleMap#addPolyline(String, double, com.google.android.gms.maps.model.PolylineOptions)
+	 */
+	void setEncodedPoints(String encodedPath, double tolerance);
+
 	void setGeodesic(boolean geodesic);
 
 	void setPoints(List<LatLng> points);
 
+	/**
+	 * Simplified polyline is drawn with only these points, which make visible difference at current zoom level. Points are chosen using Douglas-Peucker
+	 * algorithm again when zoom level changes. Useful for polylines with thousands of points, like GPS tracks.
+	 * 
+	 * {@link #getPoints()} always returns all points.
+	 * 
+	 * @param simplified
+	 *            false by default
+	 */
+	void setSimplified(boolean simplified);
+
 	void setVisible(boolean visible);
 
 	void setWidth(float width);
@@ -15,42 +15,193 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.Circle;
+import pl.mg6.android.maps.extensions.Shape;
+import pl.mg6.android.maps.extensions.impl.RTree.Visitor;
+import pl.mg6.android.maps.extensions.lazy.LazyCircle;
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
 
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
 
 class CircleManager {
 
+	// fractions of visible size added on every side; circles are created inside smaller and released outside larger bounds
+	private static final double CREATE_MARGIN = 0.5;
+	private static final double RELEASE_MARGIN = 1.5;
+
 	private final IGoogleMap factory;
 
-	private final Map<com.google.android.gms.maps.model.Circle, Circle> circles;
+	private final Map<LazyCircle, DelegatingCircle> circles;
+	private final IndexedList<Circle> circlesList = new IndexedList<Circle>();
+	private final RTree<DelegatingCircle> index = new RTree<DelegatingCircle>();
+	// upper bound used to widen queries, never decreased
+	private float maxStrokeWidth;
+
+	private boolean cullingEnabled;
+	private MercatorBounds createBounds;
+	private final IndexedList<DelegatingCircle> createdCircles = new IndexedList<DelegatingCircle>();
 
 	public CircleManager(IGoogleMap factory) {
 		this.factory = factory;
-		this.circles = new HashMap<com.google.android.gms.maps.model.Circle, Circle>();
+		this.circles = new HashMap<LazyCircle, DelegatingCircle>();
 	}
 
 	public Circle addCircle(CircleOptions circleOptions) {
-		com.google.android.gms.maps.model.Circle real = factory.addCircle(circleOptions);
-		Circle circle = new DelegatingCircle(real, this);
+		LazyCircle real = new LazyCircle(factory, circleOptions);
+		DelegatingCircle circle = new DelegatingCircle(real, this);
 		circles.put(real, circle);
+		circlesList.addElement(circle);
+		onGeometryChange(circle);
+		onStrokeWidthChange(circleOptions.getStrokeWidth());
 		return circle;
 	}
 
 	public void clear() {
 		circles.clear();
+		circlesList.clearElements();
+		index.clear();
+		createdCircles.clearElements();
 	}
 
 	public List<Circle> getCircles() {
-		return new ArrayList<Circle>(circles.values());
+		return circlesList;
+	}
+
+	/**
+	 * Adds visible circles containing given point or having edge close enough to it.
+	 * 
+	 * @param tolerance
+	 *            in pixels, increased by half of stroke width
+	 * @param unitsPerPixel
+	 *            size of a pixel in units of {@link SphericalMercator}
+	 */
+	public void findCirclesAt(final LatLng position, final float tolerance, final double unitsPerPixel, final List<Shape> result) {
+		double x = SphericalMercator.scaleLongitude(position.longitude);
+		double y = SphericalMercator.scaleLatitude(position.latitude);
+		double margin = (tolerance + maxStrokeWidth / 2) * unitsPerPixel;
+		// mercator units are degrees of longitude at the equator, shrinking with cosine of latitude
+		final double metersPerUnit = Math.toRadians(LatLngUtils.EARTH_RADIUS) * Math.cos(Math.toRadians(position.latitude));
+		// shapes crossing the antimeridian may be visited at more than one shift
+		final Map<DelegatingCircle, Boolean> found = new IdentityHashMap<DelegatingCircle, Boolean>();
+		for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+			index.visit(x + shift - margin, y - margin, x + shift + margin, y + margin, new Visitor<DelegatingCircle>() {
+				@Override
+				public void visit(DelegatingCircle circle) {
+					if (!found.containsKey(circle) && circle.isVisible()) {
+						double circleTolerance = (tolerance + circle.getStrokeWidth() / 2) * unitsPerPixel * metersPerUnit;
+						double distance = LatLngUtils.distanceBetween(position, circle.getCenter());
+						if (distance <= circle.getRadius() + circleTolerance) {
+							result.add(circle);
+							found.put(circle, Boolean.TRUE);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * When enabled, real circles are created only near visible region and released when camera moves far away.
+	 */
+	public void setCullingEnabled(boolean cullingEnabled) {
+		this.cullingEnabled = cullingEnabled;
+		if (cullingEnabled) {
+			updateCulling();
+		} else {
+			createBounds = null;
+			for (int i = 0; i < circlesList.size(); i++) {
+				create((DelegatingCircle) circlesList.get(i));
+			}
+		}
+	}
+
+	public void onCameraChange(CameraPosition cameraPosition) {
+		if (cullingEnabled) {
+			updateCulling();
+		}
+	}
+
+	private void updateCulling() {
+		MercatorBounds visibleBounds = MercatorBounds.fromVisibleRegion(factory);
+		MercatorBounds releaseBounds = visibleBounds.expand(RELEASE_MARGIN);
+		for (int i = createdCircles.size() - 1; i >= 0; i--) {
+			DelegatingCircle circle = createdCircles.get(i);
+			MercatorBounds bounds = getBounds(circle);
+			if (bounds != null && !releaseBounds.intersects(bounds)) {
+				circle.getReal().release();
+				createdCircles.removeElement(circle);
+			}
+		}
+		createBounds = visibleBounds.expand(CREATE_MARGIN);
+		if (createBounds.coversAllLongitudes()) {
+			for (int i = 0; i < circlesList.size(); i++) {
+				create((DelegatingCircle) circlesList.get(i));
+			}
+		} else {
+			Visitor<DelegatingCircle> creator = new Visitor<DelegatingCircle>() {
+				@Override
+				public void visit(DelegatingCircle circle) {
+					create(circle);
+				}
+			};
+			for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+				index.visit(createBounds.getMinX() + shift, createBounds.getMinY(), createBounds.getMaxX() + shift, createBounds.getMaxY(), creator);
+			}
+		}
+	}
+
+	private void create(DelegatingCircle circle) {
+		circle.getReal().create();
+		createdCircles.addElement(circle);
+	}
+
+	/**
+	 * @return null if center is not set
+	 */
+	private static MercatorBounds getBounds(DelegatingCircle circle) {
+		LatLng center = circle.getCenter();
+		if (center == null) {
+			return null;
+		}
+		return MercatorBounds.around(center, circle.getRadius());
+	}
+
+	void onGeometryChange(DelegatingCircle circle) {
+		MercatorBounds bounds = getBounds(circle);
+		if (bounds == null) {
+			index.remove(circle);
+		} else {
+			index.add(circle, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+		}
+		if (!cullingEnabled || bounds == null || createBounds.intersects(bounds)) {
+			create(circle);
+		}
+	}
+
+	void onIdRequest(DelegatingCircle circle) {
+		if (!circle.getReal().isCreated() && circles.containsKey(circle.getReal())) {
+			create(circle);
+		}
+	}
+
+	void onStrokeWidthChange(float strokeWidth) {
+		maxStrokeWidth = Math.max(maxStrokeWidth, strokeWidth);
 	}
 
-	public void onRemove(com.google.android.gms.maps.model.Circle real) {
-		circles.remove(real);
+	public void onRemove(LazyCircle real) {
+		DelegatingCircle circle = circles.remove(real);
+		circlesList.removeElement(circle);
+		if (circle != null) {
+			index.remove(circle);
+			createdCircles.removeElement(circle);
+		}
 	}
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.AsyncIconDataProvider;
+import pl.mg6.android.maps.extensions.ClusteringSettings.IconDataProvider;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.maps.model.MarkerOptions;
+
+class ClusterIconCache {
+
+	interface OnIconDataReadyListener {
+
+		void onIconDataReady(int bucket, MarkerOptions iconData);
+	}
+
+	private final IconDataProvider iconDataProvider;
+	private final int[] buckets;
+	private final LruCache<Integer, MarkerOptions> cache;
+	private final OnIconDataReadyListener listener;
+	private final MetricsRecorder metrics;
+
+	private ExecutorService executor;
+	private Handler handler;
+	private Set<Integer> pendingBuckets = new HashSet<Integer>();
+	// incremented on cleanup, so that icons requested before are dropped, but cache stays usable
+	private int generation;
+
+	public ClusterIconCache(ClusteringSettings settings, MetricsRecorder metrics, OnIconDataReadyListener listener) {
+		this.iconDataProvider = settings.getIconDataProvider();
+		this.buckets = settings.getClusterCountBuckets();
+		int cacheSize = settings.getIconCacheSize();
+		this.cache = cacheSize > 0 ? new LruCache<Integer, MarkerOptions>(cacheSize) : null;
+		this.listener = listener;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return markers count icon data is requested for when displaying cluster of given size
+	 */
+	int getBucket(int markersCount) {
+		if (buckets == null) {
+			return markersCount;
+		}
+		int bucket = markersCount;
+		for (int i = 0; i < buckets.length && buckets[i] <= markersCount; i++) {
+			bucket = buckets[i];
+		}
+		return bucket;
+	}
+
+	/**
+	 * For {@link AsyncIconDataProvider} returns placeholder when icon is not ready yet. Listener is notified on the main thread when it is.
+	 */
+	MarkerOptions getIconData(int bucket) {
+		MarkerOptions iconData = null;
+		if (cache != null) {
+			iconData = cache.get(bucket);
+		}
+		if (iconData != null) {
+			return iconData;
+		}
+		if (iconDataProvider instanceof AsyncIconDataProvider) {
+			requestIconData(bucket);
+			return ((AsyncIconDataProvider) iconDataProvider).getPlaceholderIconData(bucket);
+		}
+		if (cache == null) {
+			return provideIconData(bucket);
+		}
+		// not waiting for warm-up even if this bucket is pending, it will not be rendered again once cached
+		iconData = renderIconData(bucket);
+		cache.put(bucket, iconData);
+		return iconData;
+	}
+
+	/**
+	 * Renders icons for given range of cluster sizes in background, limited by cache size.
+	 */
+	void warmUp(int minCount, int maxCount) {
+		if (cache == null) {
+			return;
+		}
+		int count = Math.max(minCount, 2);
+		int requested = 0;
+		while (count <= maxCount && requested < cache.maxSize()) {
+			requestIconData(getBucket(count));
+			requested++;
+			int next = getNextBucketStart(count);
+			if (next <= count) {
+				break;
+			}
+			count = next;
+		}
+	}
+
+	void cleanup() {
+		generation++;
+		if (cache != null) {
+			cache.evictAll();
+		}
+		pendingBuckets.clear();
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		if (handler != null) {
+			handler.removeCallbacksAndMessages(null);
+		}
+	}
+
+	/**
+	 * @return smallest cluster size using different bucket than given one or the same size when there is no such bucket
+	 */
+	int getNextBucketStart(int markersCount) {
+		if (buckets == null || buckets.length == 0 || markersCount < buckets[0]) {
+			return markersCount + 1;
+		}
+		for (int bucket : buckets) {
+			if (bucket > markersCount) {
+				return bucket;
+			}
+		}
+		return markersCount;
+	}
+
+	/**
+	 * Must only be called with cache enabled, because icons rendered in background are only kept there.
+	 */
+	private void requestIconData(final int bucket) {
+		if (cache.get(bucket) != null) {
+			return;
+		}
+		if (!pendingBuckets.add(bucket)) {
+			return;
+		}
+		final int requestGeneration = generation;
+		executeInBackground(new Runnable() {
+
+			@Override
+			public void run() {
+				MarkerOptions iconData = null;
+				try {
+					if (cache.get(bucket) == null) {
+						// otherwise already rendered on the main thread since requested
+						iconData = renderIconData(bucket);
+					}
+				} catch (RuntimeException ex) {
+					// provider failed, icon will be requested again next time it is needed
+				}
+				final MarkerOptions result = iconData;
+				postToMainThread(new Runnable() {
+
+					@Override
+					public void run() {
+						onIconDataRendered(bucket, result, requestGeneration);
+					}
+				});
+			}
+		});
+	}
+
+	void executeInBackground(Runnable task) {
+		if (executor == null) {
+			// single thread, so that providers are never called concurrently from background
+			executor = Executors.newSingleThreadExecutor(new IconThreadFactory());
+		}
+		executor.execute(task);
+	}
+
+	void postToMainThread(Runnable task) {
+		if (handler == null) {
+			handler = new Handler(Looper.getMainLooper());
+		}
+		handler.post(task);
+	}
+
+	private void onIconDataRendered(int bucket, MarkerOptions iconData, int requestGeneration) {
+		if (requestGeneration != generation) {
+			return;
+		}
+		pendingBuckets.remove(bucket);
+		if (iconData == null) {
+			return;
+		}
+		if (cache.get(bucket) != null) {
+			// already rendered on the main thread while warming up
+			return;
+		}
+		cache.put(bucket, iconData);
+		listener.onIconDataReady(bucket, iconData);
+	}
+
+	private MarkerOptions renderIconData(int bucket) {
+		return copy(provideIconData(bucket));
+	}
+
+	private MarkerOptions provideIconData(int bucket) {
+		long start = metrics.begin(Operation.PROVIDE_ICON);
+		MarkerOptions iconData = iconDataProvider.getIconData(bucket);
+		metrics.end(Operation.PROVIDE_ICON, start, 1);
+		return iconData;
+	}
+
+	private MarkerOptions copy(MarkerOptions options) {
+		// providers are allowed to reuse single MarkerOptions instance
+		return new MarkerOptions().icon(options.getIcon()).anchor(options.getAnchorU(), options.getAnchorV());
+	}
+
+	private static class IconThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ClusterIconRenderer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+}
@@ -19,23 +19,49 @@ import java.util.ArrayList;
 import java.util.List;
 
 import pl.mg6.android.maps.extensions.AnimationSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.CenterPolicy;
 import pl.mg6.android.maps.extensions.Marker;
 
 import com.google.android.gms.maps.model.BitmapDescriptor;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.MarkerOptions;
 
 class ClusterMarker implements Marker {
 
 	private long clusterId;
 
-	private int lastCount = -1;
+	private int lastBucket = -1;
 
 	private GridClusteringStrategy strategy;
 
 	private com.google.android.gms.maps.model.Marker virtual;
 
-	private List<DelegatingMarker> markers = new ArrayList<DelegatingMarker>();
+	private ArrayList<DelegatingMarker> markers = new ArrayList<DelegatingMarker>();
+	private ArrayList<DelegatingMarker> markersToHide = new ArrayList<DelegatingMarker>();
+	// markers strategy is about to add one by one, so that arrays are grown once for all of them
+	private int reservedCount;
+	private DelegatingMarker shownMarker;
+	// last value of getDisplayedMarker() reported to strategy
+	private Marker displayedMarker;
+
+	// positions and weights of markers at the same indices, kept to update sums and bounds in O(1)
+	private double[] latitudes = new double[2];
+	private double[] longitudes = new double[2];
+	private double[] weights = new double[2];
+
+	private double sumWeights;
+	private double sumLatitudes;
+	private double sumLongitudes;
+	private double sumShiftedLongitudes;
+
+	// longitudes are tracked in [-180, 180) and [0, 360), the one giving narrower bounds is used for clusters crossing 180th meridian
+	private double minLatitude;
+	private double maxLatitude;
+	private double minLongitude;
+	private double maxLongitude;
+	private double minShiftedLongitude;
+	private double maxShiftedLongitude;
+	private boolean boundsInvalid;
 
 	public ClusterMarker(GridClusteringStrategy strategy) {
 		this.strategy = strategy;
@@ -53,38 +79,106 @@ class ClusterMarker implements Marker {
 		return virtual;
 	}
 
+	void reserve(int count) {
+		reservedCount += count;
+	}
+
 	void add(DelegatingMarker marker) {
+		int index = markers.size();
+		if (reservedCount > 0) {
+			ensureCapacity(index + reservedCount);
+			reservedCount = 0;
+		}
+		if (index == latitudes.length) {
+			latitudes = grow(latitudes, index * 2);
+			longitudes = grow(longitudes, index * 2);
+			weights = grow(weights, index * 2);
+		}
 		markers.add(marker);
+		markersToHide.add(marker);
+		LatLng position = marker.getPosition();
+		latitudes[index] = position.latitude;
+		longitudes[index] = position.longitude;
+		weights[index] = strategy.getWeight(marker);
+		include(index);
+		updateDisplayedMarker();
 	}
 
 	void remove(DelegatingMarker marker) {
-		markers.remove(marker);
+		int index = markers.indexOf(marker);
+		if (index < 0) {
+			return;
+		}
+		exclude(index);
+		int last = markers.size() - 1;
+		markers.set(index, markers.get(last));
+		markers.remove(last);
+		latitudes[index] = latitudes[last];
+		longitudes[index] = longitudes[last];
+		weights[index] = weights[last];
+		markersToHide.remove(marker);
+		if (marker == shownMarker) {
+			shownMarker = null;
+		}
+		if (last == 0) {
+			clearSums();
+		}
+		updateDisplayedMarker();
+	}
+
+	/**
+	 * Updates cached position of a marker that moved within this cluster.
+	 */
+	void update(DelegatingMarker marker) {
+		int index = markers.indexOf(marker);
+		if (index < 0) {
+			return;
+		}
+		exclude(index);
+		LatLng position = marker.getPosition();
+		latitudes[index] = position.latitude;
+		longitudes[index] = position.longitude;
+		include(index);
 	}
 
 	void refresh() {
 		int count = markers.size();
 		if (count == 0) {
 			removeVirtual();
+			markersToHide.clear();
 		} else if (count == 1) {
 			removeVirtual();
-			markers.get(0).changeVisible(true);
+			markersToHide.clear();
+			shownMarker = markers.get(0);
+			shownMarker.changeVisible(true);
 		} else {
-			LatLngBounds.Builder builder = LatLngBounds.builder();
-			for (DelegatingMarker m : markers) {
-				builder.include(m.getPosition());
-				m.changeVisible(false);
+			if (shownMarker != null) {
+				shownMarker.changeVisible(false);
+				shownMarker = null;
+			}
+			for (int i = 0; i < markersToHide.size(); i++) {
+				markersToHide.get(i).changeVisible(false);
 			}
-			LatLng position = calculateCenter(builder.build());
-			if (virtual == null || lastCount != count) {
+			markersToHide.clear();
+			LatLng position = calculatePosition();
+			int bucket = strategy.getIconBucket(count);
+			if (virtual == null || lastBucket != bucket) {
 				removeVirtual();
-				lastCount = count;
-				virtual = strategy.createMarker(count, position);
+				lastBucket = bucket;
+				virtual = strategy.createMarker(bucket, position);
 			} else {
-				virtual.setPosition(position);
+				strategy.setMarkerPosition(virtual, position);
 			}
 		}
 	}
 
+	void updateIcon(int bucket, MarkerOptions iconData) {
+		if (virtual != null && lastBucket == bucket) {
+			virtual.setIcon(iconData.getIcon());
+			virtual.setAnchor(iconData.getAnchorU(), iconData.getAnchorV());
+		}
+	}
+
 	Marker getDisplayedMarker() {
 		int count = markers.size();
 		if (count == 0) {
@@ -96,34 +190,186 @@ class ClusterMarker implements Marker {
 		}
 	}
 
+	private void updateDisplayedMarker() {
+		Marker newDisplayedMarker = getDisplayedMarker();
+		if (newDisplayedMarker != displayedMarker) {
+			strategy.onDisplayedMarkerChange(displayedMarker, newDisplayedMarker);
+			displayedMarker = newDisplayedMarker;
+		}
+	}
+
+	/**
+	 * Called when this cluster is no longer used by strategy.
+	 */
+	void clearDisplayedMarker() {
+		if (displayedMarker != null) {
+			strategy.onDisplayedMarkerChange(displayedMarker, null);
+			displayedMarker = null;
+		}
+	}
+
 	void removeVirtual() {
 		if (virtual != null) {
-			virtual.remove();
+			strategy.removeMarker(virtual);
 			virtual = null;
 		}
 	}
 
-	LatLng calculateCenter(LatLngBounds bounds) {
-		if (bounds.southwest.longitude > bounds.northeast.longitude) {
-			// TODO: incorrect
-			return new LatLng((bounds.southwest.latitude + bounds.northeast.latitude) / 2.0, (bounds.southwest.longitude + bounds.northeast.longitude) / 2.0);
+	LatLng calculatePosition() {
+		if (boundsInvalid) {
+			recalculateBounds();
+		}
+		boolean shifted = maxLongitude - minLongitude > maxShiftedLongitude - minShiftedLongitude;
+		double latitude;
+		double longitude;
+		if (strategy.getCenterPolicy() == CenterPolicy.BOUNDS_CENTER || sumWeights <= 0.0) {
+			latitude = (minLatitude + maxLatitude) / 2.0;
+			if (shifted) {
+				longitude = (minShiftedLongitude + maxShiftedLongitude) / 2.0;
+			} else {
+				longitude = (minLongitude + maxLongitude) / 2.0;
+			}
 		} else {
-			return new LatLng((bounds.southwest.latitude + bounds.northeast.latitude) / 2.0, (bounds.southwest.longitude + bounds.northeast.longitude) / 2.0);
+			latitude = sumLatitudes / sumWeights;
+			if (shifted) {
+				longitude = sumShiftedLongitudes / sumWeights;
+			} else {
+				longitude = sumLongitudes / sumWeights;
+			}
+		}
+		if (longitude >= 180.0) {
+			longitude -= 360.0;
+		}
+		return new LatLng(latitude, longitude);
+	}
+
+	private void include(int index) {
+		double latitude = latitudes[index];
+		double longitude = longitudes[index];
+		double shiftedLongitude = shift(longitude);
+		double weight = weights[index];
+		sumWeights += weight;
+		sumLatitudes += weight * latitude;
+		sumLongitudes += weight * longitude;
+		sumShiftedLongitudes += weight * shiftedLongitude;
+		if (boundsInvalid) {
+			return;
+		}
+		if (markers.size() == 1) {
+			minLatitude = maxLatitude = latitude;
+			minLongitude = maxLongitude = longitude;
+			minShiftedLongitude = maxShiftedLongitude = shiftedLongitude;
+		} else {
+			minLatitude = Math.min(minLatitude, latitude);
+			maxLatitude = Math.max(maxLatitude, latitude);
+			minLongitude = Math.min(minLongitude, longitude);
+			maxLongitude = Math.max(maxLongitude, longitude);
+			minShiftedLongitude = Math.min(minShiftedLongitude, shiftedLongitude);
+			maxShiftedLongitude = Math.max(maxShiftedLongitude, shiftedLongitude);
+		}
+	}
+
+	private void exclude(int index) {
+		double latitude = latitudes[index];
+		double longitude = longitudes[index];
+		double shiftedLongitude = shift(longitude);
+		double weight = weights[index];
+		sumWeights -= weight;
+		sumLatitudes -= weight * latitude;
+		sumLongitudes -= weight * longitude;
+		sumShiftedLongitudes -= weight * shiftedLongitude;
+		if (boundsInvalid) {
+			return;
+		}
+		if (latitude == minLatitude || latitude == maxLatitude || longitude == minLongitude || longitude == maxLongitude
+				|| shiftedLongitude == minShiftedLongitude || shiftedLongitude == maxShiftedLongitude) {
+			// recalculated lazily, only when needed
+			boundsInvalid = true;
+		}
+	}
+
+	private void recalculateBounds() {
+		boundsInvalid = false;
+		int count = markers.size();
+		if (count == 0) {
+			return;
+		}
+		minLatitude = maxLatitude = latitudes[0];
+		minLongitude = maxLongitude = longitudes[0];
+		minShiftedLongitude = maxShiftedLongitude = shift(longitudes[0]);
+		for (int i = 1; i < count; i++) {
+			double latitude = latitudes[i];
+			double longitude = longitudes[i];
+			double shiftedLongitude = shift(longitude);
+			minLatitude = Math.min(minLatitude, latitude);
+			maxLatitude = Math.max(maxLatitude, latitude);
+			minLongitude = Math.min(minLongitude, longitude);
+			maxLongitude = Math.max(maxLongitude, longitude);
+			minShiftedLongitude = Math.min(minShiftedLongitude, shiftedLongitude);
+			maxShiftedLongitude = Math.max(maxShiftedLongitude, shiftedLongitude);
 		}
 	}
 
+	private void clearSums() {
+		// avoids accumulating floating point errors
+		sumWeights = 0.0;
+		sumLatitudes = 0.0;
+		sumLongitudes = 0.0;
+		sumShiftedLongitudes = 0.0;
+		boundsInvalid = false;
+	}
+
+	private static double shift(double longitude) {
+		return longitude < 0.0 ? longitude + 360.0 : longitude;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (latitudes.length < capacity) {
+			latitudes = grow(latitudes, capacity);
+			longitudes = grow(longitudes, capacity);
+			weights = grow(weights, capacity);
+		}
+		markersToHide.ensureCapacity(markersToHide.size() + capacity - markers.size());
+		markers.ensureCapacity(capacity);
+	}
+
+	private static double[] grow(double[] array, int capacity) {
+		double[] grown = new double[capacity];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
 	void cleanup() {
 		if (virtual != null) {
-			virtual.remove();
+			strategy.removeMarker(virtual);
 		}
 	}
 
 	void reset() {
 		markers.clear();
+		markersToHide.clear();
+		shownMarker = null;
+		clearSums();
+		updateDisplayedMarker();
 	}
 
-	List<DelegatingMarker> getMarkersInternal() {
-		return new ArrayList<DelegatingMarker>(markers);
+	int getMarkersCount() {
+		return markers.size();
+	}
+
+	/**
+	 * Index based access for strategy code iterating over many clusters, does not allocate.
+	 */
+	DelegatingMarker getMarker(int index) {
+		return markers.get(index);
+	}
+
+	double getLatitude(int index) {
+		return latitudes[index];
+	}
+
+	double getLongitude(int index) {
+		return longitudes[index];
 	}
 
 	@Override
@@ -157,12 +403,7 @@ class ClusterMarker implements Marker {
 		if (virtual != null) {
 			return virtual.getPosition();
 		}
-		LatLngBounds.Builder builder = LatLngBounds.builder();
-		for (DelegatingMarker m : markers) {
-			builder.include(m.getPosition());
-		}
-		LatLng position = calculateCenter(builder.build());
-		return position;
+		return calculatePosition();
 	}
 
 	@Override
@@ -270,7 +511,7 @@ class ClusterMarker implements Marker {
 		} else if (count == 1) {
 			markers.get(0).setVirtualPosition(position);
 		} else {
-			virtual.setPosition(position);
+			strategy.setMarkerPosition(virtual, position);
 		}
 	}
 }
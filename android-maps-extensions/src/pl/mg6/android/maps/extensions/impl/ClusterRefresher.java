@@ -18,39 +18,62 @@ package pl.mg6.android.maps.extensions.impl;
 import java.util.HashSet;
 import java.util.Set;
 
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
+
 import android.os.Handler;
 import android.os.Handler.Callback;
 import android.os.Message;
 
 class ClusterRefresher {
 
+	private final MetricsRecorder metrics;
+
 	private Set<ClusterMarker> refreshQueue = new HashSet<ClusterMarker>();
 	private boolean refreshPending;
-	private Handler refresher = new Handler(new Callback() {
-		public boolean handleMessage(Message msg) {
-			refreshAll();
-			return true;
-		}
-	});
+	private Handler refresher;
+
+	ClusterRefresher(MetricsRecorder metrics) {
+		this.metrics = metrics;
+	}
 
 	void refresh(ClusterMarker cluster) {
 		refreshQueue.add(cluster);
 		if (!refreshPending) {
-			refresher.sendEmptyMessage(0);
+			scheduleRefreshAll();
 			refreshPending = true;
 		}
 	}
 
+	/**
+	 * Refreshes queued clusters once per message loop iteration. Benchmarks replace it to call {@link #refreshAll()} themselves.
+	 */
+	void scheduleRefreshAll() {
+		if (refresher == null) {
+			refresher = new Handler(new Callback() {
+				public boolean handleMessage(Message msg) {
+					refreshAll();
+					return true;
+				}
+			});
+		}
+		refresher.sendEmptyMessage(0);
+	}
+
 	void cleanup() {
 		refreshQueue.clear();
 		refreshPending = false;
-		refresher.removeMessages(0);
+		if (refresher != null) {
+			refresher.removeMessages(0);
+		}
 	}
 
 	void refreshAll() {
+		long start = metrics.begin(Operation.REFRESH_CLUSTERS);
+		int count = refreshQueue.size();
 		for (ClusterMarker cluster : refreshQueue) {
 			cluster.refresh();
 		}
 		cleanup();
+		metrics.end(Operation.REFRESH_CLUSTERS, start, count);
 	}
 }
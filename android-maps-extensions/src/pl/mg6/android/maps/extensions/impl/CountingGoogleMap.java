@@ -0,0 +1,598 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import pl.mg6.android.maps.extensions.NativeCallStats;
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.location.Location;
+
+import com.google.android.gms.maps.CameraUpdate;
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.GoogleMap.CancelableCallback;
+import com.google.android.gms.maps.GoogleMap.InfoWindowAdapter;
+import com.google.android.gms.maps.GoogleMap.OnCameraChangeListener;
+import com.google.android.gms.maps.GoogleMap.OnInfoWindowClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMapClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMapLongClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMarkerClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMarkerDragListener;
+import com.google.android.gms.maps.GoogleMap.OnMyLocationButtonClickListener;
+import com.google.android.gms.maps.GoogleMap.OnMyLocationChangeListener;
+import com.google.android.gms.maps.LocationSource;
+import com.google.android.gms.maps.Projection;
+import com.google.android.gms.maps.UiSettings;
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.GroundOverlay;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polygon;
+import com.google.android.gms.maps.model.PolygonOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+import com.google.android.gms.maps.model.VisibleRegion;
+
+/**
+ * Counts and times calls to decorated map and projections it returns. Disabled by default, when each call only checks a flag.
+ * 
+ * Like the map itself, should only be used on the main thread.
+ */
+class CountingGoogleMap implements IGoogleMap {
+
+	private static final int ADD_CIRCLE = 0;
+	private static final int ADD_GROUND_OVERLAY = 1;
+	private static final int ADD_MARKER = 2;
+	private static final int ADD_POLYGON = 3;
+	private static final int ADD_POLYLINE = 4;
+	private static final int ADD_TILE_OVERLAY = 5;
+	private static final int ANIMATE_CAMERA = 6;
+	private static final int CLEAR = 7;
+	private static final int GET_CAMERA_POSITION = 8;
+	private static final int GET_MAP_TYPE = 9;
+	private static final int GET_MAX_ZOOM_LEVEL = 10;
+	private static final int GET_MIN_ZOOM_LEVEL = 11;
+	private static final int GET_MY_LOCATION = 12;
+	private static final int GET_PROJECTION = 13;
+	private static final int GET_UI_SETTINGS = 14;
+	private static final int IS_INDOOR_ENABLED = 15;
+	private static final int IS_MY_LOCATION_ENABLED = 16;
+	private static final int IS_TRAFFIC_ENABLED = 17;
+	private static final int MOVE_CAMERA = 18;
+	private static final int SET_INDOOR_ENABLED = 19;
+	private static final int SET_INFO_WINDOW_ADAPTER = 20;
+	private static final int SET_LOCATION_SOURCE = 21;
+	private static final int SET_MAP_TYPE = 22;
+	private static final int SET_MY_LOCATION_ENABLED = 23;
+	private static final int SET_ON_CAMERA_CHANGE_LISTENER = 24;
+	private static final int SET_ON_INFO_WINDOW_CLICK_LISTENER = 25;
+	private static final int SET_ON_MAP_CLICK_LISTENER = 26;
+	private static final int SET_ON_MAP_LONG_CLICK_LISTENER = 27;
+	private static final int SET_ON_MARKER_CLICK_LISTENER = 28;
+	private static final int SET_ON_MARKER_DRAG_LISTENER = 29;
+	private static final int SET_ON_MY_LOCATION_BUTTON_CLICK_LISTENER = 30;
+	private static final int SET_ON_MY_LOCATION_CHANGE_LISTENER = 31;
+	private static final int SET_TRAFFIC_ENABLED = 32;
+	private static final int SNAPSHOT = 33;
+	private static final int STOP_ANIMATION = 34;
+	private static final int FROM_SCREEN_LOCATION = 35;
+	private static final int GET_VISIBLE_REGION = 36;
+	private static final int TO_SCREEN_LOCATION = 37;
+
+	private static final String[] NAMES = {
+			"addCircle",
+			"addGroundOverlay",
+			"addMarker",
+			"addPolygon",
+			"addPolyline",
+			"addTileOverlay",
+			"animateCamera",
+			"clear",
+			"getCameraPosition",
+			"getMapType",
+			"getMaxZoomLevel",
+			"getMinZoomLevel",
+			"getMyLocation",
+			"getProjection",
+			"getUiSettings",
+			"isIndoorEnabled",
+			"isMyLocationEnabled",
+			"isTrafficEnabled",
+			"moveCamera",
+			"setIndoorEnabled",
+			"setInfoWindowAdapter",
+			"setLocationSource",
+			"setMapType",
+			"setMyLocationEnabled",
+			"setOnCameraChangeListener",
+			"setOnInfoWindowClickListener",
+			"setOnMapClickListener",
+			"setOnMapLongClickListener",
+			"setOnMarkerClickListener",
+			"setOnMarkerDragListener",
+			"setOnMyLocationButtonClickListener",
+			"setOnMyLocationChangeListener",
+			"setTrafficEnabled",
+			"snapshot",
+			"stopAnimation",
+			"fromScreenLocation",
+			"getVisibleRegion",
+			"toScreenLocation"
+	};
+
+	private static final List<String> NAMES_LIST = Collections.unmodifiableList(Arrays.asList(NAMES));
+
+	private final IGoogleMap map;
+
+	private boolean counting;
+	private long countingStart;
+	private long[] counts = new long[NAMES.length];
+	private long[] durations = new long[NAMES.length];
+
+	CountingGoogleMap(IGoogleMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * Enabling counting again starts from zero.
+	 */
+	void setCountingEnabled(boolean enabled) {
+		counting = enabled;
+		if (enabled) {
+			Arrays.fill(counts, 0L);
+			Arrays.fill(durations, 0L);
+			countingStart = System.nanoTime();
+		}
+	}
+
+	NativeCallStats getStats() {
+		long period = counting ? System.nanoTime() - countingStart : 0L;
+		return new Stats(counts.clone(), durations.clone(), period);
+	}
+
+	private long start() {
+		return counting ? System.nanoTime() : 0L;
+	}
+
+	private void count(int call, long start) {
+		// start is 0 when counting was enabled during the call
+		if (counting && start != 0L) {
+			counts[call]++;
+			durations[call] += System.nanoTime() - start;
+		}
+	}
+
+	@Override
+	public Circle addCircle(CircleOptions options) {
+		long start = start();
+		Circle circle = map.addCircle(options);
+		count(ADD_CIRCLE, start);
+		return circle;
+	}
+
+	@Override
+	public GroundOverlay addGroundOverlay(GroundOverlayOptions options) {
+		long start = start();
+		GroundOverlay groundOverlay = map.addGroundOverlay(options);
+		count(ADD_GROUND_OVERLAY, start);
+		return groundOverlay;
+	}
+
+	@Override
+	public Marker addMarker(MarkerOptions options) {
+		long start = start();
+		Marker marker = map.addMarker(options);
+		count(ADD_MARKER, start);
+		return marker;
+	}
+
+	@Override
+	public Polygon addPolygon(PolygonOptions options) {
+		long start = start();
+		Polygon polygon = map.addPolygon(options);
+		count(ADD_POLYGON, start);
+		return polygon;
+	}
+
+	@Override
+	public Polyline addPolyline(PolylineOptions options) {
+		long start = start();
+		Polyline polyline = map.addPolyline(options);
+		count(ADD_POLYLINE, start);
+		return polyline;
+	}
+
+	@Override
+	public TileOverlay addTileOverlay(TileOverlayOptions options) {
+		long start = start();
+		TileOverlay tileOverlay = map.addTileOverlay(options);
+		count(ADD_TILE_OVERLAY, start);
+		return tileOverlay;
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update, CancelableCallback callback) {
+		long start = start();
+		map.animateCamera(update, callback);
+		count(ANIMATE_CAMERA, start);
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update, int durationMs, CancelableCallback callback) {
+		long start = start();
+		map.animateCamera(update, durationMs, callback);
+		count(ANIMATE_CAMERA, start);
+	}
+
+	@Override
+	public void animateCamera(CameraUpdate update) {
+		long start = start();
+		map.animateCamera(update);
+		count(ANIMATE_CAMERA, start);
+	}
+
+	@Override
+	public void clear() {
+		long start = start();
+		map.clear();
+		count(CLEAR, start);
+	}
+
+	@Override
+	public CameraPosition getCameraPosition() {
+		long start = start();
+		CameraPosition cameraPosition = map.getCameraPosition();
+		count(GET_CAMERA_POSITION, start);
+		return cameraPosition;
+	}
+
+	@Override
+	public int getMapType() {
+		long start = start();
+		int mapType = map.getMapType();
+		count(GET_MAP_TYPE, start);
+		return mapType;
+	}
+
+	@Override
+	public float getMaxZoomLevel() {
+		long start = start();
+		float maxZoomLevel = map.getMaxZoomLevel();
+		count(GET_MAX_ZOOM_LEVEL, start);
+		return maxZoomLevel;
+	}
+
+	@Override
+	public float getMinZoomLevel() {
+		long start = start();
+		float minZoomLevel = map.getMinZoomLevel();
+		count(GET_MIN_ZOOM_LEVEL, start);
+		return minZoomLevel;
+	}
+
+	@Override
+	public Location getMyLocation() {
+		long start = start();
+		Location location = map.getMyLocation();
+		count(GET_MY_LOCATION, start);
+		return location;
+	}
+
+	@Override
+	public IProjection getProjection() {
+		long start = start();
+		IProjection projection = map.getProjection();
+		count(GET_PROJECTION, start);
+		return counting ? new CountingProjection(projection) : projection;
+	}
+
+	@Override
+	public UiSettings getUiSettings() {
+		long start = start();
+		UiSettings uiSettings = map.getUiSettings();
+		count(GET_UI_SETTINGS, start);
+		return uiSettings;
+	}
+
+	@Override
+	public boolean isIndoorEnabled() {
+		long start = start();
+		boolean indoorEnabled = map.isIndoorEnabled();
+		count(IS_INDOOR_ENABLED, start);
+		return indoorEnabled;
+	}
+
+	@Override
+	public boolean isMyLocationEnabled() {
+		long start = start();
+		boolean myLocationEnabled = map.isMyLocationEnabled();
+		count(IS_MY_LOCATION_ENABLED, start);
+		return myLocationEnabled;
+	}
+
+	@Override
+	public boolean isTrafficEnabled() {
+		long start = start();
+		boolean trafficEnabled = map.isTrafficEnabled();
+		count(IS_TRAFFIC_ENABLED, start);
+		return trafficEnabled;
+	}
+
+	@Override
+	public void moveCamera(CameraUpdate update) {
+		long start = start();
+		map.moveCamera(update);
+		count(MOVE_CAMERA, start);
+	}
+
+	@Override
+	public boolean setIndoorEnabled(boolean enabled) {
+		long start = start();
+		boolean supported = map.setIndoorEnabled(enabled);
+		count(SET_INDOOR_ENABLED, start);
+		return supported;
+	}
+
+	@Override
+	public void setInfoWindowAdapter(InfoWindowAdapter adapter) {
+		long start = start();
+		map.setInfoWindowAdapter(adapter);
+		count(SET_INFO_WINDOW_ADAPTER, start);
+	}
+
+	@Override
+	public void setLocationSource(LocationSource source) {
+		long start = start();
+		map.setLocationSource(source);
+		count(SET_LOCATION_SOURCE, start);
+	}
+
+	@Override
+	public void setMapType(int type) {
+		long start = start();
+		map.setMapType(type);
+		count(SET_MAP_TYPE, start);
+	}
+
+	@Override
+	public void setMyLocationEnabled(boolean enabled) {
+		long start = start();
+		map.setMyLocationEnabled(enabled);
+		count(SET_MY_LOCATION_ENABLED, start);
+	}
+
+	@Override
+	public void setOnCameraChangeListener(OnCameraChangeListener listener) {
+		long start = start();
+		map.setOnCameraChangeListener(listener);
+		count(SET_ON_CAMERA_CHANGE_LISTENER, start);
+	}
+
+	@Override
+	public void setOnInfoWindowClickListener(OnInfoWindowClickListener listener) {
+		long start = start();
+		map.setOnInfoWindowClickListener(listener);
+		count(SET_ON_INFO_WINDOW_CLICK_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMapClickListener(OnMapClickListener listener) {
+		long start = start();
+		map.setOnMapClickListener(listener);
+		count(SET_ON_MAP_CLICK_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMapLongClickListener(OnMapLongClickListener listener) {
+		long start = start();
+		map.setOnMapLongClickListener(listener);
+		count(SET_ON_MAP_LONG_CLICK_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMarkerClickListener(OnMarkerClickListener listener) {
+		long start = start();
+		map.setOnMarkerClickListener(listener);
+		count(SET_ON_MARKER_CLICK_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMarkerDragListener(OnMarkerDragListener listener) {
+		long start = start();
+		map.setOnMarkerDragListener(listener);
+		count(SET_ON_MARKER_DRAG_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMyLocationButtonClickListener(OnMyLocationButtonClickListener listener) {
+		long start = start();
+		map.setOnMyLocationButtonClickListener(listener);
+		count(SET_ON_MY_LOCATION_BUTTON_CLICK_LISTENER, start);
+	}
+
+	@Override
+	public void setOnMyLocationChangeListener(OnMyLocationChangeListener listener) {
+		long start = start();
+		map.setOnMyLocationChangeListener(listener);
+		count(SET_ON_MY_LOCATION_CHANGE_LISTENER, start);
+	}
+
+	@Override
+	public void setTrafficEnabled(boolean enabled) {
+		long start = start();
+		map.setTrafficEnabled(enabled);
+		count(SET_TRAFFIC_ENABLED, start);
+	}
+
+	@Override
+	public void snapshot(GoogleMap.SnapshotReadyCallback callback) {
+		long start = start();
+		map.snapshot(callback);
+		count(SNAPSHOT, start);
+	}
+
+	@Override
+	public void snapshot(GoogleMap.SnapshotReadyCallback callback, Bitmap bitmap) {
+		long start = start();
+		map.snapshot(callback, bitmap);
+		count(SNAPSHOT, start);
+	}
+
+	@Override
+	public void stopAnimation() {
+		long start = start();
+		map.stopAnimation();
+		count(STOP_ANIMATION, start);
+	}
+
+	@Override
+	public GoogleMap getMap() {
+		return map.getMap();
+	}
+
+	private class CountingProjection implements IProjection {
+
+		private final IProjection projection;
+
+		CountingProjection(IProjection projection) {
+			this.projection = projection;
+		}
+
+		@Override
+		public LatLng fromScreenLocation(Point point) {
+			long start = start();
+			LatLng location = projection.fromScreenLocation(point);
+			count(FROM_SCREEN_LOCATION, start);
+			return location;
+		}
+
+		@Override
+		public VisibleRegion getVisibleRegion() {
+			long start = start();
+			VisibleRegion visibleRegion = projection.getVisibleRegion();
+			count(GET_VISIBLE_REGION, start);
+			return visibleRegion;
+		}
+
+		@Override
+		public Point toScreenLocation(LatLng location) {
+			long start = start();
+			Point point = projection.toScreenLocation(location);
+			count(TO_SCREEN_LOCATION, start);
+			return point;
+		}
+
+		@Override
+		public Projection getProjection() {
+			return projection.getProjection();
+		}
+	}
+
+	private static class Stats implements NativeCallStats {
+
+		private final long[] counts;
+		private final long[] durations;
+		private final long period;
+
+		Stats(long[] counts, long[] durations, long period) {
+			this.counts = counts;
+			this.durations = durations;
+			this.period = period;
+		}
+
+		@Override
+		public List<String> getCallNames() {
+			return NAMES_LIST;
+		}
+
+		@Override
+		public long getCount(String call) {
+			return counts[indexOf(call)];
+		}
+
+		@Override
+		public long getDurationNanos(String call) {
+			return durations[indexOf(call)];
+		}
+
+		@Override
+		public double getRate(String call) {
+			return rate(getCount(call));
+		}
+
+		@Override
+		public long getTotalCount() {
+			return sum(counts);
+		}
+
+		@Override
+		public long getTotalDurationNanos() {
+			return sum(durations);
+		}
+
+		@Override
+		public double getTotalRate() {
+			return rate(getTotalCount());
+		}
+
+		@Override
+		public long getPeriodNanos() {
+			return period;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder("NativeCallStats{");
+			builder.append("period=").append(period / 1000000L).append("ms");
+			for (int i = 0; i < NAMES.length; i++) {
+				if (counts[i] > 0L) {
+					builder.append(", ").append(NAMES[i]).append('=').append(counts[i]);
+					builder.append('/').append(durations[i] / 1000L).append("us");
+				}
+			}
+			return builder.append('}').toString();
+		}
+
+		private double rate(long count) {
+			return period > 0L ? count * 1e9 / period : 0.0;
+		}
+
+		private static int indexOf(String call) {
+			int index = NAMES_LIST.indexOf(call);
+			if (index < 0) {
+				throw new IllegalArgumentException("Unknown call: " + call);
+			}
+			return index;
+		}
+
+		private static long sum(long[] values) {
+			long sum = 0L;
+			for (long value : values) {
+				sum += value;
+			}
+			return sum;
+		}
+	}
+}
@@ -16,29 +16,30 @@
 package pl.mg6.android.maps.extensions.impl;
 
 import pl.mg6.android.maps.extensions.Circle;
-import android.location.Location;
+import pl.mg6.android.maps.extensions.lazy.LazyCircle;
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
 
 import com.google.android.gms.maps.model.LatLng;
 
 class DelegatingCircle implements Circle {
 
-	private com.google.android.gms.maps.model.Circle real;
+	private LazyCircle real;
 	private CircleManager manager;
 
 	private Object data;
 
-	DelegatingCircle(com.google.android.gms.maps.model.Circle real, CircleManager manager) {
+	DelegatingCircle(LazyCircle real, CircleManager manager) {
 		this.real = real;
 		this.manager = manager;
 	}
 
+	LazyCircle getReal() {
+		return real;
+	}
+
 	@Override
 	public boolean contains(LatLng position) {
-		LatLng center = getCenter();
-		double radius = getRadius();
-		float[] distance = new float[1];
-		Location.distanceBetween(position.latitude, position.longitude, center.latitude, center.longitude, distance);
-		return distance[0] < radius;
+		return LatLngUtils.distanceBetween(position, real.getCenter()) < real.getRadius();
 	}
 
 	@Override
@@ -59,6 +60,8 @@ class DelegatingCircle implements Circle {
 	@Deprecated
 	@Override
 	public String getId() {
+		// created through manager first, so that it is released again when culled
+		manager.onIdRequest(this);
 		return real.getId();
 	}
 
@@ -96,6 +99,7 @@ class DelegatingCircle implements Circle {
 	@Override
 	public void setCenter(LatLng center) {
 		real.setCenter(center);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
@@ -111,6 +115,7 @@ class DelegatingCircle implements Circle {
 	@Override
 	public void setRadius(double radius) {
 		real.setRadius(radius);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
@@ -121,6 +126,7 @@ class DelegatingCircle implements Circle {
 	@Override
 	public void setStrokeWidth(float strokeWidth) {
 		real.setStrokeWidth(strokeWidth);
+		manager.onStrokeWidthChange(strokeWidth);
 	}
 
 	@Override
@@ -15,18 +15,26 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import pl.mg6.android.maps.extensions.Circle;
 import pl.mg6.android.maps.extensions.ClusteringSettings;
 import pl.mg6.android.maps.extensions.GoogleMap;
 import pl.mg6.android.maps.extensions.GroundOverlay;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics;
 import pl.mg6.android.maps.extensions.Marker;
+import pl.mg6.android.maps.extensions.NativeCallStats;
 import pl.mg6.android.maps.extensions.Polygon;
 import pl.mg6.android.maps.extensions.Polyline;
+import pl.mg6.android.maps.extensions.Shape;
 import pl.mg6.android.maps.extensions.TileOverlay;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
 
 import android.graphics.Bitmap;
+import android.graphics.Point;
 import android.location.Location;
 import android.view.View;
 
@@ -37,6 +45,8 @@ import com.google.android.gms.maps.UiSettings;
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.CircleOptions;
 import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.google.android.gms.maps.model.PolygonOptions;
 import com.google.android.gms.maps.model.PolylineOptions;
@@ -44,7 +54,17 @@ import com.google.android.gms.maps.model.TileOverlayOptions;
 
 class DelegatingGoogleMap implements GoogleMap {
 
+	private static final int SCALE_SAMPLE_PIXELS = 100;
+
+	private static final Comparator<Shape> BY_Z_INDEX_DESCENDING = new Comparator<Shape>() {
+		@Override
+		public int compare(Shape lhs, Shape rhs) {
+			return Float.compare(rhs.getZIndex(), lhs.getZIndex());
+		}
+	};
+
 	private IGoogleMap real;
+	private CountingGoogleMap counting;
 
 	private InfoWindowAdapter infoWindowAdapter;
 	private OnCameraChangeListener onCameraChangeListener;
@@ -57,8 +77,11 @@ class DelegatingGoogleMap implements GoogleMap {
 	private GroundOverlayManager groundOverlayManager;
 	private TileOverlayManager tileOverlayManager;
 
+	private final MetricsRecorder metrics = new MetricsRecorder();
+
 	DelegatingGoogleMap(com.google.android.gms.maps.GoogleMap real) {
-		this.real = new GoogleMapWrapper(real);
+		this.counting = new CountingGoogleMap(new GoogleMapWrapper(real));
+		this.real = counting;
 		createManagers();
 		assignMapListeners();
 	}
@@ -88,6 +111,16 @@ class DelegatingGoogleMap implements GoogleMap {
 		return polylineManager.addPolyline(polylineOptions);
 	}
 
+	@Override
+	public Polyline addPolyline(String encodedPath, PolylineOptions polylineOptions) {
+		return polylineManager.addPolyline(encodedPath, 0.0, polylineOptions);
+	}
+
+	@Override
+	public Polyline addPolyline(String encodedPath, double tolerance, PolylineOptions polylineOptions) {
+		return polylineManager.addPolyline(encodedPath, tolerance, polylineOptions);
+	}
+
 	@Override
 	public TileOverlay addTileOverlay(TileOverlayOptions tileOverlayOptions) {
 		return tileOverlayManager.addTileOverlay(tileOverlayOptions);
@@ -114,6 +147,30 @@ class DelegatingGoogleMap implements GoogleMap {
 		clearManagers();
 	}
 
+	@Override
+	public List<Shape> findShapesAt(LatLng position, float tolerance) {
+		double unitsPerPixel = getUnitsPerPixel(position);
+		List<Shape> shapes = new ArrayList<Shape>();
+		polygonManager.findPolygonsAt(position, tolerance, unitsPerPixel, shapes);
+		polylineManager.findPolylinesAt(position, tolerance, unitsPerPixel, shapes);
+		circleManager.findCirclesAt(position, tolerance, unitsPerPixel, shapes);
+		Collections.sort(shapes, BY_Z_INDEX_DESCENDING);
+		return shapes;
+	}
+
+	private double getUnitsPerPixel(LatLng position) {
+		IProjection projection = real.getProjection();
+		Point point = projection.toScreenLocation(position);
+		LatLng other = projection.fromScreenLocation(new Point(point.x + SCALE_SAMPLE_PIXELS, point.y));
+		double deltaX = Math.abs(SphericalMercator.scaleLongitude(other.longitude) - SphericalMercator.scaleLongitude(position.longitude));
+		if (deltaX > 180.0) {
+			deltaX = 360.0 - deltaX;
+		}
+		double deltaY = SphericalMercator.scaleLatitude(other.latitude) - SphericalMercator.scaleLatitude(position.latitude);
+		// map may be rotated
+		return Math.sqrt(deltaX * deltaX + deltaY * deltaY) / SCALE_SAMPLE_PIXELS;
+	}
+
 	@Override
 	public CameraPosition getCameraPosition() {
 		return real.getCameraPosition();
@@ -144,6 +201,26 @@ class DelegatingGoogleMap implements GoogleMap {
 		return markerManager.getMarkers();
 	}
 
+	@Override
+	public List<Marker> getMarkersWithinRadius(LatLng center, double radius) {
+		return markerManager.getMarkersWithinRadius(center, radius);
+	}
+
+	@Override
+	public List<Marker> getMarkers(LatLngBounds bounds) {
+		return markerManager.getMarkers(bounds);
+	}
+
+	@Override
+	public void visitMarkers(LatLngBounds bounds, MarkerVisitor visitor) {
+		markerManager.visitMarkers(bounds, visitor);
+	}
+
+	@Override
+	public List<Marker> getNearestMarkers(LatLng position, int count) {
+		return markerManager.getNearestMarkers(position, count);
+	}
+
 	@Override
 	public Marker getMarkerShowingInfoWindow() {
 		return markerManager.getMarkerShowingInfoWindow();
@@ -184,6 +261,11 @@ class DelegatingGoogleMap implements GoogleMap {
 		return real.getMyLocation();
 	}
 
+	@Override
+	public NativeCallStats getNativeCallStats() {
+		return counting.getStats();
+	}
+
 	@Override
 	public Projection getProjection() {
 		return real.getProjection().getProjection();
@@ -219,6 +301,12 @@ class DelegatingGoogleMap implements GoogleMap {
 		markerManager.setClustering(clusteringSettings);
 	}
 
+	@Override
+	public void setCullingEnabled(boolean cullingEnabled) {
+		circleManager.setCullingEnabled(cullingEnabled);
+		groundOverlayManager.setCullingEnabled(cullingEnabled);
+	}
+
 	@Override
 	public boolean setIndoorEnabled(boolean indoorEnabled) {
 		return real.setIndoorEnabled(indoorEnabled);
@@ -239,16 +327,31 @@ class DelegatingGoogleMap implements GoogleMap {
 		real.setMapType(mapType);
 	}
 
+	@Override
+	public void setMetrics(MapExtensionsMetrics metrics) {
+		this.metrics.setMetrics(metrics);
+	}
+
 	@Override
 	public void setMyLocationEnabled(boolean myLocationEnabled) {
 		real.setMyLocationEnabled(myLocationEnabled);
 	}
 
+	@Override
+	public void setNativeCallCountingEnabled(boolean nativeCallCountingEnabled) {
+		counting.setCountingEnabled(nativeCallCountingEnabled);
+	}
+
 	@Override
 	public void setOnCameraChangeListener(OnCameraChangeListener onCameraChangeListener) {
 		this.onCameraChangeListener = onCameraChangeListener;
 	}
 
+	@Override
+	public void setOnDisplayedMarkersChangeListener(OnDisplayedMarkersChangeListener listener) {
+		markerManager.setOnDisplayedMarkersChangeListener(listener);
+	}
+
 	@Override
 	public void setOnInfoWindowClickListener(OnInfoWindowClickListener onInfoWindowClickListener) {
 		com.google.android.gms.maps.GoogleMap.OnInfoWindowClickListener realOnInfoWindowClickListener = null;
@@ -292,6 +395,11 @@ class DelegatingGoogleMap implements GoogleMap {
 		real.setOnMyLocationChangeListener(onMyLocationChangeListener);
 	}
 
+	@Override
+	public void setTraceSectionsEnabled(boolean traceSectionsEnabled) {
+		metrics.setTraceSectionsEnabled(traceSectionsEnabled);
+	}
+
 	@Override
 	public void setTrafficEnabled(boolean trafficEnabled) {
 		real.setTrafficEnabled(trafficEnabled);
@@ -335,7 +443,7 @@ class DelegatingGoogleMap implements GoogleMap {
 	}
 
 	private void createManagers() {
-		markerManager = new MarkerManager(this.real);
+		markerManager = new MarkerManager(this.real, metrics);
 		polylineManager = new PolylineManager(this.real);
 		polygonManager = new PolygonManager(this.real);
 		circleManager = new CircleManager(this.real);
@@ -363,6 +471,11 @@ class DelegatingGoogleMap implements GoogleMap {
 		@Override
 		public void onCameraChange(CameraPosition cameraPosition) {
 			markerManager.onCameraChange(cameraPosition);
+			polylineManager.onCameraChange(cameraPosition);
+			polygonManager.onCameraChange(cameraPosition);
+			circleManager.onCameraChange(cameraPosition);
+			groundOverlayManager.onCameraChange(cameraPosition);
+			tileOverlayManager.onCameraChange(cameraPosition);
 			if (onCameraChangeListener != null) {
 				onCameraChangeListener.onCameraChange(cameraPosition);
 			}
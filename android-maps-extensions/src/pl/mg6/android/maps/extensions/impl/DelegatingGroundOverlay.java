@@ -16,22 +16,27 @@
 package pl.mg6.android.maps.extensions.impl;
 
 import pl.mg6.android.maps.extensions.GroundOverlay;
+import pl.mg6.android.maps.extensions.lazy.LazyGroundOverlay;
 
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
 
 class DelegatingGroundOverlay implements GroundOverlay {
 
-	private com.google.android.gms.maps.model.GroundOverlay real;
+	private LazyGroundOverlay real;
 	private GroundOverlayManager manager;
 
 	private Object data;
 
-	DelegatingGroundOverlay(com.google.android.gms.maps.model.GroundOverlay real, GroundOverlayManager manager) {
+	DelegatingGroundOverlay(LazyGroundOverlay real, GroundOverlayManager manager) {
 		this.real = real;
 		this.manager = manager;
 	}
 
+	LazyGroundOverlay getReal() {
+		return real;
+	}
+
 	@Override
 	public float getBearing() {
 		return real.getBearing();
@@ -55,6 +60,8 @@ class DelegatingGroundOverlay implements GroundOverlay {
 	@Deprecated
 	@Override
 	public String getId() {
+		// created through manager first, so that it is released again when culled
+		manager.onIdRequest(this);
 		return real.getId();
 	}
 
@@ -102,21 +109,25 @@ class DelegatingGroundOverlay implements GroundOverlay {
 	@Override
 	public void setDimensions(float width, float height) {
 		real.setDimensions(width, height);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
 	public void setDimensions(float width) {
 		real.setDimensions(width);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
 	public void setPosition(LatLng position) {
 		real.setPosition(position);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
 	public void setPositionFromBounds(LatLngBounds bounds) {
 		real.setPositionFromBounds(bounds);
+		manager.onGeometryChange(this);
 	}
 
 	@Override
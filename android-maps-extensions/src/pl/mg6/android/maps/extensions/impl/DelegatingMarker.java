@@ -18,6 +18,7 @@ package pl.mg6.android.maps.extensions.impl;
 import java.util.List;
 
 import pl.mg6.android.maps.extensions.AnimationSettings;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
 import pl.mg6.android.maps.extensions.Marker;
 import pl.mg6.android.maps.extensions.lazy.LazyMarker;
 
@@ -28,15 +29,17 @@ class DelegatingMarker implements Marker {
 
 	private LazyMarker real;
 	private MarkerManager manager;
+	private MetricsRecorder metrics;
 
 	private Object data;
 
 	private LatLng position;
 	private boolean visible;
 
-	DelegatingMarker(LazyMarker real, MarkerManager manager) {
+	DelegatingMarker(LazyMarker real, MarkerManager manager, MetricsRecorder metrics) {
 		this.real = real;
 		this.manager = manager;
+		this.metrics = metrics;
 
 		this.position = real.getPosition();
 		this.visible = real.isVisible();
@@ -117,7 +120,13 @@ class DelegatingMarker implements Marker {
 	@Override
 	public void remove() {
 		manager.onRemove(this);
-		real.remove();
+		if (real.getMarker() != null) {
+			long start = metrics.begin(Operation.REMOVE_MARKER);
+			real.remove();
+			metrics.end(Operation.REMOVE_MARKER, start, 1);
+		} else {
+			real.remove();
+		}
 	}
 
 	@Override
@@ -143,7 +152,7 @@ class DelegatingMarker implements Marker {
 	@Override
 	public void setPosition(LatLng position) {
 		this.position = position;
-		real.setPosition(position);
+		setRealPosition(position);
 		manager.onPositionChange(this);
 	}
 
@@ -197,7 +206,14 @@ class DelegatingMarker implements Marker {
 	}
 
 	void changeVisible(boolean visible) {
-		real.setVisible(this.visible && visible);
+		visible = this.visible && visible;
+		if (visible && real.getMarker() == null) {
+			long start = metrics.begin(Operation.CREATE_MARKER);
+			real.setVisible(true);
+			metrics.end(Operation.CREATE_MARKER, start, 1);
+		} else {
+			real.setVisible(visible);
+		}
 	}
 
 	void clearCachedPosition() {
@@ -209,6 +225,16 @@ class DelegatingMarker implements Marker {
 	}
 
 	void setVirtualPosition(LatLng position) {
-		real.setPosition(position);
+		setRealPosition(position);
+	}
+
+	private void setRealPosition(LatLng position) {
+		if (real.getMarker() != null) {
+			long start = metrics.begin(Operation.SET_MARKER_POSITION);
+			real.setPosition(position);
+			metrics.end(Operation.SET_MARKER_POSITION, start, 1);
+		} else {
+			real.setPosition(position);
+		}
 	}
 }
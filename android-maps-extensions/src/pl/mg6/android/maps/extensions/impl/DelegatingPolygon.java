@@ -15,6 +15,8 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import pl.mg6.android.maps.extensions.Polygon;
@@ -27,12 +29,43 @@ class DelegatingPolygon implements Polygon {
 	private PolygonManager manager;
 
 	private Object data;
+	// copies of what was given by user, so reading them does not go through native code; real polygon has less points when clipped
+	private List<LatLng> points;
+	private List<List<LatLng>> holes;
+	private PolyGeometry geometry;
 
-	DelegatingPolygon(com.google.android.gms.maps.model.Polygon real, PolygonManager manager) {
+	private boolean clipped;
+	// null when clipping is disabled or whole world is visible
+	private ShapeClipper clipper;
+	// what real polygon was last updated with, so that camera changes which would not change it are not sent to the map
+	private int realOutcome = ShapeClipper.ALL_POINTS;
+	private ShapeClipper realClipper;
+
+	DelegatingPolygon(com.google.android.gms.maps.model.Polygon real, List<LatLng> points, List<? extends List<LatLng>> holes, PolygonManager manager) {
 		this.real = real;
+		this.points = new ArrayList<LatLng>(points);
+		this.holes = copyHoles(holes);
+		this.geometry = new PolyGeometry(this.points, this.holes, true);
 		this.manager = manager;
 	}
 
+	private static List<List<LatLng>> copyHoles(List<? extends List<LatLng>> holes) {
+		List<List<LatLng>> copy = new ArrayList<List<LatLng>>(holes.size());
+		for (List<LatLng> hole : holes) {
+			copy.add(new ArrayList<LatLng>(hole));
+		}
+		return copy;
+	}
+
+	@Override
+	public boolean contains(LatLng position) {
+		return geometry.contains(position);
+	}
+
+	PolyGeometry getGeometry() {
+		return geometry;
+	}
+
 	@Override
 	public Object getData() {
 		return data;
@@ -45,7 +78,7 @@ class DelegatingPolygon implements Polygon {
 
 	@Override
 	public List<List<LatLng>> getHoles() {
-		return real.getHoles();
+		return copyHoles(holes);
 	}
 
 	@Deprecated
@@ -56,7 +89,7 @@ class DelegatingPolygon implements Polygon {
 
 	@Override
 	public List<LatLng> getPoints() {
-		return real.getPoints();
+		return new ArrayList<LatLng>(points);
 	}
 
 	@Override
@@ -74,6 +107,11 @@ class DelegatingPolygon implements Polygon {
 		return real.getZIndex();
 	}
 
+	@Override
+	public boolean isClipped() {
+		return clipped;
+	}
+
 	@Override
 	public boolean isGeodesic() {
 		return real.isGeodesic();
@@ -107,12 +145,89 @@ class DelegatingPolygon implements Polygon {
 
 	@Override
 	public void setHoles(List<? extends List<LatLng>> holes) {
-		real.setHoles(holes);
+		this.holes = copyHoles(holes);
+		geometry = new PolyGeometry(points, this.holes, true);
+		if (clipper != null) {
+			realOutcome = ShapeClipper.UNKNOWN;
+			updateRealShape();
+		} else {
+			real.setHoles(holes);
+		}
+		manager.onGeometryChange(this);
 	}
 
 	@Override
 	public void setPoints(List<LatLng> points) {
-		real.setPoints(points);
+		this.points = new ArrayList<LatLng>(points);
+		geometry = new PolyGeometry(this.points, holes, true);
+		if (clipper != null) {
+			realOutcome = ShapeClipper.UNKNOWN;
+			updateRealShape();
+		} else {
+			real.setPoints(points);
+		}
+		manager.onGeometryChange(this);
+	}
+
+	@Override
+	public void setClipped(boolean clipped) {
+		if (clipped == this.clipped) {
+			return;
+		}
+		this.clipped = clipped;
+		clipper = clipped ? manager.getClipper() : null;
+		updateRealShape();
+		manager.onClippedChange(this);
+	}
+
+	void onCameraChange(ShapeClipper clipper) {
+		this.clipper = clipper;
+		updateRealShape();
+	}
+
+	private void updateRealShape() {
+		if (clipper == null) {
+			realClipper = null;
+			if (realOutcome != ShapeClipper.ALL_POINTS) {
+				realOutcome = ShapeClipper.ALL_POINTS;
+				real.setPoints(points);
+				real.setHoles(holes);
+			}
+			return;
+		}
+		if (realOutcome == ShapeClipper.SOME_POINTS && clipper.equals(realClipper)) {
+			return;
+		}
+		List<LatLng> clippedPoints = clipper.clip(geometry.getXs(0), geometry.getYs(0), true);
+		int outcome = ShapeClipper.getOutcome(clippedPoints);
+		boolean unchanged = outcome == realOutcome && outcome != ShapeClipper.SOME_POINTS;
+		realOutcome = outcome;
+		realClipper = clipper;
+		if (unchanged) {
+			return;
+		}
+		if (outcome == ShapeClipper.ALL_POINTS) {
+			// holes lie within outline, so they are not clipped either
+			real.setPoints(points);
+			real.setHoles(holes);
+			return;
+		}
+		if (outcome == ShapeClipper.NO_POINTS) {
+			real.setPoints(clippedPoints);
+			real.setHoles(Collections.<List<LatLng>> emptyList());
+			return;
+		}
+		real.setPoints(clippedPoints);
+		List<List<LatLng>> clippedHoles = new ArrayList<List<LatLng>>(holes.size());
+		for (int i = 0; i < holes.size(); i++) {
+			List<LatLng> clippedHole = clipper.clip(geometry.getXs(i + 1), geometry.getYs(i + 1), true);
+			if (clippedHole == null) {
+				clippedHoles.add(holes.get(i));
+			} else if (!clippedHole.isEmpty()) {
+				clippedHoles.add(clippedHole);
+			}
+		}
+		real.setHoles(clippedHoles);
 	}
 
 	@Override
@@ -123,6 +238,7 @@ class DelegatingPolygon implements Polygon {
 	@Override
 	public void setStrokeWidth(float strokeWidth) {
 		real.setStrokeWidth(strokeWidth);
+		manager.onStrokeWidthChange(strokeWidth);
 	}
 
 	@Override
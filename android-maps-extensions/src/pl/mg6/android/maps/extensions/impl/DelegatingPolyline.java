@@ -15,6 +15,7 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import pl.mg6.android.maps.extensions.Polyline;
@@ -27,12 +28,35 @@ class DelegatingPolyline implements Polyline {
 	private PolylineManager manager;
 
 	private Object data;
+	// copy of what was given by user, real polyline has less points when simplified or clipped
+	private List<LatLng> points;
+	private PolyGeometry geometry;
 
-	DelegatingPolyline(com.google.android.gms.maps.model.Polyline real, PolylineManager manager) {
+	private PolylineSimplifier simplifier;
+	private int simplifiedZoom;
+	private boolean clipped;
+	// null when clipping is disabled or whole world is visible
+	private ShapeClipper clipper;
+	// what real polyline was last updated with, so that camera changes which would not change it are not sent to the map
+	private int realOutcome = ShapeClipper.ALL_POINTS;
+	private ShapeClipper realClipper;
+	private double realTolerance;
+
+	/**
+	 * @param points
+	 *            not copied, must not be modified by caller later
+	 */
+	DelegatingPolyline(com.google.android.gms.maps.model.Polyline real, List<LatLng> points, PolylineManager manager) {
 		this.real = real;
+		this.points = points;
+		this.geometry = new PolyGeometry(points, null, false);
 		this.manager = manager;
 	}
 
+	PolyGeometry getGeometry() {
+		return geometry;
+	}
+
 	@Override
 	public int getColor() {
 		return real.getColor();
@@ -51,7 +75,7 @@ class DelegatingPolyline implements Polyline {
 
 	@Override
 	public List<LatLng> getPoints() {
-		return real.getPoints();
+		return new ArrayList<LatLng>(points);
 	}
 
 	@Override
@@ -64,11 +88,21 @@ class DelegatingPolyline implements Polyline {
 		return real.getZIndex();
 	}
 
+	@Override
+	public boolean isClipped() {
+		return clipped;
+	}
+
 	@Override
 	public boolean isGeodesic() {
 		return real.isGeodesic();
 	}
 
+	@Override
+	public boolean isSimplified() {
+		return simplifier != null;
+	}
+
 	@Override
 	public boolean isVisible() {
 		return real.isVisible();
@@ -95,9 +129,118 @@ class DelegatingPolyline implements Polyline {
 		real.setGeodesic(geodesic);
 	}
 
+	@Override
+	public void setClipped(boolean clipped) {
+		if (clipped == this.clipped) {
+			return;
+		}
+		this.clipped = clipped;
+		clipper = clipped ? manager.getClipper() : null;
+		updateRealPoints();
+		manager.onAdjustmentChange(this);
+	}
+
+	@Override
+	public void setEncodedPoints(String encodedPath) {
+		setEncodedPoints(encodedPath, 0.0);
+	}
+
+	@Override
+	public void setEncodedPoints(String encodedPath, double tolerance) {
+		setOwnedPoints(manager.decode(encodedPath, tolerance));
+	}
+
 	@Override
 	public void setPoints(List<LatLng> points) {
-		real.setPoints(points);
+		setOwnedPoints(new ArrayList<LatLng>(points));
+	}
+
+	private void setOwnedPoints(List<LatLng> points) {
+		this.points = points;
+		geometry = new PolyGeometry(points, null, false);
+		if (simplifier != null) {
+			simplifier = new PolylineSimplifier(geometry.getXs(0), geometry.getYs(0));
+		}
+		realOutcome = ShapeClipper.UNKNOWN;
+		updateRealPoints();
+		manager.onGeometryChange(this);
+	}
+
+	@Override
+	public void setSimplified(boolean simplified) {
+		if (simplified == isSimplified()) {
+			return;
+		}
+		if (simplified) {
+			simplifier = new PolylineSimplifier(geometry.getXs(0), geometry.getYs(0));
+			simplifiedZoom = (int) manager.getZoom();
+		} else {
+			simplifier = null;
+		}
+		updateRealPoints();
+		manager.onAdjustmentChange(this);
+	}
+
+	/**
+	 * @return true if points of real polyline depend on camera position
+	 */
+	boolean isAdjusted() {
+		return simplifier != null || clipped;
+	}
+
+	void onCameraChange(float zoom, ShapeClipper clipper) {
+		boolean changed = false;
+		if (simplifier != null && (int) zoom != simplifiedZoom) {
+			simplifiedZoom = (int) zoom;
+			changed = true;
+		}
+		if (clipped) {
+			this.clipper = clipper;
+			changed = true;
+		}
+		if (changed) {
+			updateRealPoints();
+		}
+	}
+
+	private void updateRealPoints() {
+		double tolerance = simplifier != null ? getTolerance(simplifiedZoom) : 0.0;
+		if (realOutcome == ShapeClipper.SOME_POINTS && tolerance == realTolerance && clipper != null && clipper.equals(realClipper)) {
+			return;
+		}
+		List<LatLng> clippedPoints = null;
+		if (clipper != null) {
+			double[] xs = geometry.getXs(0);
+			double[] ys = geometry.getYs(0);
+			if (simplifier != null) {
+				xs = simplifier.filter(xs, tolerance);
+				ys = simplifier.filter(ys, tolerance);
+			}
+			clippedPoints = clipper.clip(xs, ys, false);
+		}
+		int outcome = ShapeClipper.getOutcome(clippedPoints);
+		boolean unchanged = outcome == realOutcome && (outcome == ShapeClipper.NO_POINTS || outcome == ShapeClipper.ALL_POINTS && tolerance == realTolerance);
+		realOutcome = outcome;
+		realClipper = clipper;
+		realTolerance = tolerance;
+		if (unchanged) {
+			return;
+		}
+		if (clippedPoints != null) {
+			real.setPoints(clippedPoints);
+		} else if (simplifier != null) {
+			real.setPoints(simplifier.simplify(points, tolerance));
+		} else {
+			real.setPoints(points);
+		}
+	}
+
+	/**
+	 * @return size of a pixel at given zoom level in units of {@link pl.mg6.android.maps.extensions.utils.SphericalMercator}, as world is 256 pixels
+	 *         wide at zoom 0
+	 */
+	private static double getTolerance(int zoom) {
+		return 360.0 / 256.0 / (1 << zoom);
 	}
 
 	@Override
@@ -108,6 +251,7 @@ class DelegatingPolyline implements Polyline {
 	@Override
 	public void setWidth(float width) {
 		real.setWidth(width);
+		manager.onWidthChange(width);
 	}
 
 	@Override
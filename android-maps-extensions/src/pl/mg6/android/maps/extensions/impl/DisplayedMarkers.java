@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import pl.mg6.android.maps.extensions.GoogleMap.OnDisplayedMarkersChangeListener;
+import pl.mg6.android.maps.extensions.Marker;
+import android.os.Handler;
+import android.os.Handler.Callback;
+import android.os.Message;
+
+/**
+ * Set of markers that could be clicked by user, updated by clustering strategies as it changes.
+ */
+class DisplayedMarkers {
+
+	private final IndexedList<Marker> markers = new IndexedList<Marker>();
+
+	private OnDisplayedMarkersChangeListener listener;
+	// net changes since last notification, marker added and removed in between is in neither
+	private final Set<Marker> added = new LinkedHashSet<Marker>();
+	private final Set<Marker> removed = new LinkedHashSet<Marker>();
+	private boolean notifyPending;
+	private Handler notifier;
+
+	List<Marker> getMarkers() {
+		return markers;
+	}
+
+	void add(Marker marker) {
+		if (markers.addElement(marker) && listener != null) {
+			if (!removed.remove(marker)) {
+				added.add(marker);
+			}
+			scheduleNotify();
+		}
+	}
+
+	void remove(Marker marker) {
+		if (markers.removeElement(marker) && listener != null) {
+			if (!added.remove(marker)) {
+				removed.add(marker);
+			}
+			scheduleNotify();
+		}
+	}
+
+	void replace(Marker oldMarker, Marker newMarker) {
+		if (oldMarker != null) {
+			remove(oldMarker);
+		}
+		if (newMarker != null) {
+			add(newMarker);
+		}
+	}
+
+	void clear() {
+		if (listener != null) {
+			for (int i = 0; i < markers.size(); i++) {
+				Marker marker = markers.get(i);
+				if (!added.remove(marker)) {
+					removed.add(marker);
+				}
+			}
+			scheduleNotify();
+		}
+		markers.clearElements();
+	}
+
+	void setListener(OnDisplayedMarkersChangeListener listener) {
+		this.listener = listener;
+		added.clear();
+		removed.clear();
+		if (notifier != null) {
+			notifier.removeMessages(0);
+			notifyPending = false;
+		}
+	}
+
+	private void scheduleNotify() {
+		if (!notifyPending) {
+			if (notifier == null) {
+				notifier = new Handler(new Callback() {
+					public boolean handleMessage(Message msg) {
+						notifyListener();
+						return true;
+					}
+				});
+			}
+			notifier.sendEmptyMessage(0);
+			notifyPending = true;
+		}
+	}
+
+	void notifyListener() {
+		notifyPending = false;
+		if (listener == null || added.isEmpty() && removed.isEmpty()) {
+			return;
+		}
+		List<Marker> addedList = new ArrayList<Marker>(added);
+		List<Marker> removedList = new ArrayList<Marker>(removed);
+		added.clear();
+		removed.clear();
+		listener.onDisplayedMarkersChange(addedList, removedList);
+	}
+}
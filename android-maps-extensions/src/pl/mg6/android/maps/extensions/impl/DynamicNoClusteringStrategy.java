@@ -31,12 +31,15 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 	private IGoogleMap map;
 	private Set<DelegatingMarker> markers = new HashSet<DelegatingMarker>();
 	private LatLngBounds visibleRegionBounds;
+	private DisplayedMarkers displayedMarkers;
 
-	public DynamicNoClusteringStrategy(IGoogleMap map, List<DelegatingMarker> markers) {
+	public DynamicNoClusteringStrategy(IGoogleMap map, List<DelegatingMarker> markers, DisplayedMarkers displayedMarkers) {
 		this.map = map;
+		this.displayedMarkers = displayedMarkers;
 		for (DelegatingMarker marker : markers) {
 			if (marker.isVisible()) {
 				this.markers.add(marker);
+				displayedMarkers.add(marker);
 			}
 		}
 		showMarkersInVisibleRegion();
@@ -45,6 +48,7 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 	@Override
 	public void cleanup() {
 		markers.clear();
+		displayedMarkers.clear();
 	}
 
 	@Override
@@ -58,6 +62,7 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 			return;
 		}
 		addMarker(marker);
+		displayedMarkers.add(marker);
 	}
 
 	@Override
@@ -66,6 +71,7 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 			return;
 		}
 		markers.remove(marker);
+		displayedMarkers.remove(marker);
 	}
 
 	@Override
@@ -85,9 +91,11 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 	public void onVisibilityChangeRequest(DelegatingMarker marker, boolean visible) {
 		if (visible) {
 			addMarker(marker);
+			displayedMarkers.add(marker);
 		} else {
 			markers.remove(marker);
 			marker.changeVisible(false);
+			displayedMarkers.remove(marker);
 		}
 	}
 
@@ -109,7 +117,7 @@ class DynamicNoClusteringStrategy implements ClusteringStrategy {
 
 	@Override
 	public List<Marker> getDisplayedMarkers() {
-		return null;
+		return displayedMarkers.getMarkers();
 	}
 
 	@Override
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Decodes polylines in Google encoded polyline algorithm format straight into primitive arrays, which are reused between calls.
+ * 
+ * https://developers.google.com/maps/documentation/utilities/polylinealgorithm
+ */
+class EncodedPolylineDecoder {
+
+	private double[] latitudes = new double[64];
+	private double[] longitudes = new double[64];
+	private int count;
+
+	/**
+	 * @param tolerance
+	 *            in meters; point closer than that to previous decoded point is skipped, except the last one
+	 * @throws IllegalArgumentException
+	 *             when encoded path is malformed
+	 */
+	void decode(String encodedPath, double tolerance) {
+		count = 0;
+		// skipped point is written after last decoded one without increasing count
+		boolean pending = false;
+		double metersPerDegree = Math.toRadians(LatLngUtils.EARTH_RADIUS);
+		double squaredTolerance = tolerance * tolerance;
+		int length = encodedPath.length();
+		int index = 0;
+		int latitude = 0;
+		int longitude = 0;
+		while (index < length) {
+			int value = 0;
+			int shift = 0;
+			int b;
+			do {
+				b = readChar(encodedPath, index++, length);
+				value |= (b & 0x1f) << shift;
+				shift += 5;
+			} while (b >= 0x20);
+			latitude += (value & 1) != 0 ? ~(value >> 1) : (value >> 1);
+			value = 0;
+			shift = 0;
+			do {
+				b = readChar(encodedPath, index++, length);
+				value |= (b & 0x1f) << shift;
+				shift += 5;
+			} while (b >= 0x20);
+			longitude += (value & 1) != 0 ? ~(value >> 1) : (value >> 1);
+
+			ensureCapacity(count + 1);
+			double lat = latitude * 1e-5;
+			double lng = longitude * 1e-5;
+			latitudes[count] = lat;
+			longitudes[count] = lng;
+			if (count > 0 && tolerance > 0.0) {
+				double dy = (lat - latitudes[count - 1]) * metersPerDegree;
+				double dx = (lng - longitudes[count - 1]) * metersPerDegree * Math.cos(Math.toRadians(lat));
+				if (dx * dx + dy * dy < squaredTolerance) {
+					pending = true;
+					continue;
+				}
+			}
+			pending = false;
+			count++;
+		}
+		if (pending) {
+			count++;
+		}
+	}
+
+	private static int readChar(String encodedPath, int index, int length) {
+		if (index >= length) {
+			throw new IllegalArgumentException("Malformed encoded path at index " + index);
+		}
+		int b = encodedPath.charAt(index) - 63;
+		if (b < 0 || b > 0x3f) {
+			throw new IllegalArgumentException("Malformed encoded path at index " + index);
+		}
+		return b;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > latitudes.length) {
+			int newLength = Math.max(capacity, latitudes.length * 2);
+			double[] newLatitudes = new double[newLength];
+			double[] newLongitudes = new double[newLength];
+			System.arraycopy(latitudes, 0, newLatitudes, 0, count);
+			System.arraycopy(longitudes, 0, newLongitudes, 0, count);
+			latitudes = newLatitudes;
+			longitudes = newLongitudes;
+		}
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return new list of decoded points
+	 */
+	List<LatLng> toLatLngs() {
+		List<LatLng> points = new ArrayList<LatLng>(count);
+		for (int i = 0; i < count; i++) {
+			points.add(new LatLng(latitudes[i], longitudes[i]));
+		}
+		return points;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+/**
+ * Index of items positioned on the globe, supporting bounds, radius and nearest items queries.
+ */
+class GeoIndex<T> {
+
+	private static final double MIN_SEARCH_RADIUS = 100.0;
+	private static final double MAX_SEARCH_RADIUS = Math.PI * LatLngUtils.EARTH_RADIUS;
+
+	// longitude as x, latitude as y
+	private final QuadTree<T> tree = new QuadTree<T>(-180.0, -90.0, 180.0, 90.0);
+
+	int size() {
+		return tree.size();
+	}
+
+	void add(T item, LatLng position) {
+		tree.add(item, position.longitude, position.latitude);
+	}
+
+	void update(T item, LatLng position) {
+		tree.update(item, position.longitude, position.latitude);
+	}
+
+	boolean remove(T item) {
+		return tree.remove(item);
+	}
+
+	void clear() {
+		tree.clear();
+	}
+
+	void visit(LatLngBounds bounds, QuadTree.Visitor<? super T> visitor) {
+		visit(bounds.southwest.latitude, bounds.southwest.longitude, bounds.northeast.latitude, bounds.northeast.longitude, visitor);
+	}
+
+	/**
+	 * Adds items not further than radius to result, closest first.
+	 */
+	void findWithinRadius(LatLng center, double radius, List<? super T> result) {
+		List<Entry<T>> entries = new ArrayList<Entry<T>>();
+		collectWithinRadius(center, radius, entries);
+		sortAndUnwrap(entries, entries.size(), result);
+	}
+
+	/**
+	 * Adds up to count items to result, closest first.
+	 */
+	void findNearest(LatLng center, int count, List<? super T> result) {
+		if (count <= 0 || tree.size() == 0) {
+			return;
+		}
+		count = Math.min(count, tree.size());
+		// radius of a circle containing requested number of items if they were uniformly distributed
+		double radius = 2.0 * LatLngUtils.EARTH_RADIUS * Math.sqrt((double) count / tree.size());
+		radius = Math.max(radius, MIN_SEARCH_RADIUS);
+		List<Entry<T>> entries = new ArrayList<Entry<T>>();
+		while (true) {
+			collectWithinRadius(center, radius, entries);
+			// items outside radius are further than all collected, so collected ones include the closest
+			if (entries.size() >= count || radius >= MAX_SEARCH_RADIUS) {
+				sortAndUnwrap(entries, count, result);
+				return;
+			}
+			entries.clear();
+			radius *= 2.0;
+		}
+	}
+
+	private void collectWithinRadius(LatLng center, final double radius, final List<Entry<T>> entries) {
+		final double latitude = center.latitude;
+		final double longitude = center.longitude;
+		QuadTree.Visitor<T> visitor = new QuadTree.Visitor<T>() {
+
+			@Override
+			public void visit(T item, double x, double y) {
+				double distance = LatLngUtils.distanceBetween(latitude, longitude, y, x);
+				if (distance <= radius) {
+					entries.add(new Entry<T>(item, distance));
+				}
+			}
+		};
+		double angularRadius = radius / LatLngUtils.EARTH_RADIUS;
+		if (angularRadius >= Math.PI) {
+			tree.visit(-180.0, -90.0, 180.0, 90.0, visitor);
+			return;
+		}
+		double deltaLatitude = Math.toDegrees(angularRadius);
+		double south = latitude - deltaLatitude;
+		double north = latitude + deltaLatitude;
+		if (south <= -90.0 || north >= 90.0) {
+			// circle contains a pole, so all longitudes are covered
+			tree.visit(-180.0, Math.max(south, -90.0), 180.0, Math.min(north, 90.0), visitor);
+			return;
+		}
+		double sinDeltaLongitude = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+		if (sinDeltaLongitude >= 1.0) {
+			tree.visit(-180.0, south, 180.0, north, visitor);
+			return;
+		}
+		double deltaLongitude = Math.toDegrees(Math.asin(sinDeltaLongitude));
+		double west = longitude - deltaLongitude;
+		double east = longitude + deltaLongitude;
+		if (west < -180.0) {
+			west += 360.0;
+		}
+		if (east > 180.0) {
+			east -= 360.0;
+		}
+		visit(south, west, north, east, visitor);
+	}
+
+	private void visit(double south, double west, double north, double east, QuadTree.Visitor<? super T> visitor) {
+		if (west <= east) {
+			tree.visit(west, south, east, north, visitor);
+		} else {
+			// crossing 180th meridian
+			tree.visit(west, south, 180.0, north, visitor);
+			tree.visit(-180.0, south, east, north, visitor);
+		}
+	}
+
+	private static <T> void sortAndUnwrap(List<Entry<T>> entries, int count, List<? super T> result) {
+		Collections.sort(entries, Entry.BY_DISTANCE);
+		count = Math.min(count, entries.size());
+		for (int i = 0; i < count; i++) {
+			result.add(entries.get(i).item);
+		}
+	}
+
+	private static class Entry<T> {
+
+		private static final Comparator<Entry<?>> BY_DISTANCE = new Comparator<Entry<?>>() {
+
+			@Override
+			public int compare(Entry<?> lhs, Entry<?> rhs) {
+				return Double.compare(lhs.distance, rhs.distance);
+			}
+		};
+
+		private final T item;
+		private final double distance;
+
+		Entry(T item, double distance) {
+			this.item = item;
+			this.distance = distance;
+		}
+	}
+}
@@ -15,14 +15,15 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.AnimationSettings;
 import pl.mg6.android.maps.extensions.ClusteringSettings;
-import pl.mg6.android.maps.extensions.ClusteringSettings.IconDataProvider;
+import pl.mg6.android.maps.extensions.ClusteringSettings.CenterPolicy;
+import pl.mg6.android.maps.extensions.ClusteringSettings.WeightProvider;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
 import pl.mg6.android.maps.extensions.Marker;
 import pl.mg6.android.maps.extensions.utils.SphericalMercator;
 import android.support.v4.util.LongSparseArray;
@@ -49,12 +50,32 @@ class GridClusteringStrategy implements ClusteringStrategy {
 	private int[] visibleClusters = new int[4];
 
 	private LongSparseArray<ClusterMarker> clusters = new LongSparseArray<ClusterMarker>();
+	// reused on every zoom change to avoid allocations proportional to markers count
+	private LongSparseArray<ClusterMarker> newClusters = new LongSparseArray<ClusterMarker>();
+	private long[] clusterIds = new long[16];
 
+	private DisplayedMarkers displayedMarkers;
 	private ClusterRefresher refresher;
-	private IconDataProvider iconDataProvider;
-
-	public GridClusteringStrategy(ClusteringSettings settings, IGoogleMap map, List<DelegatingMarker> markers, ClusterRefresher refresher) {
-		this.iconDataProvider = settings.getIconDataProvider();
+	private ClusterIconCache iconCache;
+	private MetricsRecorder metrics;
+	private CenterPolicy centerPolicy;
+	private WeightProvider weightProvider;
+
+	public GridClusteringStrategy(ClusteringSettings settings, IGoogleMap map, List<DelegatingMarker> markers, DisplayedMarkers displayedMarkers,
+			ClusterRefresher refresher, MetricsRecorder metrics) {
+		this.metrics = metrics;
+		this.iconCache = new ClusterIconCache(settings, metrics, new ClusterIconCache.OnIconDataReadyListener() {
+
+			@Override
+			public void onIconDataReady(int bucket, MarkerOptions iconData) {
+				for (int i = 0; i < clusters.size(); i++) {
+					clusters.valueAt(i).updateIcon(bucket, iconData);
+				}
+			}
+		});
+		this.iconCache.warmUp(settings.getIconWarmUpMinCount(), settings.getIconWarmUpMaxCount());
+		this.centerPolicy = settings.getCenterPolicy();
+		this.weightProvider = settings.getWeightProvider();
 		this.addMarkersDynamically = settings.isAddMarkersDynamically();
 		this.baseClusterSize = settings.getClusterSize();
 		this.map = map;
@@ -64,6 +85,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 				this.markers.put(m, null);
 			}
 		}
+		this.displayedMarkers = displayedMarkers;
 		this.refresher = refresher;
 		this.oldZoom = -1;
 		this.zoom = Math.round(map.getCameraPosition().zoom);
@@ -79,7 +101,9 @@ class GridClusteringStrategy implements ClusteringStrategy {
 		}
 		clusters.clear();
 		markers.clear();
+		displayedMarkers.clear();
 		refresher.cleanup();
+		iconCache.cleanup();
 		if (DEBUG_GRID) {
 			if (debugHelper != null) {
 				debugHelper.cleanup();
@@ -126,8 +150,12 @@ class GridClusteringStrategy implements ClusteringStrategy {
 	}
 
 	private boolean isPositionInVisibleClusters(LatLng position) {
-		int y = convLat(position.latitude);
-		int x = convLng(position.longitude);
+		return isPositionInVisibleClusters(position.latitude, position.longitude);
+	}
+
+	private boolean isPositionInVisibleClusters(double latitude, double longitude) {
+		int y = convLat(latitude);
+		int x = convLng(longitude);
 		int[] b = visibleClusters;
 		return b[0] <= y && y <= b[2] && (b[1] <= x && x <= b[3] || b[1] > b[3] && (b[1] <= x || x <= b[3]));
 	}
@@ -155,6 +183,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 		}
 		ClusterMarker oldCluster = markers.get(marker);
 		if (oldCluster != null && isMarkerInCluster(marker, oldCluster)) {
+			oldCluster.update(marker);
 			refresh(oldCluster);
 		} else {
 			if (oldCluster != null) {
@@ -178,15 +207,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 
 	@Override
 	public List<Marker> getDisplayedMarkers() {
-		List<Marker> displayedMarkers = new ArrayList<Marker>();
-		for (int i = 0; i < clusters.size(); i++) {
-			ClusterMarker cluster = clusters.valueAt(i);
-			Marker displayedMarker = cluster.getDisplayedMarker();
-			if (displayedMarker != null) {
-				displayedMarkers.add(displayedMarker);
-			}
-		}
-		return displayedMarkers;
+		return displayedMarkers.getMarkers();
 	}
 
 	@Override
@@ -258,7 +279,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 			return;
 		}
 		ClusterMarker cluster = markers.get(marker);
-		if (cluster.getMarkersInternal().size() == 1) {
+		if (cluster.getMarkersCount() == 1) {
 			cluster.refresh();
 			marker.forceShowInfoWindow();
 		}
@@ -269,6 +290,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 	}
 
 	private void recalculate() {
+		long start = metrics.begin(Operation.RECALCULATE);
 		if (addMarkersDynamically) {
 			calculateVisibleClusters();
 		}
@@ -284,6 +306,7 @@ class GridClusteringStrategy implements ClusteringStrategy {
 			}
 		}
 		refresher.refreshAll();
+		metrics.end(Operation.RECALCULATE, start, markers.size());
 	}
 
 	private boolean zoomedIn() {
@@ -291,18 +314,22 @@ class GridClusteringStrategy implements ClusteringStrategy {
 	}
 
 	private void splitClusters() {
-		LongSparseArray<ClusterMarker> newClusters = new LongSparseArray<ClusterMarker>();
+		long start = metrics.begin(Operation.SPLIT_CLUSTERS);
+		int oldCount = clusters.size();
+		newClusters.clear();
 		for (int i = 0; i < clusters.size(); i++) {
 			ClusterMarker cluster = clusters.valueAt(i);
-			List<DelegatingMarker> ms = cluster.getMarkersInternal();
-			if (ms.isEmpty()) {
+			int count = cluster.getMarkersCount();
+			if (count == 0) {
 				cluster.removeVirtual();
 				continue;
 			}
-			long[] clusterIds = new long[ms.size()];
+			if (clusterIds.length < count) {
+				clusterIds = new long[Math.max(count, clusterIds.length * 2)];
+			}
 			boolean allSame = true;
-			for (int j = 0; j < ms.size(); j++) {
-				clusterIds[j] = calculateClusterId(ms.get(j).getPosition());
+			for (int j = 0; j < count; j++) {
+				clusterIds[j] = calculateClusterId(cluster.getLatitude(j), cluster.getLongitude(j));
 				if (clusterIds[j] != clusterIds[0]) {
 					allSame = false;
 				}
@@ -312,67 +339,87 @@ class GridClusteringStrategy implements ClusteringStrategy {
 				newClusters.put(clusterIds[0], cluster);
 			} else {
 				cluster.removeVirtual();
-				for (int j = 0; j < ms.size(); j++) {
-					cluster = newClusters.get(clusterIds[j]);
-					if (cluster == null) {
-						cluster = new ClusterMarker(this);
-						cluster.setClusterId(clusterIds[j]);
-						newClusters.put(clusterIds[j], cluster);
-						if (!addMarkersDynamically || isPositionInVisibleClusters(ms.get(j).getPosition())) {
-							refresh(cluster);
+				cluster.clearDisplayedMarker();
+				// new clusters are sized first, so that each allocates its arrays once
+				for (int j = 0; j < count; j++) {
+					ClusterMarker newCluster = newClusters.get(clusterIds[j]);
+					if (newCluster == null) {
+						newCluster = new ClusterMarker(this);
+						newCluster.setClusterId(clusterIds[j]);
+						newClusters.put(clusterIds[j], newCluster);
+						if (!addMarkersDynamically || isPositionInVisibleClusters(cluster.getLatitude(j), cluster.getLongitude(j))) {
+							refresh(newCluster);
 						}
 					}
-					cluster.add(ms.get(j));
-					markers.put(ms.get(j), cluster);
+					newCluster.reserve(1);
+				}
+				for (int j = 0; j < count; j++) {
+					DelegatingMarker marker = cluster.getMarker(j);
+					ClusterMarker newCluster = newClusters.get(clusterIds[j]);
+					newCluster.add(marker);
+					markers.put(marker, newCluster);
 				}
 			}
 		}
-		clusters = newClusters;
+		swapClusters();
+		metrics.end(Operation.SPLIT_CLUSTERS, start, oldCount);
 	}
 
 	private void joinClusters() {
-		LongSparseArray<ClusterMarker> newClusters = new LongSparseArray<ClusterMarker>();
-		LongSparseArray<List<ClusterMarker>> oldClusters = new LongSparseArray<List<ClusterMarker>>();
-		for (int i = 0; i < clusters.size(); i++) {
+		long start = metrics.begin(Operation.JOIN_CLUSTERS);
+		int oldCount = clusters.size();
+		newClusters.clear();
+		if (clusterIds.length < oldCount) {
+			clusterIds = new long[Math.max(oldCount, clusterIds.length * 2)];
+		}
+		// first cluster falling into joined cell is reused and sized for all markers merged into it in the second pass
+		for (int i = 0; i < oldCount; i++) {
 			ClusterMarker cluster = clusters.valueAt(i);
-			List<DelegatingMarker> ms = cluster.getMarkersInternal();
-			if (ms.isEmpty()) {
+			int count = cluster.getMarkersCount();
+			if (count == 0) {
 				cluster.removeVirtual();
 				continue;
 			}
-			long clusterId = calculateClusterId(ms.get(0).getPosition());
-			List<ClusterMarker> clusterList = oldClusters.get(clusterId);
-			if (clusterList == null) {
-				clusterList = new ArrayList<ClusterMarker>();
-				oldClusters.put(clusterId, clusterList);
-			}
-			clusterList.add(cluster);
-		}
-		for (int i = 0; i < oldClusters.size(); i++) {
-			long clusterId = oldClusters.keyAt(i);
-			List<ClusterMarker> clusterList = oldClusters.valueAt(i);
-			if (clusterList.size() == 1) {
-				ClusterMarker cluster = clusterList.get(0);
+			long clusterId = calculateClusterId(cluster.getLatitude(0), cluster.getLongitude(0));
+			clusterIds[i] = clusterId;
+			ClusterMarker target = newClusters.get(clusterId);
+			if (target == null) {
 				cluster.setClusterId(clusterId);
 				newClusters.put(clusterId, cluster);
 			} else {
-				ClusterMarker cluster = new ClusterMarker(this);
-				cluster.setClusterId(clusterId);
-				newClusters.put(clusterId, cluster);
-				if (!addMarkersDynamically || isPositionInVisibleClusters(clusterList.get(0).getMarkersInternal().get(0).getPosition())) {
-					refresh(cluster);
-				}
-				for (ClusterMarker old : clusterList) {
-					old.removeVirtual();
-					List<DelegatingMarker> ms = old.getMarkersInternal();
-					for (DelegatingMarker m : ms) {
-						cluster.add(m);
-						markers.put(m, cluster);
-					}
-				}
+				target.reserve(count);
+			}
+		}
+		for (int i = 0; i < oldCount; i++) {
+			ClusterMarker cluster = clusters.valueAt(i);
+			int count = cluster.getMarkersCount();
+			if (count == 0) {
+				continue;
+			}
+			ClusterMarker target = newClusters.get(clusterIds[i]);
+			if (target == cluster) {
+				continue;
+			}
+			cluster.removeVirtual();
+			cluster.clearDisplayedMarker();
+			for (int j = 0; j < count; j++) {
+				DelegatingMarker marker = cluster.getMarker(j);
+				target.add(marker);
+				markers.put(marker, target);
+			}
+			if (!addMarkersDynamically || isPositionInVisibleClusters(target.getLatitude(0), target.getLongitude(0))) {
+				refresh(target);
 			}
 		}
+		swapClusters();
+		metrics.end(Operation.JOIN_CLUSTERS, start, oldCount);
+	}
+
+	private void swapClusters() {
+		LongSparseArray<ClusterMarker> oldClusters = clusters;
 		clusters = newClusters;
+		newClusters = oldClusters;
+		newClusters.clear();
 	}
 
 	private void addMarkersInVisibleRegion() {
@@ -398,8 +445,12 @@ class GridClusteringStrategy implements ClusteringStrategy {
 	}
 
 	private long calculateClusterId(LatLng position) {
-		long y = convLat(position.latitude);
-		long x = convLng(position.longitude);
+		return calculateClusterId(position.latitude, position.longitude);
+	}
+
+	private long calculateClusterId(double latitude, double longitude) {
+		long y = convLat(latitude);
+		long x = convLng(longitude);
 		long ret = (y << 32) + x;
 		return ret;
 	}
@@ -416,8 +467,43 @@ class GridClusteringStrategy implements ClusteringStrategy {
 		return baseClusterSize / (1 << zoom);
 	}
 
-	com.google.android.gms.maps.model.Marker createMarker(int markersCount, LatLng position) {
-		MarkerOptions mo = iconDataProvider.getIconData(markersCount);
-		return map.addMarker(markerOptions.position(position).icon(mo.getIcon()).anchor(mo.getAnchorU(), mo.getAnchorV()));
+	CenterPolicy getCenterPolicy() {
+		return centerPolicy;
+	}
+
+	double getWeight(DelegatingMarker marker) {
+		if (centerPolicy != CenterPolicy.WEIGHTED_MEAN || weightProvider == null) {
+			return 1.0;
+		}
+		return weightProvider.getWeight(marker);
+	}
+
+	void onDisplayedMarkerChange(Marker oldDisplayedMarker, Marker newDisplayedMarker) {
+		displayedMarkers.replace(oldDisplayedMarker, newDisplayedMarker);
+	}
+
+	int getIconBucket(int markersCount) {
+		return iconCache.getBucket(markersCount);
+	}
+
+	com.google.android.gms.maps.model.Marker createMarker(int iconBucket, LatLng position) {
+		MarkerOptions mo = iconCache.getIconData(iconBucket);
+		long start = metrics.begin(Operation.CREATE_MARKER);
+		com.google.android.gms.maps.model.Marker marker = map.addMarker(markerOptions.position(position).icon(mo.getIcon())
+				.anchor(mo.getAnchorU(), mo.getAnchorV()));
+		metrics.end(Operation.CREATE_MARKER, start, 1);
+		return marker;
+	}
+
+	void removeMarker(com.google.android.gms.maps.model.Marker marker) {
+		long start = metrics.begin(Operation.REMOVE_MARKER);
+		marker.remove();
+		metrics.end(Operation.REMOVE_MARKER, start, 1);
+	}
+
+	void setMarkerPosition(com.google.android.gms.maps.model.Marker marker, LatLng position) {
+		long start = metrics.begin(Operation.SET_MARKER_POSITION);
+		marker.setPosition(position);
+		metrics.end(Operation.SET_MARKER_POSITION, start, 1);
 	}
 }
@@ -15,42 +15,165 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.GroundOverlay;
+import pl.mg6.android.maps.extensions.impl.RTree.Visitor;
+import pl.mg6.android.maps.extensions.lazy.LazyGroundOverlay;
 
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 
 class GroundOverlayManager {
 
+	// fractions of visible size added on every side; ground overlays are created inside smaller and released outside larger bounds
+	private static final double CREATE_MARGIN = 0.5;
+	private static final double RELEASE_MARGIN = 1.5;
+
 	private final IGoogleMap factory;
 
-	private final Map<com.google.android.gms.maps.model.GroundOverlay, GroundOverlay> groundOverlays;
+	private final Map<LazyGroundOverlay, DelegatingGroundOverlay> groundOverlays;
+	private final IndexedList<GroundOverlay> groundOverlaysList = new IndexedList<GroundOverlay>();
+	// only ground overlays with known extent, others are never culled
+	private final RTree<DelegatingGroundOverlay> index = new RTree<DelegatingGroundOverlay>();
+	// bounds ground overlays are indexed with, so that only these can be released and created again
+	private final Map<DelegatingGroundOverlay, MercatorBounds> indexedBounds = new HashMap<DelegatingGroundOverlay, MercatorBounds>();
+
+	private boolean cullingEnabled;
+	private MercatorBounds createBounds;
+	private final IndexedList<DelegatingGroundOverlay> createdGroundOverlays = new IndexedList<DelegatingGroundOverlay>();
 
 	public GroundOverlayManager(IGoogleMap factory) {
 		this.factory = factory;
-		this.groundOverlays = new HashMap<com.google.android.gms.maps.model.GroundOverlay, GroundOverlay>();
+		this.groundOverlays = new HashMap<LazyGroundOverlay, DelegatingGroundOverlay>();
 	}
 
 	public GroundOverlay addGroundOverlay(GroundOverlayOptions groundOverlayOptions) {
-		com.google.android.gms.maps.model.GroundOverlay real = factory.addGroundOverlay(groundOverlayOptions);
-		GroundOverlay groundOverlay = new DelegatingGroundOverlay(real, this);
+		LazyGroundOverlay real = new LazyGroundOverlay(factory, groundOverlayOptions);
+		DelegatingGroundOverlay groundOverlay = new DelegatingGroundOverlay(real, this);
 		groundOverlays.put(real, groundOverlay);
+		groundOverlaysList.addElement(groundOverlay);
+		onGeometryChange(groundOverlay);
 		return groundOverlay;
 	}
 
 	public void clear() {
 		groundOverlays.clear();
+		groundOverlaysList.clearElements();
+		index.clear();
+		indexedBounds.clear();
+		createdGroundOverlays.clearElements();
 	}
 
 	public List<GroundOverlay> getGroundOverlays() {
-		return new ArrayList<GroundOverlay>(groundOverlays.values());
+		return groundOverlaysList;
+	}
+
+	/**
+	 * When enabled, real ground overlays are created only near visible region and released when camera moves far away.
+	 */
+	public void setCullingEnabled(boolean cullingEnabled) {
+		this.cullingEnabled = cullingEnabled;
+		if (cullingEnabled) {
+			updateCulling();
+		} else {
+			createBounds = null;
+			for (int i = 0; i < groundOverlaysList.size(); i++) {
+				create((DelegatingGroundOverlay) groundOverlaysList.get(i));
+			}
+		}
+	}
+
+	public void onCameraChange(CameraPosition cameraPosition) {
+		if (cullingEnabled) {
+			updateCulling();
+		}
+	}
+
+	private void updateCulling() {
+		MercatorBounds visibleBounds = MercatorBounds.fromVisibleRegion(factory);
+		MercatorBounds releaseBounds = visibleBounds.expand(RELEASE_MARGIN);
+		for (int i = createdGroundOverlays.size() - 1; i >= 0; i--) {
+			DelegatingGroundOverlay groundOverlay = createdGroundOverlays.get(i);
+			MercatorBounds bounds = indexedBounds.get(groundOverlay);
+			if (bounds != null && !releaseBounds.intersects(bounds)) {
+				groundOverlay.getReal().release();
+				createdGroundOverlays.removeElement(groundOverlay);
+			}
+		}
+		createBounds = visibleBounds.expand(CREATE_MARGIN);
+		if (createBounds.coversAllLongitudes()) {
+			for (int i = 0; i < groundOverlaysList.size(); i++) {
+				create((DelegatingGroundOverlay) groundOverlaysList.get(i));
+			}
+		} else {
+			Visitor<DelegatingGroundOverlay> creator = new Visitor<DelegatingGroundOverlay>() {
+				@Override
+				public void visit(DelegatingGroundOverlay groundOverlay) {
+					create(groundOverlay);
+				}
+			};
+			for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+				index.visit(createBounds.getMinX() + shift, createBounds.getMinY(), createBounds.getMaxX() + shift, createBounds.getMaxY(), creator);
+			}
+		}
+	}
+
+	private void create(DelegatingGroundOverlay groundOverlay) {
+		groundOverlay.getReal().create();
+		createdGroundOverlays.addElement(groundOverlay);
+	}
+
+	/**
+	 * @return bounds covering ground overlay with any anchor and bearing, null if not known
+	 */
+	private static MercatorBounds getBounds(DelegatingGroundOverlay groundOverlay) {
+		LazyGroundOverlay real = groundOverlay.getReal();
+		LatLngBounds bounds = real.getBounds();
+		if (bounds != null) {
+			return MercatorBounds.fromLatLngBounds(bounds);
+		}
+		LatLng position = real.getPosition();
+		float height = real.getHeight();
+		if (position == null || height == GroundOverlayOptions.NO_DIMENSION) {
+			// height depends on image aspect ratio
+			return null;
+		}
+		float width = real.getWidth();
+		return MercatorBounds.around(position, Math.sqrt(width * width + height * height));
+	}
+
+	void onGeometryChange(DelegatingGroundOverlay groundOverlay) {
+		MercatorBounds bounds = getBounds(groundOverlay);
+		if (bounds == null) {
+			index.remove(groundOverlay);
+			indexedBounds.remove(groundOverlay);
+		} else {
+			index.add(groundOverlay, bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+			indexedBounds.put(groundOverlay, bounds);
+		}
+		if (!cullingEnabled || bounds == null || createBounds.intersects(bounds)) {
+			create(groundOverlay);
+		}
+	}
+
+	void onIdRequest(DelegatingGroundOverlay groundOverlay) {
+		if (!groundOverlay.getReal().isCreated() && groundOverlays.containsKey(groundOverlay.getReal())) {
+			create(groundOverlay);
+		}
 	}
 
-	public void onRemove(com.google.android.gms.maps.model.GroundOverlay real) {
-		groundOverlays.remove(real);
+	public void onRemove(LazyGroundOverlay real) {
+		DelegatingGroundOverlay groundOverlay = groundOverlays.remove(real);
+		groundOverlaysList.removeElement(groundOverlay);
+		if (groundOverlay != null) {
+			index.remove(groundOverlay);
+			indexedBounds.remove(groundOverlay);
+			createdGroundOverlays.removeElement(groundOverlay);
+		}
 	}
 }
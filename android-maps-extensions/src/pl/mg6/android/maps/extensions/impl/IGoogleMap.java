@@ -15,6 +15,9 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
+import pl.mg6.android.maps.extensions.lazy.LazyCircle.CircleFactory;
+import pl.mg6.android.maps.extensions.lazy.LazyGroundOverlay.GroundOverlayFactory;
+import pl.mg6.android.maps.extensions.lazy.LazyMarker.MarkerFactory;
 import android.graphics.Bitmap;
 import android.location.Location;
 
@@ -47,7 +50,7 @@ import com.google.android.gms.maps.model.TileOverlay;
 import com.google.android.gms.maps.model.TileOverlayOptions;
 
 //TODO: to be deleted when com.google.android.gms.maps.GoogleMap becomes an interface
-interface IGoogleMap {
+interface IGoogleMap extends MarkerFactory, CircleFactory, GroundOverlayFactory {
 
 	Circle addCircle(CircleOptions options);
 
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * List of unique elements with constant time add, remove and contains. Removing moves last element into the freed slot, so order is not kept.
+ *
+ * Public modification methods throw UnsupportedOperationException, so instances can be given to users as live read-only views. Iterators are fail-fast.
+ */
+class IndexedList<E> extends AbstractList<E> implements RandomAccess {
+
+	private final Map<E, Integer> indices = new HashMap<E, Integer>();
+	private Object[] elements = new Object[16];
+	private int size;
+
+	boolean addElement(E element) {
+		if (indices.containsKey(element)) {
+			return false;
+		}
+		if (size == elements.length) {
+			Object[] newElements = new Object[size * 2];
+			System.arraycopy(elements, 0, newElements, 0, size);
+			elements = newElements;
+		}
+		indices.put(element, size);
+		elements[size] = element;
+		size++;
+		modCount++;
+		return true;
+	}
+
+	boolean removeElement(Object element) {
+		Integer index = indices.remove(element);
+		if (index == null) {
+			return false;
+		}
+		size--;
+		if (index != size) {
+			@SuppressWarnings("unchecked")
+			E last = (E) elements[size];
+			elements[index] = last;
+			indices.put(last, index);
+		}
+		elements[size] = null;
+		modCount++;
+		return true;
+	}
+
+	void clearElements() {
+		for (int i = 0; i < size; i++) {
+			elements[i] = null;
+		}
+		indices.clear();
+		size = 0;
+		modCount++;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public E get(int location) {
+		if (location < 0 || location >= size) {
+			throw new IndexOutOfBoundsException("Index: " + location + ", Size: " + size);
+		}
+		return (E) elements[location];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		return indices.containsKey(object);
+	}
+
+	@Override
+	public int indexOf(Object object) {
+		Integer index = indices.get(object);
+		return index != null ? index : -1;
+	}
+
+	@Override
+	public int lastIndexOf(Object object) {
+		return indexOf(object);
+	}
+}
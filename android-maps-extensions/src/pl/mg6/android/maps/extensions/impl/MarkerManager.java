@@ -16,13 +16,15 @@
 package pl.mg6.android.maps.extensions.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.AnimationSettings;
 import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.GoogleMap.MarkerVisitor;
+import pl.mg6.android.maps.extensions.GoogleMap.OnDisplayedMarkersChangeListener;
 import pl.mg6.android.maps.extensions.Marker;
 import pl.mg6.android.maps.extensions.lazy.LazyMarker;
 import pl.mg6.android.maps.extensions.lazy.LazyMarker.OnMarkerCreateListener;
@@ -30,24 +32,32 @@ import android.os.SystemClock;
 
 import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.MarkerOptions;
 
 class MarkerManager implements OnMarkerCreateListener {
 
 	private final IGoogleMap factory;
+	private final MetricsRecorder metrics;
 
 	private final Map<LazyMarker, DelegatingMarker> markers;
+	private final IndexedList<DelegatingMarker> markersList = new IndexedList<DelegatingMarker>();
+	private final List<Marker> markersView = Collections.<Marker> unmodifiableList(markersList);
 	private final Map<com.google.android.gms.maps.model.Marker, LazyMarker> createdMarkers;
+	private final GeoIndex<DelegatingMarker> markersIndex = new GeoIndex<DelegatingMarker>();
 
 	private Marker markerShowingInfoWindow;
 
+	private final DisplayedMarkers displayedMarkers = new DisplayedMarkers();
+
 	private ClusteringSettings clusteringSettings = new ClusteringSettings().enabled(false);
-	private ClusteringStrategy clusteringStrategy = new NoClusteringStrategy(new ArrayList<DelegatingMarker>());
+	private ClusteringStrategy clusteringStrategy = new NoClusteringStrategy(new ArrayList<DelegatingMarker>(), displayedMarkers);
 
 	private final MarkerAnimator markerAnimator = new MarkerAnimator();
 
-	public MarkerManager(IGoogleMap factory) {
+	public MarkerManager(IGoogleMap factory, MetricsRecorder metrics) {
 		this.factory = factory;
+		this.metrics = metrics;
 		this.markers = new HashMap<LazyMarker, DelegatingMarker>();
 		this.createdMarkers = new HashMap<com.google.android.gms.maps.model.Marker, LazyMarker>();
 	}
@@ -55,10 +65,12 @@ class MarkerManager implements OnMarkerCreateListener {
 	public Marker addMarker(MarkerOptions markerOptions) {
 		boolean visible = markerOptions.isVisible();
 		markerOptions.visible(false);
-		LazyMarker realMarker = new LazyMarker(factory.getMap(), markerOptions, this);
+		LazyMarker realMarker = new LazyMarker(factory, markerOptions, this);
 		markerOptions.visible(visible);
-		DelegatingMarker marker = new DelegatingMarker(realMarker, this);
+		DelegatingMarker marker = new DelegatingMarker(realMarker, this, metrics);
 		markers.put(realMarker, marker);
+		markersList.addElement(marker);
+		markersIndex.add(marker, marker.getPosition());
 		clusteringStrategy.onAdd(marker);
 		marker.setVisible(visible);
 		return marker;
@@ -66,27 +78,53 @@ class MarkerManager implements OnMarkerCreateListener {
 
 	public void clear() {
 		markers.clear();
+		markersList.clearElements();
 		createdMarkers.clear();
+		markersIndex.clear();
 		clusteringStrategy.cleanup();
 	}
 
 	public List<Marker> getDisplayedMarkers() {
-		List<Marker> displayedMarkers = clusteringStrategy.getDisplayedMarkers();
-		if (displayedMarkers == null) {
-			displayedMarkers = getMarkers();
-			Iterator<Marker> iterator = displayedMarkers.iterator();
-			while (iterator.hasNext()) {
-				Marker m = iterator.next();
-				if (!m.isVisible()) {
-					iterator.remove();
-				}
-			}
-		}
-		return displayedMarkers;
+		return clusteringStrategy.getDisplayedMarkers();
 	}
 
 	public List<Marker> getMarkers() {
-		return new ArrayList<Marker>(markers.values());
+		return markersView;
+	}
+
+	public List<Marker> getMarkers(LatLngBounds bounds) {
+		final List<Marker> result = new ArrayList<Marker>();
+		visitMarkers(bounds, new MarkerVisitor() {
+
+			@Override
+			public void visit(Marker marker) {
+				result.add(marker);
+			}
+		});
+		return result;
+	}
+
+	public void visitMarkers(LatLngBounds bounds, final MarkerVisitor visitor) {
+		QuadTree.Visitor<DelegatingMarker> indexVisitor = new QuadTree.Visitor<DelegatingMarker>() {
+
+			@Override
+			public void visit(DelegatingMarker marker, double longitude, double latitude) {
+				visitor.visit(marker);
+			}
+		};
+		markersIndex.visit(bounds, indexVisitor);
+	}
+
+	public List<Marker> getNearestMarkers(LatLng position, int count) {
+		List<Marker> result = new ArrayList<Marker>();
+		markersIndex.findNearest(position, count, result);
+		return result;
+	}
+
+	public List<Marker> getMarkersWithinRadius(LatLng center, double radius) {
+		List<Marker> result = new ArrayList<Marker>();
+		markersIndex.findWithinRadius(center, radius, result);
+		return result;
 	}
 
 	public Marker getMarkerShowingInfoWindow() {
@@ -109,12 +147,15 @@ class MarkerManager implements OnMarkerCreateListener {
 	}
 
 	public void onPositionChange(DelegatingMarker marker) {
+		markersIndex.update(marker, marker.getPosition());
 		clusteringStrategy.onPositionChange(marker);
 	}
 
 	public void onRemove(DelegatingMarker marker) {
 		markers.remove(marker.getReal());
+		markersList.removeElement(marker);
 		createdMarkers.remove(marker.getReal().getMarker());
+		markersIndex.remove(marker);
 		clusteringStrategy.onRemove(marker);
 	}
 
@@ -133,17 +174,22 @@ class MarkerManager implements OnMarkerCreateListener {
 		if (!this.clusteringSettings.equals(clusteringSettings)) {
 			this.clusteringSettings = clusteringSettings;
 			clusteringStrategy.cleanup();
-			ArrayList<DelegatingMarker> list = new ArrayList<DelegatingMarker>(markers.values());
-			if (clusteringSettings.isEnabled()) {
-				clusteringStrategy = new GridClusteringStrategy(clusteringSettings, factory, list, new ClusterRefresher());
+			if (clusteringSettings.getTileIconProvider() != null) {
+				clusteringStrategy = new TileRenderingStrategy(clusteringSettings, factory, markersList, displayedMarkers, metrics);
+			} else if (clusteringSettings.isEnabled()) {
+				clusteringStrategy = new GridClusteringStrategy(clusteringSettings, factory, markersList, displayedMarkers, new ClusterRefresher(metrics), metrics);
 			} else if (clusteringSettings.isAddMarkersDynamically()) {
-				clusteringStrategy = new DynamicNoClusteringStrategy(factory, list);
+				clusteringStrategy = new DynamicNoClusteringStrategy(factory, markersList, displayedMarkers);
 			} else {
-				clusteringStrategy = new NoClusteringStrategy(list);
+				clusteringStrategy = new NoClusteringStrategy(markersList, displayedMarkers);
 			}
 		}
 	}
 
+	public void setOnDisplayedMarkersChangeListener(OnDisplayedMarkersChangeListener listener) {
+		displayedMarkers.setListener(listener);
+	}
+
 	public void setMarkerShowingInfoWindow(Marker marker) {
 		this.markerShowingInfoWindow = marker;
 	}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Draws marker icons centered at their positions. Points are replaced as a whole from the main thread, tiles are drawn on background threads
+ * from whichever index was current when drawing started.
+ */
+class MarkerTileProvider implements TileProvider {
+
+	private static final int TILE_MASK = (1 << 29) - 1;
+
+	private final int tileSize;
+
+	private volatile TileIndex<Bitmap> index;
+	// half of the largest icon in tile sizes
+	private volatile double margin;
+	// tiles returned since map was last asked to clear its cache, including empty ones
+	private final Set<Long> servedTiles = new HashSet<Long>();
+
+	MarkerTileProvider(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	void setIndex(TileIndex<Bitmap> index, int maxIconSize) {
+		this.margin = Math.min(maxIconSize / 2.0 / tileSize, 1.0);
+		this.index = index;
+	}
+
+	/**
+	 * @param xs
+	 *            positions in world size units, like in {@link TileIndex}
+	 * @param iconSize
+	 *            size of the largest icon drawn at any of these positions
+	 * @return true if a tile returned since last {@link #clearServedTiles()} may have icon drawn at one of given positions
+	 */
+	boolean isAnyServedTileNear(double[] xs, double[] ys, int count, int iconSize) {
+		if (count == 0) {
+			return false;
+		}
+		double iconMargin = Math.min(iconSize / 2.0 / tileSize, 1.0);
+		synchronized (servedTiles) {
+			for (long key : servedTiles) {
+				int zoom = (int) (key >>> 58);
+				int x = (int) (key >>> 29) & TILE_MASK;
+				int y = (int) key & TILE_MASK;
+				int tilesCount = 1 << zoom;
+				for (int i = 0; i < count; i++) {
+					double tileX = xs[i] * tilesCount - x;
+					double tileY = ys[i] * tilesCount - y;
+					// icons near antimeridian are drawn on both sides
+					if (tileX > 1.0 + iconMargin) {
+						tileX -= tilesCount;
+					} else if (tileX < -iconMargin) {
+						tileX += tilesCount;
+					}
+					if (-iconMargin <= tileX && tileX <= 1.0 + iconMargin && -iconMargin <= tileY && tileY <= 1.0 + iconMargin) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	void clearServedTiles() {
+		synchronized (servedTiles) {
+			servedTiles.clear();
+		}
+	}
+
+	/**
+	 * @return null when index was replaced while drawing, so that map asks for this tile again
+	 */
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		long key = ((long) zoom << 58) | ((long) x << 29) | y;
+		synchronized (servedTiles) {
+			servedTiles.add(key);
+		}
+		TileIndex<Bitmap> current = index;
+		Tile tile = drawTile(current, x, y, zoom);
+		synchronized (servedTiles) {
+			if (index != current) {
+				// may be cached by the map after it was asked to clear tiles drawn from old index
+				return null;
+			}
+			// again, in case served tiles were cleared while drawing
+			servedTiles.add(key);
+		}
+		return tile;
+	}
+
+	private Tile drawTile(TileIndex<Bitmap> current, int x, int y, int zoom) {
+		if (current == null || current.size() == 0) {
+			return NO_TILE;
+		}
+		IconDrawer drawer = new IconDrawer();
+		current.visit(x, y, zoom, margin, drawer);
+		if (drawer.bitmap == null) {
+			return NO_TILE;
+		}
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		drawer.bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+		drawer.bitmap.recycle();
+		return new Tile(tileSize, tileSize, stream.toByteArray());
+	}
+
+	private class IconDrawer implements TileIndex.Visitor<Bitmap> {
+
+		private Bitmap bitmap;
+		private Canvas canvas;
+
+		@Override
+		public void visit(Bitmap icon, double x, double y) {
+			if (bitmap == null) {
+				bitmap = Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888);
+				canvas = new Canvas(bitmap);
+			}
+			float left = (float) (x * tileSize - icon.getWidth() / 2.0);
+			float top = (float) (y * tileSize - icon.getHeight() / 2.0);
+			canvas.drawBitmap(icon, left, top, null);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+/**
+ * Rectangle in units of {@link SphericalMercator}. Bounds crossing 180th meridian have maxX above 360.
+ */
+class MercatorBounds {
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+
+	MercatorBounds(double minX, double minY, double maxX, double maxY) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	static MercatorBounds fromLatLngBounds(LatLngBounds bounds) {
+		double minX = SphericalMercator.scaleLongitude(bounds.southwest.longitude);
+		double maxX = SphericalMercator.scaleLongitude(bounds.northeast.longitude);
+		if (maxX < minX) {
+			maxX += 360.0;
+		}
+		double minY = SphericalMercator.scaleLatitude(bounds.southwest.latitude);
+		double maxY = SphericalMercator.scaleLatitude(bounds.northeast.latitude);
+		return new MercatorBounds(minX, minY, maxX, maxY);
+	}
+
+	static MercatorBounds fromVisibleRegion(IGoogleMap map) {
+		return fromLatLngBounds(map.getProjection().getVisibleRegion().latLngBounds);
+	}
+
+	/**
+	 * @param radius
+	 *            in meters
+	 * @return bounds of all points not further than radius from center
+	 */
+	static MercatorBounds around(LatLng center, double radius) {
+		double angularRadius = radius / LatLngUtils.EARTH_RADIUS;
+		double minLatitude = center.latitude - Math.toDegrees(angularRadius);
+		double maxLatitude = center.latitude + Math.toDegrees(angularRadius);
+		double minX, maxX;
+		double sinRadius = Math.sin(Math.min(angularRadius, Math.PI / 2));
+		double cosLatitude = Math.cos(Math.toRadians(center.latitude));
+		if (minLatitude <= -90.0 || maxLatitude >= 90.0 || sinRadius >= cosLatitude) {
+			// contains pole
+			minX = 0.0;
+			maxX = 360.0;
+		} else {
+			double x = SphericalMercator.scaleLongitude(center.longitude);
+			double deltaX = Math.toDegrees(Math.asin(sinRadius / cosLatitude));
+			minX = x - deltaX;
+			maxX = x + deltaX;
+		}
+		return new MercatorBounds(minX, SphericalMercator.scaleLatitude(minLatitude), maxX, SphericalMercator.scaleLatitude(maxLatitude));
+	}
+
+	/**
+	 * @param fraction
+	 *            of width and height added on every side
+	 * @return new bounds, covering all longitudes when wider than the world
+	 */
+	MercatorBounds expand(double fraction) {
+		double marginX = (maxX - minX) * fraction;
+		double marginY = (maxY - minY) * fraction;
+		if (maxX - minX + 2 * marginX >= 360.0) {
+			return new MercatorBounds(Double.NEGATIVE_INFINITY, minY - marginY, Double.POSITIVE_INFINITY, maxY + marginY);
+		}
+		return new MercatorBounds(minX - marginX, minY - marginY, maxX + marginX, maxY + marginY);
+	}
+
+	boolean coversAllLongitudes() {
+		return Double.isInfinite(minX);
+	}
+
+	/**
+	 * Also checks bounds moved by 360 degrees, so it works for any bounds not wider than the world.
+	 */
+	boolean intersects(MercatorBounds other) {
+		if (other.maxY < minY || maxY < other.minY) {
+			return false;
+		}
+		for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+			if (other.minX + shift <= maxX && minX <= other.maxX + shift) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	double getMinX() {
+		return minX;
+	}
+
+	double getMinY() {
+		return minY;
+	}
+
+	double getMaxX() {
+		return maxX;
+	}
+
+	double getMaxY() {
+		return maxY;
+	}
+}
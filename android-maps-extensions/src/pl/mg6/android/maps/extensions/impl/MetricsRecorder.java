@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.lang.reflect.Method;
+
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
+
+/**
+ * Measures operations for {@link MapExtensionsMetrics} and marks them as systrace sections. When neither is enabled {@link #begin(Operation)} and
+ * {@link #end(Operation, long, int)} only check two fields, so they are left in hot paths.
+ */
+class MetricsRecorder {
+
+	private static final String[] SECTION_NAMES;
+	// lowest bit of token returned by begin, so that only opened sections are closed when tracing is toggled in between
+	private static final long SECTION_OPENED = 1L;
+
+	static {
+		Operation[] operations = Operation.values();
+		SECTION_NAMES = new String[operations.length];
+		for (Operation operation : operations) {
+			SECTION_NAMES[operation.ordinal()] = "MapExtensions." + operation.name();
+		}
+	}
+
+	// android.os.Trace is available since API 18, looked up once when sections are first enabled
+	private static boolean traceLookedUp;
+	private static Method beginSection;
+	private static Method endSection;
+
+	private volatile MapExtensionsMetrics metrics;
+	private volatile boolean traceSectionsEnabled;
+
+	void setMetrics(MapExtensionsMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Does nothing before API 18.
+	 */
+	void setTraceSectionsEnabled(boolean enabled) {
+		this.traceSectionsEnabled = enabled && isTraceAvailable();
+	}
+
+	/**
+	 * @return token with start time to be passed to {@link #end(Operation, long, int)}, which must be called on the same thread
+	 */
+	long begin(Operation operation) {
+		long token = metrics != null ? System.nanoTime() & ~SECTION_OPENED : 0L;
+		if (traceSectionsEnabled) {
+			beginSection(SECTION_NAMES[operation.ordinal()]);
+			token |= SECTION_OPENED;
+		}
+		return token;
+	}
+
+	void end(Operation operation, long token, int count) {
+		if ((token & SECTION_OPENED) != 0L) {
+			endSection();
+		}
+		long start = token & ~SECTION_OPENED;
+		MapExtensionsMetrics metrics = this.metrics;
+		// start is 0 when listener was set in between
+		if (metrics != null && start != 0L) {
+			metrics.onOperation(operation, count, System.nanoTime() - start);
+		}
+	}
+
+	boolean isTraceAvailable() {
+		return lookUpTrace();
+	}
+
+	void beginSection(String name) {
+		invoke(beginSection, name);
+	}
+
+	void endSection() {
+		invoke(endSection);
+	}
+
+	private static synchronized boolean lookUpTrace() {
+		if (!traceLookedUp) {
+			traceLookedUp = true;
+			try {
+				Class<?> trace = Class.forName("android.os.Trace");
+				beginSection = trace.getMethod("beginSection", String.class);
+				endSection = trace.getMethod("endSection");
+			} catch (Exception ex) {
+				// older platform or not running on Android at all
+				beginSection = null;
+				endSection = null;
+			}
+		}
+		return beginSection != null;
+	}
+
+	private static void invoke(Method method, Object... args) {
+		try {
+			method.invoke(null, args);
+		} catch (Exception ex) {
+			// sections are a debugging aid, never worth crashing for
+		}
+	}
+}
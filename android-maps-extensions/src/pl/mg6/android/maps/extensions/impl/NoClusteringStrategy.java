@@ -23,17 +23,21 @@ import com.google.android.gms.maps.model.CameraPosition;
 
 class NoClusteringStrategy implements ClusteringStrategy {
 
-	public NoClusteringStrategy(List<DelegatingMarker> markers) {
+	private DisplayedMarkers displayedMarkers;
+
+	public NoClusteringStrategy(List<DelegatingMarker> markers, DisplayedMarkers displayedMarkers) {
+		this.displayedMarkers = displayedMarkers;
 		for (DelegatingMarker marker : markers) {
 			if (marker.isVisible()) {
 				marker.changeVisible(true);
+				displayedMarkers.add(marker);
 			}
 		}
 	}
 
 	@Override
 	public void cleanup() {
-
+		displayedMarkers.clear();
 	}
 
 	@Override
@@ -43,12 +47,14 @@ class NoClusteringStrategy implements ClusteringStrategy {
 
 	@Override
 	public void onAdd(DelegatingMarker marker) {
-
+		if (marker.isVisible()) {
+			displayedMarkers.add(marker);
+		}
 	}
 
 	@Override
 	public void onRemove(DelegatingMarker marker) {
-
+		displayedMarkers.remove(marker);
 	}
 
 	@Override
@@ -59,6 +65,11 @@ class NoClusteringStrategy implements ClusteringStrategy {
 	@Override
 	public void onVisibilityChangeRequest(DelegatingMarker marker, boolean visible) {
 		marker.changeVisible(visible);
+		if (visible) {
+			displayedMarkers.add(marker);
+		} else {
+			displayedMarkers.remove(marker);
+		}
 	}
 
 	@Override
@@ -73,7 +84,7 @@ class NoClusteringStrategy implements ClusteringStrategy {
 
 	@Override
 	public List<Marker> getDisplayedMarkers() {
-		return null;
+		return displayedMarkers.getMarkers();
 	}
 
 	@Override
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.List;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Vertices of polyline or polygon (with holes) in spherical mercator units used by {@link SphericalMercator#scaleLongitude(double)} and
+ * {@link SphericalMercator#scaleLatitude(double)}, where non-geodesic shapes have straight edges.
+ *
+ * Longitudes are unwrapped, so consecutive vertices are never more than 180 degrees apart and x may fall outside [0, 360).
+ */
+class PolyGeometry {
+
+	// below this many edges scanning all of them is fast enough
+	private static final int EDGE_INDEX_MIN_EDGES = 64;
+	private static final int EDGES_PER_BUCKET = 8;
+
+	private final boolean closed;
+	private final double[][] xs;
+	private final double[][] ys;
+
+	private double minX = Double.POSITIVE_INFINITY;
+	private double minY = Double.POSITIVE_INFINITY;
+	private double maxX = Double.NEGATIVE_INFINITY;
+	private double maxY = Double.NEGATIVE_INFINITY;
+
+	// edges of all rings in horizontal buckets, built on first containment test of large polygon
+	private int edgeCount;
+	private int[] bucketStarts;
+	private int[] bucketEdgeRings;
+	private int[] bucketEdgeIndices;
+	private double bucketHeight;
+
+	PolyGeometry(List<LatLng> points, List<? extends List<LatLng>> holes, boolean closed) {
+		this.closed = closed;
+		int rings = 1 + (holes != null ? holes.size() : 0);
+		this.xs = new double[rings][];
+		this.ys = new double[rings][];
+		convert(0, points, Double.NaN);
+		for (int i = 1; i < rings; i++) {
+			convert(i, holes.get(i - 1), xs[0].length > 0 ? xs[0][0] : Double.NaN);
+		}
+	}
+
+	private void convert(int ring, List<LatLng> points, double referenceX) {
+		int count = points.size();
+		double[] ringXs = new double[count];
+		double[] ringYs = new double[count];
+		double previousX = referenceX;
+		for (int i = 0; i < count; i++) {
+			LatLng point = points.get(i);
+			double x = SphericalMercator.scaleLongitude(point.longitude);
+			if (!Double.isNaN(previousX)) {
+				x = unwrap(x, previousX);
+			}
+			ringXs[i] = x;
+			ringYs[i] = SphericalMercator.scaleLatitude(point.latitude);
+			previousX = x;
+			minX = Math.min(minX, x);
+			maxX = Math.max(maxX, x);
+			minY = Math.min(minY, ringYs[i]);
+			maxY = Math.max(maxY, ringYs[i]);
+		}
+		xs[ring] = ringXs;
+		ys[ring] = ringYs;
+		edgeCount += count;
+	}
+
+	private static double unwrap(double x, double previousX) {
+		while (x - previousX > 180.0) {
+			x -= 360.0;
+		}
+		while (x - previousX < -180.0) {
+			x += 360.0;
+		}
+		return x;
+	}
+
+	boolean isEmpty() {
+		return xs[0].length == 0;
+	}
+
+	double[] getXs(int ring) {
+		return xs[ring];
+	}
+
+	double[] getYs(int ring) {
+		return ys[ring];
+	}
+
+	double getMinX() {
+		return minX;
+	}
+
+	double getMinY() {
+		return minY;
+	}
+
+	double getMaxX() {
+		return maxX;
+	}
+
+	double getMaxY() {
+		return maxY;
+	}
+
+	/**
+	 * @return true if point is inside closed shape (and not in its hole) or not further than tolerance from any edge
+	 */
+	boolean hit(double x, double y, double tolerance) {
+		if (x < minX - tolerance || x > maxX + tolerance || y < minY - tolerance || y > maxY + tolerance) {
+			return false;
+		}
+		return closed && contains(x, y) || isNearEdge(x, y, tolerance);
+	}
+
+	/**
+	 * Checks position and its copies shifted by 360 degrees, because unwrapped longitudes may fall outside [-180, 180).
+	 */
+	boolean contains(LatLng position) {
+		double x = SphericalMercator.scaleLongitude(position.longitude);
+		double y = SphericalMercator.scaleLatitude(position.latitude);
+		return contains(x, y) || contains(x - 360.0, y) || contains(x + 360.0, y);
+	}
+
+	/**
+	 * Even-odd rule over all rings, which treats holes as outside.
+	 */
+	boolean contains(double x, double y) {
+		if (!closed || x < minX || x > maxX || y < minY || y > maxY) {
+			return false;
+		}
+		if (edgeCount >= EDGE_INDEX_MIN_EDGES) {
+			return containsIndexed(x, y);
+		}
+		boolean inside = false;
+		for (int ring = 0; ring < xs.length; ring++) {
+			double[] ringXs = xs[ring];
+			double[] ringYs = ys[ring];
+			int count = ringXs.length;
+			for (int i = 0, j = count - 1; i < count; j = i++) {
+				if ((ringYs[i] > y) != (ringYs[j] > y)) {
+					double crossingX = ringXs[i] + (y - ringYs[i]) * (ringXs[j] - ringXs[i]) / (ringYs[j] - ringYs[i]);
+					if (x < crossingX) {
+						inside = !inside;
+					}
+				}
+			}
+		}
+		return inside;
+	}
+
+	private boolean containsIndexed(double x, double y) {
+		if (bucketStarts == null) {
+			buildEdgeIndex();
+		}
+		int bucket = getBucket(y);
+		boolean inside = false;
+		for (int k = bucketStarts[bucket]; k < bucketStarts[bucket + 1]; k++) {
+			double[] ringXs = xs[bucketEdgeRings[k]];
+			double[] ringYs = ys[bucketEdgeRings[k]];
+			int i = bucketEdgeIndices[k];
+			int j = i == 0 ? ringXs.length - 1 : i - 1;
+			if ((ringYs[i] > y) != (ringYs[j] > y)) {
+				double crossingX = ringXs[i] + (y - ringYs[i]) * (ringXs[j] - ringXs[i]) / (ringYs[j] - ringYs[i]);
+				if (x < crossingX) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Every edge is put into all buckets its vertical range overlaps, so edges crossing given y are all in the bucket of y.
+	 */
+	private void buildEdgeIndex() {
+		int bucketCount = Math.max(1, edgeCount / EDGES_PER_BUCKET);
+		bucketHeight = maxY > minY ? (maxY - minY) / bucketCount : 1.0;
+		int[] starts = new int[bucketCount + 1];
+		// counts are kept shifted by one, so prefix sums give start of each bucket
+		for (int ring = 0; ring < xs.length; ring++) {
+			double[] ringYs = ys[ring];
+			for (int i = 0, j = ringYs.length - 1; i < ringYs.length; j = i++) {
+				int first = getBucket(Math.min(ringYs[i], ringYs[j]), bucketCount);
+				int last = getBucket(Math.max(ringYs[i], ringYs[j]), bucketCount);
+				for (int b = first; b <= last; b++) {
+					starts[b + 1]++;
+				}
+			}
+		}
+		for (int b = 0; b < bucketCount; b++) {
+			starts[b + 1] += starts[b];
+		}
+		int[] edgeRings = new int[starts[bucketCount]];
+		int[] edgeIndices = new int[starts[bucketCount]];
+		int[] next = new int[bucketCount];
+		System.arraycopy(starts, 0, next, 0, bucketCount);
+		for (int ring = 0; ring < xs.length; ring++) {
+			double[] ringYs = ys[ring];
+			for (int i = 0, j = ringYs.length - 1; i < ringYs.length; j = i++) {
+				int first = getBucket(Math.min(ringYs[i], ringYs[j]), bucketCount);
+				int last = getBucket(Math.max(ringYs[i], ringYs[j]), bucketCount);
+				for (int b = first; b <= last; b++) {
+					edgeRings[next[b]] = ring;
+					edgeIndices[next[b]] = i;
+					next[b]++;
+				}
+			}
+		}
+		bucketEdgeRings = edgeRings;
+		bucketEdgeIndices = edgeIndices;
+		bucketStarts = starts;
+	}
+
+	private int getBucket(double y) {
+		return getBucket(y, bucketStarts.length - 1);
+	}
+
+	private int getBucket(double y, int bucketCount) {
+		int bucket = (int) ((y - minY) / bucketHeight);
+		return Math.max(0, Math.min(bucket, bucketCount - 1));
+	}
+
+	boolean isNearEdge(double x, double y, double tolerance) {
+		double squaredTolerance = tolerance * tolerance;
+		for (int ring = 0; ring < xs.length; ring++) {
+			double[] ringXs = xs[ring];
+			double[] ringYs = ys[ring];
+			int count = ringXs.length;
+			if (count == 1) {
+				if (squaredDistance(x, y, ringXs[0], ringYs[0]) <= squaredTolerance) {
+					return true;
+				}
+				continue;
+			}
+			int first = closed ? 0 : 1;
+			for (int i = first, j = closed ? count - 1 : 0; i < count; j = i++) {
+				if (squaredDistanceToSegment(x, y, ringXs[j], ringYs[j], ringXs[i], ringYs[i]) <= squaredTolerance) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	static double squaredDistanceToSegment(double x, double y, double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double squaredLength = dx * dx + dy * dy;
+		if (squaredLength == 0.0) {
+			return squaredDistance(x, y, x1, y1);
+		}
+		double t = ((x - x1) * dx + (y - y1) * dy) / squaredLength;
+		if (t <= 0.0) {
+			return squaredDistance(x, y, x1, y1);
+		} else if (t >= 1.0) {
+			return squaredDistance(x, y, x2, y2);
+		}
+		return squaredDistance(x, y, x1 + t * dx, y1 + t * dy);
+	}
+
+	private static double squaredDistance(double x1, double y1, double x2, double y2) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		return dx * dx + dy * dy;
+	}
+}
@@ -15,42 +15,129 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.Polygon;
+import pl.mg6.android.maps.extensions.Shape;
+import pl.mg6.android.maps.extensions.impl.RTree.Visitor;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
 
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.PolygonOptions;
 
 class PolygonManager {
 
 	private final IGoogleMap factory;
 
-	private final Map<com.google.android.gms.maps.model.Polygon, Polygon> polygons;
+	private final Map<com.google.android.gms.maps.model.Polygon, DelegatingPolygon> polygons;
+	private final IndexedList<Polygon> polygonsList = new IndexedList<Polygon>();
+	private final RTree<DelegatingPolygon> index = new RTree<DelegatingPolygon>();
+	private final IndexedList<DelegatingPolygon> clippedPolygons = new IndexedList<DelegatingPolygon>();
+	// upper bound used to widen queries, never decreased
+	private float maxStrokeWidth;
 
 	public PolygonManager(IGoogleMap factory) {
 		this.factory = factory;
-		this.polygons = new HashMap<com.google.android.gms.maps.model.Polygon, Polygon>();
+		this.polygons = new HashMap<com.google.android.gms.maps.model.Polygon, DelegatingPolygon>();
 	}
 
 	public Polygon addPolygon(PolygonOptions polygonOptions) {
 		com.google.android.gms.maps.model.Polygon real = factory.addPolygon(polygonOptions);
-		Polygon polygon = new DelegatingPolygon(real, this);
+		DelegatingPolygon polygon = new DelegatingPolygon(real, polygonOptions.getPoints(), polygonOptions.getHoles(), this);
 		polygons.put(real, polygon);
+		polygonsList.addElement(polygon);
+		onGeometryChange(polygon);
+		onStrokeWidthChange(polygonOptions.getStrokeWidth());
 		return polygon;
 	}
 
 	public void clear() {
 		polygons.clear();
+		polygonsList.clearElements();
+		index.clear();
+		clippedPolygons.clearElements();
 	}
 
 	public List<Polygon> getPolygons() {
-		return new ArrayList<Polygon>(polygons.values());
+		return polygonsList;
+	}
+
+	/**
+	 * Adds visible polygons containing given point or having edge close enough to it.
+	 * 
+	 * @param tolerance
+	 *            in pixels, increased by half of stroke width
+	 * @param unitsPerPixel
+	 *            size of a pixel in units of {@link SphericalMercator}
+	 */
+	public void findPolygonsAt(LatLng position, final float tolerance, final double unitsPerPixel, final List<Shape> result) {
+		double x = SphericalMercator.scaleLongitude(position.longitude);
+		final double y = SphericalMercator.scaleLatitude(position.latitude);
+		double margin = (tolerance + maxStrokeWidth / 2) * unitsPerPixel;
+		// shapes crossing the antimeridian may be visited at more than one shift
+		final Map<DelegatingPolygon, Boolean> found = new IdentityHashMap<DelegatingPolygon, Boolean>();
+		for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+			final double shiftedX = x + shift;
+			index.visit(shiftedX - margin, y - margin, shiftedX + margin, y + margin, new Visitor<DelegatingPolygon>() {
+				@Override
+				public void visit(DelegatingPolygon polygon) {
+					if (!found.containsKey(polygon) && polygon.isVisible()) {
+						double polygonTolerance = (tolerance + polygon.getStrokeWidth() / 2) * unitsPerPixel;
+						if (polygon.getGeometry().hit(shiftedX, y, polygonTolerance)) {
+							result.add(polygon);
+							found.put(polygon, Boolean.TRUE);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	void onGeometryChange(DelegatingPolygon polygon) {
+		PolyGeometry geometry = polygon.getGeometry();
+		if (geometry.isEmpty()) {
+			index.remove(polygon);
+		} else {
+			index.add(polygon, geometry.getMinX(), geometry.getMinY(), geometry.getMaxX(), geometry.getMaxY());
+		}
+	}
+
+	public void onCameraChange(CameraPosition cameraPosition) {
+		if (clippedPolygons.isEmpty()) {
+			return;
+		}
+		ShapeClipper clipper = getClipper();
+		for (int i = 0; i < clippedPolygons.size(); i++) {
+			clippedPolygons.get(i).onCameraChange(clipper);
+		}
+	}
+
+	ShapeClipper getClipper() {
+		return ShapeClipper.forVisibleRegion(factory);
+	}
+
+	void onClippedChange(DelegatingPolygon polygon) {
+		if (polygon.isClipped()) {
+			clippedPolygons.addElement(polygon);
+		} else {
+			clippedPolygons.removeElement(polygon);
+		}
+	}
+
+	void onStrokeWidthChange(float strokeWidth) {
+		maxStrokeWidth = Math.max(maxStrokeWidth, strokeWidth);
 	}
 
 	public void onRemove(com.google.android.gms.maps.model.Polygon real) {
-		polygons.remove(real);
+		DelegatingPolygon polygon = polygons.remove(real);
+		polygonsList.removeElement(polygon);
+		clippedPolygons.removeElement(polygon);
+		if (polygon != null) {
+			index.remove(polygon);
+		}
 	}
 }
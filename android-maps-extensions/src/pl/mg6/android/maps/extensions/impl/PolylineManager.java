@@ -17,40 +17,161 @@ package pl.mg6.android.maps.extensions.impl;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.Polyline;
+import pl.mg6.android.maps.extensions.Shape;
+import pl.mg6.android.maps.extensions.impl.RTree.Visitor;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
 
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.PolylineOptions;
 
 class PolylineManager {
 
 	private final IGoogleMap factory;
 
-	private final Map<com.google.android.gms.maps.model.Polyline, Polyline> polylines;
+	private final Map<com.google.android.gms.maps.model.Polyline, DelegatingPolyline> polylines;
+	private final IndexedList<Polyline> polylinesList = new IndexedList<Polyline>();
+	private final RTree<DelegatingPolyline> index = new RTree<DelegatingPolyline>();
+	private final IndexedList<DelegatingPolyline> adjustedPolylines = new IndexedList<DelegatingPolyline>();
+	// buffers are reused by all polylines
+	private final EncodedPolylineDecoder decoder = new EncodedPolylineDecoder();
+	// upper bound used to widen queries, never decreased
+	private float maxWidth;
 
 	public PolylineManager(IGoogleMap factory) {
 		this.factory = factory;
-		this.polylines = new HashMap<com.google.android.gms.maps.model.Polyline, Polyline>();
+		this.polylines = new HashMap<com.google.android.gms.maps.model.Polyline, DelegatingPolyline>();
+	}
+
+	public Polyline addPolyline(String encodedPath, double tolerance, PolylineOptions polylineOptions) {
+		List<LatLng> points = decode(encodedPath, tolerance);
+		// copy, so options given by user can be reused for other polylines
+		PolylineOptions options = new PolylineOptions();
+		options.addAll(points);
+		options.color(polylineOptions.getColor());
+		options.geodesic(polylineOptions.isGeodesic());
+		options.visible(polylineOptions.isVisible());
+		options.width(polylineOptions.getWidth());
+		options.zIndex(polylineOptions.getZIndex());
+		// options are not visible to user, so their list becomes points of polyline as it is
+		return addPolyline(options, options.getPoints());
 	}
 
 	public Polyline addPolyline(PolylineOptions polylineOptions) {
+		// copy, so that changing options given by user later does not change polyline
+		return addPolyline(polylineOptions, new ArrayList<LatLng>(polylineOptions.getPoints()));
+	}
+
+	private Polyline addPolyline(PolylineOptions polylineOptions, List<LatLng> points) {
 		com.google.android.gms.maps.model.Polyline real = factory.addPolyline(polylineOptions);
-		Polyline polyline = new DelegatingPolyline(real, this);
+		DelegatingPolyline polyline = new DelegatingPolyline(real, points, this);
 		polylines.put(real, polyline);
+		polylinesList.addElement(polyline);
+		onGeometryChange(polyline);
+		onWidthChange(polylineOptions.getWidth());
 		return polyline;
 	}
 
 	public void clear() {
 		polylines.clear();
+		polylinesList.clearElements();
+		index.clear();
+		adjustedPolylines.clearElements();
 	}
 
 	public List<Polyline> getPolylines() {
-		return new ArrayList<Polyline>(polylines.values());
+		return polylinesList;
+	}
+
+	/**
+	 * Adds visible polylines passing close enough to given point.
+	 * 
+	 * @param tolerance
+	 *            in pixels, increased by half of width
+	 * @param unitsPerPixel
+	 *            size of a pixel in units of {@link SphericalMercator}
+	 */
+	public void findPolylinesAt(LatLng position, final float tolerance, final double unitsPerPixel, final List<Shape> result) {
+		double x = SphericalMercator.scaleLongitude(position.longitude);
+		final double y = SphericalMercator.scaleLatitude(position.latitude);
+		double margin = (tolerance + maxWidth / 2) * unitsPerPixel;
+		// shapes crossing the antimeridian may be visited at more than one shift
+		final Map<DelegatingPolyline, Boolean> found = new IdentityHashMap<DelegatingPolyline, Boolean>();
+		for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+			final double shiftedX = x + shift;
+			index.visit(shiftedX - margin, y - margin, shiftedX + margin, y + margin, new Visitor<DelegatingPolyline>() {
+				@Override
+				public void visit(DelegatingPolyline polyline) {
+					if (!found.containsKey(polyline) && polyline.isVisible()) {
+						double polylineTolerance = (tolerance + polyline.getWidth() / 2) * unitsPerPixel;
+						if (polyline.getGeometry().hit(shiftedX, y, polylineTolerance)) {
+							result.add(polyline);
+							found.put(polyline, Boolean.TRUE);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	void onGeometryChange(DelegatingPolyline polyline) {
+		PolyGeometry geometry = polyline.getGeometry();
+		if (geometry.isEmpty()) {
+			index.remove(polyline);
+		} else {
+			index.add(polyline, geometry.getMinX(), geometry.getMinY(), geometry.getMaxX(), geometry.getMaxY());
+		}
+	}
+
+	public void onCameraChange(CameraPosition cameraPosition) {
+		ShapeClipper clipper = null;
+		boolean clipperCalculated = false;
+		for (int i = 0; i < adjustedPolylines.size(); i++) {
+			DelegatingPolyline polyline = adjustedPolylines.get(i);
+			if (polyline.isClipped() && !clipperCalculated) {
+				clipper = getClipper();
+				clipperCalculated = true;
+			}
+			polyline.onCameraChange(cameraPosition.zoom, clipper);
+		}
+	}
+
+	ShapeClipper getClipper() {
+		return ShapeClipper.forVisibleRegion(factory);
+	}
+
+	List<LatLng> decode(String encodedPath, double tolerance) {
+		decoder.decode(encodedPath, tolerance);
+		return decoder.toLatLngs();
+	}
+
+	float getZoom() {
+		return factory.getCameraPosition().zoom;
+	}
+
+	void onAdjustmentChange(DelegatingPolyline polyline) {
+		if (polyline.isAdjusted()) {
+			adjustedPolylines.addElement(polyline);
+		} else {
+			adjustedPolylines.removeElement(polyline);
+		}
+	}
+
+	void onWidthChange(float width) {
+		maxWidth = Math.max(maxWidth, width);
 	}
 
 	public void onRemove(com.google.android.gms.maps.model.Polyline real) {
-		polylines.remove(real);
+		DelegatingPolyline polyline = polylines.remove(real);
+		polylinesList.removeElement(polyline);
+		adjustedPolylines.removeElement(polyline);
+		if (polyline != null) {
+			index.remove(polyline);
+		}
 	}
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Douglas-Peucker simplification computed once for all tolerances. Every vertex gets importance equal to the largest tolerance at which Douglas-Peucker
+ * keeps it, so simplifying is only a filter.
+ */
+class PolylineSimplifier {
+
+	private final double[] importance;
+
+	/**
+	 * @param xs
+	 *            vertices in units of {@link pl.mg6.android.maps.extensions.utils.SphericalMercator}
+	 */
+	PolylineSimplifier(double[] xs, double[] ys) {
+		int count = xs.length;
+		importance = new double[count];
+		if (count == 0) {
+			return;
+		}
+		importance[0] = Double.POSITIVE_INFINITY;
+		importance[count - 1] = Double.POSITIVE_INFINITY;
+		// explicit stack, because recursion depth may reach number of vertices; ranges on stack never overlap, so it cannot hold more
+		int[] firsts = new int[count];
+		int[] lasts = new int[count];
+		double[] limits = new double[count];
+		int size = 0;
+		firsts[size] = 0;
+		lasts[size] = count - 1;
+		limits[size] = Double.POSITIVE_INFINITY;
+		size++;
+		while (size > 0) {
+			size--;
+			int first = firsts[size];
+			int last = lasts[size];
+			double limit = limits[size];
+			int farthest = -1;
+			double maxDistance = -1.0;
+			for (int i = first + 1; i < last; i++) {
+				double distance = PolyGeometry.squaredDistanceToSegment(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+				if (distance > maxDistance) {
+					farthest = i;
+					maxDistance = distance;
+				}
+			}
+			if (farthest == -1) {
+				continue;
+			}
+			// vertex cannot be kept when vertex splitting its range is not
+			double value = Math.min(Math.sqrt(maxDistance), limit);
+			importance[farthest] = value;
+			firsts[size] = first;
+			lasts[size] = farthest;
+			limits[size] = value;
+			size++;
+			firsts[size] = farthest;
+			lasts[size] = last;
+			limits[size] = value;
+			size++;
+		}
+	}
+
+	/**
+	 * @param points
+	 *            same vertices as given to constructor
+	 * @param tolerance
+	 *            maximum distance of removed vertex from simplified line
+	 * @return new list with first, last and all vertices more important than tolerance
+	 */
+	List<LatLng> simplify(List<LatLng> points, double tolerance) {
+		List<LatLng> simplified = new ArrayList<LatLng>();
+		for (int i = 0; i < importance.length; i++) {
+			if (importance[i] > tolerance) {
+				simplified.add(points.get(i));
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * @return new array with values of vertices more important than tolerance
+	 */
+	double[] filter(double[] values, double tolerance) {
+		int count = 0;
+		for (int i = 0; i < importance.length; i++) {
+			if (importance[i] > tolerance) {
+				count++;
+			}
+		}
+		double[] filtered = new double[count];
+		count = 0;
+		for (int i = 0; i < importance.length; i++) {
+			if (importance[i] > tolerance) {
+				filtered[count++] = values[i];
+			}
+		}
+		return filtered;
+	}
+}
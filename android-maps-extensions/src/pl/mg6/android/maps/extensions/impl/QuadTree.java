@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Bucket quadtree of points. Every item knows its leaf, so removing or moving it does not require old coordinates.
+ */
+class QuadTree<T> {
+
+	interface Visitor<T> {
+
+		void visit(T item, double x, double y);
+	}
+
+	private static final int LEAF_CAPACITY = 16;
+	// prevents infinite splitting when many items share the same coordinates
+	private static final int MAX_DEPTH = 24;
+
+	private final Node<T> root;
+	private final Map<T, Node<T>> leaves = new HashMap<T, Node<T>>();
+
+	public QuadTree(double minX, double minY, double maxX, double maxY) {
+		this.root = new Node<T>(null, minX, minY, maxX, maxY, 0);
+	}
+
+	int size() {
+		return leaves.size();
+	}
+
+	void add(T item, double x, double y) {
+		if (leaves.containsKey(item)) {
+			update(item, x, y);
+			return;
+		}
+		insert(root, item, clamp(x, root.minX, root.maxX), clamp(y, root.minY, root.maxY));
+	}
+
+	boolean remove(T item) {
+		Node<T> leaf = leaves.remove(item);
+		if (leaf == null) {
+			return false;
+		}
+		leaf.removeItem(leaf.indexOf(item));
+		for (Node<T> node = leaf; node != null; node = node.parent) {
+			node.size--;
+		}
+		// sizes only grow towards the root, so the topmost small enough ancestor is merged
+		Node<T> nodeToMerge = null;
+		for (Node<T> node = leaf.parent; node != null && node.size <= LEAF_CAPACITY / 2; node = node.parent) {
+			nodeToMerge = node;
+		}
+		if (nodeToMerge != null) {
+			merge(nodeToMerge);
+		}
+		return true;
+	}
+
+	void update(T item, double x, double y) {
+		Node<T> leaf = leaves.get(item);
+		if (leaf == null) {
+			add(item, x, y);
+			return;
+		}
+		x = clamp(x, root.minX, root.maxX);
+		y = clamp(y, root.minY, root.maxY);
+		if (findLeaf(x, y) == leaf) {
+			int index = leaf.indexOf(item);
+			leaf.xs[index] = x;
+			leaf.ys[index] = y;
+		} else {
+			remove(item);
+			insert(root, item, x, y);
+		}
+	}
+
+	void clear() {
+		root.children = null;
+		root.clearItems();
+		root.size = 0;
+		leaves.clear();
+	}
+
+	/**
+	 * Visits items inside rectangle, edges inclusive.
+	 */
+	void visit(double minX, double minY, double maxX, double maxY, Visitor<? super T> visitor) {
+		visit(root, minX, minY, maxX, maxY, visitor);
+	}
+
+	private void visit(Node<T> node, double minX, double minY, double maxX, double maxY, Visitor<? super T> visitor) {
+		if (node.size == 0 || node.minX > maxX || node.maxX < minX || node.minY > maxY || node.maxY < minY) {
+			return;
+		}
+		if (node.children != null) {
+			for (Node<T> child : node.children) {
+				visit(child, minX, minY, maxX, maxY, visitor);
+			}
+			return;
+		}
+		boolean inside = minX <= node.minX && node.maxX <= maxX && minY <= node.minY && node.maxY <= maxY;
+		for (int i = 0; i < node.count; i++) {
+			if (inside || minX <= node.xs[i] && node.xs[i] <= maxX && minY <= node.ys[i] && node.ys[i] <= maxY) {
+				visitor.visit(node.items[i], node.xs[i], node.ys[i]);
+			}
+		}
+	}
+
+	private Node<T> findLeaf(double x, double y) {
+		Node<T> node = root;
+		while (node.children != null) {
+			node = node.childFor(x, y);
+		}
+		return node;
+	}
+
+	private void insert(Node<T> node, T item, double x, double y) {
+		while (node.children != null) {
+			node.size++;
+			node = node.childFor(x, y);
+		}
+		node.size++;
+		node.addItem(item, x, y);
+		leaves.put(item, node);
+		if (node.count > LEAF_CAPACITY && node.depth < MAX_DEPTH) {
+			split(node);
+		}
+	}
+
+	private void split(Node<T> node) {
+		double midX = (node.minX + node.maxX) / 2.0;
+		double midY = (node.minY + node.maxY) / 2.0;
+		int depth = node.depth + 1;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Node<T>[] children = new Node[] {
+				new Node<T>(node, node.minX, node.minY, midX, midY, depth),
+				new Node<T>(node, midX, node.minY, node.maxX, midY, depth),
+				new Node<T>(node, node.minX, midY, midX, node.maxY, depth),
+				new Node<T>(node, midX, midY, node.maxX, node.maxY, depth) };
+		node.children = children;
+		for (int i = 0; i < node.count; i++) {
+			Node<T> child = node.childFor(node.xs[i], node.ys[i]);
+			child.size++;
+			child.addItem(node.items[i], node.xs[i], node.ys[i]);
+			leaves.put(node.items[i], child);
+		}
+		node.clearItems();
+		for (Node<T> child : children) {
+			if (child.count > LEAF_CAPACITY && child.depth < MAX_DEPTH) {
+				split(child);
+			}
+		}
+	}
+
+	private void merge(Node<T> node) {
+		Node<T>[] children = node.children;
+		if (children == null) {
+			return;
+		}
+		node.children = null;
+		for (Node<T> child : children) {
+			collect(child, node);
+		}
+	}
+
+	private void collect(Node<T> from, Node<T> to) {
+		if (from.children != null) {
+			for (Node<T> child : from.children) {
+				collect(child, to);
+			}
+			return;
+		}
+		for (int i = 0; i < from.count; i++) {
+			to.addItem(from.items[i], from.xs[i], from.ys[i]);
+			leaves.put(from.items[i], to);
+		}
+	}
+
+	private static double clamp(double value, double min, double max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	private static class Node<T> {
+
+		private final Node<T> parent;
+		private final double minX, minY, maxX, maxY;
+		private final int depth;
+
+		private Node<T>[] children;
+		// items in whole subtree
+		private int size;
+
+		// items stored in this leaf
+		private T[] items;
+		private double[] xs;
+		private double[] ys;
+		private int count;
+
+		Node(Node<T> parent, double minX, double minY, double maxX, double maxY, int depth) {
+			this.parent = parent;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+			this.depth = depth;
+		}
+
+		Node<T> childFor(double x, double y) {
+			double midX = (minX + maxX) / 2.0;
+			double midY = (minY + maxY) / 2.0;
+			int index = (x >= midX ? 1 : 0) + (y >= midY ? 2 : 0);
+			return children[index];
+		}
+
+		@SuppressWarnings("unchecked")
+		void addItem(T item, double x, double y) {
+			if (items == null) {
+				items = (T[]) new Object[LEAF_CAPACITY + 1];
+				xs = new double[LEAF_CAPACITY + 1];
+				ys = new double[LEAF_CAPACITY + 1];
+			} else if (count == items.length) {
+				T[] newItems = (T[]) new Object[count * 2];
+				System.arraycopy(items, 0, newItems, 0, count);
+				items = newItems;
+				double[] newXs = new double[count * 2];
+				System.arraycopy(xs, 0, newXs, 0, count);
+				xs = newXs;
+				double[] newYs = new double[count * 2];
+				System.arraycopy(ys, 0, newYs, 0, count);
+				ys = newYs;
+			}
+			items[count] = item;
+			xs[count] = x;
+			ys[count] = y;
+			count++;
+		}
+
+		int indexOf(T item) {
+			for (int i = 0; i < count; i++) {
+				if (items[i].equals(item)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		void removeItem(int index) {
+			count--;
+			items[index] = items[count];
+			xs[index] = xs[count];
+			ys[index] = ys[count];
+			items[count] = null;
+		}
+
+		void clearItems() {
+			items = null;
+			xs = null;
+			ys = null;
+			count = 0;
+		}
+	}
+}
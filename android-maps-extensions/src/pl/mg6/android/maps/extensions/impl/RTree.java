@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * R-tree of items with rectangular bounds, using linear split. Every item knows its leaf, so removing it does not require a search.
+ */
+class RTree<T> {
+
+	interface Visitor<T> {
+
+		void visit(T item);
+	}
+
+	private static final int MAX_ENTRIES = 8;
+	private static final int MIN_ENTRIES = 3;
+
+	private Node root = new Node(true);
+	private final Map<T, Node> leaves = new HashMap<T, Node>();
+
+	int size() {
+		return leaves.size();
+	}
+
+	void add(T item, double minX, double minY, double maxX, double maxY) {
+		if (leaves.containsKey(item)) {
+			remove(item);
+		}
+		insert(item, minX, minY, maxX, maxY);
+	}
+
+	boolean remove(T item) {
+		Node leaf = leaves.remove(item);
+		if (leaf == null) {
+			return false;
+		}
+		leaf.removeEntry(leaf.indexOf(item));
+		condense(leaf);
+		return true;
+	}
+
+	void clear() {
+		root = new Node(true);
+		leaves.clear();
+	}
+
+	/**
+	 * Visits items with bounds intersecting rectangle, edges inclusive.
+	 */
+	void visit(double minX, double minY, double maxX, double maxY, Visitor<? super T> visitor) {
+		visit(root, minX, minY, maxX, maxY, visitor);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void visit(Node node, double minX, double minY, double maxX, double maxY, Visitor<? super T> visitor) {
+		for (int i = 0; i < node.count; i++) {
+			if (node.minX[i] <= maxX && minX <= node.maxX[i] && node.minY[i] <= maxY && minY <= node.maxY[i]) {
+				if (node.leaf) {
+					visitor.visit((T) node.entries[i]);
+				} else {
+					visit((Node) node.entries[i], minX, minY, maxX, maxY, visitor);
+				}
+			}
+		}
+	}
+
+	private void insert(T item, double minX, double minY, double maxX, double maxY) {
+		Node node = root;
+		while (!node.leaf) {
+			node = (Node) node.entries[node.chooseSubtree(minX, minY, maxX, maxY)];
+		}
+		addEntry(node, item, minX, minY, maxX, maxY);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addEntry(Node node, Object entry, double minX, double minY, double maxX, double maxY) {
+		node.addEntry(entry, minX, minY, maxX, maxY);
+		if (node.leaf) {
+			leaves.put((T) entry, node);
+		} else {
+			((Node) entry).parent = node;
+		}
+		if (node.count > MAX_ENTRIES) {
+			split(node);
+		} else {
+			adjustBounds(node);
+		}
+	}
+
+	private void split(Node node) {
+		Node sibling = new Node(node.leaf);
+		int[] seeds = pickSeeds(node);
+		// entries are moved to a copy, so node can be refilled
+		Node all = node.copy();
+		node.count = 0;
+		moveEntry(all, seeds[0], node);
+		moveEntry(all, seeds[1], sibling);
+		int remaining = all.count - 2;
+		for (int i = 0; i < all.count; i++) {
+			if (i == seeds[0] || i == seeds[1]) {
+				continue;
+			}
+			Node target;
+			if (node.count + remaining == MIN_ENTRIES) {
+				target = node;
+			} else if (sibling.count + remaining == MIN_ENTRIES) {
+				target = sibling;
+			} else {
+				double nodeEnlargement = node.enlargement(all.minX[i], all.minY[i], all.maxX[i], all.maxY[i]);
+				double siblingEnlargement = sibling.enlargement(all.minX[i], all.minY[i], all.maxX[i], all.maxY[i]);
+				target = nodeEnlargement <= siblingEnlargement ? node : sibling;
+			}
+			moveEntry(all, i, target);
+			remaining--;
+		}
+		if (node == root) {
+			root = new Node(false);
+			root.addEntry(node, node.boundsMinX(), node.boundsMinY(), node.boundsMaxX(), node.boundsMaxY());
+			node.parent = root;
+		} else {
+			adjustBounds(node);
+		}
+		addEntry(node.parent, sibling, sibling.boundsMinX(), sibling.boundsMinY(), sibling.boundsMaxX(), sibling.boundsMaxY());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void moveEntry(Node from, int index, Node to) {
+		Object entry = from.entries[index];
+		to.addEntry(entry, from.minX[index], from.minY[index], from.maxX[index], from.maxY[index]);
+		if (to.leaf) {
+			leaves.put((T) entry, to);
+		} else {
+			((Node) entry).parent = to;
+		}
+	}
+
+	private static int[] pickSeeds(Node node) {
+		int highestMinX = 0, lowestMaxX = 0, highestMinY = 0, lowestMaxY = 0;
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < node.count; i++) {
+			if (node.minX[i] > node.minX[highestMinX]) {
+				highestMinX = i;
+			}
+			if (node.maxX[i] < node.maxX[lowestMaxX]) {
+				lowestMaxX = i;
+			}
+			if (node.minY[i] > node.minY[highestMinY]) {
+				highestMinY = i;
+			}
+			if (node.maxY[i] < node.maxY[lowestMaxY]) {
+				lowestMaxY = i;
+			}
+			minX = Math.min(minX, node.minX[i]);
+			maxX = Math.max(maxX, node.maxX[i]);
+			minY = Math.min(minY, node.minY[i]);
+			maxY = Math.max(maxY, node.maxY[i]);
+		}
+		double separationX = (node.minX[highestMinX] - node.maxX[lowestMaxX]) / Math.max(maxX - minX, Double.MIN_VALUE);
+		double separationY = (node.minY[highestMinY] - node.maxY[lowestMaxY]) / Math.max(maxY - minY, Double.MIN_VALUE);
+		int first, second;
+		if (separationX >= separationY) {
+			first = lowestMaxX;
+			second = highestMinX;
+		} else {
+			first = lowestMaxY;
+			second = highestMinY;
+		}
+		if (first == second) {
+			second = first == 0 ? 1 : 0;
+		}
+		return new int[] { first, second };
+	}
+
+	private void adjustBounds(Node node) {
+		while (node.parent != null) {
+			Node parent = node.parent;
+			int index = parent.indexOf(node);
+			parent.minX[index] = node.boundsMinX();
+			parent.minY[index] = node.boundsMinY();
+			parent.maxX[index] = node.boundsMaxX();
+			parent.maxY[index] = node.boundsMaxY();
+			node = parent;
+		}
+	}
+
+	private void condense(Node leaf) {
+		List<Node> orphans = new ArrayList<Node>();
+		Node node = leaf;
+		while (node != root) {
+			Node parent = node.parent;
+			if (node.count < MIN_ENTRIES) {
+				parent.removeEntry(parent.indexOf(node));
+				orphans.add(node);
+			} else {
+				int index = parent.indexOf(node);
+				parent.minX[index] = node.boundsMinX();
+				parent.minY[index] = node.boundsMinY();
+				parent.maxX[index] = node.boundsMaxX();
+				parent.maxY[index] = node.boundsMaxY();
+			}
+			node = parent;
+		}
+		if (!root.leaf && root.count == 0) {
+			root = new Node(true);
+		}
+		for (Node orphan : orphans) {
+			reinsert(orphan);
+		}
+		while (!root.leaf && root.count == 1) {
+			root = (Node) root.entries[0];
+			root.parent = null;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void reinsert(Node orphan) {
+		for (int i = 0; i < orphan.count; i++) {
+			if (orphan.leaf) {
+				insert((T) orphan.entries[i], orphan.minX[i], orphan.minY[i], orphan.maxX[i], orphan.maxY[i]);
+			} else {
+				// whole subtrees are reinserted item by item, which keeps all leaves at the same level
+				reinsert((Node) orphan.entries[i]);
+			}
+		}
+	}
+
+	private static class Node {
+
+		private final boolean leaf;
+		private Node parent;
+
+		// items for leaves, child nodes otherwise
+		private Object[] entries = new Object[MAX_ENTRIES + 1];
+		private double[] minX = new double[MAX_ENTRIES + 1];
+		private double[] minY = new double[MAX_ENTRIES + 1];
+		private double[] maxX = new double[MAX_ENTRIES + 1];
+		private double[] maxY = new double[MAX_ENTRIES + 1];
+		private int count;
+
+		Node(boolean leaf) {
+			this.leaf = leaf;
+		}
+
+		Node copy() {
+			Node copy = new Node(leaf);
+			copy.entries = entries.clone();
+			copy.minX = minX.clone();
+			copy.minY = minY.clone();
+			copy.maxX = maxX.clone();
+			copy.maxY = maxY.clone();
+			copy.count = count;
+			return copy;
+		}
+
+		void addEntry(Object entry, double entryMinX, double entryMinY, double entryMaxX, double entryMaxY) {
+			entries[count] = entry;
+			minX[count] = entryMinX;
+			minY[count] = entryMinY;
+			maxX[count] = entryMaxX;
+			maxY[count] = entryMaxY;
+			count++;
+		}
+
+		void removeEntry(int index) {
+			count--;
+			entries[index] = entries[count];
+			minX[index] = minX[count];
+			minY[index] = minY[count];
+			maxX[index] = maxX[count];
+			maxY[index] = maxY[count];
+			entries[count] = null;
+		}
+
+		int indexOf(Object entry) {
+			for (int i = 0; i < count; i++) {
+				if (entries[i].equals(entry)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		int chooseSubtree(double entryMinX, double entryMinY, double entryMaxX, double entryMaxY) {
+			int best = 0;
+			double bestEnlargement = Double.POSITIVE_INFINITY;
+			double bestArea = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				double area = (maxX[i] - minX[i]) * (maxY[i] - minY[i]);
+				double enlargedArea = (Math.max(maxX[i], entryMaxX) - Math.min(minX[i], entryMinX)) * (Math.max(maxY[i], entryMaxY) - Math.min(minY[i], entryMinY));
+				double enlargement = enlargedArea - area;
+				if (enlargement < bestEnlargement || enlargement == bestEnlargement && area < bestArea) {
+					best = i;
+					bestEnlargement = enlargement;
+					bestArea = area;
+				}
+			}
+			return best;
+		}
+
+		double enlargement(double entryMinX, double entryMinY, double entryMaxX, double entryMaxY) {
+			if (count == 0) {
+				return 0.0;
+			}
+			double nodeMinX = boundsMinX(), nodeMinY = boundsMinY(), nodeMaxX = boundsMaxX(), nodeMaxY = boundsMaxY();
+			double area = (nodeMaxX - nodeMinX) * (nodeMaxY - nodeMinY);
+			double enlargedArea = (Math.max(nodeMaxX, entryMaxX) - Math.min(nodeMinX, entryMinX)) * (Math.max(nodeMaxY, entryMaxY) - Math.min(nodeMinY, entryMinY));
+			return enlargedArea - area;
+		}
+
+		double boundsMinX() {
+			double value = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				value = Math.min(value, minX[i]);
+			}
+			return value;
+		}
+
+		double boundsMinY() {
+			double value = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				value = Math.min(value, minY[i]);
+			}
+			return value;
+		}
+
+		double boundsMaxX() {
+			double value = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				value = Math.max(value, maxX[i]);
+			}
+			return value;
+		}
+
+		double boundsMaxY() {
+			double value = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < count; i++) {
+				value = Math.max(value, maxY[i]);
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Clips shapes to visible part of the map expanded on every side, using Sutherland-Hodgman algorithm in units of {@link SphericalMercator}.
+ * 
+ * Parts outside are replaced with lines along clip rectangle, so clipped polygon fills visible area same as original one. Same holds for polylines,
+ * which get extra lines along clip rectangle. These lines are outside visible area when shape is clipped, but camera movement that pans by more
+ * than {@link #MARGIN} of visible size or zooms out by more than one level shows them until camera stops and shape is clipped again.
+ */
+class ShapeClipper {
+
+	// fraction of visible size added on every side, so small camera moves do not show clipped edges
+	private static final double MARGIN = 0.5;
+
+	/**
+	 * Outcomes of clipping remembered by shapes, so that native shape is not updated again when camera stops at a position where it would not
+	 * change.
+	 */
+	static final int UNKNOWN = 0;
+	static final int ALL_POINTS = 1;
+	static final int NO_POINTS = 2;
+	static final int SOME_POINTS = 3;
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+
+	ShapeClipper(double minX, double minY, double maxX, double maxY) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * @return clipper for expanded bounds or null when they cover whole world horizontally
+	 */
+	static ShapeClipper forVisibleRegion(IGoogleMap map) {
+		MercatorBounds bounds = MercatorBounds.fromVisibleRegion(map).expand(MARGIN);
+		if (bounds.coversAllLongitudes()) {
+			return null;
+		}
+		return new ShapeClipper(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+	}
+
+	/**
+	 * @return one of {@link #ALL_POINTS}, {@link #NO_POINTS} or {@link #SOME_POINTS} for result of {@link #clip(double[], double[], boolean)}
+	 */
+	static int getOutcome(List<LatLng> clipped) {
+		if (clipped == null) {
+			return ALL_POINTS;
+		}
+		return clipped.isEmpty() ? NO_POINTS : SOME_POINTS;
+	}
+
+	/**
+	 * @param xs
+	 *            unwrapped, like in {@link PolyGeometry}
+	 * @return null when all vertices are inside and shape can be used as it is, new list of clipped vertices otherwise
+	 */
+	List<LatLng> clip(double[] xs, double[] ys, boolean closed) {
+		int count = xs.length;
+		if (count == 0) {
+			return null;
+		}
+		double shapeMinX = Double.POSITIVE_INFINITY, shapeMinY = Double.POSITIVE_INFINITY;
+		double shapeMaxX = Double.NEGATIVE_INFINITY, shapeMaxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < count; i++) {
+			shapeMinX = Math.min(shapeMinX, xs[i]);
+			shapeMaxX = Math.max(shapeMaxX, xs[i]);
+			shapeMinY = Math.min(shapeMinY, ys[i]);
+			shapeMaxY = Math.max(shapeMaxY, ys[i]);
+		}
+		double shift = findShift(shapeMinX, shapeMaxX);
+		if (Double.isNaN(shift) || shapeMaxY < minY || shapeMinY > maxY) {
+			return new ArrayList<LatLng>();
+		}
+		double left = minX + shift;
+		double right = maxX + shift;
+		if (left <= shapeMinX && shapeMaxX <= right && minY <= shapeMinY && shapeMaxY <= maxY) {
+			return null;
+		}
+		Buffer buffer = new Buffer(xs, ys, count);
+		buffer = clip(buffer, closed, Edge.LEFT, left);
+		buffer = clip(buffer, closed, Edge.RIGHT, right);
+		buffer = clip(buffer, closed, Edge.BOTTOM, minY);
+		buffer = clip(buffer, closed, Edge.TOP, maxY);
+		List<LatLng> clipped = new ArrayList<LatLng>(buffer.count);
+		for (int i = 0; i < buffer.count; i++) {
+			clipped.add(new LatLng(SphericalMercator.toLatitude(buffer.ys[i] - 180.0), buffer.xs[i] - 180.0));
+		}
+		return clipped;
+	}
+
+	/**
+	 * @return multiple of 360 to move clip rectangle by, so it overlaps shape the most, NaN if it never does
+	 */
+	private double findShift(double shapeMinX, double shapeMaxX) {
+		double bestShift = Double.NaN;
+		double bestOverlap = 0.0;
+		for (double shift = -360.0; shift <= 360.0; shift += 360.0) {
+			double overlap = Math.min(shapeMaxX, maxX + shift) - Math.max(shapeMinX, minX + shift);
+			if (overlap >= bestOverlap && (Double.isNaN(bestShift) || overlap > bestOverlap)) {
+				bestShift = shift;
+				bestOverlap = overlap;
+			}
+		}
+		return bestShift;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ShapeClipper)) {
+			return false;
+		}
+		ShapeClipper other = (ShapeClipper) o;
+		return minX == other.minX && minY == other.minY && maxX == other.maxX && maxY == other.maxY;
+	}
+
+	@Override
+	public int hashCode() {
+		long bits = Double.doubleToLongBits(minX);
+		bits = 31 * bits + Double.doubleToLongBits(minY);
+		bits = 31 * bits + Double.doubleToLongBits(maxX);
+		bits = 31 * bits + Double.doubleToLongBits(maxY);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	private static Buffer clip(Buffer input, boolean closed, Edge edge, double value) {
+		Buffer output = new Buffer(input.count + 4);
+		int count = input.count;
+		if (count == 0) {
+			return output;
+		}
+		int first = closed ? 0 : 1;
+		int previous = closed ? count - 1 : 0;
+		boolean previousInside = edge.isInside(input.xs[previous], input.ys[previous], value);
+		if (!closed && previousInside) {
+			output.add(input.xs[0], input.ys[0]);
+		}
+		for (int i = first; i < count; i++) {
+			double x = input.xs[i];
+			double y = input.ys[i];
+			boolean inside = edge.isInside(x, y, value);
+			if (inside != previousInside) {
+				double px = input.xs[previous];
+				double py = input.ys[previous];
+				if (edge.vertical) {
+					output.add(value, py + (y - py) * (value - px) / (x - px));
+				} else {
+					output.add(px + (x - px) * (value - py) / (y - py), value);
+				}
+			}
+			if (inside) {
+				output.add(x, y);
+			}
+			previous = i;
+			previousInside = inside;
+		}
+		return output;
+	}
+
+	private enum Edge {
+
+		LEFT(true, true), RIGHT(true, false), BOTTOM(false, true), TOP(false, false);
+
+		private final boolean vertical;
+		private final boolean minimum;
+
+		private Edge(boolean vertical, boolean minimum) {
+			this.vertical = vertical;
+			this.minimum = minimum;
+		}
+
+		boolean isInside(double x, double y, double value) {
+			double coordinate = vertical ? x : y;
+			return minimum ? coordinate >= value : coordinate <= value;
+		}
+	}
+
+	private static class Buffer {
+
+		private double[] xs;
+		private double[] ys;
+		private int count;
+
+		Buffer(int capacity) {
+			xs = new double[capacity];
+			ys = new double[capacity];
+		}
+
+		Buffer(double[] xs, double[] ys, int count) {
+			this.xs = xs;
+			this.ys = ys;
+			this.count = count;
+		}
+
+		void add(double x, double y) {
+			if (count == xs.length) {
+				double[] newXs = new double[count * 2];
+				double[] newYs = new double[count * 2];
+				System.arraycopy(xs, 0, newXs, 0, count);
+				System.arraycopy(ys, 0, newYs, 0, count);
+				xs = newXs;
+				ys = newYs;
+			}
+			xs[count] = x;
+			ys[count] = y;
+			count++;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of points in world coordinates (fractions of the world with y growing southwards, as in map tiles), sorted by Z-order curve, so
+ * points inside any tile form a contiguous range found by binary search on every zoom level.
+ */
+class TileIndex<T> {
+
+	interface Visitor<T> {
+
+		/**
+		 * @param x
+		 *            position relative to visited tile, 0 on its left and 1 on its right edge
+		 * @param y
+		 *            position relative to visited tile, 0 on its top and 1 on its bottom edge
+		 */
+		void visit(T item, double x, double y);
+	}
+
+	// cells of this zoom level are the smallest units of the curve, points in the same cell are filtered by position on higher zoom levels
+	private static final int INDEX_ZOOM = 20;
+	private static final int INDEX_TILES = 1 << INDEX_ZOOM;
+	// codes take 40 bits, original position of a point is kept in the remaining bits while sorting
+	private static final int ORDER_BITS = 23;
+	private static final int MAX_COUNT = 1 << ORDER_BITS;
+	// keeps points at the southern edge of the world inside the last row of tiles
+	private static final double MAX_Y = 1.0 - 1e-12;
+
+	private final long[] codes;
+	private final double[] xs;
+	private final double[] ys;
+	private final Object[] items;
+
+	/**
+	 * @param xs
+	 *            in the range [0, 1), other values are wrapped
+	 * @param ys
+	 *            in the range [0, 1), other values are clamped
+	 */
+	TileIndex(List<T> items, double[] xs, double[] ys) {
+		int count = items.size();
+		if (count > MAX_COUNT) {
+			throw new IllegalArgumentException("Too many points: " + count);
+		}
+		long[] keys = new long[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = (interleave(toCell(wrap(xs[i])), toCell(clamp(ys[i]))) << ORDER_BITS) | i;
+		}
+		Arrays.sort(keys);
+		this.codes = new long[count];
+		this.xs = new double[count];
+		this.ys = new double[count];
+		this.items = new Object[count];
+		for (int k = 0; k < count; k++) {
+			int i = (int) (keys[k] & (MAX_COUNT - 1));
+			codes[k] = keys[k] >>> ORDER_BITS;
+			this.xs[k] = wrap(xs[i]);
+			this.ys[k] = clamp(ys[i]);
+			this.items[k] = items.get(i);
+		}
+	}
+
+	int size() {
+		return items.length;
+	}
+
+	/**
+	 * Visits points inside tile and, when margin is positive, points of neighbouring tiles not further than margin from its edges. Tiles wrap
+	 * around 180th meridian.
+	 * 
+	 * @param margin
+	 *            in tile sizes, at most 1
+	 */
+	void visit(int x, int y, int zoom, double margin, Visitor<? super T> visitor) {
+		int tiles = 1 << zoom;
+		int range = margin > 0.0 ? 1 : 0;
+		for (int dy = -range; dy <= range; dy++) {
+			int neighbourY = y + dy;
+			if (neighbourY < 0 || neighbourY >= tiles) {
+				continue;
+			}
+			for (int dx = -range; dx <= range; dx++) {
+				int neighbourX = ((x + dx) % tiles + tiles) % tiles;
+				visitTile(neighbourX, neighbourY, zoom, dx, dy, margin, visitor);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void visitTile(int x, int y, int zoom, int dx, int dy, double margin, Visitor<? super T> visitor) {
+		long first;
+		long last;
+		if (zoom <= INDEX_ZOOM) {
+			int shift = 2 * (INDEX_ZOOM - zoom);
+			first = interleave(x, y) << shift;
+			last = first + (1L << shift);
+		} else {
+			int shift = zoom - INDEX_ZOOM;
+			first = interleave(x >> shift, y >> shift);
+			last = first + 1;
+		}
+		int tiles = 1 << zoom;
+		for (int k = lowerBound(first), end = lowerBound(last); k < end; k++) {
+			double tileX = xs[k] * tiles - x;
+			double tileY = ys[k] * tiles - y;
+			// on high zoom levels cell is larger than tile
+			if (tileX < 0.0 || tileX >= 1.0 || tileY < 0.0 || tileY >= 1.0) {
+				continue;
+			}
+			tileX += dx;
+			tileY += dy;
+			if (tileX >= -margin && tileX <= 1.0 + margin && tileY >= -margin && tileY <= 1.0 + margin) {
+				visitor.visit((T) items[k], tileX, tileY);
+			}
+		}
+	}
+
+	private int lowerBound(long code) {
+		int low = 0;
+		int high = codes.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (codes[middle] < code) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static double wrap(double x) {
+		return x - Math.floor(x);
+	}
+
+	private static double clamp(double y) {
+		return Math.max(0.0, Math.min(y, MAX_Y));
+	}
+
+	private static int toCell(double value) {
+		return Math.min((int) (value * INDEX_TILES), INDEX_TILES - 1);
+	}
+
+	/**
+	 * @return bits of x on even and bits of y on odd positions
+	 */
+	static long interleave(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	private static long spread(int value) {
+		long bits = value & 0xffffffffL;
+		bits = (bits | (bits << 16)) & 0x0000ffff0000ffffL;
+		bits = (bits | (bits << 8)) & 0x00ff00ff00ff00ffL;
+		bits = (bits | (bits << 4)) & 0x0f0f0f0f0f0f0f0fL;
+		bits = (bits | (bits << 2)) & 0x3333333333333333L;
+		bits = (bits | (bits << 1)) & 0x5555555555555555L;
+		return bits;
+	}
+}
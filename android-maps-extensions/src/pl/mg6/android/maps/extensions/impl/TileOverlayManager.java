@@ -15,13 +15,15 @@
  */
 package pl.mg6.android.maps.extensions.impl;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import pl.mg6.android.maps.extensions.TileOverlay;
+import pl.mg6.android.maps.extensions.tiles.PrioritizedTileProvider;
 
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.TileOverlayOptions;
 
 class TileOverlayManager {
@@ -29,28 +31,51 @@ class TileOverlayManager {
 	private final IGoogleMap factory;
 
 	private final Map<com.google.android.gms.maps.model.TileOverlay, TileOverlay> tileOverlays;
+	private final IndexedList<TileOverlay> tileOverlaysList = new IndexedList<TileOverlay>();
+	// providers which order tile requests by camera position
+	private final Map<com.google.android.gms.maps.model.TileOverlay, PrioritizedTileProvider> prioritizedProviders;
 
 	public TileOverlayManager(IGoogleMap factory) {
 		this.factory = factory;
 		this.tileOverlays = new HashMap<com.google.android.gms.maps.model.TileOverlay, TileOverlay>();
+		this.prioritizedProviders = new HashMap<com.google.android.gms.maps.model.TileOverlay, PrioritizedTileProvider>();
 	}
 
 	public TileOverlay addTileOverlay(TileOverlayOptions tileOverlayOptions) {
 		com.google.android.gms.maps.model.TileOverlay real = factory.addTileOverlay(tileOverlayOptions);
 		TileOverlay tileOverlay = new DelegatingTileOverlay(real, this);
 		tileOverlays.put(real, tileOverlay);
+		tileOverlaysList.addElement(tileOverlay);
+		if (tileOverlayOptions.getTileProvider() instanceof PrioritizedTileProvider) {
+			PrioritizedTileProvider provider = (PrioritizedTileProvider) tileOverlayOptions.getTileProvider();
+			prioritizedProviders.put(real, provider);
+			provider.onCameraChange(factory.getCameraPosition(), factory.getProjection().getVisibleRegion().latLngBounds);
+		}
 		return tileOverlay;
 	}
 
 	public void clear() {
 		tileOverlays.clear();
+		tileOverlaysList.clearElements();
+		prioritizedProviders.clear();
 	}
 
 	public List<TileOverlay> getTileOverlays() {
-		return new ArrayList<TileOverlay>(tileOverlays.values());
+		return tileOverlaysList;
+	}
+
+	public void onCameraChange(CameraPosition cameraPosition) {
+		if (prioritizedProviders.isEmpty()) {
+			return;
+		}
+		LatLngBounds visibleBounds = factory.getProjection().getVisibleRegion().latLngBounds;
+		for (PrioritizedTileProvider provider : prioritizedProviders.values()) {
+			provider.onCameraChange(cameraPosition, visibleBounds);
+		}
 	}
 
 	public void onRemove(com.google.android.gms.maps.model.TileOverlay real) {
-		tileOverlays.remove(real);
+		tileOverlaysList.removeElement(tileOverlays.remove(real));
+		prioritizedProviders.remove(real);
 	}
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.TileIconProvider;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
+import pl.mg6.android.maps.extensions.Marker;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Handler.Callback;
+import android.os.Message;
+import android.os.SystemClock;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
+
+/**
+ * Draws visible markers into tiles, except these without tile icon and these showing info window, which are shown on the map and displayed.
+ * Changes are collected and tiles redrawn at most once per {@link #MIN_REFRESH_INTERVAL}. Map can only drop all tiles at once, so it is only asked
+ * to when a change is near a tile it already got.
+ */
+class TileRenderingStrategy implements ClusteringStrategy {
+
+	// in milliseconds, so that e.g. animated markers do not make whole overlay flicker on every frame
+	private static final long MIN_REFRESH_INTERVAL = 250;
+
+	private final IGoogleMap map;
+	private final DisplayedMarkers displayedMarkers;
+	private final TileIconProvider iconProvider;
+	private final MarkerTileProvider tileProvider;
+	private final MetricsRecorder metrics;
+
+	private final Map<DelegatingMarker, Bitmap> tileMarkers = new HashMap<DelegatingMarker, Bitmap>();
+	// markers drawn into tiles until their info window was shown
+	private final List<DelegatingMarker> promotedMarkers = new ArrayList<DelegatingMarker>();
+	// positions markers are drawn at with current index, to tell which tiles change when they move or are removed
+	private final Map<DelegatingMarker, LatLng> drawnPositions = new HashMap<DelegatingMarker, LatLng>();
+	private final Set<DelegatingMarker> changedMarkers = new HashSet<DelegatingMarker>();
+	private int drawnMaxIconSize;
+
+	private TileOverlay tileOverlay;
+	private boolean refreshPending;
+	private long lastRefreshTime;
+	private Handler refresher;
+
+	public TileRenderingStrategy(ClusteringSettings settings, IGoogleMap map, List<DelegatingMarker> markers, DisplayedMarkers displayedMarkers,
+			MetricsRecorder metrics) {
+		this.map = map;
+		this.metrics = metrics;
+		this.displayedMarkers = displayedMarkers;
+		this.iconProvider = settings.getTileIconProvider();
+		this.tileProvider = new MarkerTileProvider(settings.getTileSize());
+		for (DelegatingMarker marker : markers) {
+			if (marker.isVisible()) {
+				addMarker(marker);
+			}
+		}
+		refresh();
+	}
+
+	@Override
+	public void cleanup() {
+		if (refresher != null) {
+			refresher.removeMessages(0);
+		}
+		refreshPending = false;
+		for (DelegatingMarker marker : tileMarkers.keySet()) {
+			// next strategy decides whether to show these
+			marker.changeVisible(false);
+		}
+		tileMarkers.clear();
+		promotedMarkers.clear();
+		drawnPositions.clear();
+		changedMarkers.clear();
+		displayedMarkers.clear();
+		if (tileOverlay != null) {
+			tileOverlay.remove();
+			tileOverlay = null;
+		}
+	}
+
+	@Override
+	public void onCameraChange(CameraPosition cameraPosition) {
+		Iterator<DelegatingMarker> iterator = promotedMarkers.iterator();
+		while (iterator.hasNext()) {
+			DelegatingMarker marker = iterator.next();
+			if (!marker.isInfoWindowShown()) {
+				iterator.remove();
+				displayedMarkers.remove(marker);
+				addMarker(marker);
+			}
+		}
+	}
+
+	@Override
+	public void onAdd(DelegatingMarker marker) {
+		if (marker.isVisible()) {
+			addMarker(marker);
+		}
+	}
+
+	@Override
+	public void onRemove(DelegatingMarker marker) {
+		removeMarker(marker);
+		displayedMarkers.remove(marker);
+	}
+
+	@Override
+	public void onPositionChange(DelegatingMarker marker) {
+		if (tileMarkers.containsKey(marker)) {
+			scheduleRefresh(marker);
+		}
+	}
+
+	@Override
+	public void onVisibilityChangeRequest(DelegatingMarker marker, boolean visible) {
+		if (visible) {
+			addMarker(marker);
+		} else {
+			removeMarker(marker);
+			marker.changeVisible(false);
+			displayedMarkers.remove(marker);
+		}
+	}
+
+	@Override
+	public void onShowInfoWindow(DelegatingMarker marker) {
+		if (!marker.isVisible()) {
+			return;
+		}
+		if (tileMarkers.remove(marker) != null) {
+			promotedMarkers.add(marker);
+			marker.changeVisible(true);
+			displayedMarkers.add(marker);
+			scheduleRefresh(marker);
+		}
+		marker.forceShowInfoWindow();
+	}
+
+	@Override
+	public Marker map(com.google.android.gms.maps.model.Marker original) {
+		return null;
+	}
+
+	@Override
+	public List<Marker> getDisplayedMarkers() {
+		return displayedMarkers.getMarkers();
+	}
+
+	@Override
+	public float getMinZoomLevelNotClustered(Marker marker) {
+		return 0.0f;
+	}
+
+	private void addMarker(DelegatingMarker marker) {
+		long start = metrics.begin(Operation.PROVIDE_ICON);
+		Bitmap icon = iconProvider.getTileIcon(marker);
+		metrics.end(Operation.PROVIDE_ICON, start, 1);
+		if (icon != null) {
+			tileMarkers.put(marker, icon);
+			marker.changeVisible(false);
+			scheduleRefresh(marker);
+		} else {
+			marker.changeVisible(true);
+			displayedMarkers.add(marker);
+		}
+	}
+
+	private void removeMarker(DelegatingMarker marker) {
+		if (tileMarkers.remove(marker) != null) {
+			scheduleRefresh(marker);
+		}
+		promotedMarkers.remove(marker);
+	}
+
+	private void scheduleRefresh(DelegatingMarker changedMarker) {
+		changedMarkers.add(changedMarker);
+		if (!refreshPending) {
+			refreshPending = true;
+			postRefresh();
+		}
+	}
+
+	/**
+	 * Calls {@link #refresh()} in one of next message loop iterations. Tests replace it to check what was scheduled.
+	 */
+	void postRefresh() {
+		if (refresher == null) {
+			refresher = new Handler(new Callback() {
+				public boolean handleMessage(Message msg) {
+					lastRefreshTime = SystemClock.uptimeMillis();
+					refresh();
+					return true;
+				}
+			});
+		}
+		refresher.sendEmptyMessageAtTime(0, Math.max(SystemClock.uptimeMillis(), lastRefreshTime + MIN_REFRESH_INTERVAL));
+	}
+
+	private void refresh() {
+		refreshPending = false;
+		// old and new positions of changed markers, tiles around them are redrawn
+		double[] changedXs = new double[2 * changedMarkers.size()];
+		double[] changedYs = new double[2 * changedMarkers.size()];
+		int changedCount = 0;
+		for (DelegatingMarker marker : changedMarkers) {
+			LatLng drawnPosition = drawnPositions.remove(marker);
+			if (drawnPosition != null) {
+				changedXs[changedCount] = toTileX(drawnPosition);
+				changedYs[changedCount] = toTileY(drawnPosition);
+				changedCount++;
+			}
+			if (tileMarkers.containsKey(marker)) {
+				LatLng position = marker.getPosition();
+				drawnPositions.put(marker, position);
+				changedXs[changedCount] = toTileX(position);
+				changedYs[changedCount] = toTileY(position);
+				changedCount++;
+			}
+		}
+		changedMarkers.clear();
+		int count = tileMarkers.size();
+		List<Bitmap> icons = new ArrayList<Bitmap>(count);
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		int maxIconSize = 0;
+		int i = 0;
+		for (Map.Entry<DelegatingMarker, Bitmap> entry : tileMarkers.entrySet()) {
+			LatLng position = entry.getKey().getPosition();
+			Bitmap icon = entry.getValue();
+			icons.add(icon);
+			xs[i] = toTileX(position);
+			ys[i] = toTileY(position);
+			maxIconSize = Math.max(maxIconSize, Math.max(icon.getWidth(), icon.getHeight()));
+			i++;
+		}
+		tileProvider.setIndex(new TileIndex<Bitmap>(icons, xs, ys), maxIconSize);
+		// removed icons may have been the largest ones
+		int changedIconSize = Math.max(maxIconSize, drawnMaxIconSize);
+		drawnMaxIconSize = maxIconSize;
+		if (tileOverlay == null) {
+			// also after map was cleared, which removes the overlay
+			tileProvider.clearServedTiles();
+			tileOverlay = addTileOverlay(tileProvider);
+		} else if (tileProvider.isAnyServedTileNear(changedXs, changedYs, changedCount, changedIconSize)) {
+			tileProvider.clearServedTiles();
+			tileOverlay.clearTileCache();
+		}
+	}
+
+	/**
+	 * Overridden in tests, where {@link TileOverlayOptions} cannot be created.
+	 */
+	TileOverlay addTileOverlay(MarkerTileProvider provider) {
+		return map.addTileOverlay(new TileOverlayOptions().tileProvider(provider));
+	}
+
+	/**
+	 * @return position in world size units, as used by {@link TileIndex}
+	 */
+	private static double toTileX(LatLng position) {
+		return SphericalMercator.scaleLongitude(position.longitude) / 360.0;
+	}
+
+	private static double toTileY(LatLng position) {
+		return 1.0 - SphericalMercator.scaleLatitude(position.latitude) / 360.0;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.lazy;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
+
+/**
+ * Circle created on demand and possibly released later. Options are kept up to date, so getters never call real circle.
+ */
+public class LazyCircle {
+
+	/**
+	 * Creates real circles, e.g. to measure calls made to the map.
+	 */
+	public interface CircleFactory {
+
+		Circle addCircle(CircleOptions options);
+	}
+
+	private Circle circle;
+	private CircleFactory factory;
+	private CircleOptions circleOptions;
+	private String removedId;
+
+	public LazyCircle(GoogleMap map, CircleOptions options) {
+		this(MapFactory.wrap(map), options);
+	}
+
+	public LazyCircle(CircleFactory factory, CircleOptions options) {
+		this.factory = factory;
+		this.circleOptions = copy(options);
+	}
+
+	public Circle getCircle() {
+		return circle;
+	}
+
+	public boolean isCreated() {
+		return circle != null;
+	}
+
+	public void create() {
+		if (circle == null && factory != null) {
+			circle = factory.addCircle(circleOptions);
+		}
+	}
+
+	/**
+	 * Removes real circle, which will be created again with the same state on next call to {@link #create()}.
+	 */
+	public void release() {
+		if (circle != null) {
+			circle.remove();
+			circle = null;
+		}
+	}
+
+	public LatLng getCenter() {
+		return circleOptions.getCenter();
+	}
+
+	public int getFillColor() {
+		return circleOptions.getFillColor();
+	}
+
+	/**
+	 * Creates real circle if needed. Id changes when circle is released and created again.
+	 * 
+	 * @return id of the last real circle after removal, null if it was never created
+	 */
+	@Deprecated
+	public String getId() {
+		create();
+		if (circle != null) {
+			return circle.getId();
+		}
+		return removedId;
+	}
+
+	public double getRadius() {
+		return circleOptions.getRadius();
+	}
+
+	public int getStrokeColor() {
+		return circleOptions.getStrokeColor();
+	}
+
+	public float getStrokeWidth() {
+		return circleOptions.getStrokeWidth();
+	}
+
+	public float getZIndex() {
+		return circleOptions.getZIndex();
+	}
+
+	public boolean isVisible() {
+		return circleOptions.isVisible();
+	}
+
+	public void remove() {
+		if (circle != null) {
+			removedId = circle.getId();
+		}
+		release();
+		factory = null;
+	}
+
+	public void setCenter(LatLng center) {
+		circleOptions.center(center);
+		if (circle != null) {
+			circle.setCenter(center);
+		}
+	}
+
+	public void setFillColor(int fillColor) {
+		circleOptions.fillColor(fillColor);
+		if (circle != null) {
+			circle.setFillColor(fillColor);
+		}
+	}
+
+	public void setRadius(double radius) {
+		circleOptions.radius(radius);
+		if (circle != null) {
+			circle.setRadius(radius);
+		}
+	}
+
+	public void setStrokeColor(int strokeColor) {
+		circleOptions.strokeColor(strokeColor);
+		if (circle != null) {
+			circle.setStrokeColor(strokeColor);
+		}
+	}
+
+	public void setStrokeWidth(float strokeWidth) {
+		circleOptions.strokeWidth(strokeWidth);
+		if (circle != null) {
+			circle.setStrokeWidth(strokeWidth);
+		}
+	}
+
+	public void setVisible(boolean visible) {
+		circleOptions.visible(visible);
+		if (circle != null) {
+			circle.setVisible(visible);
+		}
+	}
+
+	public void setZIndex(float zIndex) {
+		circleOptions.zIndex(zIndex);
+		if (circle != null) {
+			circle.setZIndex(zIndex);
+		}
+	}
+
+	private CircleOptions copy(CircleOptions options) {
+		CircleOptions copy = new CircleOptions();
+		copy.center(options.getCenter());
+		copy.fillColor(options.getFillColor());
+		copy.radius(options.getRadius());
+		copy.strokeColor(options.getStrokeColor());
+		copy.strokeWidth(options.getStrokeWidth());
+		copy.visible(options.isVisible());
+		copy.zIndex(options.getZIndex());
+		return copy;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.lazy;
+
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.GroundOverlay;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+/**
+ * Ground overlay created on demand and possibly released later.
+ * 
+ * GroundOverlayOptions cannot be positioned twice, so state is kept in fields. Position, bounds and dimensions are read from real ground overlay when it
+ * exists, because some of them are calculated from others.
+ */
+public class LazyGroundOverlay {
+
+	/**
+	 * Creates real ground overlays, e.g. to measure calls made to the map.
+	 */
+	public interface GroundOverlayFactory {
+
+		GroundOverlay addGroundOverlay(GroundOverlayOptions options);
+	}
+
+	private GroundOverlay groundOverlay;
+	private GroundOverlayFactory factory;
+	private String removedId;
+
+	private BitmapDescriptor image;
+	private float anchorU;
+	private float anchorV;
+	private float bearing;
+	private float transparency;
+	private float zIndex;
+	private boolean visible;
+	// either bounds or position with dimensions is set
+	private LatLngBounds bounds;
+	private LatLng position;
+	private float width;
+	private float height;
+
+	public LazyGroundOverlay(GoogleMap map, GroundOverlayOptions options) {
+		this(MapFactory.wrap(map), options);
+	}
+
+	public LazyGroundOverlay(GroundOverlayFactory factory, GroundOverlayOptions options) {
+		this.factory = factory;
+		this.image = options.getImage();
+		this.anchorU = options.getAnchorU();
+		this.anchorV = options.getAnchorV();
+		this.bearing = options.getBearing();
+		this.transparency = options.getTransparency();
+		this.zIndex = options.getZIndex();
+		this.visible = options.isVisible();
+		this.bounds = options.getBounds();
+		this.position = options.getLocation();
+		this.width = options.getWidth();
+		this.height = options.getHeight();
+	}
+
+	public GroundOverlay getGroundOverlay() {
+		return groundOverlay;
+	}
+
+	public boolean isCreated() {
+		return groundOverlay != null;
+	}
+
+	public void create() {
+		if (groundOverlay == null && factory != null) {
+			GroundOverlayOptions options = new GroundOverlayOptions();
+			options.image(image);
+			options.anchor(anchorU, anchorV);
+			options.bearing(bearing);
+			options.transparency(transparency);
+			options.zIndex(zIndex);
+			options.visible(visible);
+			if (bounds != null) {
+				options.positionFromBounds(bounds);
+			} else if (height != GroundOverlayOptions.NO_DIMENSION) {
+				options.position(position, width, height);
+			} else {
+				options.position(position, width);
+			}
+			groundOverlay = factory.addGroundOverlay(options);
+		}
+	}
+
+	/**
+	 * Removes real ground overlay, which will be created again with the same state on next call to {@link #create()}.
+	 */
+	public void release() {
+		if (groundOverlay != null) {
+			position = groundOverlay.getPosition();
+			width = groundOverlay.getWidth();
+			height = groundOverlay.getHeight();
+			bounds = null;
+			groundOverlay.remove();
+			groundOverlay = null;
+		}
+	}
+
+	public float getBearing() {
+		return bearing;
+	}
+
+	/**
+	 * @return null if not created and positioned using dimensions
+	 */
+	public LatLngBounds getBounds() {
+		if (groundOverlay != null) {
+			return groundOverlay.getBounds();
+		} else {
+			return bounds;
+		}
+	}
+
+	/**
+	 * @return {@link GroundOverlayOptions#NO_DIMENSION} if not created and height is not known
+	 */
+	public float getHeight() {
+		if (groundOverlay != null) {
+			return groundOverlay.getHeight();
+		} else {
+			return height;
+		}
+	}
+
+	/**
+	 * Creates real ground overlay if needed. Id changes when ground overlay is released and created again.
+	 * 
+	 * @return id of the last real ground overlay after removal, null if it was never created
+	 */
+	@Deprecated
+	public String getId() {
+		create();
+		if (groundOverlay != null) {
+			return groundOverlay.getId();
+		}
+		return removedId;
+	}
+
+	/**
+	 * @return null if not created and positioned using bounds
+	 */
+	public LatLng getPosition() {
+		if (groundOverlay != null) {
+			return groundOverlay.getPosition();
+		} else {
+			return position;
+		}
+	}
+
+	public float getTransparency() {
+		return transparency;
+	}
+
+	public float getWidth() {
+		if (groundOverlay != null) {
+			return groundOverlay.getWidth();
+		} else {
+			return width;
+		}
+	}
+
+	public float getZIndex() {
+		return zIndex;
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void remove() {
+		if (groundOverlay != null) {
+			removedId = groundOverlay.getId();
+			groundOverlay.remove();
+			groundOverlay = null;
+		}
+		factory = null;
+	}
+
+	public void setBearing(float bearing) {
+		this.bearing = bearing;
+		if (groundOverlay != null) {
+			groundOverlay.setBearing(bearing);
+		}
+	}
+
+	public void setDimensions(float width, float height) {
+		if (groundOverlay != null) {
+			groundOverlay.setDimensions(width, height);
+		} else {
+			convertBoundsToPosition();
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	public void setDimensions(float width) {
+		if (groundOverlay != null) {
+			groundOverlay.setDimensions(width);
+		} else {
+			convertBoundsToPosition();
+			this.width = width;
+			this.height = GroundOverlayOptions.NO_DIMENSION;
+		}
+	}
+
+	public void setPosition(LatLng position) {
+		if (groundOverlay != null) {
+			groundOverlay.setPosition(position);
+		} else {
+			convertBoundsToPosition();
+			this.position = position;
+		}
+	}
+
+	public void setPositionFromBounds(LatLngBounds bounds) {
+		if (groundOverlay != null) {
+			groundOverlay.setPositionFromBounds(bounds);
+		} else {
+			this.bounds = bounds;
+			this.position = null;
+		}
+	}
+
+	public void setTransparency(float transparency) {
+		this.transparency = transparency;
+		if (groundOverlay != null) {
+			groundOverlay.setTransparency(transparency);
+		}
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+		if (groundOverlay != null) {
+			groundOverlay.setVisible(visible);
+		}
+	}
+
+	public void setZIndex(float zIndex) {
+		this.zIndex = zIndex;
+		if (groundOverlay != null) {
+			groundOverlay.setZIndex(zIndex);
+		}
+	}
+
+	/**
+	 * Switches from bounds to position of anchor with dimensions, so position or dimensions can be changed alone.
+	 */
+	private void convertBoundsToPosition() {
+		if (bounds != null) {
+			double south = bounds.southwest.latitude;
+			double north = bounds.northeast.latitude;
+			double west = bounds.southwest.longitude;
+			double east = bounds.northeast.longitude;
+			if (east < west) {
+				east += 360.0;
+			}
+			double latitude = south + (north - south) * (1.0 - anchorV);
+			double longitude = west + (east - west) * anchorU;
+			double metersPerDegree = Math.toRadians(LatLngUtils.EARTH_RADIUS);
+			width = (float) ((east - west) * metersPerDegree * Math.cos(Math.toRadians((south + north) / 2)));
+			height = (float) ((north - south) * metersPerDegree);
+			position = new LatLng(latitude, longitude);
+			bounds = null;
+		}
+	}
+}
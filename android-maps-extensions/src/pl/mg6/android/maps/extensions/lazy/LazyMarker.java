@@ -28,8 +28,16 @@ public class LazyMarker {
 		void onMarkerCreate(LazyMarker marker);
 	}
 
+	/**
+	 * Creates real markers, e.g. to measure calls made to the map.
+	 */
+	public interface MarkerFactory {
+
+		Marker addMarker(MarkerOptions options);
+	}
+
 	private Marker marker;
-	private GoogleMap map;
+	private MarkerFactory factory;
 	private MarkerOptions markerOptions;
 	private OnMarkerCreateListener listener;
 
@@ -38,10 +46,14 @@ public class LazyMarker {
 	}
 
 	public LazyMarker(GoogleMap map, MarkerOptions options, OnMarkerCreateListener listener) {
+		this(MapFactory.wrap(map), options, listener);
+	}
+
+	public LazyMarker(MarkerFactory factory, MarkerOptions options, OnMarkerCreateListener listener) {
 		if (options.isVisible()) {
-			createMarker(map, options, listener);
+			createMarker(factory, options, listener);
 		} else {
-			this.map = map;
+			this.factory = factory;
 			this.markerOptions = copy(options);
 			this.listener = listener;
 		}
@@ -116,7 +128,7 @@ public class LazyMarker {
 			marker.remove();
 			marker = null;
 		} else {
-			map = null;
+			factory = null;
 			markerOptions = null;
 			listener = null;
 		}
@@ -187,15 +199,15 @@ public class LazyMarker {
 
 	private void createMarker() {
 		if (marker == null) {
-			createMarker(map, markerOptions, listener);
-			map = null;
+			createMarker(factory, markerOptions, listener);
+			factory = null;
 			markerOptions = null;
 			listener = null;
 		}
 	}
 
-	private void createMarker(GoogleMap map, MarkerOptions options, OnMarkerCreateListener listener) {
-		marker = map.addMarker(options);
+	private void createMarker(MarkerFactory factory, MarkerOptions options, OnMarkerCreateListener listener) {
+		marker = factory.addMarker(options);
 		if (listener != null) {
 			listener.onMarkerCreate(this);
 		}
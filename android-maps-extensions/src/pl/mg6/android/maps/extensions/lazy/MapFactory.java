@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.lazy;
+
+import pl.mg6.android.maps.extensions.lazy.LazyCircle.CircleFactory;
+import pl.mg6.android.maps.extensions.lazy.LazyGroundOverlay.GroundOverlayFactory;
+import pl.mg6.android.maps.extensions.lazy.LazyMarker.MarkerFactory;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.Circle;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.GroundOverlay;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+
+/**
+ * Creates objects directly on given map, for lazy objects constructed with {@link GoogleMap}.
+ */
+class MapFactory implements MarkerFactory, CircleFactory, GroundOverlayFactory {
+
+	private final GoogleMap map;
+
+	private MapFactory(GoogleMap map) {
+		this.map = map;
+	}
+
+	/**
+	 * @return null for null map, so that lazy objects are never created
+	 */
+	static MapFactory wrap(GoogleMap map) {
+		return map != null ? new MapFactory(map) : null;
+	}
+
+	@Override
+	public Marker addMarker(MarkerOptions options) {
+		return map.addMarker(options);
+	}
+
+	@Override
+	public Circle addCircle(CircleOptions options) {
+		return map.addCircle(options);
+	}
+
+	@Override
+	public GroundOverlay addGroundOverlay(GroundOverlayOptions options) {
+		return map.addGroundOverlay(options);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Keeps recently returned tiles in memory, so tiles evicted by the map and requested again are not generated or read again by wrapped provider.
+ * 
+ * After invalidating tiles also call {@link com.google.android.gms.maps.model.TileOverlay#clearTileCache()}, so the map requests them again.
+ */
+public class CachingTileProvider implements TileProvider {
+
+	private final TileProvider provider;
+	private final LruCache<Long, Tile> cache;
+	// tiles generated while anything was invalidated are not cached
+	private int version;
+
+	/**
+	 * @param provider
+	 *            wrapped provider, called from multiple threads like any TileProvider
+	 * @param maxSize
+	 *            in bytes of encoded tile data
+	 */
+	public CachingTileProvider(TileProvider provider, int maxSize) {
+		this.provider = provider;
+		this.cache = new LruCache<Long, Tile>(maxSize) {
+
+			@Override
+			protected int sizeOf(Long key, Tile tile) {
+				return tile.data != null ? tile.data.length : 1;
+			}
+		};
+	}
+
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		Long key = TileKey.pack(x, y, zoom);
+		Tile tile = cache.get(key);
+		if (tile == null) {
+			int tileVersion;
+			synchronized (this) {
+				tileVersion = version;
+			}
+			tile = provider.getTile(x, y, zoom);
+			// null means tile is not available yet and should be requested later
+			if (tile != null) {
+				synchronized (this) {
+					if (tileVersion == version) {
+						cache.put(key, tile);
+					}
+				}
+			}
+		}
+		return tile;
+	}
+
+	public int getHitCount() {
+		return cache.hitCount();
+	}
+
+	public int getMissCount() {
+		return cache.missCount();
+	}
+
+	/**
+	 * @return size in bytes of tiles currently in cache
+	 */
+	public int getSize() {
+		return cache.size();
+	}
+
+	public synchronized void invalidate(int x, int y, int zoom) {
+		version++;
+		cache.remove(TileKey.pack(x, y, zoom));
+	}
+
+	/**
+	 * Removes tiles intersecting given bounds on all zoom levels. Bounds crossing 180th meridian are supported.
+	 */
+	public synchronized void invalidate(LatLngBounds bounds) {
+		version++;
+		TileBounds tileBounds = new TileBounds(bounds);
+		for (Long key : cache.snapshot().keySet()) {
+			if (tileBounds.intersects(TileKey.getX(key), TileKey.getY(key), TileKey.getZoom(key), 0.0)) {
+				cache.remove(key);
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		version++;
+		cache.evictAll();
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.io.IOException;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Reads tiles from {@link DiskTileStore} and asks wrapped provider only for tiles not stored yet, storing them for later.
+ * 
+ * Store is not closed by this class. Can be wrapped with {@link CachingTileProvider} to also keep most recently used tiles in memory.
+ */
+public class DiskCachingTileProvider implements TileProvider {
+
+	private final TileProvider provider;
+	private final DiskTileStore store;
+
+	public DiskCachingTileProvider(TileProvider provider, DiskTileStore store) {
+		this.provider = provider;
+		this.store = store;
+	}
+
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		Tile tile = null;
+		try {
+			tile = store.get(x, y, zoom);
+		} catch (IOException ex) {
+			// segment was evicted while reading or is damaged, tile is generated again
+		}
+		if (tile == null) {
+			tile = provider.getTile(x, y, zoom);
+			if (tile != null) {
+				try {
+					store.put(x, y, zoom, tile);
+				} catch (IOException ex) {
+					// tile is still shown, only not stored
+				}
+			}
+		}
+		return tile;
+	}
+}
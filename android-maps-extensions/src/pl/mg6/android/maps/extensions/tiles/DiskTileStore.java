@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Tiles packed into append-only segment files, found by (x, y, zoom) in a memory-mapped hash index, so reading a tile is a single positioned read.
+ * 
+ * When total size of segments exceeds maximum, oldest segments are deleted with all their tiles. Overwritten and removed tiles leave garbage in
+ * segments, which {@link #compact()} reclaims.
+ * 
+ * Methods are thread safe. Instance should be closed when no longer used.
+ */
+public class DiskTileStore {
+
+	private static final String INDEX_FILE_NAME = "index";
+	private static final String SEGMENT_FILE_PREFIX = "segment-";
+
+	private static final int MAGIC = 0x4d455854;
+	private static final int VERSION = 1;
+
+	// magic, version, capacity, count
+	private static final int HEADER_SIZE = 16;
+	// key, segment, offset, length, width, height
+	private static final int ENTRY_SIZE = 24;
+	// distinguishes used slots from empty ones, as packed key of tile (0, 0, 0) is zero
+	private static final long USED = 1L << 63;
+
+	private static final int MIN_CAPACITY = 1024;
+	private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+	private static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final File directory;
+	private final long maxSize;
+	private final int segmentSize;
+
+	private final SortedMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	private Segment writeSegment;
+	private long size;
+
+	private RandomAccessFile indexFile;
+	private MappedByteBuffer index;
+	private int capacity;
+	private int count;
+
+	/**
+	 * Opens store in given directory, creating it if needed. Tiles stored there before are available unless index was not written completely.
+	 * 
+	 * @param maxSize
+	 *            in bytes of all segment files, oldest segments are deleted above it
+	 */
+	public DiskTileStore(File directory, long maxSize) throws IOException {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(maxSize / 8, MAX_SEGMENT_SIZE));
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		openSegments();
+		openIndex();
+	}
+
+	private void openSegments() throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Cannot list directory " + directory);
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(SEGMENT_FILE_PREFIX)) {
+				int id;
+				try {
+					id = Integer.parseInt(name.substring(SEGMENT_FILE_PREFIX.length()));
+				} catch (NumberFormatException ex) {
+					continue;
+				}
+				Segment segment = new Segment(id, file);
+				segments.put(id, segment);
+				size += segment.length;
+			}
+		}
+		if (!segments.isEmpty()) {
+			writeSegment = segments.get(segments.lastKey());
+		}
+	}
+
+	private void openIndex() throws IOException {
+		indexFile = new RandomAccessFile(new File(directory, INDEX_FILE_NAME), "rw");
+		if (indexFile.length() >= HEADER_SIZE) {
+			index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			int storedCapacity = index.getInt(8);
+			if (index.getInt(0) == MAGIC && index.getInt(4) == VERSION && storedCapacity > 0 && (storedCapacity & (storedCapacity - 1)) == 0
+					&& indexFile.length() >= HEADER_SIZE + (long) storedCapacity * ENTRY_SIZE) {
+				capacity = storedCapacity;
+				index = map(capacity);
+			} else {
+				index = null;
+			}
+		}
+		if (index == null) {
+			// tiles cannot be found without index
+			for (Segment segment : new ArrayList<Segment>(segments.values())) {
+				deleteSegment(segment);
+			}
+		}
+		// drops entries pointing at missing or truncated segments and counts live bytes
+		rebuild();
+	}
+
+	private MappedByteBuffer map(int capacity) throws IOException {
+		return indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * ENTRY_SIZE);
+	}
+
+	/**
+	 * @return tile or null if it is not stored
+	 * @throws IOException
+	 *             also when segment was deleted by another thread while reading
+	 */
+	public Tile get(int x, int y, int zoom) throws IOException {
+		FileChannel channel;
+		long offset;
+		int length;
+		int width;
+		int height;
+		synchronized (this) {
+			checkOpen();
+			int slot = find(USED | TileKey.pack(x, y, zoom));
+			if (slot < 0) {
+				return null;
+			}
+			int position = position(slot);
+			channel = segments.get(index.getInt(position + 8)).channel;
+			offset = index.getInt(position + 12);
+			length = index.getInt(position + 16);
+			width = index.getShort(position + 20);
+			height = index.getShort(position + 22);
+		}
+		if (width < 0) {
+			return TileProvider.NO_TILE;
+		}
+		byte[] data = new byte[length];
+		readFully(channel, ByteBuffer.wrap(data), offset);
+		return new Tile(width, height, data);
+	}
+
+	/**
+	 * Stores tile, replacing previous one with the same coordinates. {@link TileProvider#NO_TILE} may be stored too.
+	 */
+	public synchronized void put(int x, int y, int zoom, Tile tile) throws IOException {
+		checkOpen();
+		long key = USED | TileKey.pack(x, y, zoom);
+		int slot = find(key);
+		if (slot >= 0) {
+			release(slot);
+		} else {
+			if ((count + 1) * 4 > capacity * 3) {
+				rebuild();
+				slot = find(key);
+			}
+			slot = -slot - 1;
+			count++;
+			index.putInt(12, count);
+		}
+		// index is not changed by appending, so slot stays valid
+		byte[] data = tile.data != null ? tile.data : new byte[0];
+		int offset = append(data);
+		int position = position(slot);
+		index.putLong(position, key);
+		index.putInt(position + 8, writeSegment.id);
+		index.putInt(position + 12, offset);
+		index.putInt(position + 16, data.length);
+		index.putShort(position + 20, (short) tile.width);
+		index.putShort(position + 22, (short) tile.height);
+		evict();
+	}
+
+	public synchronized void remove(int x, int y, int zoom) throws IOException {
+		checkOpen();
+		int slot = find(USED | TileKey.pack(x, y, zoom));
+		if (slot >= 0) {
+			release(slot);
+			removeSlot(slot);
+		}
+	}
+
+	public synchronized void clear() throws IOException {
+		checkOpen();
+		for (Segment segment : new ArrayList<Segment>(segments.values())) {
+			deleteSegment(segment);
+		}
+		rebuild();
+	}
+
+	/**
+	 * Moves tiles out of segments where less than half of the bytes belong to stored tiles and deletes these segments. Should be called from
+	 * background thread.
+	 */
+	public synchronized void compact() throws IOException {
+		checkOpen();
+		List<Segment> sparse = new ArrayList<Segment>();
+		for (Segment segment : segments.values()) {
+			if (segment != writeSegment && segment.liveBytes * 2 < segment.length) {
+				sparse.add(segment);
+			}
+		}
+		if (sparse.isEmpty()) {
+			return;
+		}
+		for (int slot = 0; slot < capacity; slot++) {
+			int position = position(slot);
+			if (index.getLong(position) == 0) {
+				continue;
+			}
+			Segment segment = segments.get(index.getInt(position + 8));
+			if (!sparse.contains(segment)) {
+				continue;
+			}
+			byte[] data = new byte[index.getInt(position + 16)];
+			readFully(segment.channel, ByteBuffer.wrap(data), index.getInt(position + 12));
+			// keys stay the same, so slots do not move
+			int offset = append(data);
+			segment.liveBytes -= data.length;
+			index.putInt(position + 8, writeSegment.id);
+			index.putInt(position + 12, offset);
+		}
+		for (Segment segment : sparse) {
+			deleteSegment(segment);
+		}
+	}
+
+	/**
+	 * @return size in bytes of all segment files, including garbage
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized int getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes changes to disk and releases files. Other methods throw {@link IllegalStateException} after this call.
+	 */
+	public synchronized void close() throws IOException {
+		if (index == null) {
+			return;
+		}
+		index.force();
+		index = null;
+		indexFile.close();
+		for (Segment segment : segments.values()) {
+			segment.file.close();
+		}
+		segments.clear();
+		writeSegment = null;
+	}
+
+	private void checkOpen() {
+		if (index == null) {
+			throw new IllegalStateException("Store is closed");
+		}
+	}
+
+	private int append(byte[] data) throws IOException {
+		if (writeSegment == null || writeSegment.length > 0 && writeSegment.length + data.length > segmentSize) {
+			int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+			writeSegment = new Segment(id, new File(directory, SEGMENT_FILE_PREFIX + id));
+			segments.put(id, writeSegment);
+		}
+		int offset = (int) writeSegment.length;
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			writeSegment.channel.write(buffer, offset + buffer.position());
+		}
+		writeSegment.length += data.length;
+		writeSegment.liveBytes += data.length;
+		size += data.length;
+		return offset;
+	}
+
+	private void evict() throws IOException {
+		boolean evicted = false;
+		while (size > maxSize && segments.size() > 1) {
+			deleteSegment(segments.get(segments.firstKey()));
+			evicted = true;
+		}
+		if (evicted) {
+			rebuild();
+		}
+	}
+
+	private void deleteSegment(Segment segment) throws IOException {
+		segments.remove(segment.id);
+		size -= segment.length;
+		segment.file.close();
+		segment.path.delete();
+		if (segment == writeSegment) {
+			writeSegment = null;
+		}
+	}
+
+	private void release(int slot) {
+		int position = position(slot);
+		Segment segment = segments.get(index.getInt(position + 8));
+		segment.liveBytes -= index.getInt(position + 16);
+	}
+
+	private static int position(int slot) {
+		return HEADER_SIZE + slot * ENTRY_SIZE;
+	}
+
+	private static int hash(long key) {
+		return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32);
+	}
+
+	/**
+	 * Linear probing.
+	 * 
+	 * @return slot of key or (-slot - 1) of empty slot where it should be put
+	 */
+	private int find(long key) {
+		int mask = capacity - 1;
+		int slot = hash(key) & mask;
+		while (true) {
+			long stored = index.getLong(position(slot));
+			if (stored == 0) {
+				return -slot - 1;
+			}
+			if (stored == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Shifts following entries back into the freed slot when it is on their probe path, so no tombstones are needed.
+	 */
+	private void removeSlot(int slot) {
+		int mask = capacity - 1;
+		int hole = slot;
+		int next = (slot + 1) & mask;
+		while (true) {
+			int nextPosition = position(next);
+			long key = index.getLong(nextPosition);
+			if (key == 0) {
+				break;
+			}
+			int home = hash(key) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				int holePosition = position(hole);
+				index.putLong(holePosition, key);
+				index.putLong(holePosition + 8, index.getLong(nextPosition + 8));
+				index.putLong(holePosition + 16, index.getLong(nextPosition + 16));
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		index.putLong(position(hole), 0);
+		count--;
+		index.putInt(12, count);
+	}
+
+	/**
+	 * Rewrites index with capacity fitting current entries, keeping only these pointing inside existing segments, and recounts live bytes.
+	 * Index is marked invalid until done, so interrupted rebuild loses stored tiles instead of returning wrong ones.
+	 */
+	private void rebuild() throws IOException {
+		for (Segment segment : segments.values()) {
+			segment.liveBytes = 0;
+		}
+		int kept = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (isValid(slot)) {
+				kept++;
+			}
+		}
+		long[] entries = new long[kept * 3];
+		int k = 0;
+		for (int slot = 0; slot < capacity; slot++) {
+			if (isValid(slot)) {
+				int position = position(slot);
+				entries[k++] = index.getLong(position);
+				entries[k++] = index.getLong(position + 8);
+				entries[k++] = index.getLong(position + 16);
+				segments.get(index.getInt(position + 8)).liveBytes += index.getInt(position + 16);
+			}
+		}
+		int newCapacity = MIN_CAPACITY;
+		while (kept * 2 > newCapacity) {
+			newCapacity *= 2;
+		}
+		if (index == null || newCapacity > capacity) {
+			index = map(newCapacity);
+		}
+		capacity = newCapacity;
+		index.putInt(0, MAGIC);
+		index.putInt(4, 0);
+		index.force();
+		index.putInt(8, capacity);
+		for (int slot = 0; slot < capacity; slot++) {
+			index.putLong(position(slot), 0);
+		}
+		for (int i = 0; i < entries.length; i += 3) {
+			int position = position(-find(entries[i]) - 1);
+			index.putLong(position, entries[i]);
+			index.putLong(position + 8, entries[i + 1]);
+			index.putLong(position + 16, entries[i + 2]);
+		}
+		count = kept;
+		index.putInt(12, count);
+		index.force();
+		index.putInt(4, VERSION);
+	}
+
+	private boolean isValid(int slot) {
+		int position = position(slot);
+		if (index.getLong(position) == 0) {
+			return false;
+		}
+		Segment segment = segments.get(index.getInt(position + 8));
+		return segment != null && (long) index.getInt(position + 12) + index.getInt(position + 16) <= segment.length;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static class Segment {
+
+		private final int id;
+		private final File path;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private long length;
+		// bytes of tiles still in index, the rest is garbage
+		private long liveBytes;
+
+		Segment(int id, File path) throws IOException {
+			this.id = id;
+			this.path = path;
+			this.file = new RandomAccessFile(path, "rw");
+			this.channel = file.getChannel();
+			this.length = channel.size();
+		}
+	}
+}
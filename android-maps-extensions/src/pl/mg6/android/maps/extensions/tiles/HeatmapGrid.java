@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sums of point weights in square cells of one zoom level, kept per tile, so rendering a tile only reads cells of this tile and its neighbours.
+ * Tiles with few occupied cells keep them in short lists, others in full arrays.
+ */
+class HeatmapGrid {
+
+	static final int CELLS_PER_TILE = 64;
+
+	// above this many occupied cells tile switches to full array
+	private static final int SPARSE_LIMIT = 64;
+	// sums of removed weights may not return to exact zero
+	private static final double EPSILON = 1e-9;
+
+	private final int zoom;
+	private final Map<Long, Cells> tiles = new HashMap<Long, Cells>();
+
+	private double maxWeight;
+	private boolean maxWeightDirty;
+	// maximum intensity cached tiles of this zoom level were rendered with
+	private double renderedMaxIntensity;
+
+	HeatmapGrid(int zoom) {
+		this.zoom = zoom;
+	}
+
+	int getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @return number of cells in the world along one axis
+	 */
+	int getCellCount() {
+		return CELLS_PER_TILE << zoom;
+	}
+
+	/**
+	 * @return cell coordinate of world coordinate
+	 */
+	int toCell(double value) {
+		int cells = getCellCount();
+		return Math.max(0, Math.min((int) (value * cells), cells - 1));
+	}
+
+	/**
+	 * @param x
+	 *            world coordinate in the range [0, 1)
+	 * @param y
+	 *            world coordinate in the range [0, 1), growing southwards
+	 * @param weight
+	 *            negative to remove previously added weight
+	 */
+	void add(double x, double y, double weight) {
+		int cellX = toCell(x);
+		int cellY = toCell(y);
+		long key = TileKey.pack(cellX / CELLS_PER_TILE, cellY / CELLS_PER_TILE, zoom);
+		Cells cells = tiles.get(key);
+		if (cells == null) {
+			cells = new Cells();
+			tiles.put(key, cells);
+		}
+		int index = (cellY % CELLS_PER_TILE) * CELLS_PER_TILE + cellX % CELLS_PER_TILE;
+		double previous = cells.get(index);
+		double value = cells.add(index, weight);
+		if (value > maxWeight) {
+			maxWeight = value;
+		} else if (previous >= maxWeight && value < previous) {
+			maxWeightDirty = true;
+		}
+	}
+
+	/**
+	 * @return largest weight of a single cell
+	 */
+	double getMaxWeight() {
+		if (maxWeightDirty) {
+			maxWeight = 0.0;
+			for (Cells cells : tiles.values()) {
+				for (int i = 0; i < cells.size(); i++) {
+					maxWeight = Math.max(maxWeight, cells.valueAt(i));
+				}
+			}
+			maxWeightDirty = false;
+		}
+		return maxWeight;
+	}
+
+	double getRenderedMaxIntensity() {
+		return renderedMaxIntensity;
+	}
+
+	void setRenderedMaxIntensity(double renderedMaxIntensity) {
+		this.renderedMaxIntensity = renderedMaxIntensity;
+	}
+
+	/**
+	 * Spreads cell weights of tile and its neighbours with kernel.
+	 * 
+	 * @param kernel
+	 *            square table of (2 * radius + 1) weights per side, centered on cell
+	 * @return intensities of tile cells surrounded by one cell of neighbours on each side, in rows of (CELLS_PER_TILE + 2) values
+	 */
+	double[] render(int x, int y, double[] kernel, int radius) {
+		int side = CELLS_PER_TILE + 2;
+		int kernelSide = 2 * radius + 1;
+		double[] result = new double[side * side];
+		int tileCount = 1 << zoom;
+		for (int dy = -1; dy <= 1; dy++) {
+			int neighbourY = y + dy;
+			if (neighbourY < 0 || neighbourY >= tileCount) {
+				continue;
+			}
+			for (int dx = -1; dx <= 1; dx++) {
+				int neighbourX = ((x + dx) % tileCount + tileCount) % tileCount;
+				Cells cells = getCells(neighbourX, neighbourY);
+				if (cells == null) {
+					continue;
+				}
+				for (int i = 0; i < cells.size(); i++) {
+					double weight = cells.valueAt(i);
+					if (weight < EPSILON) {
+						continue;
+					}
+					int index = cells.indexAt(i);
+					// cell position in result
+					int cellX = dx * CELLS_PER_TILE + index % CELLS_PER_TILE + 1;
+					int cellY = dy * CELLS_PER_TILE + index / CELLS_PER_TILE + 1;
+					int fromX = Math.max(cellX - radius, 0);
+					int toX = Math.min(cellX + radius, side - 1);
+					int fromY = Math.max(cellY - radius, 0);
+					int toY = Math.min(cellY + radius, side - 1);
+					for (int ry = fromY; ry <= toY; ry++) {
+						int kernelRow = (ry - cellY + radius) * kernelSide - cellX + radius;
+						int resultRow = ry * side;
+						for (int rx = fromX; rx <= toX; rx++) {
+							result[resultRow + rx] += weight * kernel[kernelRow + rx];
+						}
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private Cells getCells(int x, int y) {
+		return tiles.get(TileKey.pack(x, y, zoom));
+	}
+
+	private static class Cells {
+
+		private int[] indices = new int[4];
+		private double[] values = new double[4];
+		private int count;
+		// all cells of tile, after too many became occupied
+		private double[] dense;
+
+		int size() {
+			return dense != null ? dense.length : count;
+		}
+
+		int indexAt(int i) {
+			return dense != null ? i : indices[i];
+		}
+
+		double valueAt(int i) {
+			return dense != null ? dense[i] : values[i];
+		}
+
+		double get(int index) {
+			if (dense != null) {
+				return dense[index];
+			}
+			for (int i = 0; i < count; i++) {
+				if (indices[i] == index) {
+					return values[i];
+				}
+			}
+			return 0.0;
+		}
+
+		double add(int index, double weight) {
+			if (dense != null) {
+				dense[index] += weight;
+				return dense[index];
+			}
+			for (int i = 0; i < count; i++) {
+				if (indices[i] == index) {
+					values[i] += weight;
+					return values[i];
+				}
+			}
+			if (count == SPARSE_LIMIT) {
+				dense = new double[CELLS_PER_TILE * CELLS_PER_TILE];
+				for (int i = 0; i < count; i++) {
+					dense[indices[i]] = values[i];
+				}
+				indices = null;
+				values = null;
+				dense[index] = weight;
+				return weight;
+			}
+			if (count == indices.length) {
+				int[] newIndices = new int[count * 2];
+				double[] newValues = new double[count * 2];
+				System.arraycopy(indices, 0, newIndices, 0, count);
+				System.arraycopy(values, 0, newValues, 0, count);
+				indices = newIndices;
+				values = newValues;
+			}
+			indices[count] = index;
+			values[count] = weight;
+			count++;
+			return weight;
+		}
+	}
+}
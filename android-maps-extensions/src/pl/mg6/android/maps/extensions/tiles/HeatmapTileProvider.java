@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings.WeightProvider;
+import pl.mg6.android.maps.extensions.Marker;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Draws density of weighted points. Weights are summed in grids of small cells, built for a zoom level when its first tile is requested and
+ * then updated with every change of points, so drawing a tile only spreads cells near it with kernel.
+ * 
+ * Drawn tiles are kept in memory. When points change, only tiles they affect are drawn again after
+ * {@link com.google.android.gms.maps.model.TileOverlay#clearTileCache()} is called. Without {@link #maxIntensity(double)} set, change of the
+ * heaviest cell on a zoom level causes all its tiles to be drawn again.
+ * 
+ * Methods may be called from any thread.
+ */
+public class HeatmapTileProvider implements TileProvider {
+
+	public enum Kernel {
+
+		GAUSSIAN {
+			@Override
+			double weight(double distance) {
+				// three standard deviations at radius
+				return Math.exp(-4.5 * distance * distance);
+			}
+		},
+
+		QUARTIC {
+			@Override
+			double weight(double distance) {
+				double value = 1.0 - distance * distance;
+				return value * value;
+			}
+		},
+
+		UNIFORM {
+			@Override
+			double weight(double distance) {
+				return 1.0;
+			}
+		};
+
+		/**
+		 * @param distance
+		 *            from point, in the range [0, 1] where 1 is radius
+		 */
+		abstract double weight(double distance);
+	}
+
+	private static final int TILE_SIZE = 256;
+	private static final int CELL_SIZE = TILE_SIZE / HeatmapGrid.CELLS_PER_TILE;
+	private static final int MAX_RADIUS = TILE_SIZE;
+	private static final int COLOR_MAP_SIZE = 256;
+	private static final int MAX_GRIDS = 3;
+
+	private static final int[] DEFAULT_GRADIENT_COLORS = { 0xff66e100, 0xffff0000 };
+	private static final float[] DEFAULT_GRADIENT_START_POINTS = { 0.2f, 1.0f };
+
+	// points in world coordinates, removed points have weight of 0
+	private double[] xs = new double[16];
+	private double[] ys = new double[16];
+	private double[] weights = new double[16];
+	private boolean[] removed = new boolean[16];
+	private int count;
+
+	private final Map<Integer, HeatmapGrid> grids = new LinkedHashMap<Integer, HeatmapGrid>(MAX_GRIDS + 1, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, HeatmapGrid> eldest) {
+			if (size() > MAX_GRIDS) {
+				invalidateZoom(eldest.getKey());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private final LruCache<Long, Tile> tiles;
+	// tiles drawn while points changed are not cached
+	private int version;
+
+	private Kernel kernel = Kernel.GAUSSIAN;
+	private int radius = 20;
+	private double[] kernelTable;
+	private int kernelRadius;
+
+	private int[] gradientColors = DEFAULT_GRADIENT_COLORS;
+	private float[] gradientStartPoints = DEFAULT_GRADIENT_START_POINTS;
+	private double opacity = 0.7;
+	private int[] colorMap;
+
+	private double maxIntensity;
+
+	public HeatmapTileProvider() {
+		this(4 * 1024 * 1024);
+	}
+
+	/**
+	 * @param cacheSize
+	 *            in bytes of drawn tiles kept in memory
+	 */
+	public HeatmapTileProvider(int cacheSize) {
+		tiles = new LruCache<Long, Tile>(cacheSize) {
+
+			@Override
+			protected int sizeOf(Long key, Tile tile) {
+				return tile.data != null ? tile.data.length : 1;
+			}
+		};
+		updateKernel();
+		updateColorMap();
+	}
+
+	/**
+	 * @param radius
+	 *            in pixels of 256 pixel tiles, at most 256
+	 */
+	public synchronized HeatmapTileProvider radius(int radius) {
+		if (radius <= 0 || radius > MAX_RADIUS) {
+			throw new IllegalArgumentException();
+		}
+		this.radius = radius;
+		updateKernel();
+		invalidateAll();
+		return this;
+	}
+
+	public synchronized HeatmapTileProvider kernel(Kernel kernel) {
+		if (kernel == null) {
+			throw new NullPointerException();
+		}
+		this.kernel = kernel;
+		updateKernel();
+		invalidateAll();
+		return this;
+	}
+
+	/**
+	 * @param colors
+	 *            ARGB colors
+	 * @param startPoints
+	 *            intensities in ascending order from the range (0, 1] at which colors start, below first one color fades out
+	 */
+	public synchronized HeatmapTileProvider gradient(int[] colors, float[] startPoints) {
+		if (colors.length == 0 || colors.length != startPoints.length) {
+			throw new IllegalArgumentException();
+		}
+		for (int i = 0; i < startPoints.length; i++) {
+			if (startPoints[i] <= 0.0f || startPoints[i] > 1.0f || (i > 0 && startPoints[i] <= startPoints[i - 1])) {
+				throw new IllegalArgumentException();
+			}
+		}
+		this.gradientColors = colors.clone();
+		this.gradientStartPoints = startPoints.clone();
+		updateColorMap();
+		invalidateAll();
+		return this;
+	}
+
+	public synchronized HeatmapTileProvider opacity(double opacity) {
+		if (opacity < 0.0 || opacity > 1.0) {
+			throw new IllegalArgumentException();
+		}
+		this.opacity = opacity;
+		updateColorMap();
+		invalidateAll();
+		return this;
+	}
+
+	/**
+	 * @param maxIntensity
+	 *            intensity drawn with the last color of gradient or 0 to use weight of the heaviest cell on each zoom level
+	 */
+	public synchronized HeatmapTileProvider maxIntensity(double maxIntensity) {
+		if (maxIntensity < 0.0) {
+			throw new IllegalArgumentException();
+		}
+		this.maxIntensity = maxIntensity;
+		invalidateAll();
+		return this;
+	}
+
+	/**
+	 * @return id of added point
+	 */
+	public synchronized int addPoint(LatLng position, double weight) {
+		return addPoint(position.latitude, position.longitude, weight);
+	}
+
+	/**
+	 * @param weights
+	 *            weights of points or null to use 1 for all
+	 * @return id of the first added point, the following have consecutive ids
+	 */
+	public synchronized int addPoints(double[] latitudes, double[] longitudes, double[] weights) {
+		if (latitudes.length != longitudes.length || (weights != null && weights.length != latitudes.length)) {
+			throw new IllegalArgumentException();
+		}
+		int first = count;
+		for (int i = 0; i < latitudes.length; i++) {
+			addPoint(latitudes[i], longitudes[i], weights != null ? weights[i] : 1.0);
+		}
+		return first;
+	}
+
+	/**
+	 * Adds points at current positions of markers, reading them on the calling thread.
+	 * 
+	 * @param weightProvider
+	 *            weights of markers or null to use 1 for all
+	 * @return id of the first added point, the following have consecutive ids
+	 */
+	public synchronized int addMarkers(List<Marker> markers, WeightProvider weightProvider) {
+		int first = count;
+		for (Marker marker : markers) {
+			LatLng position = marker.getPosition();
+			addPoint(position.latitude, position.longitude, weightProvider != null ? weightProvider.getWeight(marker) : 1.0);
+		}
+		return first;
+	}
+
+	public synchronized void movePoint(int id, LatLng position) {
+		checkId(id);
+		double weight = weights[id];
+		changeWeight(id, -weight);
+		xs[id] = toX(position.longitude);
+		ys[id] = toY(position.latitude);
+		changeWeight(id, weight);
+	}
+
+	public synchronized void setWeight(int id, double weight) {
+		checkId(id);
+		changeWeight(id, weight - weights[id]);
+		weights[id] = weight;
+	}
+
+	public synchronized void removePoint(int id) {
+		checkId(id);
+		changeWeight(id, -weights[id]);
+		weights[id] = 0.0;
+		removed[id] = true;
+	}
+
+	/**
+	 * Removes all points. Ids are not reused.
+	 */
+	public synchronized void clearPoints() {
+		for (int i = 0; i < count; i++) {
+			weights[i] = 0.0;
+			removed[i] = true;
+		}
+		grids.clear();
+		invalidateAll();
+	}
+
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		long key = TileKey.pack(x, y, zoom);
+		double[] intensities;
+		double max;
+		int[] colors;
+		int tileVersion;
+		synchronized (this) {
+			HeatmapGrid grid = getGrid(zoom);
+			max = maxIntensity > 0.0 ? maxIntensity : grid.getMaxWeight();
+			if (max != grid.getRenderedMaxIntensity()) {
+				invalidateZoom(zoom);
+				grid.setRenderedMaxIntensity(max);
+			}
+			Tile tile = tiles.get(key);
+			if (tile != null) {
+				return tile;
+			}
+			if (max <= 0.0) {
+				return NO_TILE;
+			}
+			intensities = grid.render(x, y, kernelTable, kernelRadius);
+			colors = colorMap;
+			tileVersion = version;
+		}
+		Tile tile = draw(intensities, max, colors);
+		synchronized (this) {
+			if (tileVersion == version) {
+				tiles.put(key, tile);
+			}
+		}
+		return tile;
+	}
+
+	private int addPoint(double latitude, double longitude, double weight) {
+		if (count == xs.length) {
+			int capacity = count * 2;
+			xs = copyOf(xs, capacity);
+			ys = copyOf(ys, capacity);
+			weights = copyOf(weights, capacity);
+			boolean[] newRemoved = new boolean[capacity];
+			System.arraycopy(removed, 0, newRemoved, 0, count);
+			removed = newRemoved;
+		}
+		int id = count;
+		xs[id] = toX(longitude);
+		ys[id] = toY(latitude);
+		count++;
+		changeWeight(id, weight);
+		weights[id] = weight;
+		return id;
+	}
+
+	private void checkId(int id) {
+		if (id < 0 || id >= count || removed[id]) {
+			throw new IllegalArgumentException("No point with id " + id);
+		}
+	}
+
+	/**
+	 * Updates built grids and removes tiles within kernel radius from point.
+	 */
+	private void changeWeight(int id, double delta) {
+		version++;
+		for (HeatmapGrid grid : grids.values()) {
+			grid.add(xs[id], ys[id], delta);
+			int zoom = grid.getZoom();
+			int tileCount = 1 << zoom;
+			int reach = kernelRadius + 1;
+			int cellX = grid.toCell(xs[id]);
+			int cellY = grid.toCell(ys[id]);
+			int fromX = floorDiv(cellX - reach, HeatmapGrid.CELLS_PER_TILE);
+			int toX = floorDiv(cellX + reach, HeatmapGrid.CELLS_PER_TILE);
+			int fromY = Math.max(floorDiv(cellY - reach, HeatmapGrid.CELLS_PER_TILE), 0);
+			int toY = Math.min(floorDiv(cellY + reach, HeatmapGrid.CELLS_PER_TILE), tileCount - 1);
+			for (int tileY = fromY; tileY <= toY; tileY++) {
+				for (int tileX = fromX; tileX <= toX; tileX++) {
+					tiles.remove(TileKey.pack((tileX % tileCount + tileCount) % tileCount, tileY, zoom));
+				}
+			}
+		}
+	}
+
+	private HeatmapGrid getGrid(int zoom) {
+		HeatmapGrid grid = grids.get(zoom);
+		if (grid == null) {
+			grid = new HeatmapGrid(zoom);
+			for (int i = 0; i < count; i++) {
+				if (!removed[i]) {
+					grid.add(xs[i], ys[i], weights[i]);
+				}
+			}
+			grids.put(zoom, grid);
+		}
+		return grid;
+	}
+
+	private void invalidateZoom(int zoom) {
+		version++;
+		for (Long key : tiles.snapshot().keySet()) {
+			if (TileKey.getZoom(key) == zoom) {
+				tiles.remove(key);
+			}
+		}
+	}
+
+	private void invalidateAll() {
+		version++;
+		tiles.evictAll();
+	}
+
+	private void updateKernel() {
+		kernelRadius = Math.max(1, Math.round((float) radius / CELL_SIZE));
+		int side = 2 * kernelRadius + 1;
+		kernelTable = new double[side * side];
+		for (int y = -kernelRadius; y <= kernelRadius; y++) {
+			for (int x = -kernelRadius; x <= kernelRadius; x++) {
+				double distance = Math.sqrt(x * x + y * y) / kernelRadius;
+				if (distance <= 1.0) {
+					kernelTable[(y + kernelRadius) * side + x + kernelRadius] = kernel.weight(distance);
+				}
+			}
+		}
+	}
+
+	private void updateColorMap() {
+		colorMap = createColorMap(gradientColors, gradientStartPoints, opacity, COLOR_MAP_SIZE);
+	}
+
+	/**
+	 * @return colors for intensities from 0 to 1, fading from transparent to the first color below its start point
+	 */
+	static int[] createColorMap(int[] colors, float[] startPoints, double opacity, int size) {
+		int[] colorMap = new int[size];
+		int segment = 0;
+		for (int i = 0; i < size; i++) {
+			float intensity = (float) i / (size - 1);
+			while (segment < startPoints.length && startPoints[segment] < intensity) {
+				segment++;
+			}
+			int color;
+			if (segment == 0) {
+				// first color faded out
+				int first = colors[0];
+				color = interpolate(first & 0x00ffffff, first, intensity / startPoints[0]);
+			} else if (segment == startPoints.length) {
+				color = colors[colors.length - 1];
+			} else {
+				float from = startPoints[segment - 1];
+				float to = startPoints[segment];
+				color = interpolate(colors[segment - 1], colors[segment], (intensity - from) / (to - from));
+			}
+			int alpha = (int) ((color >>> 24) * opacity);
+			colorMap[i] = (alpha << 24) | (color & 0x00ffffff);
+		}
+		return colorMap;
+	}
+
+	private static int interpolate(int from, int to, float fraction) {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int a = (from >>> shift) & 0xff;
+			int b = (to >>> shift) & 0xff;
+			result |= Math.round(a + (b - a) * fraction) << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Interpolates intensities of cells bilinearly between their centers.
+	 */
+	private static Tile draw(double[] intensities, double max, int[] colors) {
+		int side = HeatmapGrid.CELLS_PER_TILE + 2;
+		int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+		boolean empty = true;
+		for (int py = 0; py < TILE_SIZE; py++) {
+			// cell coordinates are shifted by one neighbour cell
+			double cellY = (py + 0.5) / CELL_SIZE + 0.5;
+			int y0 = (int) cellY;
+			double fy = cellY - y0;
+			for (int px = 0; px < TILE_SIZE; px++) {
+				double cellX = (px + 0.5) / CELL_SIZE + 0.5;
+				int x0 = (int) cellX;
+				double fx = cellX - x0;
+				int i = y0 * side + x0;
+				double top = intensities[i] + (intensities[i + 1] - intensities[i]) * fx;
+				double bottom = intensities[i + side] + (intensities[i + side + 1] - intensities[i + side]) * fx;
+				double intensity = (top + (bottom - top) * fy) / max;
+				if (intensity > 0.0) {
+					int color = colors[Math.min((int) (intensity * (colors.length - 1)), colors.length - 1)];
+					pixels[py * TILE_SIZE + px] = color;
+					empty &= color >>> 24 == 0;
+				}
+			}
+		}
+		if (empty) {
+			return NO_TILE;
+		}
+		Bitmap bitmap = Bitmap.createBitmap(pixels, TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+		bitmap.recycle();
+		return new Tile(TILE_SIZE, TILE_SIZE, stream.toByteArray());
+	}
+
+	private static double toX(double longitude) {
+		double x = SphericalMercator.scaleLongitude(longitude) / 360.0;
+		return x - Math.floor(x);
+	}
+
+	private static double toY(double latitude) {
+		return 1.0 - SphericalMercator.scaleLatitude(latitude) / 360.0;
+	}
+
+	private static int floorDiv(int value, int divisor) {
+		return (int) Math.floor((double) value / divisor);
+	}
+
+	private static double[] copyOf(double[] array, int length) {
+		double[] copy = new double[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Generates tiles with wrapped provider on own threads, starting with tiles of zoom level closest to the camera's and then these nearest to its
+ * target. Requests not started yet are cancelled when camera moves so that their tiles are neither visible nor adjacent to the visible region;
+ * the map gets null for them and requests them again when needed.
+ * 
+ * When added with {@link pl.mg6.android.maps.extensions.GoogleMap#addTileOverlay(com.google.android.gms.maps.model.TileOverlayOptions)},
+ * camera changes are passed automatically. {@link #shutdown()} should be called when the provider is no longer used.
+ */
+public class PrioritizedTileProvider implements TileProvider {
+
+	// tiles this far from visible region are still generated
+	private static final double STALE_MARGIN = 1.0;
+	private static final int LATENCY_SAMPLES = 1024;
+
+	private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+	private final TileProvider provider;
+	private final ExecutorService executor;
+
+	private final List<Request> pending = new ArrayList<Request>();
+	// each execution generates the best pending tile at the time it starts
+	private final Runnable generator = new Runnable() {
+
+		@Override
+		public void run() {
+			Request request = takeBest();
+			if (request != null) {
+				request.generate();
+			}
+		}
+	};
+
+	private boolean cameraKnown;
+	private double cameraZoom;
+	private double cameraX;
+	private double cameraY;
+	private TileBounds visibleBounds;
+
+	// most recent latencies in nanoseconds, overwritten cyclically
+	private final long[] latencies = new long[LATENCY_SAMPLES];
+	private int latencyIndex;
+	private int latencyCount;
+	private int completedCount;
+	private int cancelledCount;
+
+	/**
+	 * @param threadCount
+	 *            number of tiles generated at the same time
+	 */
+	public PrioritizedTileProvider(TileProvider provider, int threadCount) {
+		if (threadCount <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.provider = provider;
+		this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PrioritizedTileProvider-" + THREAD_COUNTER.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Reorders pending requests and cancels these far from visible region.
+	 */
+	public void onCameraChange(CameraPosition cameraPosition, LatLngBounds visibleBounds) {
+		List<Request> cancelled = new ArrayList<Request>();
+		synchronized (this) {
+			cameraKnown = true;
+			cameraZoom = cameraPosition.zoom;
+			cameraX = SphericalMercator.scaleLongitude(cameraPosition.target.longitude) / 360.0;
+			cameraY = 1.0 - SphericalMercator.scaleLatitude(cameraPosition.target.latitude) / 360.0;
+			this.visibleBounds = visibleBounds != null ? new TileBounds(visibleBounds) : null;
+			Iterator<Request> iterator = pending.iterator();
+			while (iterator.hasNext()) {
+				Request request = iterator.next();
+				if (isStale(request)) {
+					iterator.remove();
+					cancelled.add(request);
+				}
+			}
+			cancelledCount += cancelled.size();
+		}
+		for (Request request : cancelled) {
+			request.complete(null);
+		}
+	}
+
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		Request request = new Request(x, y, zoom);
+		synchronized (this) {
+			if (isStale(request)) {
+				cancelledCount++;
+				return null;
+			}
+			pending.add(request);
+		}
+		try {
+			executor.execute(generator);
+		} catch (RuntimeException ex) {
+			// shut down
+			synchronized (this) {
+				pending.remove(request);
+			}
+			return null;
+		}
+		return request.await();
+	}
+
+	/**
+	 * Stops threads and cancels pending requests. Tiles being generated are still returned.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		List<Request> cancelled;
+		synchronized (this) {
+			cancelled = new ArrayList<Request>(pending);
+			pending.clear();
+			cancelledCount += cancelled.size();
+		}
+		for (Request request : cancelled) {
+			request.complete(null);
+		}
+	}
+
+	/**
+	 * @return number of requests waiting for a thread
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	public synchronized int getCompletedCount() {
+		return completedCount;
+	}
+
+	public synchronized int getCancelledCount() {
+		return cancelledCount;
+	}
+
+	/**
+	 * @param percentile
+	 *            in the range [0, 100]
+	 * @return time in milliseconds from request to tile of given percentile of recently completed requests or 0 if there were none
+	 */
+	public synchronized double getLatencyPercentile(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException();
+		}
+		int count = latencyCount;
+		if (count == 0) {
+			return 0.0;
+		}
+		long[] sorted = new long[count];
+		System.arraycopy(latencies, 0, sorted, 0, count);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+		return sorted[Math.max(index, 0)] / 1000000.0;
+	}
+
+	private synchronized Request takeBest() {
+		Request best = null;
+		double bestZoomDistance = Double.POSITIVE_INFINITY;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < pending.size(); i++) {
+			Request request = pending.get(i);
+			if (!cameraKnown) {
+				// first come, first served
+				best = request;
+				break;
+			}
+			double zoomDistance = Math.abs(request.zoom - Math.round(cameraZoom));
+			double distance = getSquaredDistanceToTarget(request);
+			if (zoomDistance < bestZoomDistance || zoomDistance == bestZoomDistance && distance < bestDistance) {
+				best = request;
+				bestZoomDistance = zoomDistance;
+				bestDistance = distance;
+			}
+		}
+		pending.remove(best);
+		return best;
+	}
+
+	/**
+	 * @return in tiles of request's zoom level
+	 */
+	private double getSquaredDistanceToTarget(Request request) {
+		int tiles = 1 << request.zoom;
+		double dx = Math.abs(request.x + 0.5 - cameraX * tiles);
+		dx = Math.min(dx, tiles - dx);
+		double dy = request.y + 0.5 - cameraY * tiles;
+		return dx * dx + dy * dy;
+	}
+
+	private boolean isStale(Request request) {
+		if (!cameraKnown) {
+			return false;
+		}
+		if (request.zoom > Math.round(cameraZoom) + 1) {
+			return true;
+		}
+		return visibleBounds != null && !visibleBounds.intersects(request.x, request.y, request.zoom, STALE_MARGIN);
+	}
+
+	private synchronized void onComplete(long latency) {
+		latencies[latencyIndex] = latency;
+		latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+		latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+		completedCount++;
+	}
+
+	private class Request {
+
+		private final int x;
+		private final int y;
+		private final int zoom;
+		private final long start = System.nanoTime();
+
+		private boolean done;
+		private Tile tile;
+
+		Request(int x, int y, int zoom) {
+			this.x = x;
+			this.y = y;
+			this.zoom = zoom;
+		}
+
+		void generate() {
+			Tile result = null;
+			try {
+				result = provider.getTile(x, y, zoom);
+			} finally {
+				onComplete(System.nanoTime() - start);
+				complete(result);
+			}
+		}
+
+		synchronized void complete(Tile tile) {
+			this.tile = tile;
+			this.done = true;
+			notifyAll();
+		}
+
+		synchronized Tile await() {
+			boolean interrupted = false;
+			while (!done) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return tile;
+		}
+	}
+}
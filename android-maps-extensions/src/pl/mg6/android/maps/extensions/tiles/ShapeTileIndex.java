@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.util.Arrays;
+
+/**
+ * Rectangular shape bounds in world coordinates of tiles, growing eastwards and southwards from 0 to 1. Each shape is put on the deepest level of
+ * tile pyramid where it spans at most two tiles in each direction, into all these tiles. Tiles of every level are sorted along Z-order curve, so
+ * shapes put into a tile or any of its descendants form a contiguous range.
+ * 
+ * Bounds may extend beyond [0, 1) in x for shapes crossing 180th meridian, tiles wrap around.
+ */
+class ShapeTileIndex {
+
+	static final int MAX_LEVEL = 16;
+
+	// level codes take up to 32 bits, shape ids the rest
+	private static final int ID_BITS = 24;
+	static final int MAX_COUNT = 1 << ID_BITS;
+
+	// sorted (code << ID_BITS | id) for each level
+	private final long[][] levels = new long[MAX_LEVEL + 1][];
+
+	ShapeTileIndex(double[] minXs, double[] minYs, double[] maxXs, double[] maxYs, int count) {
+		if (count > MAX_COUNT) {
+			throw new IllegalArgumentException("Too many shapes: " + count);
+		}
+		int[] shapeLevels = new int[count];
+		int[] sizes = new int[MAX_LEVEL + 1];
+		for (int id = 0; id < count; id++) {
+			int level = MAX_LEVEL;
+			while (level > 0 && (span(minXs[id], maxXs[id], level) > 2 || span(minYs[id], maxYs[id], level) > 2)) {
+				level--;
+			}
+			shapeLevels[id] = level;
+			sizes[level] += Math.min(span(minXs[id], maxXs[id], level), 1 << level) * span(clamp(minYs[id]), clamp(maxYs[id]), level);
+		}
+		int[] filled = new int[MAX_LEVEL + 1];
+		for (int level = 0; level <= MAX_LEVEL; level++) {
+			levels[level] = new long[sizes[level]];
+		}
+		for (int id = 0; id < count; id++) {
+			int level = shapeLevels[id];
+			int tiles = 1 << level;
+			int fromX = (int) Math.floor(minXs[id] * tiles);
+			int toX = Math.min((int) Math.floor(maxXs[id] * tiles), fromX + tiles - 1);
+			int fromY = (int) Math.floor(clamp(minYs[id]) * tiles);
+			int toY = (int) Math.floor(clamp(maxYs[id]) * tiles);
+			for (int y = fromY; y <= toY; y++) {
+				for (int x = fromX; x <= toX; x++) {
+					long code = interleave(((x % tiles) + tiles) % tiles, y);
+					levels[level][filled[level]++] = (code << ID_BITS) | id;
+				}
+			}
+		}
+		for (long[] level : levels) {
+			Arrays.sort(level);
+		}
+	}
+
+	/**
+	 * @param margin
+	 *            number of neighbouring tiles on each side whose shapes are also returned, at most 1
+	 * @return ascending ids of shapes whose tiles intersect given tile, each once
+	 */
+	int[] query(int x, int y, int zoom, int margin) {
+		int tiles = 1 << zoom;
+		int[] result = new int[16];
+		int count = 0;
+		for (int dy = -margin; dy <= margin; dy++) {
+			int neighbourY = y + dy;
+			if (neighbourY < 0 || neighbourY >= tiles) {
+				continue;
+			}
+			for (int dx = -margin; dx <= margin; dx++) {
+				int neighbourX = ((x + dx) % tiles + tiles) % tiles;
+				for (int level = 0; level <= MAX_LEVEL; level++) {
+					long first;
+					long last;
+					if (level <= zoom) {
+						// ancestor of tile
+						int shift = zoom - level;
+						first = interleave(neighbourX >> shift, neighbourY >> shift);
+						last = first + 1;
+					} else {
+						// all descendants of tile
+						int shift = 2 * (level - zoom);
+						first = interleave(neighbourX, neighbourY) << shift;
+						last = first + (1L << shift);
+					}
+					long[] entries = levels[level];
+					for (int i = lowerBound(entries, first << ID_BITS), end = lowerBound(entries, last << ID_BITS); i < end; i++) {
+						if (count == result.length) {
+							int[] newResult = new int[count * 2];
+							System.arraycopy(result, 0, newResult, 0, count);
+							result = newResult;
+						}
+						result[count++] = (int) (entries[i] & (MAX_COUNT - 1));
+					}
+				}
+			}
+		}
+		Arrays.sort(result, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (unique == 0 || result[unique - 1] != result[i]) {
+				result[unique++] = result[i];
+			}
+		}
+		int[] ids = new int[unique];
+		System.arraycopy(result, 0, ids, 0, unique);
+		return ids;
+	}
+
+	private static int span(double min, double max, int level) {
+		int tiles = 1 << level;
+		return (int) Math.floor(max * tiles) - (int) Math.floor(min * tiles) + 1;
+	}
+
+	private static double clamp(double y) {
+		return Math.max(0.0, Math.min(y, 1.0 - 1e-12));
+	}
+
+	private static int lowerBound(long[] entries, long key) {
+		int low = 0;
+		int high = entries.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (entries[middle] < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static long interleave(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	private static long spread(int value) {
+		long bits = value & 0xffffffffL;
+		bits = (bits | (bits << 16)) & 0x0000ffff0000ffffL;
+		bits = (bits | (bits << 8)) & 0x00ff00ff00ff00ffL;
+		bits = (bits | (bits << 4)) & 0x0f0f0f0f0f0f0f0fL;
+		bits = (bits | (bits << 2)) & 0x3333333333333333L;
+		bits = (bits | (bits << 1)) & 0x5555555555555555L;
+		return bits;
+	}
+}
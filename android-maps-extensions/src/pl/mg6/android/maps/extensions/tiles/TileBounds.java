@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLngBounds;
+
+/**
+ * LatLngBounds in world coordinates of tiles, which grow eastwards and southwards from 0 to 1. Bounds crossing 180th meridian have east greater
+ * than 1.
+ */
+class TileBounds {
+
+	private final double west;
+	private final double east;
+	private final double north;
+	private final double south;
+
+	TileBounds(LatLngBounds bounds) {
+		west = SphericalMercator.scaleLongitude(bounds.southwest.longitude) / 360.0;
+		double scaledEast = SphericalMercator.scaleLongitude(bounds.northeast.longitude) / 360.0;
+		east = scaledEast < west ? scaledEast + 1.0 : scaledEast;
+		north = 1.0 - SphericalMercator.scaleLatitude(bounds.northeast.latitude) / 360.0;
+		south = 1.0 - SphericalMercator.scaleLatitude(bounds.southwest.latitude) / 360.0;
+	}
+
+	/**
+	 * @param margin
+	 *            in tiles of given zoom level, added on each side of bounds
+	 */
+	boolean intersects(int x, int y, int zoom, double margin) {
+		int tiles = 1 << zoom;
+		if (y + 1 <= north * tiles - margin || y >= south * tiles + margin) {
+			return false;
+		}
+		double minX = west * tiles - margin;
+		double maxX = east * tiles + margin;
+		for (int shift = -tiles; shift <= tiles; shift += tiles) {
+			if (x + shift + 1 > minX && x + shift <= maxX) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
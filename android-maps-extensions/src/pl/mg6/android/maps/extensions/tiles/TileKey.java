@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+/**
+ * Packs tile coordinates into a single long. Zoom takes the highest byte, x and y 28 bits each, so top bit is never set.
+ */
+class TileKey {
+
+	private TileKey() {
+	}
+
+	static long pack(int x, int y, int zoom) {
+		return ((long) zoom << 56) | ((long) x << 28) | y;
+	}
+
+	static int getZoom(long key) {
+		return (int) (key >>> 56);
+	}
+
+	static int getX(long key) {
+		return (int) ((key >>> 28) & 0xfffffff);
+	}
+
+	static int getY(long key) {
+		return (int) (key & 0xfffffff);
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.io.ByteArrayOutputStream;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+/**
+ * Draws many static polylines and polygons into tiles, much cheaper to add and display than the same number of map shapes. Lines are split
+ * into short parts and these and polygons are indexed by tiles they cover, so drawing a tile only reads geometry near it.
+ * 
+ * Shapes may be added from any thread; after adding call {@link com.google.android.gms.maps.model.TileOverlay#clearTileCache()} if tiles were
+ * already shown. Shapes are straight in mercator projection, like non-geodesic map shapes.
+ */
+public class VectorTileProvider implements TileProvider {
+
+	private static final int DEFAULT_TILE_SIZE = 512;
+	// longer lines are split, so each part only covers a few tiles
+	private static final int MAX_PART_POINTS = 32;
+
+	private final int tileSize;
+
+	// vertices of all parts in world coordinates, longitudes unwrapped within part
+	private double[] xs = new double[256];
+	private double[] ys = new double[256];
+	private int pointCount;
+
+	private int[] partStarts = new int[64];
+	private int[] partLengths = new int[64];
+	private int[] partStyles = new int[64];
+	private double[] minXs = new double[64];
+	private double[] minYs = new double[64];
+	private double[] maxXs = new double[64];
+	private double[] maxYs = new double[64];
+	private int partCount;
+
+	// fill color is 0 for polylines
+	private int[] styleStrokeColors = new int[16];
+	private float[] styleStrokeWidths = new float[16];
+	private int[] styleFillColors = new int[16];
+	private boolean[] styleClosed = new boolean[16];
+	private int styleCount;
+	private float maxStrokeWidth;
+
+	private ShapeTileIndex index;
+
+	public VectorTileProvider() {
+		this(DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * @param tileSize
+	 *            size in pixels of drawn tiles, each displayed as 256 dp square
+	 */
+	public VectorTileProvider(int tileSize) {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException();
+		}
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * @param width
+	 *            in dp
+	 */
+	public synchronized void addPolyline(double[] latitudes, double[] longitudes, int color, float width) {
+		checkPoints(latitudes, longitudes, 2);
+		int style = addStyle(color, width, 0, false);
+		// consecutive parts share a point, so lines stay connected
+		for (int start = 0; start < latitudes.length - 1; start += MAX_PART_POINTS - 1) {
+			int length = Math.min(MAX_PART_POINTS, latitudes.length - start);
+			addPart(latitudes, longitudes, start, length, style);
+		}
+	}
+
+	/**
+	 * @param strokeWidth
+	 *            in dp, 0 for no outline
+	 */
+	public synchronized void addPolygon(double[] latitudes, double[] longitudes, int fillColor, int strokeColor, float strokeWidth) {
+		checkPoints(latitudes, longitudes, 3);
+		addPart(latitudes, longitudes, 0, latitudes.length, addStyle(strokeColor, strokeWidth, fillColor, true));
+	}
+
+	/**
+	 * Removes all shapes. Tiles being drawn keep using previous shapes.
+	 */
+	public synchronized void clear() {
+		xs = new double[256];
+		ys = new double[256];
+		pointCount = 0;
+		partStarts = new int[64];
+		partLengths = new int[64];
+		partStyles = new int[64];
+		minXs = new double[64];
+		minYs = new double[64];
+		maxXs = new double[64];
+		maxYs = new double[64];
+		partCount = 0;
+		styleStrokeColors = new int[16];
+		styleStrokeWidths = new float[16];
+		styleFillColors = new int[16];
+		styleClosed = new boolean[16];
+		styleCount = 0;
+		maxStrokeWidth = 0.0f;
+		index = null;
+	}
+
+	@Override
+	public Tile getTile(int x, int y, int zoom) {
+		ShapeTileIndex currentIndex;
+		double[] currentXs;
+		double[] currentYs;
+		int[] currentStarts;
+		int[] currentLengths;
+		int[] currentStyles;
+		int[] strokeColors;
+		float[] strokeWidths;
+		int[] fillColors;
+		boolean[] closed;
+		double[][] bounds;
+		float strokeMargin;
+		synchronized (this) {
+			if (index == null) {
+				index = new ShapeTileIndex(minXs, minYs, maxXs, maxYs, partCount);
+			}
+			// arrays are only appended to or replaced, so what index refers to does not change
+			currentIndex = index;
+			currentXs = xs;
+			currentYs = ys;
+			currentStarts = partStarts;
+			currentLengths = partLengths;
+			currentStyles = partStyles;
+			strokeColors = styleStrokeColors;
+			strokeWidths = styleStrokeWidths;
+			fillColors = styleFillColors;
+			closed = styleClosed;
+			bounds = new double[][] { minXs, minYs, maxXs, maxYs };
+			strokeMargin = maxStrokeWidth * tileSize / 256.0f;
+		}
+		int[] ids = currentIndex.query(x, y, zoom, strokeMargin > 0.0f ? 1 : 0);
+		if (ids.length == 0) {
+			return NO_TILE;
+		}
+		int tiles = 1 << zoom;
+		double scale = (double) tileSize * tiles;
+		Bitmap bitmap = Bitmap.createBitmap(tileSize, tileSize, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		paint.setStrokeCap(Paint.Cap.ROUND);
+		paint.setStrokeJoin(Paint.Join.ROUND);
+		Path path = new Path();
+		boolean drawn = false;
+		for (int id : ids) {
+			int style = currentStyles[id];
+			float strokeWidth = strokeWidths[style] * tileSize / 256.0f;
+			double margin = strokeWidth / 2.0 / scale;
+			path.rewind();
+			boolean visible = false;
+			// at low zoom levels and near antimeridian the same part may be visible one world apart
+			for (int shift = -1; shift <= 1; shift++) {
+				if (!intersects(bounds, id, x, y, tiles, margin, shift)) {
+					continue;
+				}
+				visible = true;
+				int start = currentStarts[id];
+				int end = start + currentLengths[id];
+				for (int i = start; i < end; i++) {
+					// relative to tile in double precision, large values only appear far outside tile
+					float pixelX = (float) ((currentXs[i] + shift) * scale - (double) x * tileSize);
+					float pixelY = (float) (currentYs[i] * scale - (double) y * tileSize);
+					if (i == start) {
+						path.moveTo(pixelX, pixelY);
+					} else {
+						path.lineTo(pixelX, pixelY);
+					}
+				}
+				if (closed[style]) {
+					path.close();
+				}
+			}
+			if (!visible) {
+				continue;
+			}
+			if (closed[style] && fillColors[style] != 0) {
+				paint.setStyle(Paint.Style.FILL);
+				paint.setColor(fillColors[style]);
+				canvas.drawPath(path, paint);
+			}
+			if (strokeWidth > 0.0f && strokeColors[style] != 0) {
+				paint.setStyle(Paint.Style.STROKE);
+				paint.setStrokeWidth(strokeWidth);
+				paint.setColor(strokeColors[style]);
+				canvas.drawPath(path, paint);
+			}
+			drawn = true;
+		}
+		if (!drawn) {
+			bitmap.recycle();
+			return NO_TILE;
+		}
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+		bitmap.recycle();
+		return new Tile(tileSize, tileSize, stream.toByteArray());
+	}
+
+	/**
+	 * @return true if part bounds moved by given number of whole worlds intersect tile
+	 */
+	private static boolean intersects(double[][] bounds, int id, int x, int y, int tiles, double margin, int shift) {
+		double tileMinX = (double) x / tiles - margin;
+		double tileMaxX = (double) (x + 1) / tiles + margin;
+		double tileMinY = (double) y / tiles - margin;
+		double tileMaxY = (double) (y + 1) / tiles + margin;
+		double partMinX = bounds[0][id];
+		double partMinY = bounds[1][id];
+		double partMaxX = bounds[2][id];
+		double partMaxY = bounds[3][id];
+		if (partMaxY < tileMinY || partMinY > tileMaxY) {
+			return false;
+		}
+		return partMinX + shift <= tileMaxX && partMaxX + shift >= tileMinX;
+	}
+
+	private void addPart(double[] latitudes, double[] longitudes, int from, int length, int style) {
+		ensurePointCapacity(pointCount + length);
+		if (partCount == partStarts.length) {
+			int capacity = partCount * 2;
+			partStarts = copyOf(partStarts, capacity);
+			partLengths = copyOf(partLengths, capacity);
+			partStyles = copyOf(partStyles, capacity);
+			minXs = copyOf(minXs, capacity);
+			minYs = copyOf(minYs, capacity);
+			maxXs = copyOf(maxXs, capacity);
+			maxYs = copyOf(maxYs, capacity);
+		}
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double previousX = Double.NaN;
+		for (int i = from; i < from + length; i++) {
+			double x = SphericalMercator.scaleLongitude(longitudes[i]) / 360.0;
+			if (Double.isNaN(previousX)) {
+				x -= Math.floor(x);
+			} else {
+				// consecutive points are never more than half of the world apart
+				x -= Math.floor(x - previousX + 0.5);
+			}
+			double y = 1.0 - SphericalMercator.scaleLatitude(latitudes[i]) / 360.0;
+			xs[pointCount] = x;
+			ys[pointCount] = y;
+			pointCount++;
+			previousX = x;
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		partStarts[partCount] = pointCount - length;
+		partLengths[partCount] = length;
+		partStyles[partCount] = style;
+		minXs[partCount] = minX;
+		minYs[partCount] = minY;
+		maxXs[partCount] = maxX;
+		maxYs[partCount] = maxY;
+		partCount++;
+		index = null;
+	}
+
+	private int addStyle(int strokeColor, float strokeWidth, int fillColor, boolean closed) {
+		for (int i = styleCount - 1; i >= 0; i--) {
+			if (styleStrokeColors[i] == strokeColor && styleStrokeWidths[i] == strokeWidth && styleFillColors[i] == fillColor && styleClosed[i] == closed) {
+				return i;
+			}
+		}
+		if (styleCount == styleStrokeColors.length) {
+			int capacity = styleCount * 2;
+			styleStrokeColors = copyOf(styleStrokeColors, capacity);
+			styleFillColors = copyOf(styleFillColors, capacity);
+			float[] newWidths = new float[capacity];
+			System.arraycopy(styleStrokeWidths, 0, newWidths, 0, styleCount);
+			styleStrokeWidths = newWidths;
+			boolean[] newClosed = new boolean[capacity];
+			System.arraycopy(styleClosed, 0, newClosed, 0, styleCount);
+			styleClosed = newClosed;
+		}
+		styleStrokeColors[styleCount] = strokeColor;
+		styleStrokeWidths[styleCount] = strokeWidth;
+		styleFillColors[styleCount] = fillColor;
+		styleClosed[styleCount] = closed;
+		maxStrokeWidth = Math.max(maxStrokeWidth, strokeWidth);
+		return styleCount++;
+	}
+
+	private void ensurePointCapacity(int capacity) {
+		if (capacity > xs.length) {
+			int newCapacity = Math.max(capacity, xs.length * 2);
+			xs = copyOf(xs, newCapacity);
+			ys = copyOf(ys, newCapacity);
+		}
+	}
+
+	private static void checkPoints(double[] latitudes, double[] longitudes, int minCount) {
+		if (latitudes.length != longitudes.length || latitudes.length < minCount) {
+			throw new IllegalArgumentException();
+		}
+	}
+
+	private static double[] copyOf(double[] array, int length) {
+		double[] copy = new double[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
@@ -21,9 +21,33 @@ import com.google.android.gms.maps.model.LatLng;
 
 public class LatLngUtils {
 
+	/**
+	 * Mean Earth radius in meters
+	 */
+	public static final double EARTH_RADIUS = 6371009.0;
+
 	private LatLngUtils() {
 	}
 
+	/**
+	 * Great-circle distance calculated with haversine formula, which is accurate for small distances unlike spherical law of cosines.
+	 * 
+	 * @return distance in meters
+	 */
+	public static double distanceBetween(LatLng first, LatLng second) {
+		return distanceBetween(first.latitude, first.longitude, second.latitude, second.longitude);
+	}
+
+	/**
+	 * @see #distanceBetween(LatLng, LatLng)
+	 */
+	public static double distanceBetween(double firstLatitude, double firstLongitude, double secondLatitude, double secondLongitude) {
+		double sinHalfLat = Math.sin(Math.toRadians(secondLatitude - firstLatitude) / 2.0);
+		double sinHalfLng = Math.sin(Math.toRadians(secondLongitude - firstLongitude) / 2.0);
+		double h = sinHalfLat * sinHalfLat + Math.cos(Math.toRadians(firstLatitude)) * Math.cos(Math.toRadians(secondLatitude)) * sinHalfLng * sinHalfLng;
+		return 2.0 * EARTH_RADIUS * Math.asin(Math.min(1.0, Math.sqrt(h)));
+	}
+
 	public static LatLng fromLocation(Location location) {
 		return new LatLng(location.getLatitude(), location.getLongitude());
 	}
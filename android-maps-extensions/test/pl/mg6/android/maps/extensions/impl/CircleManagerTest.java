@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import pl.mg6.android.maps.extensions.Circle;
+
+import com.google.android.gms.internal.du;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.VisibleRegion;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CircleManagerTest {
+
+	private static final LatLng NEAR = new LatLng(0, 0);
+	private static final LatLng FAR = new LatLng(0, 50);
+
+	@Mock
+	private IGoogleMap map;
+	@Mock
+	private IProjection projection;
+	// delegate of every real circle, final Circle class cannot be mocked
+	@Mock
+	private du realCircle;
+
+	private CircleManager manager;
+
+	@Before
+	public void init() throws Exception {
+		Mockito.when(map.getProjection()).thenReturn(projection);
+		Mockito.when(map.addCircle(Mockito.any(CircleOptions.class))).thenAnswer(new Answer<com.google.android.gms.maps.model.Circle>() {
+			@Override
+			public com.google.android.gms.maps.model.Circle answer(InvocationOnMock invocation) {
+				return new com.google.android.gms.maps.model.Circle(realCircle);
+			}
+		});
+		Mockito.when(realCircle.getId()).thenReturn("c1");
+		moveCamera(NEAR);
+		manager = new CircleManager(map);
+	}
+
+	@Test
+	public void whenCullingDisabledShouldCreateFarCircle() {
+
+		manager.addCircle(circleAt(FAR));
+
+		Mockito.verify(map).addCircle(Mockito.any(CircleOptions.class));
+	}
+
+	@Test
+	public void whenCullingEnabledShouldCreateOnlyNearCircles() {
+
+		manager.setCullingEnabled(true);
+		Circle near = manager.addCircle(circleAt(NEAR));
+		Circle far = manager.addCircle(circleAt(FAR));
+
+		Mockito.verify(map, Mockito.times(1)).addCircle(Mockito.any(CircleOptions.class));
+		Assert.assertEquals(NEAR, near.getCenter());
+		Assert.assertEquals(FAR, far.getCenter());
+	}
+
+	@Test
+	public void whenCameraMovesAwayAndBackShouldReleaseAndCreateAgain() throws Exception {
+
+		manager.setCullingEnabled(true);
+		manager.addCircle(circleAt(NEAR));
+		manager.addCircle(circleAt(FAR));
+
+		moveCamera(FAR);
+		manager.onCameraChange(null);
+		Mockito.verify(realCircle, Mockito.times(1)).remove();
+		Mockito.verify(map, Mockito.times(2)).addCircle(Mockito.any(CircleOptions.class));
+
+		moveCamera(NEAR);
+		manager.onCameraChange(null);
+		Mockito.verify(realCircle, Mockito.times(2)).remove();
+		Mockito.verify(map, Mockito.times(3)).addCircle(Mockito.any(CircleOptions.class));
+	}
+
+	@Test
+	public void whenCircleMovedNearShouldCreateIt() {
+
+		manager.setCullingEnabled(true);
+		Circle circle = manager.addCircle(circleAt(FAR));
+		circle.setCenter(NEAR);
+
+		Mockito.verify(map).addCircle(Mockito.any(CircleOptions.class));
+	}
+
+	@Test
+	public void whenRemovedShouldNotCreateItAgain() {
+
+		manager.setCullingEnabled(true);
+		Circle circle = manager.addCircle(circleAt(FAR));
+		circle.remove();
+
+		moveCamera(FAR);
+		manager.onCameraChange(null);
+
+		Mockito.verify(map, Mockito.never()).addCircle(Mockito.any(CircleOptions.class));
+		Assert.assertTrue(manager.getCircles().isEmpty());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void whenIdRequestedForCulledCircleShouldReleaseItLater() throws Exception {
+
+		manager.setCullingEnabled(true);
+		Circle circle = manager.addCircle(circleAt(FAR));
+
+		Assert.assertEquals("c1", circle.getId());
+		manager.onCameraChange(null);
+
+		Mockito.verify(map).addCircle(Mockito.any(CircleOptions.class));
+		Mockito.verify(realCircle).remove();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void whenRemovedShouldKeepId() throws Exception {
+
+		Circle circle = manager.addCircle(circleAt(NEAR));
+		circle.remove();
+
+		Assert.assertEquals("c1", circle.getId());
+		Mockito.verify(map, Mockito.times(1)).addCircle(Mockito.any(CircleOptions.class));
+	}
+
+	private void moveCamera(LatLng center) {
+		LatLngBounds bounds = new LatLngBounds(new LatLng(center.latitude - 1, center.longitude - 1), new LatLng(center.latitude + 1,
+				center.longitude + 1));
+		VisibleRegion region = new VisibleRegion(bounds.southwest, new LatLng(bounds.southwest.latitude, bounds.northeast.longitude), new LatLng(
+				bounds.northeast.latitude, bounds.southwest.longitude), bounds.northeast, bounds);
+		Mockito.when(projection.getVisibleRegion()).thenReturn(region);
+	}
+
+	private static CircleOptions circleAt(LatLng center) {
+		return new CircleOptions().center(center).radius(1000);
+	}
+}
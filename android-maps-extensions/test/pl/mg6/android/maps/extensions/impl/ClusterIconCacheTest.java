@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.AsyncIconDataProvider;
+import pl.mg6.android.maps.extensions.ClusteringSettings.IconDataProvider;
+
+import com.google.android.gms.maps.model.MarkerOptions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterIconCacheTest {
+
+	@Mock
+	private IconDataProvider provider;
+	@Mock
+	private AsyncIconDataProvider asyncProvider;
+	@Mock
+	private ClusterIconCache.OnIconDataReadyListener listener;
+
+	private MarkerOptions placeholder = new MarkerOptions();
+
+	@Before
+	public void init() {
+		Mockito.when(provider.getIconData(Mockito.anyInt())).thenReturn(new MarkerOptions().anchor(0.5f, 0.5f));
+		Mockito.when(asyncProvider.getIconData(Mockito.anyInt())).thenReturn(new MarkerOptions().anchor(0.5f, 1.0f));
+		Mockito.when(asyncProvider.getPlaceholderIconData(Mockito.anyInt())).thenReturn(placeholder);
+	}
+
+	@Test
+	public void whenNoBucketsShouldUseExactCount() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider), new MetricsRecorder(), null);
+
+		Assert.assertEquals(2, cache.getBucket(2));
+		Assert.assertEquals(57, cache.getBucket(57));
+	}
+
+	@Test
+	public void whenBucketsShouldUseLowerBound() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider).clusterCountBuckets(10, 50, 100), new MetricsRecorder(), null);
+
+		Assert.assertEquals(9, cache.getBucket(9));
+		Assert.assertEquals(10, cache.getBucket(10));
+		Assert.assertEquals(50, cache.getBucket(57));
+		Assert.assertEquals(100, cache.getBucket(100000));
+	}
+
+	@Test
+	public void whenIconRequestedTwiceShouldCallProviderOnce() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider), new MetricsRecorder(), null);
+
+		MarkerOptions first = cache.getIconData(5);
+		MarkerOptions second = cache.getIconData(5);
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(0.5f, second.getAnchorU(), 0.0001f);
+		Mockito.verify(provider, Mockito.times(1)).getIconData(5);
+	}
+
+	@Test
+	public void whenCacheDisabledShouldCallProviderEveryTime() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider).iconCacheSize(0), new MetricsRecorder(), null);
+
+		cache.getIconData(5);
+		cache.getIconData(5);
+
+		Mockito.verify(provider, Mockito.times(2)).getIconData(5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenBucketsNotAscendingShouldThrowException() {
+
+		new ClusteringSettings().clusterCountBuckets(50, 10);
+	}
+
+	@Test
+	public void whenAsyncIconNotReadyShouldReturnPlaceholderUntilRendered() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider));
+
+		Assert.assertSame(placeholder, cache.getIconData(5));
+		Mockito.verify(asyncProvider, Mockito.never()).getIconData(5);
+		Mockito.verifyZeroInteractions(listener);
+
+		cache.runAll();
+
+		ArgumentCaptor<MarkerOptions> captor = ArgumentCaptor.forClass(MarkerOptions.class);
+		Mockito.verify(listener).onIconDataReady(Mockito.eq(5), captor.capture());
+		Assert.assertEquals(1.0f, captor.getValue().getAnchorV(), 0.0001f);
+		Assert.assertSame(captor.getValue(), cache.getIconData(5));
+		Mockito.verify(asyncProvider, Mockito.times(1)).getIconData(5);
+		Mockito.verify(asyncProvider, Mockito.times(1)).getPlaceholderIconData(5);
+	}
+
+	@Test
+	public void whenAsyncIconRequestedWhilePendingShouldRenderOnce() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider));
+
+		cache.getIconData(5);
+		cache.getIconData(5);
+
+		Assert.assertEquals(1, cache.background.size());
+		cache.runAll();
+		Mockito.verify(asyncProvider, Mockito.times(1)).getIconData(5);
+		Mockito.verify(listener, Mockito.times(1)).onIconDataReady(Mockito.eq(5), Mockito.any(MarkerOptions.class));
+	}
+
+	@Test
+	public void whenAsyncProviderFailsShouldRequestAgain() {
+
+		Mockito.when(asyncProvider.getIconData(5)).thenThrow(new RuntimeException()).thenReturn(new MarkerOptions());
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider));
+
+		cache.getIconData(5);
+		cache.runAll();
+
+		Mockito.verifyZeroInteractions(listener);
+		Assert.assertSame(placeholder, cache.getIconData(5));
+		cache.runAll();
+
+		Mockito.verify(asyncProvider, Mockito.times(2)).getIconData(5);
+		Mockito.verify(listener).onIconDataReady(Mockito.eq(5), Mockito.any(MarkerOptions.class));
+	}
+
+	@Test
+	public void whenCleanedUpShouldDropRenderedIcon() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider));
+
+		cache.getIconData(5);
+		cache.cleanup();
+		cache.runAll();
+
+		Mockito.verifyZeroInteractions(listener);
+	}
+
+	@Test
+	public void whenCleanedUpShouldRenderIconRequestedLater() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider));
+
+		cache.getIconData(5);
+		cache.cleanup();
+		cache.getIconData(5);
+		cache.runAll();
+
+		Mockito.verify(listener, Mockito.times(1)).onIconDataReady(Mockito.eq(5), Mockito.any(MarkerOptions.class));
+	}
+
+	@Test
+	public void whenMapClearedAndMarkersAddedAgainShouldRenderInBackground() throws InterruptedException {
+
+		final BlockingQueue<Runnable> main = new LinkedBlockingQueue<Runnable>();
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(asyncProvider), new MetricsRecorder(), listener) {
+
+			@Override
+			void postToMainThread(Runnable task) {
+				main.add(task);
+			}
+		};
+
+		cache.getIconData(5);
+		main.poll(5, TimeUnit.SECONDS).run();
+		// what GoogleMap.clear() does through clustering strategy, which keeps using this cache
+		cache.cleanup();
+		Assert.assertSame(placeholder, cache.getIconData(5));
+		main.poll(5, TimeUnit.SECONDS).run();
+
+		Mockito.verify(listener, Mockito.times(2)).onIconDataReady(Mockito.eq(5), Mockito.any(MarkerOptions.class));
+		cache.cleanup();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenAsyncProviderWithoutCacheShouldThrowException() {
+
+		new ClusteringSettings().iconCacheSize(0).iconDataProvider(asyncProvider);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenCacheDisabledForAsyncProviderShouldThrowException() {
+
+		new ClusteringSettings().iconDataProvider(asyncProvider).iconCacheSize(0);
+	}
+
+	@Test
+	public void whenNoBucketsNextBucketShouldStartAtNextCount() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider), new MetricsRecorder(), null);
+
+		Assert.assertEquals(3, cache.getNextBucketStart(2));
+		Assert.assertEquals(58, cache.getNextBucketStart(57));
+	}
+
+	@Test
+	public void whenBucketsNextBucketShouldStartAtNextBound() {
+
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider).clusterCountBuckets(10, 50, 100), new MetricsRecorder(), null);
+
+		Assert.assertEquals(9, cache.getNextBucketStart(8));
+		Assert.assertEquals(10, cache.getNextBucketStart(9));
+		Assert.assertEquals(50, cache.getNextBucketStart(10));
+		Assert.assertEquals(100, cache.getNextBucketStart(57));
+		Assert.assertEquals(150, cache.getNextBucketStart(150));
+	}
+
+	@Test
+	public void whenWarmingUpShouldRenderEachBucketOnceInBackground() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(provider).clusterCountBuckets(5, 50));
+
+		cache.warmUp(0, 1000);
+
+		Mockito.verifyZeroInteractions(provider);
+		Assert.assertEquals(5, cache.background.size());
+		cache.runAll();
+		for (int bucket : new int[] { 2, 3, 4, 5, 50 }) {
+			Mockito.verify(provider).getIconData(bucket);
+		}
+		Mockito.verifyNoMoreInteractions(provider);
+
+		cache.getIconData(50);
+		Mockito.verifyNoMoreInteractions(provider);
+	}
+
+	@Test
+	public void whenWarmingUpShouldRenderNoMoreThanCacheSize() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(provider).iconCacheSize(3));
+
+		cache.warmUp(10, 1000);
+
+		Assert.assertEquals(3, cache.background.size());
+		cache.runAll();
+		Mockito.verify(provider).getIconData(10);
+		Mockito.verify(provider).getIconData(11);
+		Mockito.verify(provider).getIconData(12);
+		Mockito.verifyNoMoreInteractions(provider);
+	}
+
+	@Test
+	public void whenCacheDisabledShouldNotWarmUp() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(provider).iconCacheSize(0));
+
+		cache.warmUp(2, 10);
+
+		Assert.assertTrue(cache.background.isEmpty());
+	}
+
+	@Test
+	public void whenPendingIconRequestedShouldRenderOnMainThreadOnlyOnce() {
+
+		ManualClusterIconCache cache = new ManualClusterIconCache(new ClusteringSettings().iconDataProvider(provider));
+
+		cache.warmUp(5, 5);
+		MarkerOptions iconData = cache.getIconData(5);
+		cache.runAll();
+
+		Assert.assertSame(iconData, cache.getIconData(5));
+		Mockito.verify(provider, Mockito.times(1)).getIconData(5);
+		Mockito.verifyZeroInteractions(listener);
+	}
+
+	private class ManualClusterIconCache extends ClusterIconCache {
+
+		private final List<Runnable> background = new ArrayList<Runnable>();
+		private final List<Runnable> main = new ArrayList<Runnable>();
+
+		ManualClusterIconCache(ClusteringSettings settings) {
+			super(settings, new MetricsRecorder(), listener);
+		}
+
+		@Override
+		void executeInBackground(Runnable task) {
+			background.add(task);
+		}
+
+		@Override
+		void postToMainThread(Runnable task) {
+			main.add(task);
+		}
+
+		void runAll() {
+			while (!background.isEmpty() || !main.isEmpty()) {
+				List<Runnable> tasks = new ArrayList<Runnable>(background);
+				background.clear();
+				tasks.addAll(main);
+				main.clear();
+				for (Runnable task : tasks) {
+					task.run();
+				}
+			}
+		}
+	}
+}
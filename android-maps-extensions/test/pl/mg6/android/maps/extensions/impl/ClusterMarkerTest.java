@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings.CenterPolicy;
+
+import com.google.android.gms.maps.model.LatLng;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClusterMarkerTest {
+
+	@Mock
+	private GridClusteringStrategy strategy;
+
+	@Mock
+	private DelegatingMarker marker1;
+
+	@Mock
+	private DelegatingMarker marker2;
+
+	@Mock
+	private DelegatingMarker marker3;
+
+	private ClusterMarker cluster;
+
+	@Before
+	public void init() {
+		Mockito.when(strategy.getCenterPolicy()).thenReturn(CenterPolicy.BOUNDS_CENTER);
+		Mockito.when(strategy.getWeight(Mockito.any(DelegatingMarker.class))).thenReturn(1.0);
+
+		Mockito.when(marker1.getPosition()).thenReturn(new LatLng(0, 0));
+		Mockito.when(marker2.getPosition()).thenReturn(new LatLng(10, 20));
+		Mockito.when(marker3.getPosition()).thenReturn(new LatLng(2, 2));
+
+		cluster = new ClusterMarker(strategy);
+	}
+
+	@Test
+	public void whenBoundsCenterShouldReturnCenterOfBounds() {
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+		cluster.add(marker3);
+
+		assertPosition(5, 10, cluster.calculatePosition());
+	}
+
+	@Test
+	public void whenExtremeMarkerRemovedShouldShrinkBounds() {
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+		cluster.add(marker3);
+
+		cluster.remove(marker2);
+
+		assertPosition(1, 1, cluster.calculatePosition());
+	}
+
+	@Test
+	public void whenMarkerMovedShouldUpdatePosition() {
+
+		cluster.add(marker1);
+		cluster.add(marker3);
+
+		Mockito.when(marker3.getPosition()).thenReturn(new LatLng(-4, -6));
+		cluster.update(marker3);
+
+		assertPosition(-2, -3, cluster.calculatePosition());
+	}
+
+	@Test
+	public void whenCrossingAntimeridianShouldReturnBoundsCenterOnAntimeridian() {
+
+		Mockito.when(marker1.getPosition()).thenReturn(new LatLng(0, 179));
+		Mockito.when(marker2.getPosition()).thenReturn(new LatLng(0, -177));
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+
+		assertPosition(0, -179, cluster.calculatePosition());
+	}
+
+	@Test
+	public void whenMeanShouldReturnAveragePosition() {
+
+		Mockito.when(strategy.getCenterPolicy()).thenReturn(CenterPolicy.MEAN);
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+		cluster.add(marker3);
+
+		assertPosition(4, 22.0 / 3.0, cluster.calculatePosition());
+	}
+
+	@Test
+	public void whenMeanAndCrossingAntimeridianShouldReturnAverageOnAntimeridian() {
+
+		Mockito.when(strategy.getCenterPolicy()).thenReturn(CenterPolicy.MEAN);
+		Mockito.when(marker1.getPosition()).thenReturn(new LatLng(0, 170));
+		Mockito.when(marker2.getPosition()).thenReturn(new LatLng(0, -170));
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+
+		Assert.assertEquals(180.0, Math.abs(cluster.calculatePosition().longitude), 0.0001);
+	}
+
+	@Test
+	public void whenWeightedMeanShouldPreferHeavierMarkers() {
+
+		Mockito.when(strategy.getCenterPolicy()).thenReturn(CenterPolicy.WEIGHTED_MEAN);
+		Mockito.when(strategy.getWeight(marker1)).thenReturn(3.0);
+		Mockito.when(strategy.getWeight(marker2)).thenReturn(1.0);
+
+		cluster.add(marker1);
+		cluster.add(marker2);
+
+		Assert.assertEquals(2.5, cluster.calculatePosition().latitude, 0.0001);
+	}
+
+	private static void assertPosition(double latitude, double longitude, LatLng position) {
+		Assert.assertEquals(latitude, position.latitude, 0.0001);
+		Assert.assertEquals(longitude, position.longitude, 0.0001);
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.NativeCallStats;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.CircleOptions;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CountingGoogleMapTest {
+
+	@Mock
+	private IGoogleMap real;
+
+	@Mock
+	private IProjection projection;
+
+	@Mock
+	private ClusterRefresher refresher;
+
+	private CountingGoogleMap map;
+
+	@Before
+	public void init() {
+		Mockito.when(real.getCameraPosition()).thenReturn(new CameraPosition(new LatLng(0, 0), 8, 0, 0));
+		Mockito.when(real.getProjection()).thenReturn(projection);
+		map = new CountingGoogleMap(real);
+	}
+
+	@Test
+	public void whenDisabledShouldNotCount() {
+
+		map.getCameraPosition();
+
+		NativeCallStats stats = map.getStats();
+		Assert.assertEquals(0L, stats.getTotalCount());
+		Assert.assertEquals(0.0, stats.getTotalRate(), 0.0);
+		Mockito.verify(real).getCameraPosition();
+	}
+
+	@Test
+	public void whenEnabledShouldCountEachCall() {
+
+		map.setCountingEnabled(true);
+		map.getCameraPosition();
+		map.getCameraPosition();
+		map.setMapType(2);
+
+		NativeCallStats stats = map.getStats();
+		Assert.assertEquals(2L, stats.getCount("getCameraPosition"));
+		Assert.assertEquals(1L, stats.getCount("setMapType"));
+		Assert.assertEquals(0L, stats.getCount("addMarker"));
+		Assert.assertEquals(3L, stats.getTotalCount());
+		Assert.assertTrue(stats.getPeriodNanos() > 0L);
+		Assert.assertEquals(stats.getCount("getCameraPosition") * 1e9 / stats.getPeriodNanos(), stats.getRate("getCameraPosition"), 1e-6);
+	}
+
+	@Test
+	public void whenProjectionUsedShouldCountItsCalls() {
+
+		map.setCountingEnabled(true);
+		IProjection counted = map.getProjection();
+		counted.getVisibleRegion();
+		counted.toScreenLocation(new LatLng(0, 0));
+
+		NativeCallStats stats = map.getStats();
+		Assert.assertEquals(1L, stats.getCount("getProjection"));
+		Assert.assertEquals(1L, stats.getCount("getVisibleRegion"));
+		Assert.assertEquals(1L, stats.getCount("toScreenLocation"));
+		Mockito.verify(projection).getVisibleRegion();
+	}
+
+	@Test
+	public void whenEnabledAgainShouldStartFromZero() {
+
+		map.setCountingEnabled(true);
+		map.clear();
+		map.setCountingEnabled(true);
+
+		Assert.assertEquals(0L, map.getStats().getCount("clear"));
+	}
+
+	@Test
+	public void whenStatsTakenShouldNotChangeLater() {
+
+		map.setCountingEnabled(true);
+		NativeCallStats stats = map.getStats();
+		map.clear();
+
+		Assert.assertEquals(0L, stats.getCount("clear"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenUnknownCallShouldThrowException() {
+
+		map.getStats().getCount("addMarkers");
+	}
+
+	@Test
+	public void whenStrategyCreatedShouldReadCameraPositionOnce() {
+
+		map.setCountingEnabled(true);
+		new GridClusteringStrategy(new ClusteringSettings(), map, new ArrayList<DelegatingMarker>(), new DisplayedMarkers(), refresher,
+				new MetricsRecorder());
+
+		NativeCallStats stats = map.getStats();
+		Assert.assertEquals(1L, stats.getCount("getCameraPosition"));
+		Assert.assertEquals(1L, stats.getTotalCount());
+	}
+
+	@Test
+	public void whenShapesAddedThroughManagersShouldCountThem() {
+
+		map.setCountingEnabled(true);
+		new CircleManager(map).addCircle(new CircleOptions().center(new LatLng(0, 0)));
+		new GroundOverlayManager(map).addGroundOverlay(new GroundOverlayOptions().position(new LatLng(0, 0), 100));
+
+		NativeCallStats stats = map.getStats();
+		Assert.assertEquals(1L, stats.getCount("addCircle"));
+		Assert.assertEquals(1L, stats.getCount("addGroundOverlay"));
+	}
+}
@@ -73,7 +73,7 @@ public class DynamicGridClusteringStrategyTest {
 		Mockito.when(marker3.getPosition()).thenReturn(new LatLng(0.1, 0.1));
 
 		ClusteringSettings settings = new ClusteringSettings().addMarkersDynamically(true);
-		strategy = new GridClusteringStrategy(settings, map, new ArrayList<DelegatingMarker>(), refresher);
+		strategy = new GridClusteringStrategy(settings, map, new ArrayList<DelegatingMarker>(), new DisplayedMarkers(), refresher, new MetricsRecorder());
 	}
 
 	@Test
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.android.gms.maps.model.LatLng;
+
+public class EncodedPolylineDecoderTest {
+
+	// example from encoded polyline algorithm format documentation
+	private static final String PATH = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+	private static final double DELTA = 1e-9;
+
+	private final EncodedPolylineDecoder decoder = new EncodedPolylineDecoder();
+
+	@Test
+	public void shouldDecodeDocumentationExample() {
+
+		decoder.decode(PATH, 0.0);
+
+		List<LatLng> points = decoder.toLatLngs();
+		Assert.assertEquals(3, points.size());
+		assertPoint(38.5, -120.2, points.get(0));
+		assertPoint(40.7, -120.95, points.get(1));
+		assertPoint(43.252, -126.453, points.get(2));
+	}
+
+	@Test
+	public void whenDecodedAgainShouldReplacePreviousPoints() {
+
+		decoder.decode(PATH + PATH.substring(0, 10), 0.0);
+		decoder.decode("", 0.0);
+
+		Assert.assertEquals(0, decoder.getCount());
+	}
+
+	@Test
+	public void whenManyPointsShouldGrowBuffers() {
+		StringBuilder builder = new StringBuilder("_p~iF~ps|U");
+		for (int i = 0; i < 1000; i++) {
+			// moves by 0.00001 degree north
+			builder.append("A?");
+		}
+
+		decoder.decode(builder.toString(), 0.0);
+
+		List<LatLng> points = decoder.toLatLngs();
+		Assert.assertEquals(1001, points.size());
+		assertPoint(38.51, -120.2, points.get(1000));
+	}
+
+	@Test
+	public void whenToleranceGivenShouldSkipNearPointsButKeepLast() {
+		StringBuilder builder = new StringBuilder("_p~iF~ps|U");
+		for (int i = 0; i < 1000; i++) {
+			builder.append("A?");
+		}
+
+		// 0.00001 degree is about 1.1 meter
+		decoder.decode(builder.toString(), 10.0);
+
+		List<LatLng> points = decoder.toLatLngs();
+		Assert.assertTrue(points.size() < 200);
+		assertPoint(38.5, -120.2, points.get(0));
+		assertPoint(38.51, -120.2, points.get(points.size() - 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void whenPathTruncatedShouldThrowException() {
+
+		decoder.decode(PATH.substring(0, PATH.length() - 1), 0.0);
+	}
+
+	private static void assertPoint(double latitude, double longitude, LatLng point) {
+		Assert.assertEquals(latitude, point.latitude, DELTA);
+		Assert.assertEquals(longitude, point.longitude, DELTA);
+	}
+}
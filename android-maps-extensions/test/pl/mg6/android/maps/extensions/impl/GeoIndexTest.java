@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.mg6.android.maps.extensions.utils.LatLngUtils;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+public class GeoIndexTest {
+
+	private static final int COUNT = 2000;
+
+	private GeoIndex<Integer> index;
+	private LatLng[] positions = new LatLng[COUNT];
+	private Random random = new Random(42);
+
+	@Before
+	public void init() {
+		index = new GeoIndex<Integer>();
+		for (int i = 0; i < COUNT; i++) {
+			positions[i] = randomPosition();
+			index.add(i, positions[i]);
+		}
+	}
+
+	@Test
+	public void whenBoundsCrossAntimeridianShouldReturnItemsFromBothSides() {
+
+		index.clear();
+		index.add(1, new LatLng(0, 179));
+		index.add(2, new LatLng(0, -179));
+		index.add(3, new LatLng(0, 0));
+
+		final Set<Integer> actual = new HashSet<Integer>();
+		index.visit(new LatLngBounds(new LatLng(-1, 178), new LatLng(1, -178)), new QuadTree.Visitor<Integer>() {
+
+			@Override
+			public void visit(Integer item, double x, double y) {
+				actual.add(item);
+			}
+		});
+
+		Assert.assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), actual);
+	}
+
+	@Test
+	public void whenSearchingWithinRadiusShouldReturnSameItemsAsFullScanSortedByDistance() {
+
+		for (int i = 0; i < 50; i++) {
+			LatLng center = randomPosition();
+			double radius = random.nextDouble() * 3000000.0;
+
+			List<Integer> result = new ArrayList<Integer>();
+			index.findWithinRadius(center, radius, result);
+
+			Set<Integer> expected = new HashSet<Integer>();
+			for (int j = 0; j < COUNT; j++) {
+				if (LatLngUtils.distanceBetween(center, positions[j]) <= radius) {
+					expected.add(j);
+				}
+			}
+			Assert.assertEquals(expected, new HashSet<Integer>(result));
+			assertSortedByDistance(center, result);
+		}
+	}
+
+	@Test
+	public void whenSearchingNearestShouldReturnClosestItems() {
+
+		for (int i = 0; i < 50; i++) {
+			LatLng center = randomPosition();
+			int count = 1 + random.nextInt(20);
+
+			List<Integer> result = new ArrayList<Integer>();
+			index.findNearest(center, count, result);
+
+			Assert.assertEquals(count, result.size());
+			assertSortedByDistance(center, result);
+			double maxDistance = LatLngUtils.distanceBetween(center, positions[result.get(count - 1)]);
+			for (int j = 0; j < COUNT; j++) {
+				if (!result.contains(j)) {
+					Assert.assertTrue(LatLngUtils.distanceBetween(center, positions[j]) >= maxDistance);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void whenRequestedMoreThanSizeShouldReturnAllItems() {
+
+		List<Integer> result = new ArrayList<Integer>();
+		index.findNearest(new LatLng(89, 0), COUNT + 10, result);
+
+		Assert.assertEquals(COUNT, result.size());
+	}
+
+	@Test
+	public void whenOnOppositeSidesOfAntimeridianShouldBeClose() {
+
+		Assert.assertEquals(222390.0, LatLngUtils.distanceBetween(new LatLng(0, 179), new LatLng(0, -179)), 10.0);
+	}
+
+	private void assertSortedByDistance(LatLng center, List<Integer> result) {
+		double previous = 0.0;
+		for (Integer item : result) {
+			double distance = LatLngUtils.distanceBetween(center, positions[item]);
+			Assert.assertTrue(previous <= distance);
+			previous = distance;
+		}
+	}
+
+	private LatLng randomPosition() {
+		return new LatLng(random.nextDouble() * 170.0 - 85.0, random.nextDouble() * 360.0 - 180.0);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.lazy.LazyMarker;
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.VisibleRegion;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GridClusteringStrategyAllocationTest {
+
+	private static final int GROUPS_PER_SIDE = 20;
+	private static final int FEW_MARKERS_PER_CLUSTER = 5;
+	private static final int MANY_MARKERS_PER_CLUSTER = 25;
+	private static final int ZOOM_CHANGES = 50;
+	// coordinates, weight and two references kept by the cluster a marker moves to
+	private static final int MAX_BYTES_PER_MARKER = 48;
+
+	@Mock
+	private IGoogleMap map;
+
+	@Mock
+	private IProjection projection;
+
+	private CameraPosition zoomedOut = new CameraPosition(new LatLng(0, 0), 8, 0, 0);
+	private CameraPosition zoomedIn = new CameraPosition(new LatLng(0, 0), 9, 0, 0);
+
+	@Before
+	public void init() {
+		Mockito.when(map.getCameraPosition()).thenReturn(zoomedOut);
+		Mockito.when(map.getProjection()).thenReturn(projection);
+		// markers are added dynamically and none is in visible region, so measured code does not call the map for every cluster
+		LatLngBounds bounds = new LatLngBounds(new LatLng(-60, -120), new LatLng(-59, -119));
+		Mockito.when(projection.getVisibleRegion()).thenReturn(new VisibleRegion(bounds.southwest, bounds.southwest, bounds.northeast, bounds.northeast, bounds));
+	}
+
+	@Test
+	public void whenClustersSplitAndJoinShouldAllocateOnlyStorageOfMovedMarkers() {
+		Assume.assumeTrue(isAllocationMeasurementSupported());
+
+		long few = getAllocatedBytesPerZoomChange(FEW_MARKERS_PER_CLUSTER);
+		long many = getAllocatedBytesPerZoomChange(MANY_MARKERS_PER_CLUSTER);
+		// clusters are created and dropped in the same numbers, so the difference comes from markers only
+		long allocatedPerMarker = (many - few) / (4 * GROUPS_PER_SIDE * GROUPS_PER_SIDE * (MANY_MARKERS_PER_CLUSTER - FEW_MARKERS_PER_CLUSTER));
+
+		Assert.assertTrue("allocated " + allocatedPerMarker + " bytes per marker", allocatedPerMarker <= MAX_BYTES_PER_MARKER);
+	}
+
+	private long getAllocatedBytesPerZoomChange(int markersPerCluster) {
+		ClusterRefresher refresher = new ClusterRefresher(new MetricsRecorder()) {
+
+			@Override
+			void scheduleRefreshAll() {
+			}
+		};
+		ClusteringSettings settings = new ClusteringSettings().addMarkersDynamically(true);
+		ClusteringStrategy strategy = new GridClusteringStrategy(settings, map, createMarkers(markersPerCluster), new DisplayedMarkers(), refresher,
+				new MetricsRecorder());
+		// warms up reusable arrays and JIT
+		for (int i = 0; i < ZOOM_CHANGES; i++) {
+			strategy.onCameraChange(zoomedIn);
+			strategy.onCameraChange(zoomedOut);
+		}
+
+		long before = getAllocatedBytes();
+		for (int i = 0; i < ZOOM_CHANGES; i++) {
+			strategy.onCameraChange(zoomedIn);
+			strategy.onCameraChange(zoomedOut);
+		}
+		long allocated = getAllocatedBytes() - before;
+
+		Assert.assertEquals(GROUPS_PER_SIDE * GROUPS_PER_SIDE, strategy.getDisplayedMarkers().size());
+		strategy.onCameraChange(zoomedIn);
+		Assert.assertEquals(4 * GROUPS_PER_SIDE * GROUPS_PER_SIDE, strategy.getDisplayedMarkers().size());
+		return allocated / (2 * ZOOM_CHANGES);
+	}
+
+	private static List<DelegatingMarker> createMarkers(int markersPerCluster) {
+		List<DelegatingMarker> markers = new ArrayList<DelegatingMarker>();
+		// every group lies in its own grid cell at zoom 8 and is split into four clusters at zoom 9, one per quarter of that cell
+		double cellSize = new ClusteringSettings().getClusterSize() / (1 << 9);
+		for (int i = 0; i < GROUPS_PER_SIDE; i++) {
+			for (int j = 0; j < GROUPS_PER_SIDE; j++) {
+				for (int quarter = 0; quarter < 4; quarter++) {
+					double latitude = SphericalMercator.toLatitude((4 * i + quarter / 2 + 0.5) * cellSize);
+					double longitude = (4 * j + quarter % 2 + 0.5) * cellSize;
+					for (int k = 0; k < markersPerCluster; k++) {
+						markers.add(createMarker(latitude + k * 0.0001, longitude + k * 0.0001));
+					}
+				}
+			}
+		}
+		return markers;
+	}
+
+	private static DelegatingMarker createMarker(double latitude, double longitude) {
+		// not a mock, which would allocate on every call to hashCode made by strategy
+		LazyMarker real = new LazyMarker(null, new MarkerOptions().position(new LatLng(latitude, longitude)).visible(false)) {
+
+			@Override
+			public boolean isVisible() {
+				return true;
+			}
+		};
+		return new DelegatingMarker(real, null, new MetricsRecorder());
+	}
+
+	private static boolean isAllocationMeasurementSupported() {
+		try {
+			Class.forName("com.sun.management.ThreadMXBean");
+			return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean;
+		} catch (ClassNotFoundException ex) {
+			return false;
+		}
+	}
+
+	private static long getAllocatedBytes() {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
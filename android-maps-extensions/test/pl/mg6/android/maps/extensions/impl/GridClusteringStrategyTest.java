@@ -66,7 +66,7 @@ public class GridClusteringStrategyTest {
 		Mockito.when(marker3.getPosition()).thenReturn(new LatLng(0.1, 0.1));
 
 		ClusteringSettings settings = new ClusteringSettings();
-		strategy = new GridClusteringStrategy(settings, map, new ArrayList<DelegatingMarker>(), refresher);
+		strategy = new GridClusteringStrategy(settings, map, new ArrayList<DelegatingMarker>(), new DisplayedMarkers(), refresher, new MetricsRecorder());
 	}
 
 	@Test
@@ -124,6 +124,24 @@ public class GridClusteringStrategyTest {
 		Assert.assertTrue(markers.contains(marker3));
 	}
 
+	@Test
+	public void whenZoomedInAndOutShouldDisplayOneClusterMarkerAgain() {
+
+		strategy.onAdd(marker1);
+		strategy.onAdd(marker2);
+		strategy.onAdd(marker3);
+
+		strategy.onCameraChange(new CameraPosition(new LatLng(0, 0), 21, 0, 0));
+		strategy.onCameraChange(new CameraPosition(new LatLng(0, 0), 8, 0, 0));
+
+		List<Marker> markers = strategy.getDisplayedMarkers();
+
+		Assert.assertEquals(2, markers.size());
+		Assert.assertTrue(markers.contains(marker2));
+		Assert.assertFalse(markers.contains(marker1));
+		Assert.assertFalse(markers.contains(marker3));
+	}
+
 	@Test
 	public void whenAddedTwoCloseMarkersAndRemovedThemShouldDisplayZeroMarkers() {
 
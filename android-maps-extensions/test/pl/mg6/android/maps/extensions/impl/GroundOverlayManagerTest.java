@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+import pl.mg6.android.maps.extensions.GroundOverlay;
+
+import com.google.android.gms.internal.dv;
+import com.google.android.gms.maps.model.GroundOverlayOptions;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.VisibleRegion;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GroundOverlayManagerTest {
+
+	private static final LatLng NEAR = new LatLng(0, 0);
+	private static final LatLng FAR = new LatLng(0, 50);
+
+	@Mock
+	private IGoogleMap map;
+	@Mock
+	private IProjection projection;
+	// delegate of every real ground overlay, final GroundOverlay class cannot be mocked
+	@Mock
+	private dv realGroundOverlay;
+
+	private GroundOverlayManager manager;
+
+	@Before
+	public void init() throws Exception {
+		Mockito.when(map.getProjection()).thenReturn(projection);
+		Mockito.when(map.addGroundOverlay(Mockito.any(GroundOverlayOptions.class))).thenAnswer(
+				new Answer<com.google.android.gms.maps.model.GroundOverlay>() {
+					@Override
+					public com.google.android.gms.maps.model.GroundOverlay answer(InvocationOnMock invocation) {
+						return new com.google.android.gms.maps.model.GroundOverlay(realGroundOverlay);
+					}
+				});
+		// what real ground overlay near camera reports once created
+		Mockito.when(realGroundOverlay.getId()).thenReturn("g1");
+		Mockito.when(realGroundOverlay.getPosition()).thenReturn(NEAR);
+		Mockito.when(realGroundOverlay.getWidth()).thenReturn(1000f);
+		Mockito.when(realGroundOverlay.getHeight()).thenReturn(1000f);
+		Mockito.when(realGroundOverlay.getBounds()).thenReturn(boundsAround(NEAR, 0.01));
+		moveCamera(NEAR);
+		manager = new GroundOverlayManager(map);
+	}
+
+	@Test
+	public void whenCullingEnabledShouldCreateOnlyNearGroundOverlays() {
+
+		manager.setCullingEnabled(true);
+		manager.addGroundOverlay(new GroundOverlayOptions().positionFromBounds(boundsAround(NEAR, 0.01)));
+		manager.addGroundOverlay(new GroundOverlayOptions().positionFromBounds(boundsAround(FAR, 0.01)));
+		manager.addGroundOverlay(new GroundOverlayOptions().position(FAR, 1000, 1000));
+
+		Mockito.verify(map, Mockito.times(1)).addGroundOverlay(Mockito.any(GroundOverlayOptions.class));
+	}
+
+	@Test
+	public void whenCameraMovesAwayAndBackShouldReleaseAndCreateAgain() throws Exception {
+
+		manager.setCullingEnabled(true);
+		manager.addGroundOverlay(new GroundOverlayOptions().position(NEAR, 1000, 1000));
+
+		moveCamera(FAR);
+		manager.onCameraChange(null);
+		Mockito.verify(realGroundOverlay).remove();
+
+		moveCamera(NEAR);
+		manager.onCameraChange(null);
+		Mockito.verify(map, Mockito.times(2)).addGroundOverlay(Mockito.any(GroundOverlayOptions.class));
+	}
+
+	@Test
+	public void whenSizedByWidthOnlyShouldNeverRelease() throws Exception {
+
+		manager.setCullingEnabled(true);
+		GroundOverlay groundOverlay = manager.addGroundOverlay(new GroundOverlayOptions().position(NEAR, 1000));
+
+		moveCamera(FAR);
+		manager.onCameraChange(null);
+		moveCamera(NEAR);
+		manager.onCameraChange(null);
+
+		Mockito.verify(realGroundOverlay, Mockito.never()).remove();
+		Mockito.verify(map, Mockito.times(1)).addGroundOverlay(Mockito.any(GroundOverlayOptions.class));
+		Assert.assertEquals(NEAR, groundOverlay.getPosition());
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void whenIdRequestedForCulledGroundOverlayShouldReleaseItLater() throws Exception {
+
+		manager.setCullingEnabled(true);
+		GroundOverlay groundOverlay = manager.addGroundOverlay(new GroundOverlayOptions().position(FAR, 1000, 1000));
+
+		Assert.assertEquals("g1", groundOverlay.getId());
+		manager.onCameraChange(null);
+
+		Mockito.verify(realGroundOverlay).remove();
+	}
+
+	@SuppressWarnings("deprecation")
+	@Test
+	public void whenRemovedShouldKeepId() {
+
+		GroundOverlay groundOverlay = manager.addGroundOverlay(new GroundOverlayOptions().position(NEAR, 1000, 1000));
+		groundOverlay.remove();
+
+		Assert.assertEquals("g1", groundOverlay.getId());
+		Mockito.verify(map, Mockito.times(1)).addGroundOverlay(Mockito.any(GroundOverlayOptions.class));
+	}
+
+	private void moveCamera(LatLng center) {
+		LatLngBounds bounds = boundsAround(center, 1);
+		VisibleRegion region = new VisibleRegion(bounds.southwest, new LatLng(bounds.southwest.latitude, bounds.northeast.longitude), new LatLng(
+				bounds.northeast.latitude, bounds.southwest.longitude), bounds.northeast, bounds);
+		Mockito.when(projection.getVisibleRegion()).thenReturn(region);
+	}
+
+	private static LatLngBounds boundsAround(LatLng center, double degrees) {
+		return new LatLngBounds(new LatLng(center.latitude - degrees, center.longitude - degrees), new LatLng(center.latitude + degrees,
+				center.longitude + degrees));
+	}
+}
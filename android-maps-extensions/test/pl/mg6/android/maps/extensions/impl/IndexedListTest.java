@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedListTest {
+
+	private IndexedList<String> list;
+
+	@Before
+	public void init() {
+		list = new IndexedList<String>();
+		for (int i = 0; i < 20; i++) {
+			list.addElement("item" + i);
+		}
+	}
+
+	@Test
+	public void whenElementRemovedShouldKeepOtherElementsAccessible() {
+
+		Assert.assertTrue(list.removeElement("item3"));
+		Assert.assertFalse(list.removeElement("item3"));
+
+		Assert.assertEquals(19, list.size());
+		Assert.assertFalse(list.contains("item3"));
+		HashSet<String> expected = new HashSet<String>();
+		for (int i = 0; i < 20; i++) {
+			if (i != 3) {
+				expected.add("item" + i);
+			}
+		}
+		Assert.assertEquals(expected, new HashSet<String>(list));
+		for (int i = 0; i < list.size(); i++) {
+			Assert.assertEquals(i, list.indexOf(list.get(i)));
+		}
+	}
+
+	@Test
+	public void whenElementAddedTwiceShouldContainItOnce() {
+
+		list.addElement("item0");
+
+		Assert.assertEquals(20, list.size());
+	}
+
+	@Test(expected = ConcurrentModificationException.class)
+	public void whenModifiedDuringIterationShouldThrowException() {
+
+		Iterator<String> iterator = list.iterator();
+		iterator.next();
+		list.removeElement("item5");
+		iterator.next();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void whenModifiedFromOutsideShouldThrowException() {
+
+		list.add("other");
+	}
+
+	@Test
+	public void whenClearedShouldBeEmpty() {
+
+		list.clearElements();
+
+		Assert.assertTrue(list.isEmpty());
+		Assert.assertEquals(-1, list.indexOf("item0"));
+	}
+}
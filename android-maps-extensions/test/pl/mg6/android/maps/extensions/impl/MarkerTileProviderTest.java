@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import android.graphics.Bitmap;
+
+import com.google.android.gms.maps.model.TileProvider;
+
+public class MarkerTileProviderTest {
+
+	private final MarkerTileProvider provider = new MarkerTileProvider(256);
+
+	@Test
+	public void whenNoTileServedShouldNotBeNear() {
+
+		Assert.assertFalse(isNear(0.5, 0.5, 32));
+	}
+
+	@Test
+	public void whenPositionInServedTileShouldBeNear() {
+
+		provider.getTile(2, 1, 2);
+
+		Assert.assertTrue(isNear(0.6, 0.3, 32));
+		Assert.assertFalse(isNear(0.3, 0.3, 32));
+		Assert.assertFalse(isNear(0.6, 0.6, 32));
+	}
+
+	@Test
+	public void whenIconCrossesServedTileEdgeShouldBeNear() {
+
+		provider.getTile(10, 10, 5);
+
+		// 4 pixels left of the tile
+		double x = (10 - 4.0 / 256) / 32;
+		double y = 10.5 / 32;
+		Assert.assertFalse(isNear(x, y, 6));
+		Assert.assertTrue(isNear(x, y, 10));
+	}
+
+	@Test
+	public void whenIconCrossesAntimeridianShouldBeNear() {
+
+		provider.getTile(0, 3, 3);
+
+		Assert.assertTrue(isNear(1.0 - 1.0 / 256 / 8, 3.5 / 8, 4));
+	}
+
+	@Test
+	public void whenServedTilesClearedShouldNotBeNear() {
+
+		provider.getTile(2, 1, 2);
+		provider.clearServedTiles();
+
+		Assert.assertFalse(isNear(0.6, 0.3, 32));
+	}
+
+	@Test
+	public void whenIndexReplacedWhileDrawingShouldAskForTileAgain() {
+
+		provider.setIndex(new TileIndex<Bitmap>(Collections.singletonList((Bitmap) null), new double[] { 0.5 }, new double[] { 0.5 }) {
+
+			@Override
+			void visit(int x, int y, int zoom, double margin, Visitor<? super Bitmap> visitor) {
+				// as if main thread replaced index in the meantime
+				provider.setIndex(null, 0);
+			}
+		}, 0);
+
+		Assert.assertNull(provider.getTile(0, 0, 0));
+		Assert.assertSame(TileProvider.NO_TILE, provider.getTile(0, 0, 0));
+	}
+
+	@Test
+	public void whenServedTilesClearedWhileDrawingShouldStillBeNear() {
+
+		provider.setIndex(new TileIndex<Bitmap>(Collections.singletonList((Bitmap) null), new double[] { 0.5 }, new double[] { 0.5 }) {
+
+			@Override
+			void visit(int x, int y, int zoom, double margin, Visitor<? super Bitmap> visitor) {
+				provider.clearServedTiles();
+			}
+		}, 0);
+
+		provider.getTile(0, 0, 0);
+
+		Assert.assertTrue(isNear(0.5, 0.5, 32));
+	}
+
+	private boolean isNear(double x, double y, int iconSize) {
+		return provider.isAnyServedTileNear(new double[] { x }, new double[] { y }, 1, iconSize);
+	}
+}
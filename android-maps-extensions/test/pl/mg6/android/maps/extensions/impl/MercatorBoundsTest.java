@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+
+public class MercatorBoundsTest {
+
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void whenAroundPointOnEquatorShouldSpanSameDegreesBothWays() {
+
+		// one degree along meridian
+		MercatorBounds bounds = MercatorBounds.around(new LatLng(0, 0), Math.toRadians(6371009.0));
+
+		Assert.assertEquals(179.0, bounds.getMinX(), DELTA);
+		Assert.assertEquals(181.0, bounds.getMaxX(), DELTA);
+		Assert.assertEquals(SphericalMercator.scaleLatitude(-1.0), bounds.getMinY(), DELTA);
+		Assert.assertEquals(SphericalMercator.scaleLatitude(1.0), bounds.getMaxY(), DELTA);
+	}
+
+	@Test
+	public void whenAroundPointNearPoleShouldCoverAllLongitudes() {
+
+		MercatorBounds bounds = MercatorBounds.around(new LatLng(89.5, 10), 100000.0);
+
+		Assert.assertEquals(0.0, bounds.getMinX(), DELTA);
+		Assert.assertEquals(360.0, bounds.getMaxX(), DELTA);
+	}
+
+	@Test
+	public void whenCrossingAntimeridianShouldIntersectBoundsOnBothSides() {
+		MercatorBounds bounds = MercatorBounds.fromLatLngBounds(new LatLngBounds(new LatLng(-10, 170), new LatLng(10, -170)));
+
+		Assert.assertEquals(350.0, bounds.getMinX(), DELTA);
+		Assert.assertEquals(370.0, bounds.getMaxX(), DELTA);
+		Assert.assertTrue(bounds.intersects(MercatorBounds.around(new LatLng(0, 175), 1000.0)));
+		Assert.assertTrue(bounds.intersects(MercatorBounds.around(new LatLng(0, -175), 1000.0)));
+		Assert.assertFalse(bounds.intersects(MercatorBounds.around(new LatLng(0, 0), 1000.0)));
+		Assert.assertFalse(bounds.intersects(MercatorBounds.around(new LatLng(30, 175), 1000.0)));
+	}
+
+	@Test
+	public void whenExpandedBeyondWorldWidthShouldCoverAllLongitudes() {
+		MercatorBounds bounds = new MercatorBounds(100.0, 100.0, 200.0, 200.0);
+
+		Assert.assertFalse(bounds.expand(0.5).coversAllLongitudes());
+		Assert.assertEquals(50.0, bounds.expand(0.5).getMinX(), DELTA);
+		Assert.assertTrue(bounds.expand(1.5).coversAllLongitudes());
+		Assert.assertTrue(bounds.expand(1.5).intersects(new MercatorBounds(-1000.0, 150.0, -999.0, 151.0)));
+	}
+}
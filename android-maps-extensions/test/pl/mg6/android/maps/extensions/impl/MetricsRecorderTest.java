@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.IconDataProvider;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics;
+import pl.mg6.android.maps.extensions.MapExtensionsMetrics.Operation;
+
+import com.google.android.gms.maps.model.MarkerOptions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class MetricsRecorderTest {
+
+	@Mock
+	private MapExtensionsMetrics listener;
+
+	private MetricsRecorder metrics;
+
+	@Before
+	public void init() {
+		metrics = new MetricsRecorder();
+	}
+
+	@Test
+	public void whenListenerSetShouldReportOperation() throws InterruptedException {
+
+		metrics.setMetrics(listener);
+		long start = metrics.begin(Operation.RECALCULATE);
+		Thread.sleep(2);
+		metrics.end(Operation.RECALCULATE, start, 42);
+
+		Mockito.verify(listener).onOperation(Mockito.eq(Operation.RECALCULATE), Mockito.eq(42), Mockito.longThat(new BaseMatcher<Long>() {
+
+			@Override
+			public boolean matches(Object item) {
+				return (Long) item >= 2000000L;
+			}
+
+			@Override
+			public void describeTo(Description description) {
+				description.appendText("at least 2 ms");
+			}
+		}));
+	}
+
+	@Test
+	public void whenListenerSetDuringOperationShouldNotReportIt() {
+
+		long start = metrics.begin(Operation.CREATE_MARKER);
+		metrics.setMetrics(listener);
+		metrics.end(Operation.CREATE_MARKER, start, 1);
+
+		Mockito.verifyZeroInteractions(listener);
+	}
+
+	@Test
+	public void whenTraceNotAvailableShouldStillReportOperation() {
+
+		metrics.setMetrics(listener);
+		metrics.setTraceSectionsEnabled(true);
+		metrics.end(Operation.REMOVE_MARKER, metrics.begin(Operation.REMOVE_MARKER), 1);
+
+		Mockito.verify(listener).onOperation(Mockito.eq(Operation.REMOVE_MARKER), Mockito.eq(1), Mockito.anyLong());
+	}
+
+	@Test
+	public void whenTraceEnabledDuringOperationShouldNotEndSection() {
+		CountingMetricsRecorder metrics = new CountingMetricsRecorder();
+
+		long token = metrics.begin(Operation.RECALCULATE);
+		metrics.setTraceSectionsEnabled(true);
+		metrics.end(Operation.RECALCULATE, token, 1);
+
+		Assert.assertEquals(0, metrics.openSections);
+		Assert.assertEquals(0, metrics.endedSections);
+	}
+
+	@Test
+	public void whenTraceDisabledDuringOperationShouldStillEndSection() {
+		CountingMetricsRecorder metrics = new CountingMetricsRecorder();
+		metrics.setMetrics(listener);
+		metrics.setTraceSectionsEnabled(true);
+
+		long token = metrics.begin(Operation.RECALCULATE);
+		metrics.setTraceSectionsEnabled(false);
+		metrics.end(Operation.RECALCULATE, token, 1);
+
+		Assert.assertEquals(0, metrics.openSections);
+		Assert.assertEquals(1, metrics.endedSections);
+		Mockito.verify(listener).onOperation(Mockito.eq(Operation.RECALCULATE), Mockito.eq(1), Mockito.anyLong());
+	}
+
+	@Test
+	public void whenIconNotCachedShouldReportEveryProviderCall() {
+
+		IconDataProvider provider = Mockito.mock(IconDataProvider.class);
+		Mockito.when(provider.getIconData(Mockito.anyInt())).thenReturn(new MarkerOptions());
+		metrics.setMetrics(listener);
+		ClusterIconCache cache = new ClusterIconCache(new ClusteringSettings().iconDataProvider(provider).iconCacheSize(0), metrics, null);
+
+		cache.getIconData(5);
+		cache.getIconData(5);
+
+		Mockito.verify(listener, Mockito.times(2)).onOperation(Mockito.eq(Operation.PROVIDE_ICON), Mockito.eq(1), Mockito.anyLong());
+	}
+
+	private static class CountingMetricsRecorder extends MetricsRecorder {
+
+		private int openSections;
+		private int endedSections;
+
+		@Override
+		boolean isTraceAvailable() {
+			return true;
+		}
+
+		@Override
+		void beginSection(String name) {
+			openSections++;
+		}
+
+		@Override
+		void endSection() {
+			openSections--;
+			endedSections++;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+
+public class PolyGeometryTest {
+
+	private static final List<LatLng> SQUARE = Arrays.asList(new LatLng(0, 0), new LatLng(0, 10), new LatLng(10, 10), new LatLng(10, 0));
+	private static final List<LatLng> HOLE = Arrays.asList(new LatLng(4, 4), new LatLng(4, 6), new LatLng(6, 6), new LatLng(6, 4));
+
+	@Test
+	public void whenPointInsidePolygonShouldHit() {
+		PolyGeometry geometry = new PolyGeometry(SQUARE, null, true);
+
+		Assert.assertTrue(hit(geometry, 5, 5, 0.0));
+		Assert.assertFalse(hit(geometry, 15, 5, 0.0));
+		Assert.assertFalse(hit(geometry, 5, -0.5, 0.0));
+	}
+
+	@Test
+	public void whenPointNearEdgeShouldHitWithinTolerance() {
+		PolyGeometry geometry = new PolyGeometry(SQUARE, null, true);
+
+		Assert.assertTrue(hit(geometry, 5, -0.5, 1.0));
+		Assert.assertFalse(hit(geometry, 5, -1.5, 1.0));
+	}
+
+	@Test
+	public void whenPointInsideHoleShouldNotHit() {
+		PolyGeometry geometry = new PolyGeometry(SQUARE, Collections.singletonList(HOLE), true);
+
+		Assert.assertFalse(hit(geometry, 5, 5, 0.0));
+		Assert.assertTrue(hit(geometry, 2, 2, 0.0));
+		Assert.assertTrue(hit(geometry, 5, 4.5, 1.0));
+	}
+
+	@Test
+	public void whenPolylineShouldHitOnlyNearSegments() {
+		PolyGeometry geometry = new PolyGeometry(SQUARE, null, false);
+
+		Assert.assertFalse(hit(geometry, 5, 5, 1.0));
+		Assert.assertTrue(hit(geometry, 10.5, 5, 1.0));
+		// not closed, so no segment from last to first point
+		Assert.assertFalse(hit(geometry, 5, 0.5, 1.0));
+	}
+
+	@Test
+	public void whenCrossingAntimeridianShouldUnwrapLongitudes() {
+		List<LatLng> points = Arrays.asList(new LatLng(-10, 170), new LatLng(-10, -170), new LatLng(10, -170), new LatLng(10, 170));
+		PolyGeometry geometry = new PolyGeometry(points, null, true);
+
+		Assert.assertEquals(350.0, geometry.getMinX(), 1e-9);
+		Assert.assertEquals(370.0, geometry.getMaxX(), 1e-9);
+		Assert.assertTrue(hit(geometry, 0, 179, 0.0));
+		Assert.assertTrue(geometry.hit(SphericalMercator.scaleLongitude(-179) + 360.0, SphericalMercator.scaleLatitude(0), 0.0));
+		Assert.assertFalse(hit(geometry, 0, 0, 0.0));
+	}
+
+	@Test
+	public void whenPolygonLargeShouldUseEdgeIndexWithSameResults() {
+		List<LatLng> outer = createRing(10.0, 2000);
+		List<LatLng> hole = createRing(3.0, 500);
+		PolyGeometry geometry = new PolyGeometry(outer, Collections.singletonList(hole), true);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 1000; i++) {
+			double x = random.nextDouble() * 30.0 - 15.0;
+			double y = random.nextDouble() * 30.0 - 15.0;
+			double distance = Math.sqrt(x * x + y * y);
+			if (Math.abs(distance - 10.0) < 0.01 || Math.abs(distance - 3.0) < 0.01) {
+				continue;
+			}
+			boolean expected = distance < 10.0 && distance > 3.0;
+			Assert.assertEquals(expected, geometry.contains(180.0 + x, 180.0 + y));
+		}
+	}
+
+	@Test
+	public void whenCrossingAntimeridianShouldContainPositionsOnBothSides() {
+		List<LatLng> points = Arrays.asList(new LatLng(-10, 170), new LatLng(-10, -170), new LatLng(10, -170), new LatLng(10, 170));
+		PolyGeometry geometry = new PolyGeometry(points, null, true);
+
+		Assert.assertTrue(geometry.contains(new LatLng(0, 175)));
+		Assert.assertTrue(geometry.contains(new LatLng(0, -175)));
+		Assert.assertFalse(geometry.contains(new LatLng(0, 0)));
+	}
+
+	/**
+	 * @return regular polygon centered at (0, 0), which is circle in mercator units
+	 */
+	private static List<LatLng> createRing(double radius, int count) {
+		List<LatLng> ring = new ArrayList<LatLng>(count);
+		for (int i = 0; i < count; i++) {
+			double angle = 2 * Math.PI * i / count;
+			double latitude = SphericalMercator.toLatitude(radius * Math.sin(angle));
+			ring.add(new LatLng(latitude, radius * Math.cos(angle)));
+		}
+		return ring;
+	}
+
+	private static boolean hit(PolyGeometry geometry, double latitude, double longitude, double tolerance) {
+		return geometry.hit(SphericalMercator.scaleLongitude(longitude), SphericalMercator.scaleLatitude(latitude), tolerance);
+	}
+}
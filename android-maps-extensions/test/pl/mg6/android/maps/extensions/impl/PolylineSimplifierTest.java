@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.android.gms.maps.model.LatLng;
+
+public class PolylineSimplifierTest {
+
+	private static final int COUNT = 5000;
+
+	private List<LatLng> points;
+	private double[] xs;
+	private double[] ys;
+	private PolylineSimplifier simplifier;
+
+	@Before
+	public void init() {
+		Random random = new Random(42);
+		points = new ArrayList<LatLng>(COUNT);
+		double latitude = 50.0;
+		double longitude = 20.0;
+		for (int i = 0; i < COUNT; i++) {
+			latitude += random.nextGaussian() * 0.001;
+			longitude += random.nextGaussian() * 0.001;
+			points.add(new LatLng(latitude, longitude));
+		}
+		PolyGeometry geometry = new PolyGeometry(points, null, false);
+		xs = geometry.getXs(0);
+		ys = geometry.getYs(0);
+		simplifier = new PolylineSimplifier(xs, ys);
+	}
+
+	@Test
+	public void shouldKeepSamePointsAsRecursiveDouglasPeucker() {
+
+		for (double tolerance = 0.00001; tolerance < 1.0; tolerance *= 4) {
+			boolean[] kept = new boolean[COUNT];
+			kept[0] = true;
+			kept[COUNT - 1] = true;
+			douglasPeucker(0, COUNT - 1, tolerance, kept);
+			List<LatLng> expected = new ArrayList<LatLng>();
+			for (int i = 0; i < COUNT; i++) {
+				if (kept[i]) {
+					expected.add(points.get(i));
+				}
+			}
+
+			Assert.assertEquals(expected, simplifier.simplify(points, tolerance));
+		}
+	}
+
+	@Test
+	public void whenToleranceGrowsShouldKeepLessPoints() {
+
+		int previous = COUNT;
+		for (double tolerance = 0.00001; tolerance < 1.0; tolerance *= 2) {
+			int count = simplifier.simplify(points, tolerance).size();
+			Assert.assertTrue(count <= previous);
+			previous = count;
+		}
+		Assert.assertEquals(2, simplifier.simplify(points, 1000.0).size());
+		Assert.assertEquals(COUNT, simplifier.simplify(points, 0.0).size());
+	}
+
+	@Test
+	public void whenFewPointsShouldKeepAll() {
+		List<LatLng> two = Arrays.asList(new LatLng(0, 0), new LatLng(1, 1));
+		PolyGeometry geometry = new PolyGeometry(two, null, false);
+		PolylineSimplifier simplifier = new PolylineSimplifier(geometry.getXs(0), geometry.getYs(0));
+
+		Assert.assertEquals(two, simplifier.simplify(two, 1000.0));
+	}
+
+	private void douglasPeucker(int first, int last, double tolerance, boolean[] kept) {
+		int farthest = -1;
+		double maxDistance = -1.0;
+		for (int i = first + 1; i < last; i++) {
+			double distance = Math.sqrt(PolyGeometry.squaredDistanceToSegment(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]));
+			if (distance > maxDistance) {
+				farthest = i;
+				maxDistance = distance;
+			}
+		}
+		if (farthest != -1 && maxDistance > tolerance) {
+			kept[farthest] = true;
+			douglasPeucker(first, farthest, tolerance, kept);
+			douglasPeucker(farthest, last, tolerance, kept);
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QuadTreeTest {
+
+	private static final int COUNT = 2000;
+
+	private QuadTree<Integer> tree;
+	private double[] xs = new double[COUNT];
+	private double[] ys = new double[COUNT];
+	private Random random = new Random(42);
+
+	@Before
+	public void init() {
+		tree = new QuadTree<Integer>(-180.0, -90.0, 180.0, 90.0);
+		for (int i = 0; i < COUNT; i++) {
+			xs[i] = random.nextDouble() * 360.0 - 180.0;
+			ys[i] = random.nextDouble() * 180.0 - 90.0;
+			tree.add(i, xs[i], ys[i]);
+		}
+	}
+
+	@Test
+	public void whenQueriedShouldReturnSameItemsAsFullScan() {
+
+		for (int i = 0; i < 100; i++) {
+			assertQuery(randomX(), randomY(), randomX(), randomY());
+		}
+	}
+
+	@Test
+	public void whenItemsRemovedShouldNotReturnThem() {
+
+		for (int i = 0; i < COUNT; i += 2) {
+			Assert.assertTrue(tree.remove(i));
+			xs[i] = Double.NaN;
+		}
+
+		Assert.assertFalse(tree.remove(0));
+		Assert.assertEquals(COUNT / 2, tree.size());
+		assertQuery(-180.0, -90.0, 180.0, 90.0);
+	}
+
+	@Test
+	public void whenItemsMovedShouldReturnThemAtNewPositions() {
+
+		for (int i = 0; i < COUNT; i++) {
+			xs[i] = randomX();
+			ys[i] = randomY();
+			tree.update(i, xs[i], ys[i]);
+		}
+
+		Assert.assertEquals(COUNT, tree.size());
+		for (int i = 0; i < 100; i++) {
+			assertQuery(randomX(), randomY(), randomX(), randomY());
+		}
+	}
+
+	@Test
+	public void whenManyItemsShareSamePositionShouldStillBeFound() {
+
+		tree.clear();
+		for (int i = 0; i < COUNT; i++) {
+			xs[i] = 10.0;
+			ys[i] = 20.0;
+			tree.add(i, xs[i], ys[i]);
+		}
+
+		assertQuery(10.0, 20.0, 10.0, 20.0);
+	}
+
+	private void assertQuery(double x1, double y1, double x2, double y2) {
+		final double minX = Math.min(x1, x2);
+		final double minY = Math.min(y1, y2);
+		final double maxX = Math.max(x1, x2);
+		final double maxY = Math.max(y1, y2);
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < COUNT; i++) {
+			if (minX <= xs[i] && xs[i] <= maxX && minY <= ys[i] && ys[i] <= maxY) {
+				expected.add(i);
+			}
+		}
+		final Set<Integer> actual = new HashSet<Integer>();
+		tree.visit(minX, minY, maxX, maxY, new QuadTree.Visitor<Integer>() {
+
+			@Override
+			public void visit(Integer item, double x, double y) {
+				Assert.assertTrue(actual.add(item));
+			}
+		});
+		Assert.assertEquals(expected, actual);
+	}
+
+	private double randomX() {
+		return random.nextDouble() * 360.0 - 180.0;
+	}
+
+	private double randomY() {
+		return random.nextDouble() * 180.0 - 90.0;
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RTreeTest {
+
+	private static final int COUNT = 2000;
+
+	private RTree<Integer> tree;
+	private double[] minXs = new double[COUNT];
+	private double[] minYs = new double[COUNT];
+	private double[] maxXs = new double[COUNT];
+	private double[] maxYs = new double[COUNT];
+	private Random random = new Random(42);
+
+	@Before
+	public void init() {
+		tree = new RTree<Integer>();
+		for (int i = 0; i < COUNT; i++) {
+			addRandom(i);
+		}
+	}
+
+	@Test
+	public void whenQueriedShouldReturnSameItemsAsFullScan() {
+
+		for (int i = 0; i < 100; i++) {
+			assertQuery(randomX(), randomY(), randomX(), randomY());
+		}
+	}
+
+	@Test
+	public void whenQueriedWithPointShouldReturnItemsContainingIt() {
+
+		for (int i = 0; i < 100; i++) {
+			double x = randomX();
+			double y = randomY();
+			assertQuery(x, y, x, y);
+		}
+	}
+
+	@Test
+	public void whenItemsRemovedShouldNotReturnThem() {
+
+		for (int i = 0; i < COUNT; i += 2) {
+			Assert.assertTrue(tree.remove(i));
+			minXs[i] = Double.NaN;
+		}
+
+		Assert.assertFalse(tree.remove(0));
+		Assert.assertEquals(COUNT / 2, tree.size());
+		assertQuery(0.0, 0.0, 360.0, 360.0);
+		for (int i = 0; i < 100; i++) {
+			assertQuery(randomX(), randomY(), randomX(), randomY());
+		}
+	}
+
+	@Test
+	public void whenAllItemsRemovedShouldBeEmpty() {
+
+		for (int i = 0; i < COUNT; i++) {
+			Assert.assertTrue(tree.remove(i));
+			minXs[i] = Double.NaN;
+		}
+
+		Assert.assertEquals(0, tree.size());
+		assertQuery(0.0, 0.0, 360.0, 360.0);
+
+		addRandom(0);
+		assertQuery(0.0, 0.0, 360.0, 360.0);
+	}
+
+	@Test
+	public void whenItemsAddedAgainShouldReturnThemWithNewBounds() {
+
+		for (int i = 0; i < COUNT; i++) {
+			addRandom(i);
+		}
+
+		Assert.assertEquals(COUNT, tree.size());
+		for (int i = 0; i < 100; i++) {
+			assertQuery(randomX(), randomY(), randomX(), randomY());
+		}
+	}
+
+	private void addRandom(int item) {
+		double x = randomX();
+		double y = randomY();
+		// mostly small shapes with some spanning large part of the world
+		double size = random.nextInt(10) == 0 ? random.nextDouble() * 180.0 : random.nextDouble() * 5.0;
+		minXs[item] = x;
+		minYs[item] = y;
+		maxXs[item] = x + size * random.nextDouble();
+		maxYs[item] = y + size * random.nextDouble();
+		tree.add(item, minXs[item], minYs[item], maxXs[item], maxYs[item]);
+	}
+
+	private void assertQuery(double x1, double y1, double x2, double y2) {
+		final double minX = Math.min(x1, x2);
+		final double minY = Math.min(y1, y2);
+		final double maxX = Math.max(x1, x2);
+		final double maxY = Math.max(y1, y2);
+		Set<Integer> expected = new HashSet<Integer>();
+		for (int i = 0; i < COUNT; i++) {
+			if (minXs[i] <= maxX && minX <= maxXs[i] && minYs[i] <= maxY && minY <= maxYs[i]) {
+				expected.add(i);
+			}
+		}
+		final Set<Integer> actual = new HashSet<Integer>();
+		tree.visit(minX, minY, maxX, maxY, new RTree.Visitor<Integer>() {
+
+			@Override
+			public void visit(Integer item) {
+				Assert.assertTrue(actual.add(item));
+			}
+		});
+		Assert.assertEquals(expected, actual);
+	}
+
+	private double randomX() {
+		return random.nextDouble() * 360.0;
+	}
+
+	private double randomY() {
+		return random.nextDouble() * 360.0;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import pl.mg6.android.maps.extensions.utils.SphericalMercator;
+
+import com.google.android.gms.maps.model.LatLng;
+
+public class ShapeClipperTest {
+
+	private static final double DELTA = 1e-6;
+
+	private final ShapeClipper clipper = new ShapeClipper(105.0, 185.0, 115.0, 195.0);
+
+	@Test
+	public void whenShapeInsideShouldReturnNull() {
+		double[] xs = { 106.0, 114.0, 114.0 };
+		double[] ys = { 186.0, 186.0, 194.0 };
+
+		Assert.assertNull(clipper.clip(xs, ys, true));
+	}
+
+	@Test
+	public void whenShapeOutsideShouldReturnEmptyList() {
+		double[] xs = { 0.0, 10.0, 10.0 };
+		double[] ys = { 186.0, 186.0, 194.0 };
+
+		Assert.assertTrue(clipper.clip(xs, ys, true).isEmpty());
+	}
+
+	@Test
+	public void shouldTellOutcomeOfClipping() {
+		double[] xs = { 100.0, 110.0, 110.0, 100.0 };
+		double[] ys = { 180.0, 180.0, 190.0, 190.0 };
+
+		Assert.assertEquals(ShapeClipper.ALL_POINTS, ShapeClipper.getOutcome(clipper.clip(new double[] { 106.0 }, new double[] { 186.0 }, false)));
+		Assert.assertEquals(ShapeClipper.NO_POINTS, ShapeClipper.getOutcome(clipper.clip(new double[] { 0.0 }, new double[] { 186.0 }, false)));
+		Assert.assertEquals(ShapeClipper.SOME_POINTS, ShapeClipper.getOutcome(clipper.clip(xs, ys, true)));
+	}
+
+	@Test
+	public void whenSameRectangleShouldBeEqual() {
+		Assert.assertEquals(new ShapeClipper(105.0, 185.0, 115.0, 195.0), clipper);
+		Assert.assertEquals(new ShapeClipper(105.0, 185.0, 115.0, 195.0).hashCode(), clipper.hashCode());
+		Assert.assertFalse(clipper.equals(new ShapeClipper(105.0, 185.0, 115.0, 196.0)));
+	}
+
+	@Test
+	public void whenPolygonCrossesEdgesShouldKeepIntersectionArea() {
+		double[] xs = { 100.0, 110.0, 110.0, 100.0 };
+		double[] ys = { 180.0, 180.0, 190.0, 190.0 };
+
+		List<LatLng> clipped = clipper.clip(xs, ys, true);
+
+		Assert.assertEquals(25.0, Math.abs(area(clipped)), DELTA);
+		assertInside(clipped);
+	}
+
+	@Test
+	public void whenConcavePolygonCrossesEdgeShouldKeepIntersectionArea() {
+		// U shape with both arms leaving clip rectangle through its top edge
+		double[] xs = { 106.0, 114.0, 114.0, 112.0, 112.0, 108.0, 108.0, 106.0 };
+		double[] ys = { 186.0, 186.0, 200.0, 200.0, 188.0, 188.0, 200.0, 200.0 };
+
+		List<LatLng> clipped = clipper.clip(xs, ys, true);
+
+		Assert.assertEquals(8.0 * 2.0 + 2 * 2.0 * 7.0, Math.abs(area(clipped)), DELTA);
+		assertInside(clipped);
+	}
+
+	@Test
+	public void whenPolylineLeavesAndComesBackShouldGoAlongEdge() {
+		double[] xs = { 100.0, 110.0, 110.0, 120.0 };
+		double[] ys = { 190.0, 190.0, 200.0, 190.0 };
+
+		List<LatLng> clipped = clipper.clip(xs, ys, false);
+
+		assertInside(clipped);
+		Assert.assertEquals(105.0, x(clipped.get(0)), DELTA);
+		Assert.assertEquals(115.0, x(clipped.get(clipped.size() - 1)), DELTA);
+	}
+
+	@Test
+	public void whenShapeOnOtherSideOfAntimeridianShouldShiftClipRectangle() {
+		ShapeClipper clipper = new ShapeClipper(350.0, 175.0, 370.0, 185.0);
+		double[] xs = { -10.0, 5.0, 5.0 };
+		double[] ys = { 170.0, 170.0, 180.0 };
+
+		List<LatLng> clipped = clipper.clip(xs, ys, true);
+
+		Assert.assertFalse(clipped.isEmpty());
+		for (LatLng point : clipped) {
+			Assert.assertTrue(point.longitude >= 170.0 - DELTA || point.longitude <= -175.0 + DELTA);
+			Assert.assertTrue(y(point) >= 175.0 - DELTA);
+		}
+	}
+
+	private void assertInside(List<LatLng> points) {
+		for (LatLng point : points) {
+			Assert.assertTrue(x(point) >= 105.0 - DELTA && x(point) <= 115.0 + DELTA);
+			Assert.assertTrue(y(point) >= 185.0 - DELTA && y(point) <= 195.0 + DELTA);
+		}
+	}
+
+	private static double area(List<LatLng> points) {
+		double area = 0.0;
+		for (int i = 0, j = points.size() - 1; i < points.size(); j = i++) {
+			area += x(points.get(j)) * y(points.get(i)) - x(points.get(i)) * y(points.get(j));
+		}
+		return area / 2;
+	}
+
+	private static double x(LatLng point) {
+		return SphericalMercator.scaleLongitude(point.longitude);
+	}
+
+	private static double y(LatLng point) {
+		return SphericalMercator.scaleLatitude(point.latitude);
+	}
+}
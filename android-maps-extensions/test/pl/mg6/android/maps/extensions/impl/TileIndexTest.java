@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TileIndexTest {
+
+	@Test
+	public void whenVisitingTileShouldFindExactlyPointsInside() {
+		Random random = new Random(42);
+		int count = 2000;
+		List<Integer> items = new ArrayList<Integer>();
+		double[] xs = new double[count];
+		double[] ys = new double[count];
+		for (int i = 0; i < count; i++) {
+			items.add(i);
+			xs[i] = random.nextDouble();
+			ys[i] = random.nextDouble();
+		}
+		TileIndex<Integer> index = new TileIndex<Integer>(items, xs, ys);
+
+		for (int zoom : new int[] { 0, 1, 3, 7, 21, 23 }) {
+			int tiles = 1 << zoom;
+			for (int t = 0; t < 20; t++) {
+				// tiles with points in them are more interesting on high zoom levels
+				int point = random.nextInt(count);
+				int x = (int) (xs[point] * tiles);
+				int y = (int) (ys[point] * tiles);
+				Set<Integer> expected = new HashSet<Integer>();
+				for (int i = 0; i < count; i++) {
+					if ((int) (xs[i] * tiles) == x && (int) (ys[i] * tiles) == y) {
+						expected.add(i);
+					}
+				}
+				Assert.assertEquals("zoom " + zoom, expected, collect(index, x, y, zoom, 0.0));
+			}
+		}
+	}
+
+	@Test
+	public void whenMarginSetShouldFindPointsOfNeighbouringTiles() {
+		List<String> items = new ArrayList<String>();
+		items.add("inside");
+		items.add("near right edge");
+		items.add("far right");
+		items.add("near bottom edge");
+		TileIndex<String> index = new TileIndex<String>(items, new double[] { 0.3, 0.52, 0.7, 0.3 }, new double[] { 0.3, 0.3, 0.3, 0.505 });
+
+		Set<String> found = collect(index, 0, 0, 1, 0.1);
+
+		Set<String> expected = new HashSet<String>(items);
+		expected.remove("far right");
+		Assert.assertEquals(expected, found);
+	}
+
+	@Test
+	public void whenPointNearAntimeridianShouldBeFoundFromOtherSide() {
+		List<String> items = new ArrayList<String>();
+		items.add("east edge");
+		TileIndex<String> index = new TileIndex<String>(items, new double[] { 0.99 }, new double[] { 0.5 });
+		final double[] position = new double[2];
+
+		index.visit(0, 1, 2, 0.1, new TileIndex.Visitor<String>() {
+
+			@Override
+			public void visit(String item, double x, double y) {
+				position[0] = x;
+				position[1] = y;
+			}
+		});
+
+		Assert.assertEquals(-0.04, position[0], 1e-9);
+		Assert.assertEquals(1.0, position[1], 1e-9);
+	}
+
+	@Test
+	public void whenCoordinatesOutOfRangeShouldWrapAndClamp() {
+		List<String> items = new ArrayList<String>();
+		items.add("wrapped");
+		items.add("south pole");
+		TileIndex<String> index = new TileIndex<String>(items, new double[] { 1.25, 0.5 }, new double[] { 0.5, 1.0 });
+
+		Assert.assertEquals(1, collect(index, 0, 1, 1, 0.0).size());
+		Assert.assertEquals(1, collect(index, 2, 3, 2, 0.0).size());
+	}
+
+	private static <T> Set<T> collect(TileIndex<T> index, int x, int y, int zoom, double margin) {
+		final Set<T> result = new HashSet<T>();
+		index.visit(x, y, zoom, margin, new TileIndex.Visitor<T>() {
+
+			@Override
+			public void visit(T item, double tileX, double tileY) {
+				Assert.assertTrue(result.add(item));
+			}
+		});
+		return result;
+	}
+}
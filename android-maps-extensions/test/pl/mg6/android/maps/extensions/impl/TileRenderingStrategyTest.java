@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.impl;
+
+import java.util.ArrayList;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.objenesis.ObjenesisStd;
+
+import pl.mg6.android.maps.extensions.ClusteringSettings;
+import pl.mg6.android.maps.extensions.ClusteringSettings.TileIconProvider;
+import android.graphics.Bitmap;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.TileOverlay;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TileRenderingStrategyTest {
+
+	@Mock
+	private IGoogleMap map;
+	@Mock
+	private TileIconProvider iconProvider;
+	@Mock
+	private DelegatingMarker marker;
+
+	// final class stubbed in android.jar, only compared with null by strategy
+	private Bitmap icon = (Bitmap) new ObjenesisStd().newInstance(Bitmap.class);
+	private DisplayedMarkers displayedMarkers = new DisplayedMarkers();
+	private CameraPosition cameraPosition = new CameraPosition(new LatLng(0, 0), 10, 0, 0);
+
+	private ManualTileRenderingStrategy strategy;
+
+	@Before
+	public void init() {
+		Mockito.when(marker.isVisible()).thenReturn(true);
+		Mockito.when(marker.getPosition()).thenReturn(new LatLng(10, 20));
+		Mockito.when(iconProvider.getTileIcon(marker)).thenReturn(icon);
+		strategy = new ManualTileRenderingStrategy();
+	}
+
+	@Test
+	public void whenIconProvidedShouldDrawMarkerIntoTiles() {
+
+		strategy.onAdd(marker);
+
+		Mockito.verify(marker).changeVisible(false);
+		Assert.assertTrue(strategy.getDisplayedMarkers().isEmpty());
+		Assert.assertEquals(1, strategy.refreshCount);
+	}
+
+	@Test
+	public void whenNoIconShouldKeepMarkerOnMap() {
+
+		Mockito.when(iconProvider.getTileIcon(marker)).thenReturn(null);
+		strategy.onAdd(marker);
+
+		Mockito.verify(marker).changeVisible(true);
+		Assert.assertEquals(1, strategy.getDisplayedMarkers().size());
+		Assert.assertEquals(0, strategy.refreshCount);
+	}
+
+	@Test
+	public void whenNoIconAndPositionChangesShouldNotRefreshTiles() {
+
+		Mockito.when(iconProvider.getTileIcon(marker)).thenReturn(null);
+		strategy.onAdd(marker);
+		strategy.onPositionChange(marker);
+
+		Assert.assertEquals(0, strategy.refreshCount);
+	}
+
+	@Test
+	public void whenInfoWindowShownShouldPromoteMarkerToMap() {
+
+		strategy.onAdd(marker);
+		strategy.onShowInfoWindow(marker);
+
+		Mockito.verify(marker).changeVisible(true);
+		Mockito.verify(marker).forceShowInfoWindow();
+		Assert.assertSame(marker, strategy.getDisplayedMarkers().get(0));
+	}
+
+	@Test
+	public void whenInfoWindowHiddenShouldDemoteMarkerToTiles() {
+
+		strategy.onAdd(marker);
+		strategy.onShowInfoWindow(marker);
+		Mockito.when(marker.isInfoWindowShown()).thenReturn(false);
+		strategy.onCameraChange(cameraPosition);
+
+		Mockito.verify(marker, Mockito.times(2)).changeVisible(false);
+		Assert.assertTrue(strategy.getDisplayedMarkers().isEmpty());
+	}
+
+	@Test
+	public void whenInfoWindowStillShownShouldKeepMarkerOnMap() {
+
+		strategy.onAdd(marker);
+		strategy.onShowInfoWindow(marker);
+		Mockito.when(marker.isInfoWindowShown()).thenReturn(true);
+		strategy.onCameraChange(cameraPosition);
+
+		Mockito.verify(marker, Mockito.times(1)).changeVisible(false);
+		Assert.assertEquals(1, strategy.getDisplayedMarkers().size());
+	}
+
+	@Test
+	public void whenRemovedAfterPromotionShouldNotDemote() {
+
+		strategy.onAdd(marker);
+		strategy.onShowInfoWindow(marker);
+		strategy.onRemove(marker);
+		strategy.onCameraChange(cameraPosition);
+
+		Mockito.verify(iconProvider, Mockito.times(1)).getTileIcon(marker);
+		Assert.assertTrue(strategy.getDisplayedMarkers().isEmpty());
+	}
+
+	@Test
+	public void whenCleanedUpShouldHideTileMarkersAndClearDisplayed() {
+		DelegatingMarker nativeMarker = Mockito.mock(DelegatingMarker.class);
+		Mockito.when(nativeMarker.isVisible()).thenReturn(true);
+
+		strategy.onAdd(marker);
+		strategy.onAdd(nativeMarker);
+		strategy.cleanup();
+
+		Mockito.verify(marker, Mockito.times(2)).changeVisible(false);
+		Mockito.verify(nativeMarker, Mockito.never()).changeVisible(false);
+		Assert.assertTrue(strategy.getDisplayedMarkers().isEmpty());
+	}
+
+	private class ManualTileRenderingStrategy extends TileRenderingStrategy {
+
+		private int refreshCount;
+
+		ManualTileRenderingStrategy() {
+			super(new ClusteringSettings().renderMarkersAsTiles(iconProvider), map, new ArrayList<DelegatingMarker>(), displayedMarkers,
+					new MetricsRecorder());
+		}
+
+		@Override
+		TileOverlay addTileOverlay(MarkerTileProvider provider) {
+			return null;
+		}
+
+		@Override
+		void postRefresh() {
+			refreshCount++;
+		}
+	}
+}
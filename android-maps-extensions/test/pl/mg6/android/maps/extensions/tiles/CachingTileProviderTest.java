@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+public class CachingTileProviderTest {
+
+	private CountingTileProvider provider;
+	private CachingTileProvider cachingProvider;
+
+	@Before
+	public void init() {
+		provider = new CountingTileProvider();
+		cachingProvider = new CachingTileProvider(provider, 1000);
+	}
+
+	@Test
+	public void whenTileRequestedAgainShouldNotCallProvider() {
+
+		Tile first = cachingProvider.getTile(1, 2, 3);
+		Tile second = cachingProvider.getTile(1, 2, 3);
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, provider.calls);
+		Assert.assertEquals(1, cachingProvider.getHitCount());
+		Assert.assertEquals(1, cachingProvider.getMissCount());
+		Assert.assertEquals(100, cachingProvider.getSize());
+	}
+
+	@Test
+	public void whenProviderReturnsNullShouldAskAgain() {
+		provider.available = false;
+
+		Assert.assertNull(cachingProvider.getTile(0, 0, 0));
+		provider.available = true;
+		Assert.assertNotNull(cachingProvider.getTile(0, 0, 0));
+
+		Assert.assertEquals(2, provider.calls);
+	}
+
+	@Test
+	public void whenMaxSizeExceededShouldEvictLeastRecentlyUsed() {
+		for (int x = 0; x < 10; x++) {
+			cachingProvider.getTile(x, 0, 4);
+		}
+		cachingProvider.getTile(0, 0, 4);
+
+		cachingProvider.getTile(10, 0, 4);
+		cachingProvider.getTile(0, 0, 4);
+		cachingProvider.getTile(1, 0, 4);
+
+		Assert.assertEquals(12, provider.calls);
+		Assert.assertEquals(1000, cachingProvider.getSize());
+	}
+
+	@Test
+	public void whenSingleTileInvalidatedShouldRequestOnlyIt() {
+		cachingProvider.getTile(1, 1, 1);
+		cachingProvider.getTile(0, 1, 1);
+
+		cachingProvider.invalidate(1, 1, 1);
+		cachingProvider.getTile(1, 1, 1);
+		cachingProvider.getTile(0, 1, 1);
+
+		Assert.assertEquals(3, provider.calls);
+	}
+
+	@Test
+	public void whenRegionInvalidatedShouldRemoveIntersectingTilesOnAllZoomLevels() {
+		// zoom 1: north-west, north-east, south-west, south-east quarters
+		cachingProvider.getTile(0, 0, 1);
+		cachingProvider.getTile(1, 0, 1);
+		cachingProvider.getTile(0, 1, 1);
+		cachingProvider.getTile(1, 1, 1);
+		cachingProvider.getTile(0, 0, 0);
+
+		cachingProvider.invalidate(new LatLngBounds(new LatLng(10, 10), new LatLng(20, 20)));
+
+		Assert.assertEquals(300, cachingProvider.getSize());
+		cachingProvider.getTile(1, 0, 1);
+		cachingProvider.getTile(0, 0, 0);
+		Assert.assertEquals(7, provider.calls);
+	}
+
+	@Test
+	public void whenRegionCrossesAntimeridianShouldRemoveTilesOnBothSides() {
+		cachingProvider.getTile(0, 0, 2);
+		cachingProvider.getTile(1, 0, 2);
+		cachingProvider.getTile(2, 0, 2);
+		cachingProvider.getTile(3, 0, 2);
+
+		cachingProvider.invalidate(new LatLngBounds(new LatLng(70, 170), new LatLng(80, -170)));
+
+		Assert.assertEquals(200, cachingProvider.getSize());
+		cachingProvider.getTile(1, 0, 2);
+		cachingProvider.getTile(2, 0, 2);
+		Assert.assertEquals(4, provider.calls);
+	}
+
+	@Test
+	public void whenInvalidatedWhileGeneratingShouldNotCacheTile() {
+		provider.invalidateWhenCalled = cachingProvider;
+
+		cachingProvider.getTile(0, 0, 0);
+		provider.invalidateWhenCalled = null;
+		cachingProvider.getTile(0, 0, 0);
+		cachingProvider.getTile(0, 0, 0);
+
+		Assert.assertEquals(2, provider.calls);
+	}
+
+	@Test
+	public void whenAllInvalidatedShouldBeEmpty() {
+		cachingProvider.getTile(0, 0, 0);
+
+		cachingProvider.invalidateAll();
+
+		Assert.assertEquals(0, cachingProvider.getSize());
+	}
+
+	private static class CountingTileProvider implements TileProvider {
+
+		private int calls;
+		private boolean available = true;
+		// invalidated as if by another thread while tile is generated
+		private CachingTileProvider invalidateWhenCalled;
+
+		@Override
+		public Tile getTile(int x, int y, int zoom) {
+			calls++;
+			if (invalidateWhenCalled != null) {
+				invalidateWhenCalled.invalidate(x, y, zoom);
+			}
+			return available ? new Tile(256, 256, new byte[100]) : null;
+		}
+	}
+}
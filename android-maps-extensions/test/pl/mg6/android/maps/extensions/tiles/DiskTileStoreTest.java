@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+public class DiskTileStoreTest {
+
+	private static final long MAX_SIZE = 256 * 1024;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private DiskTileStore store;
+
+	@Before
+	public void init() throws IOException {
+		directory = new File(folder.getRoot(), "tiles");
+		store = new DiskTileStore(directory, MAX_SIZE);
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		store.close();
+	}
+
+	@Test
+	public void whenTileStoredShouldReadSameData() throws IOException {
+
+		store.put(1, 2, 3, createTile(1000, 7));
+
+		Tile tile = store.get(1, 2, 3);
+		Assert.assertEquals(256, tile.width);
+		Assert.assertEquals(256, tile.height);
+		Assert.assertArrayEquals(createTile(1000, 7).data, tile.data);
+		Assert.assertNull(store.get(2, 1, 3));
+		Assert.assertNull(store.get(1, 2, 4));
+	}
+
+	@Test
+	public void whenNoTileStoredShouldReturnNoTile() throws IOException {
+
+		store.put(0, 0, 0, TileProvider.NO_TILE);
+
+		Assert.assertSame(TileProvider.NO_TILE, store.get(0, 0, 0));
+	}
+
+	@Test
+	public void whenReopenedShouldKeepTiles() throws IOException {
+		for (int i = 0; i < 3000; i++) {
+			store.put(i, i % 7, 15, createTile(10, i));
+		}
+		store.close();
+
+		store = new DiskTileStore(directory, MAX_SIZE);
+
+		Assert.assertEquals(3000, store.getCount());
+		for (int i = 0; i < 3000; i++) {
+			Assert.assertArrayEquals(createTile(10, i).data, store.get(i, i % 7, 15).data);
+		}
+	}
+
+	@Test
+	public void whenIndexDamagedShouldStartEmpty() throws IOException {
+		store.put(1, 1, 1, createTile(100, 1));
+		store.close();
+		File index = new File(directory, "index");
+		Assert.assertTrue(index.delete());
+
+		store = new DiskTileStore(directory, MAX_SIZE);
+
+		Assert.assertNull(store.get(1, 1, 1));
+		Assert.assertEquals(0, store.getSize());
+	}
+
+	@Test
+	public void whenTileReplacedShouldReadNewData() throws IOException {
+		store.put(1, 1, 1, createTile(100, 1));
+
+		store.put(1, 1, 1, createTile(50, 2));
+
+		Assert.assertArrayEquals(createTile(50, 2).data, store.get(1, 1, 1).data);
+		Assert.assertEquals(1, store.getCount());
+	}
+
+	@Test
+	public void whenTilesRemovedShouldKeepOthersReachable() throws IOException {
+		for (int i = 0; i < 600; i++) {
+			store.put(i, 0, 10, createTile(10, i));
+		}
+
+		for (int i = 0; i < 600; i += 3) {
+			store.remove(i, 0, 10);
+		}
+
+		Assert.assertEquals(400, store.getCount());
+		for (int i = 0; i < 600; i++) {
+			Tile tile = store.get(i, 0, 10);
+			if (i % 3 == 0) {
+				Assert.assertNull(tile);
+			} else {
+				Assert.assertArrayEquals(createTile(10, i).data, tile.data);
+			}
+		}
+	}
+
+	@Test
+	public void whenMaxSizeExceededShouldDeleteOldestTiles() throws IOException {
+
+		for (int i = 0; i < 64; i++) {
+			store.put(i, 0, 10, createTile(16 * 1024, i));
+		}
+
+		Assert.assertTrue(store.getSize() <= MAX_SIZE);
+		Assert.assertNull(store.get(0, 0, 10));
+		Assert.assertArrayEquals(createTile(16 * 1024, 63).data, store.get(63, 0, 10).data);
+		Assert.assertEquals(store.getSize(), directorySize() - new File(directory, "index").length());
+	}
+
+	@Test
+	public void whenCompactedShouldReclaimReplacedTiles() throws IOException {
+		for (int round = 0; round < 4; round++) {
+			for (int i = 0; i < 8; i++) {
+				store.put(i, 0, 10, createTile(8 * 1024, round * 8 + i));
+			}
+		}
+		long sizeBefore = store.getSize();
+
+		store.compact();
+
+		Assert.assertTrue(store.getSize() < sizeBefore);
+		for (int i = 0; i < 8; i++) {
+			Assert.assertArrayEquals(createTile(8 * 1024, 24 + i).data, store.get(i, 0, 10).data);
+		}
+	}
+
+	@Test
+	public void whenProviderWrappedShouldGenerateTileOnce() {
+		final int[] calls = new int[1];
+		TileProvider provider = new DiskCachingTileProvider(new TileProvider() {
+
+			@Override
+			public Tile getTile(int x, int y, int zoom) {
+				calls[0]++;
+				return createTile(100, x);
+			}
+		}, store);
+
+		provider.getTile(3, 4, 5);
+		Tile tile = provider.getTile(3, 4, 5);
+
+		Assert.assertEquals(1, calls[0]);
+		Assert.assertArrayEquals(createTile(100, 3).data, tile.data);
+	}
+
+	private long directorySize() {
+		long size = 0;
+		for (File file : directory.listFiles()) {
+			size += file.length();
+		}
+		return size;
+	}
+
+	private static Tile createTile(int length, int seed) {
+		byte[] data = new byte[length];
+		Arrays.fill(data, (byte) seed);
+		data[0] = (byte) (seed >> 8);
+		return new Tile(256, 256, data);
+	}
+}
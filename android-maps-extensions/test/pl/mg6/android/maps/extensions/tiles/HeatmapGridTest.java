@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HeatmapGridTest {
+
+	private static final int SIDE = HeatmapGrid.CELLS_PER_TILE + 2;
+
+	// single cell kernel, so rendering shows raw cell weights
+	private static final double[] POINT_KERNEL = { 0, 0, 0, 0, 1, 0, 0, 0, 0 };
+
+	@Test
+	public void whenPointsInSameCellShouldSumWeights() {
+		HeatmapGrid grid = new HeatmapGrid(0);
+
+		grid.add(0.5, 0.5, 1.0);
+		grid.add(0.501, 0.501, 2.0);
+
+		Assert.assertEquals(3.0, grid.getMaxWeight(), 1e-9);
+		double[] result = grid.render(0, 0, POINT_KERNEL, 1);
+		Assert.assertEquals(3.0, result[33 * SIDE + 33], 1e-9);
+		Assert.assertEquals(3.0, sum(result), 1e-9);
+	}
+
+	@Test
+	public void whenWeightRemovedShouldRecomputeMaxWeight() {
+		HeatmapGrid grid = new HeatmapGrid(3);
+		grid.add(0.1, 0.1, 5.0);
+		grid.add(0.7, 0.2, 2.0);
+
+		grid.add(0.1, 0.1, -5.0);
+
+		Assert.assertEquals(2.0, grid.getMaxWeight(), 1e-9);
+	}
+
+	@Test
+	public void whenManyCellsOccupiedShouldKeepAllWeights() {
+		HeatmapGrid grid = new HeatmapGrid(0);
+		for (int i = 0; i < 500; i++) {
+			grid.add((i % 64 + 0.5) / 64, (i / 64 + 0.5) / 64, 1.0);
+		}
+		grid.add(0.5 / 64, 0.5 / 64, 1.0);
+
+		double[] result = grid.render(0, 0, POINT_KERNEL, 1);
+
+		double inside = 0.0;
+		for (int y = 1; y <= HeatmapGrid.CELLS_PER_TILE; y++) {
+			for (int x = 1; x <= HeatmapGrid.CELLS_PER_TILE; x++) {
+				inside += result[y * SIDE + x];
+			}
+		}
+		Assert.assertEquals(501.0, inside, 1e-9);
+		Assert.assertEquals(2.0, result[SIDE + 1], 1e-9);
+		Assert.assertEquals(2.0, grid.getMaxWeight(), 1e-9);
+	}
+
+	@Test
+	public void whenPointInNeighbouringTileShouldSpreadOverEdge() {
+		HeatmapGrid grid = new HeatmapGrid(1);
+		// last column of cells of tile (0, 0)
+		grid.add(0.499, 0.25, 1.0);
+		double[] kernel = new double[25];
+		for (int i = 0; i < kernel.length; i++) {
+			kernel[i] = 1.0;
+		}
+
+		double[] result = grid.render(1, 0, kernel, 2);
+
+		// cells of tile (1, 0) start at column and row 1, column 0 is the neighbour cell itself
+		Assert.assertEquals(1.0, result[33 * SIDE], 1e-9);
+		Assert.assertEquals(1.0, result[33 * SIDE + 2], 1e-9);
+		Assert.assertEquals(0.0, result[33 * SIDE + 3], 1e-9);
+		Assert.assertEquals(0.0, result[30 * SIDE + 1], 1e-9);
+	}
+
+	@Test
+	public void whenPointNearAntimeridianShouldSpreadToOtherSide() {
+		HeatmapGrid grid = new HeatmapGrid(1);
+		grid.add(0.999, 0.25, 1.0);
+
+		double[] result = grid.render(0, 0, new double[] { 1, 1, 1, 1, 1, 1, 1, 1, 1 }, 1);
+
+		Assert.assertEquals(1.0, result[33 * SIDE], 1e-9);
+		Assert.assertEquals(1.0, result[33 * SIDE + 1], 1e-9);
+		Assert.assertEquals(0.0, result[33 * SIDE + 2], 1e-9);
+	}
+
+	@Test
+	public void colorMapShouldFadeInFirstColorAndReachLast() {
+
+		int[] colorMap = HeatmapTileProvider.createColorMap(new int[] { 0xff00ff00, 0xffff0000 }, new float[] { 0.5f, 1.0f }, 1.0, 11);
+
+		Assert.assertEquals(0x0000ff00, colorMap[0]);
+		Assert.assertEquals(0xff00ff00, colorMap[5]);
+		Assert.assertEquals(0xffff0000, colorMap[10]);
+		Assert.assertEquals(0xff669900, colorMap[7]);
+	}
+
+	@Test
+	public void colorMapShouldApplyOpacity() {
+
+		int[] colorMap = HeatmapTileProvider.createColorMap(new int[] { 0xffffffff }, new float[] { 0.1f }, 0.5, 11);
+
+		Assert.assertEquals(0x7f, colorMap[10] >>> 24);
+	}
+
+	private static double sum(double[] values) {
+		double sum = 0.0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+public class PrioritizedTileProviderTest {
+
+	private BlockingTileProvider provider;
+	private PrioritizedTileProvider prioritizedProvider;
+
+	@Before
+	public void init() {
+		provider = new BlockingTileProvider();
+		prioritizedProvider = new PrioritizedTileProvider(provider, 1);
+	}
+
+	@After
+	public void cleanup() {
+		provider.release.countDown();
+		prioritizedProvider.shutdown();
+	}
+
+	@Test
+	public void whenTileRequestedShouldReturnTileOfWrappedProvider() {
+		provider.release.countDown();
+
+		Tile tile = prioritizedProvider.getTile(1, 2, 3);
+
+		Assert.assertEquals(3, tile.width);
+		Assert.assertEquals(1, prioritizedProvider.getCompletedCount());
+		Assert.assertTrue(prioritizedProvider.getLatencyPercentile(50) >= 0.0);
+	}
+
+	@Test
+	public void shouldGenerateTilesNearestToCameraTargetFirst() throws InterruptedException {
+		// camera at the center of tile (4, 4) on zoom level 3
+		prioritizedProvider.onCameraChange(camera(-22.5, 22.5, 3), null);
+		// occupies the only thread until released
+		List<Thread> threads = new ArrayList<Thread>();
+		threads.add(request(0, 0, 3));
+		provider.started.await(1, TimeUnit.SECONDS);
+		threads.add(request(7, 7, 3));
+		threads.add(request(2, 2, 3));
+		threads.add(request(4, 4, 3));
+		threads.add(request(2, 2, 2));
+		threads.add(request(5, 4, 3));
+		waitUntilPending(5);
+
+		provider.release.countDown();
+		for (Thread thread : threads) {
+			thread.join(1000);
+		}
+
+		Assert.assertEquals(list("0,0,3", "4,4,3", "5,4,3", "2,2,3", "7,7,3", "2,2,2"), provider.requested);
+	}
+
+	@Test
+	public void whenCameraMovesShouldCancelRequestsFarFromVisibleRegion() throws InterruptedException {
+		prioritizedProvider.onCameraChange(camera(0, 0, 4), null);
+		Thread blocker = request(8, 8, 4);
+		provider.started.await(1, TimeUnit.SECONDS);
+		final Tile[] result = { new Tile(0, 0, null) };
+		Thread far = new Thread() {
+
+			@Override
+			public void run() {
+				result[0] = prioritizedProvider.getTile(0, 0, 4);
+			}
+		};
+		far.start();
+		waitUntilPending(1);
+
+		prioritizedProvider.onCameraChange(camera(0, 0, 4), new LatLngBounds(new LatLng(-10, -10), new LatLng(10, 10)));
+		far.join(1000);
+
+		Assert.assertNull(result[0]);
+		Assert.assertEquals(1, prioritizedProvider.getCancelledCount());
+		Assert.assertNull(prioritizedProvider.getTile(15, 15, 4));
+		provider.release.countDown();
+		blocker.join(1000);
+		Assert.assertEquals(list("8,8,4"), provider.requested);
+	}
+
+	@Test
+	public void latencyPercentilesShouldGrowWithPercentile() {
+		provider.release.countDown();
+		for (int i = 0; i < 20; i++) {
+			prioritizedProvider.getTile(i, 0, 5);
+		}
+
+		double median = prioritizedProvider.getLatencyPercentile(50);
+		double max = prioritizedProvider.getLatencyPercentile(100);
+
+		Assert.assertTrue(median > 0.0);
+		Assert.assertTrue(max >= median);
+		Assert.assertEquals(20, prioritizedProvider.getCompletedCount());
+	}
+
+	private Thread request(final int x, final int y, final int zoom) {
+		Thread thread = new Thread() {
+
+			@Override
+			public void run() {
+				prioritizedProvider.getTile(x, y, zoom);
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	private void waitUntilPending(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 1000;
+		while (prioritizedProvider.getPendingCount() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	private static CameraPosition camera(double latitude, double longitude, float zoom) {
+		return new CameraPosition(new LatLng(latitude, longitude), zoom, 0, 0);
+	}
+
+	private static List<String> list(String... values) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	private static class BlockingTileProvider implements TileProvider {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+		private final CountDownLatch release = new CountDownLatch(1);
+		private final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public Tile getTile(int x, int y, int zoom) {
+			requested.add(x + "," + y + "," + zoom);
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			return new Tile(zoom, zoom, new byte[0]);
+		}
+	}
+}
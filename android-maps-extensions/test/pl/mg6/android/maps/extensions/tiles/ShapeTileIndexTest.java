@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013 Maciej Górski
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.mg6.android.maps.extensions.tiles;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ShapeTileIndexTest {
+
+	@Test
+	public void shouldFindAllShapesIntersectingTileOnEveryZoomLevel() {
+		Random random = new Random(7);
+		int count = 3000;
+		double[] minXs = new double[count];
+		double[] minYs = new double[count];
+		double[] maxXs = new double[count];
+		double[] maxYs = new double[count];
+		for (int i = 0; i < count; i++) {
+			// sizes from a fraction of a street to a continent
+			double size = Math.pow(10, -1 - random.nextDouble() * 5);
+			minXs[i] = random.nextDouble();
+			minYs[i] = random.nextDouble() * (1.0 - size);
+			maxXs[i] = minXs[i] + size * random.nextDouble();
+			maxYs[i] = minYs[i] + size * random.nextDouble();
+		}
+		ShapeTileIndex index = new ShapeTileIndex(minXs, minYs, maxXs, maxYs, count);
+
+		for (int zoom : new int[] { 0, 2, 5, 9, 14, 16, 19 }) {
+			int tiles = 1 << zoom;
+			for (int t = 0; t < 30; t++) {
+				int shape = random.nextInt(count);
+				int x = (int) Math.floor(minXs[shape] * tiles) % tiles;
+				int y = (int) Math.floor(minYs[shape] * tiles);
+
+				int[] found = index.query(x, y, zoom, 0);
+
+				for (int i = 1; i < found.length; i++) {
+					Assert.assertTrue(found[i - 1] < found[i]);
+				}
+				for (int i = 0; i < count; i++) {
+					if (intersects(minXs[i], minYs[i], maxXs[i], maxYs[i], x, y, tiles)) {
+						Assert.assertTrue("zoom " + zoom + ", shape " + i, contains(found, i));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void whenShapeCrossesAntimeridianShouldBeFoundOnBothSides() {
+		ShapeTileIndex index = new ShapeTileIndex(new double[] { 0.95 }, new double[] { 0.4 }, new double[] { 1.05 }, new double[] { 0.45 }, 1);
+
+		Assert.assertArrayEquals(new int[] { 0 }, index.query(0, 3, 3, 0));
+		Assert.assertArrayEquals(new int[] { 0 }, index.query(7, 3, 3, 0));
+		Assert.assertArrayEquals(new int[0], index.query(4, 3, 3, 0));
+	}
+
+	@Test
+	public void whenMarginSetShouldFindShapesOfNeighbouringTiles() {
+		ShapeTileIndex index = new ShapeTileIndex(new double[] { 0.51 }, new double[] { 0.51 }, new double[] { 0.52 }, new double[] { 0.52 }, 1);
+
+		Assert.assertArrayEquals(new int[0], index.query(3, 3, 3, 0));
+		Assert.assertArrayEquals(new int[] { 0 }, index.query(3, 3, 3, 1));
+	}
+
+	@Test
+	public void whenShapeCoversWorldShouldBeFoundEverywhere() {
+		ShapeTileIndex index = new ShapeTileIndex(new double[] { -0.2 }, new double[] { 0.0 }, new double[] { 1.3 }, new double[] { 1.0 }, 1);
+
+		Assert.assertArrayEquals(new int[] { 0 }, index.query(0, 0, 0, 0));
+		Assert.assertArrayEquals(new int[] { 0 }, index.query(12345, 54321, 17, 1));
+	}
+
+	private static boolean intersects(double minX, double minY, double maxX, double maxY, int x, int y, int tiles) {
+		if (maxY < (double) y / tiles || minY >= (double) (y + 1) / tiles) {
+			return false;
+		}
+		for (int shift = -1; shift <= 1; shift++) {
+			if (maxX + shift >= (double) x / tiles && minX + shift < (double) (x + 1) / tiles) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean contains(int[] values, int value) {
+		for (int v : values) {
+			if (v == value) {
+				return true;
+			}
+		}
+		return false;
+	}
+}